@@ -0,0 +1,80 @@
+package pl.indianbartonka.tailscale.benchmark;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.data.response.device.CompactDevice;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.data.response.device.DevicesResponse;
+import pl.indianbartonka.tailscale.json.CompactDeviceTypeAdapter;
+import pl.indianbartonka.tailscale.json.JsonArrayIterator;
+import pl.indianbartonka.tailscale.json.StringDictionary;
+
+/**
+ * Decoding {@link DevicesResponse} payloads of different sizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param({"10", "1000", "50000"})
+    public int devices;
+
+    private Gson reflectiveGson;
+    private Gson clientGson;
+    private String body;
+    private byte[] bodyBytes;
+    private CompactDeviceTypeAdapter compactAdapter;
+
+    @Setup
+    public void setup() {
+        this.reflectiveGson = new Gson();
+        this.clientGson = new TailscaleClient("example.com", "token").getGson();
+        this.body = SyntheticDevices.devicesJson(this.reflectiveGson, this.devices);
+        this.bodyBytes = this.body.getBytes(StandardCharsets.UTF_8);
+        this.compactAdapter = new CompactDeviceTypeAdapter(new StringDictionary());
+    }
+
+    @Benchmark
+    public List<Device> reflectiveGson() {
+        return this.reflectiveGson.fromJson(this.body, DevicesResponse.class).devices();
+    }
+
+    @Benchmark
+    public List<Device> clientGson() {
+        return this.clientGson.fromJson(this.body, DevicesResponse.class).devices();
+    }
+
+    @Benchmark
+    public List<CompactDevice> compact() throws IOException {
+        return this.compactAdapter.readDevices(this.clientGson.newJsonReader(new StringReader(this.body)));
+    }
+
+    @Benchmark
+    public void streaming(final Blackhole blackhole) throws IOException {
+        try (final JsonArrayIterator<Device> iterator = new JsonArrayIterator<>(this.clientGson, new ByteArrayInputStream(this.bodyBytes), "devices", Device.class)) {
+            while (iterator.hasNext()) blackhole.consume(iterator.next());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package pl.indianbartonka.tailscale.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+
+/**
+ * Parsing of error bodies in {@link TailscaleClient#handleError(int, String)}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ErrorHandlingBenchmark {
+
+    private TailscaleClient client;
+
+    @Setup
+    public void setup() {
+        this.client = new TailscaleClient("example.com", "token");
+    }
+
+    @Benchmark
+    public TailscaleException errorMessage() {
+        return this.handle(404, "{\"message\":\"device not found\"}");
+    }
+
+    @Benchmark
+    public TailscaleException emptyBody() {
+        return this.handle(502, "");
+    }
+
+    private TailscaleException handle(final int code, final String body) {
+        try {
+            this.client.handleError(code, body);
+            return null;
+        } catch (final TailscaleException exception) {
+            return exception;
+        }
+    }
+}
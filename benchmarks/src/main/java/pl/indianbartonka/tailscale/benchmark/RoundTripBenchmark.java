@@ -0,0 +1,69 @@
+package pl.indianbartonka.tailscale.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.scheduler.RequestScheduler;
+import pl.indianbartonka.tailscale.scheduler.RetryPolicy;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+/**
+ * Full client path against the local {@link TailscaleSimulator}: scheduling, HTTP exchange and decoding
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    @Param({"10", "1000"})
+    public int devices;
+
+    private TailscaleSimulator simulator;
+    private DeviceClient deviceClient;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.simulator = new TailscaleSimulator("example.com");
+        for (final Device device : SyntheticDevices.devices(this.devices)) this.simulator.addDevice(device);
+
+        final TailscaleClient client = this.simulator.createClient();
+        // The client side rate limit would measure the token bucket, not the client
+        client.setRequestScheduler(new RequestScheduler(1_000_000, 1_000_000, RetryPolicy.NONE));
+
+        this.deviceClient = client.getDeviceClient();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.simulator.close();
+    }
+
+    @Benchmark
+    public List<Device> getDevices() throws IOException {
+        return this.deviceClient.getDevices();
+    }
+
+    @Benchmark
+    public boolean setAuthorized() throws IOException {
+        return this.deviceClient.setAuthorized("1000000001", true);
+    }
+}
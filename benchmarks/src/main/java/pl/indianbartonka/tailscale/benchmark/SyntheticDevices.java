@@ -0,0 +1,65 @@
+package pl.indianbartonka.tailscale.benchmark;
+
+import com.google.gson.Gson;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.data.response.device.DevicesResponse;
+
+/**
+ * Realistic looking devices, including the client connectivity data that makes real payloads heavy
+ */
+public final class SyntheticDevices {
+
+    private static final String[] OS = {"linux", "windows", "macOS", "iOS", "android"};
+
+    private SyntheticDevices() {
+    }
+
+    public static Device device(final int index) {
+        final String id = String.valueOf(1_000_000_000L + index);
+        final String ip = "100." + (64 + (index >> 16 & 63)) + "." + (index >> 8 & 255) + "." + (index & 255);
+
+        return new Device(
+                List.of(ip, "fd7a:115c:a1e0::" + Integer.toHexString(index)),
+                true,
+                false,
+                "1.76.1-t1234567-gabcdef",
+                "2024-01-01T10:00:00Z",
+                "2025-01-01T10:00:00Z",
+                "host-" + index,
+                id,
+                false,
+                index % 3 == 0,
+                "2024-06-01T12:34:56Z",
+                "mkey:" + Long.toHexString(index * 2654435761L),
+                "host-" + index + ".tail1234.ts.net",
+                "n" + id + "CNTRL",
+                "nodekey:" + Long.toHexString(index * 40503L),
+                OS[index % OS.length],
+                index % 10 == 0 ? List.of("10." + (index & 255) + ".0.0/16") : List.of(),
+                index % 10 == 0 ? List.of("10." + (index & 255) + ".0.0/16") : List.of(),
+                new Device.ClientConnectivity(
+                        List.of("203.0.113." + (index & 255) + ":41641", "192.168.1." + (index & 255) + ":41641"),
+                        Map.of("fra", new Device.Latency(12.5, true), "waw", new Device.Latency(24.1, false), "ams", new Device.Latency(31.7, false)),
+                        false,
+                        new Device.ClientSupports(false, true, false, false, true, false)),
+                List.of("tag:server", "tag:env-" + (index % 4)),
+                "",
+                "tlpub:" + Long.toHexString(index),
+                new Device.PostureIdentity(List.of("SN" + index)),
+                index % 7 == 0,
+                "user" + (index % 50) + "@example.com");
+    }
+
+    public static List<Device> devices(final int count) {
+        final List<Device> devices = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) devices.add(device(i));
+        return devices;
+    }
+
+    public static String devicesJson(final Gson gson, final int count) {
+        return gson.toJson(new DevicesResponse(devices(count)));
+    }
+}
@@ -0,0 +1,64 @@
+package pl.indianbartonka.tailscale;
+
+/**
+ * Every API call made by the clients, used to group metrics and request policies per endpoint
+ */
+public enum ApiEndpoint {
+
+    GET_DEVICES("GET", "/tailnet/{tailnet}/devices"),
+    GET_DEVICE("GET", "/device/{deviceId}"),
+    DELETE_DEVICE("DELETE", "/device/{deviceId}"),
+    SET_EXPIRE("POST", "/device/{deviceId}/expire"),
+    GET_ROUTES("GET", "/device/{deviceId}/routes"),
+    SET_ROUTES("POST", "/device/{deviceId}/routes"),
+    SET_AUTHORIZED("POST", "/device/{deviceId}/authorized"),
+    SET_NAME("POST", "/device/{deviceId}/name"),
+    SET_TAGS("POST", "/device/{deviceId}/tags"),
+    SET_KEY_EXPIRY_DISABLED("POST", "/device/{deviceId}/key"),
+    SET_IP_V4("POST", "/device/{deviceId}/ip"),
+    GET_ATTRIBUTES("GET", "/device/{deviceId}/attributes"),
+    SET_ATTRIBUTES("POST", "/device/{deviceId}/attributes/{attributeKey}"),
+    DELETE_ATTRIBUTES("DELETE", "/device/{deviceId}/attributes/{attributeKey}"),
+    GET_KEYS("GET", "/tailnet/{tailnet}/keys"),
+    CREATE_KEY("POST", "/tailnet/{tailnet}/keys"),
+    GET_KEY("GET", "/tailnet/{tailnet}/keys/{keyId}"),
+    DELETE_KEY("DELETE", "/tailnet/{tailnet}/keys/{keyId}"),
+    GET_NAMESERVERS("GET", "/tailnet/{tailnet}/dns/nameservers"),
+    SET_NAMESERVERS("POST", "/tailnet/{tailnet}/dns/nameservers"),
+    GET_DNS_PREFERENCES("GET", "/tailnet/{tailnet}/dns/preferences"),
+    SET_DNS_PREFERENCES("POST", "/tailnet/{tailnet}/dns/preferences"),
+    GET_SEARCH_PATHS("GET", "/tailnet/{tailnet}/dns/searchpaths"),
+    SET_SEARCH_PATHS("POST", "/tailnet/{tailnet}/dns/searchpaths"),
+    GET_SPLIT_DNS("GET", "/tailnet/{tailnet}/dns/split-dns"),
+    UPDATE_SPLIT_DNS("PATCH", "/tailnet/{tailnet}/dns/split-dns"),
+    SET_SPLIT_DNS("PUT", "/tailnet/{tailnet}/dns/split-dns");
+
+    private final String method;
+    private final String template;
+    private final EndpointGroup group;
+
+    ApiEndpoint(final String method, final String template) {
+        this.method = method;
+        this.template = template;
+        this.group = group(method, template);
+    }
+
+    private static EndpointGroup group(final String method, final String template) {
+        if (template.contains("/keys")) return EndpointGroup.KEYS;
+        if (template.contains("/dns/")) return EndpointGroup.DNS;
+
+        return method.equals("GET") ? EndpointGroup.DEVICES_READ : EndpointGroup.DEVICES_WRITE;
+    }
+
+    public String getMethod() {
+        return this.method;
+    }
+
+    public String getTemplate() {
+        return this.template;
+    }
+
+    public EndpointGroup getGroup() {
+        return this.group;
+    }
+}
@@ -1,29 +1,355 @@
 package pl.indianbartonka.tailscale;
 
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import pl.indianbartonka.tailscale.data.request.DnsPreferencesRequest;
+import pl.indianbartonka.tailscale.data.request.NameserversRequest;
+import pl.indianbartonka.tailscale.data.request.SearchPathsRequest;
+import pl.indianbartonka.tailscale.data.request.SplitDnsRequest;
+import pl.indianbartonka.tailscale.data.response.dns.DnsConfig;
+import pl.indianbartonka.tailscale.data.response.dns.DnsPreferences;
+import pl.indianbartonka.tailscale.data.response.dns.NameserversResponse;
+import pl.indianbartonka.tailscale.data.response.dns.SearchPathsResponse;
+import pl.indianbartonka.tailscale.data.response.dns.SplitDnsChanges;
+import pl.indianbartonka.tailscale.data.response.dns.SplitDnsResponse;
+
+/**
+ * Nameservers, DNS preferences, search paths and split DNS of the tailnet.
+ * {@link #getConfig()} keeps a cached and versioned view of all of them, which writes made through this client keep up to date
+ */
 public class DNSClient {
 
-    public void TODO(){
-        /**
-         * Operations
-         * get
-         * /tailnet/{tailnet}/dns/nameservers
-         * post
-         * /tailnet/{tailnet}/dns/nameservers
-         * get
-         * /tailnet/{tailnet}/dns/preferences
-         * post
-         * /tailnet/{tailnet}/dns/preferences
-         * get
-         * /tailnet/{tailnet}/dns/searchpaths
-         * post
-         * /tailnet/{tailnet}/dns/searchpaths
-         * get
-         * /tailnet/{tailnet}/dns/split-dns
-         * patch
-         * /tailnet/{tailnet}/dns/split-dns
-         * put
-         * /tailnet/{tailnet}/dns/split-dns
-         */
+    public static final Duration DEFAULT_CACHE_TTL = Duration.ofSeconds(30);
+
+    private final TailscaleClient tailscaleClient;
+    private final AtomicReference<CachedConfig> cached;
+    private final AtomicReference<CompletableFuture<DnsConfig>> loading;
+    private long version;
+    private volatile long cacheTtlNanos;
+
+    public DNSClient(final TailscaleClient tailscaleClient) {
+        this.tailscaleClient = tailscaleClient;
+        this.cached = new AtomicReference<>();
+        this.loading = new AtomicReference<>();
+        this.cacheTtlNanos = DEFAULT_CACHE_TTL.toNanos();
+    }
+
+    public NameserversResponse getNameservers() throws IOException {
+        return TailscaleClient.await(this.getNameserversAsync());
+    }
+
+    public CompletableFuture<NameserversResponse> getNameserversAsync() {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.GET_NAMESERVERS)
+                .GET()
+                .build();
+
+        return this.tailscaleClient.sendAsync(ApiEndpoint.GET_NAMESERVERS, request, body -> this.tailscaleClient.getGson().fromJson(body, NameserversResponse.class));
+    }
+
+    public NameserversResponse setNameservers(final List<String> nameservers) throws IOException {
+        return TailscaleClient.await(this.setNameserversAsync(nameservers));
+    }
+
+    public CompletableFuture<NameserversResponse> setNameserversAsync(final List<String> nameservers) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.SET_NAMESERVERS)
+                .header("Content-Type", "application/json")
+                .POST(this.tailscaleClient.jsonBody(new NameserversRequest(nameservers)))
+                .build();
+
+        return this.tailscaleClient.sendAsync(ApiEndpoint.SET_NAMESERVERS, request, body -> this.tailscaleClient.getGson().fromJson(body, NameserversResponse.class))
+                .thenApply(response -> {
+                    this.update(config -> new DnsConfig(config.version(), response.dns(),
+                            response.magicDNS() == null ? config.magicDNS() : response.magicDNS(), config.searchPaths(), config.splitDns()));
+                    return response;
+                });
+    }
+
+    public DnsPreferences getPreferences() throws IOException {
+        return TailscaleClient.await(this.getPreferencesAsync());
+    }
+
+    public CompletableFuture<DnsPreferences> getPreferencesAsync() {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.GET_DNS_PREFERENCES)
+                .GET()
+                .build();
+
+        return this.tailscaleClient.sendAsync(ApiEndpoint.GET_DNS_PREFERENCES, request, body -> this.tailscaleClient.getGson().fromJson(body, DnsPreferences.class));
+    }
+
+    public DnsPreferences setPreferences(final boolean magicDNS) throws IOException {
+        return TailscaleClient.await(this.setPreferencesAsync(magicDNS));
+    }
+
+    public CompletableFuture<DnsPreferences> setPreferencesAsync(final boolean magicDNS) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.SET_DNS_PREFERENCES)
+                .header("Content-Type", "application/json")
+                .POST(this.tailscaleClient.constantJsonBody(new DnsPreferencesRequest(magicDNS)))
+                .build();
+
+        return this.tailscaleClient.sendAsync(ApiEndpoint.SET_DNS_PREFERENCES, request, body -> this.tailscaleClient.getGson().fromJson(body, DnsPreferences.class))
+                .thenApply(preferences -> {
+                    this.update(config -> new DnsConfig(config.version(), config.nameservers(), preferences.magicDNS(), config.searchPaths(), config.splitDns()));
+                    return preferences;
+                });
+    }
+
+    public SearchPathsResponse getSearchPaths() throws IOException {
+        return TailscaleClient.await(this.getSearchPathsAsync());
+    }
+
+    public CompletableFuture<SearchPathsResponse> getSearchPathsAsync() {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.GET_SEARCH_PATHS)
+                .GET()
+                .build();
+
+        return this.tailscaleClient.sendAsync(ApiEndpoint.GET_SEARCH_PATHS, request, body -> this.tailscaleClient.getGson().fromJson(body, SearchPathsResponse.class));
+    }
+
+    public SearchPathsResponse setSearchPaths(final List<String> searchPaths) throws IOException {
+        return TailscaleClient.await(this.setSearchPathsAsync(searchPaths));
+    }
+
+    public CompletableFuture<SearchPathsResponse> setSearchPathsAsync(final List<String> searchPaths) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.SET_SEARCH_PATHS)
+                .header("Content-Type", "application/json")
+                .POST(this.tailscaleClient.jsonBody(new SearchPathsRequest(searchPaths)))
+                .build();
+
+        return this.tailscaleClient.sendAsync(ApiEndpoint.SET_SEARCH_PATHS, request, body -> this.tailscaleClient.getGson().fromJson(body, SearchPathsResponse.class))
+                .thenApply(response -> {
+                    this.update(config -> new DnsConfig(config.version(), config.nameservers(), config.magicDNS(), response.searchPaths(), config.splitDns()));
+                    return response;
+                });
+    }
+
+    public SplitDnsResponse getSplitDns() throws IOException {
+        return TailscaleClient.await(this.getSplitDnsAsync());
+    }
+
+    public CompletableFuture<SplitDnsResponse> getSplitDnsAsync() {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.GET_SPLIT_DNS)
+                .GET()
+                .build();
+
+        return this.tailscaleClient.sendAsync(ApiEndpoint.GET_SPLIT_DNS, request, body -> this.tailscaleClient.getGson().fromJson(body, SplitDnsResponse.class));
+    }
+
+    /**
+     * Changes only the given domains, a {@code null} value removes the domain
+     *
+     * @return the whole split DNS configuration after the change
+     */
+    public SplitDnsResponse updateSplitDns(final Map<String, List<String>> domains) throws IOException {
+        return TailscaleClient.await(this.updateSplitDnsAsync(domains));
+    }
+
+    public CompletableFuture<SplitDnsResponse> updateSplitDnsAsync(final Map<String, List<String>> domains) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.UPDATE_SPLIT_DNS)
+                .header("Content-Type", "application/json")
+                .method("PATCH", this.tailscaleClient.jsonBody(new SplitDnsRequest(domains)))
+                .build();
+
+        return this.sendSplitDns(ApiEndpoint.UPDATE_SPLIT_DNS, request);
+    }
+
+    /**
+     * Replaces the whole split DNS configuration, prefer {@link #reconcileSplitDns(Map)} for large configurations
+     */
+    public SplitDnsResponse setSplitDns(final Map<String, List<String>> domains) throws IOException {
+        return TailscaleClient.await(this.setSplitDnsAsync(domains));
+    }
+
+    public CompletableFuture<SplitDnsResponse> setSplitDnsAsync(final Map<String, List<String>> domains) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.SET_SPLIT_DNS)
+                .header("Content-Type", "application/json")
+                .PUT(this.tailscaleClient.jsonBody(new SplitDnsRequest(domains)))
+                .build();
+
+        return this.sendSplitDns(ApiEndpoint.SET_SPLIT_DNS, request);
+    }
+
+    private CompletableFuture<SplitDnsResponse> sendSplitDns(final ApiEndpoint endpoint, final HttpRequest request) {
+        return this.tailscaleClient.sendAsync(endpoint, request, body -> this.tailscaleClient.getGson().fromJson(body, SplitDnsResponse.class))
+                .thenApply(response -> {
+                    this.update(config -> new DnsConfig(config.version(), config.nameservers(), config.magicDNS(), config.searchPaths(), response.domains()));
+                    return response;
+                });
     }
 
+    /**
+     * @return the split DNS changes needed to reach the desired configuration, computed against a fresh read of split DNS.
+     * The cached configuration would miss changes made by other clients since it was loaded
+     */
+    public SplitDnsChanges planSplitDns(final Map<String, List<String>> desired) throws IOException {
+        return TailscaleClient.await(this.planSplitDnsAsync(desired));
+    }
+
+    public CompletableFuture<SplitDnsChanges> planSplitDnsAsync(final Map<String, List<String>> desired) {
+        return this.getSplitDnsAsync().thenApply(response -> {
+            this.update(config -> new DnsConfig(config.version(), config.nameservers(), config.magicDNS(), config.searchPaths(), response.domains()));
+            return diff(response.domains(), desired);
+        });
+    }
+
+    /**
+     * Brings split DNS to the desired configuration with one {@code PATCH} of only the changed domains,
+     * nothing is sent when split DNS already matches. Domains missing from {@code desired} are removed
+     *
+     * @return the applied changes
+     */
+    public SplitDnsChanges reconcileSplitDns(final Map<String, List<String>> desired) throws IOException {
+        return TailscaleClient.await(this.reconcileSplitDnsAsync(desired));
+    }
+
+    public CompletableFuture<SplitDnsChanges> reconcileSplitDnsAsync(final Map<String, List<String>> desired) {
+        return this.planSplitDnsAsync(desired).thenCompose(changes -> {
+            if (changes.isEmpty()) return CompletableFuture.completedFuture(changes);
+
+            return this.updateSplitDnsAsync(changes.toRequest().domains()).thenApply(response -> changes);
+        });
+    }
+
+    public static SplitDnsChanges diff(final Map<String, List<String>> current, final Map<String, List<String>> desired) {
+        final Map<String, List<String>> currentDomains = current == null ? Map.of() : current;
+        final Map<String, List<String>> added = new LinkedHashMap<>();
+        final Map<String, List<String>> changed = new LinkedHashMap<>();
+        final Set<String> removed = new LinkedHashSet<>();
+
+        for (final Map.Entry<String, List<String>> entry : desired.entrySet()) {
+            if (!currentDomains.containsKey(entry.getKey())) {
+                added.put(entry.getKey(), entry.getValue());
+            } else if (!Objects.equals(currentDomains.get(entry.getKey()), entry.getValue())) {
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        for (final String domain : currentDomains.keySet()) {
+            if (!desired.containsKey(domain)) removed.add(domain);
+        }
+
+        return new SplitDnsChanges(Collections.unmodifiableMap(added), Collections.unmodifiableMap(changed), Collections.unmodifiableSet(removed));
+    }
+
+    /**
+     * Returns the cached configuration, fetching it when missing or older than the cache ttl
+     */
+    public DnsConfig getConfig() throws IOException {
+        return TailscaleClient.await(this.getConfigAsync());
+    }
+
+    public CompletableFuture<DnsConfig> getConfigAsync() {
+        final CachedConfig cachedConfig = this.cached.get();
+        if (cachedConfig != null && cachedConfig.expiresAt() - System.nanoTime() > 0) return CompletableFuture.completedFuture(cachedConfig.config());
+
+        return this.refreshConfigAsync();
+    }
+
+    public DnsConfig refreshConfig() throws IOException {
+        return TailscaleClient.await(this.refreshConfigAsync());
+    }
+
+    /**
+     * Fetches all four parts of the configuration in parallel, concurrent callers share one fetch
+     */
+    public CompletableFuture<DnsConfig> refreshConfigAsync() {
+        final CompletableFuture<DnsConfig> promise = new CompletableFuture<>();
+        if (!this.loading.compareAndSet(null, promise)) {
+            final CompletableFuture<DnsConfig> existing = this.loading.get();
+            if (existing != null) return existing;
+            return this.refreshConfigAsync();
+        }
+
+        final CompletableFuture<NameserversResponse> nameservers = this.getNameserversAsync();
+        final CompletableFuture<DnsPreferences> preferences = this.getPreferencesAsync();
+        final CompletableFuture<SearchPathsResponse> searchPaths = this.getSearchPathsAsync();
+        final CompletableFuture<SplitDnsResponse> splitDns = this.getSplitDnsAsync();
+
+        CompletableFuture.allOf(nameservers, preferences, searchPaths, splitDns).whenComplete((ignored, throwable) -> {
+            // A write during the fetch drops the promise, the cache holds a newer state than the fetch then
+            final boolean current = this.loading.compareAndSet(promise, null);
+
+            if (throwable != null) {
+                promise.completeExceptionally(throwable);
+                return;
+            }
+
+            final DnsConfig fetched = new DnsConfig(0, nameservers.join().dns(), preferences.join().magicDNS(),
+                    searchPaths.join().searchPaths(), splitDns.join().domains());
+
+            final CachedConfig latest = this.cached.get();
+            promise.complete(current || latest == null ? this.store(fetched) : latest.config());
+        });
+
+        return promise;
+    }
+
+    /**
+     * Makes the next {@link #getConfig()} fetch again, the version only changes when the fetched configuration differs
+     */
+    public synchronized void invalidate() {
+        this.loading.set(null);
+
+        final CachedConfig cachedConfig = this.cached.get();
+        if (cachedConfig != null) this.cached.set(new CachedConfig(cachedConfig.config(), System.nanoTime()));
+    }
+
+    private synchronized DnsConfig store(final DnsConfig config) {
+        final DnsConfig versioned = this.versioned(config);
+        this.cached.set(new CachedConfig(versioned, System.nanoTime() + this.cacheTtlNanos));
+
+        return versioned;
+    }
+
+    /**
+     * Gives the configuration the current version, or the next one when it differs from the cached configuration
+     */
+    private synchronized DnsConfig versioned(final DnsConfig config) {
+        final CachedConfig cachedConfig = this.cached.get();
+        if (cachedConfig == null || !sameContent(cachedConfig.config(), config)) this.version++;
+
+        return new DnsConfig(this.version, config.nameservers(), config.magicDNS(), config.searchPaths(), config.splitDns());
+    }
+
+    private synchronized void update(final UnaryOperator<DnsConfig> change) {
+        this.loading.set(null);
+
+        final CachedConfig cachedConfig = this.cached.get();
+        if (cachedConfig == null) return;
+
+        final DnsConfig updated = change.apply(cachedConfig.config());
+        if (sameContent(cachedConfig.config(), updated)) return;
+
+        this.version++;
+        this.cached.set(new CachedConfig(new DnsConfig(this.version, updated.nameservers(), updated.magicDNS(), updated.searchPaths(), updated.splitDns()),
+                cachedConfig.expiresAt()));
+    }
+
+    private static boolean sameContent(final DnsConfig first, final DnsConfig second) {
+        return first.magicDNS() == second.magicDNS()
+                && Objects.equals(first.nameservers(), second.nameservers())
+                && Objects.equals(first.searchPaths(), second.searchPaths())
+                && Objects.equals(first.splitDns(), second.splitDns());
+    }
+
+    public Duration getCacheTtl() {
+        return Duration.ofNanos(this.cacheTtlNanos);
+    }
+
+    public void setCacheTtl(final Duration cacheTtl) {
+        this.cacheTtlNanos = cacheTtl.toNanos();
+    }
+
+    private record CachedConfig(DnsConfig config, long expiresAt) {
+    }
 }
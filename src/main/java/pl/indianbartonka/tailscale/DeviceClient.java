@@ -1,9 +1,25 @@
 package pl.indianbartonka.tailscale;
 
+import com.google.gson.JsonIOException;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import pl.indianbartonka.tailscale.bulk.BulkDeviceOperations;
+import pl.indianbartonka.tailscale.circuit.CircuitBreaker;
 import pl.indianbartonka.tailscale.data.request.AttributesRequest;
 import pl.indianbartonka.tailscale.data.request.AuthorizedRequest;
 import pl.indianbartonka.tailscale.data.request.IpV4Request;
@@ -13,255 +29,358 @@ import pl.indianbartonka.tailscale.data.request.RoutesRequest;
 import pl.indianbartonka.tailscale.data.request.TagsRequest;
 import pl.indianbartonka.tailscale.data.response.AttributesResponse;
 import pl.indianbartonka.tailscale.data.response.RoutesResponse;
+import pl.indianbartonka.tailscale.data.response.device.CompactDevice;
 import pl.indianbartonka.tailscale.data.response.device.Device;
 import pl.indianbartonka.tailscale.data.response.device.DevicesResponse;
-import pl.indianbartonka.util.http.ContentType;
-import pl.indianbartonka.util.http.connection.Connection;
-import pl.indianbartonka.util.http.connection.request.Request;
-import pl.indianbartonka.util.http.connection.request.RequestBody;
-import pl.indianbartonka.util.http.connection.request.RequestBuilder;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+import pl.indianbartonka.tailscale.json.CompactDeviceTypeAdapter;
+import pl.indianbartonka.tailscale.json.JsonArrayIterator;
+import pl.indianbartonka.tailscale.json.StringDictionary;
 
 public class DeviceClient {
 
+    public static final int DEFAULT_BULK_CONCURRENCY = 32;
+
+    /**
+     * Devices kept for the stale fallback of {@link #getDevice(String)}, the least recently used one is dropped first
+     */
+    public static final int MAX_STALE_DEVICES = 10_000;
+
     private final TailscaleClient tailscaleClient;
+    private final CompactDeviceTypeAdapter compactDeviceAdapter;
+    private final Map<String, Device> staleDevices;
+    private final LongAdder staleServed;
+    private volatile boolean staleFallback;
+    private volatile List<Device> staleDeviceList;
 
     public DeviceClient(final TailscaleClient tailscaleClient) {
         this.tailscaleClient = tailscaleClient;
+        this.compactDeviceAdapter = new CompactDeviceTypeAdapter(new StringDictionary());
+        this.staleDevices = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Device> eldest) {
+                return this.size() > MAX_STALE_DEVICES;
+            }
+        });
+        this.staleServed = new LongAdder();
+    }
+
+    public BulkDeviceOperations bulk() {
+        return this.bulk(DEFAULT_BULK_CONCURRENCY);
+    }
+
+    /**
+     * @param maxConcurrency how many calls can be in flight at the same time
+     */
+    public BulkDeviceOperations bulk(final int maxConcurrency) {
+        return new BulkDeviceOperations(this, maxConcurrency);
     }
 
     public List<Device> getDevices() throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/tailnet/" + this.tailscaleClient.getOrganizationName() + "/devices")
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
+        return TailscaleClient.await(this.getDevicesAsync());
+    }
+
+    public CompletableFuture<List<Device>> getDevicesAsync() {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.GET_DEVICES)
                 .GET()
                 .build();
 
-        try (final Connection connection = new Connection(request)) {
-            final String body = connection.getBodyAsString();
+        return this.withStaleFallback(this.tailscaleClient.sendAsync(ApiEndpoint.GET_DEVICES, request,
+                        body -> this.tailscaleClient.getGson().fromJson(body, DevicesResponse.class).devices()),
+                () -> this.staleDeviceList, devices -> this.staleDeviceList = devices, () -> this.staleDeviceList = null);
+    }
 
-            if (!connection.isSuccessful()) this.tailscaleClient.handleError(connection.getRawStatusCode(), body);
+    /**
+     * Opt-in memory-compact variant of {@link #getDevices()} for inventories kept in memory,
+     * equal strings and lists are shared with the devices of earlier calls
+     */
+    public List<CompactDevice> getCompactDevices() throws IOException {
+        return TailscaleClient.await(this.getCompactDevicesAsync());
+    }
 
-            return this.tailscaleClient.getGson().fromJson(body, DevicesResponse.class).devices();
+    public CompletableFuture<List<CompactDevice>> getCompactDevicesAsync() {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.GET_DEVICES)
+                .GET()
+                .build();
+
+        return this.tailscaleClient.sendAsync(ApiEndpoint.GET_DEVICES, request, body -> {
+            try {
+                return this.compactDeviceAdapter.readDevices(this.tailscaleClient.getGson().newJsonReader(body));
+            } catch (final IOException exception) {
+                throw new JsonIOException(exception);
+            }
+        });
+    }
+
+    /**
+     * Dictionary shared by the devices of {@link #getCompactDevices()}
+     */
+    public StringDictionary getStringDictionary() {
+        return this.compactDeviceAdapter.getDictionary();
+    }
+
+    /**
+     * Decodes the device list one device at a time, so memory use doesn't grow with the tailnet size
+     */
+    public void forEachDevice(final Consumer<Device> consumer) throws IOException {
+        try (final Stream<Device> devices = this.streamDevices()) {
+            devices.forEach(consumer);
         }
     }
 
+    /**
+     * Lazy variant of {@link #getDevices()}, devices are decoded while the stream is consumed.
+     * The stream holds the HTTP response open and has to be closed
+     */
+    public Stream<Device> streamDevices() throws IOException {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.GET_DEVICES)
+                .GET()
+                .build();
+
+        final InputStream inputStream = TailscaleClient.await(this.tailscaleClient.sendStreamAsync(ApiEndpoint.GET_DEVICES, request));
+        final JsonArrayIterator<Device> iterator = new JsonArrayIterator<>(this.tailscaleClient.getGson(), inputStream, "devices", Device.class);
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
     public Device getDevice(final String deviceId) throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/device/" + deviceId)
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
+        return TailscaleClient.await(this.getDeviceAsync(deviceId));
+    }
+
+    public CompletableFuture<Device> getDeviceAsync(final String deviceId) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.GET_DEVICE, deviceId)
                 .GET()
                 .build();
 
-        try (final Connection connection = new Connection(request)) {
-            final String body = connection.getBodyAsString();
+        return this.withStaleFallback(this.tailscaleClient.sendAsync(ApiEndpoint.GET_DEVICE, request, body -> this.tailscaleClient.getGson().fromJson(body, Device.class)),
+                () -> this.staleDevices.get(deviceId), device -> this.staleDevices.put(deviceId, device), () -> this.staleDevices.remove(deviceId));
+    }
+
+    /**
+     * With the stale fallback on, the last successful result is served when the call fails because the API is degraded,
+     * see {@link CircuitBreaker#isFailure(Throwable)}. Client errors like {@code 404} still fail, a {@code 404} also drops the kept result
+     */
+    private <T> CompletableFuture<T> withStaleFallback(final CompletableFuture<T> future, final Supplier<T> stale, final Consumer<T> store,
+                                                       final Runnable forget) {
+        if (!this.staleFallback) return future;
 
-            if (!connection.isSuccessful()) this.tailscaleClient.handleError(connection.getRawStatusCode(), body);
+        return future.handle((result, throwable) -> {
+            if (throwable == null) {
+                store.accept(result);
+                return CompletableFuture.completedFuture(result);
+            }
 
-            return this.tailscaleClient.getGson().fromJson(body, Device.class);
-        }
+            final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+            if (cause instanceof final TailscaleException tailscaleException && tailscaleException.getStatusCode() == 404) forget.run();
+
+            final T staleResult = CircuitBreaker.isFailure(cause) ? stale.get() : null;
+            if (staleResult == null) return CompletableFuture.<T>failedFuture(cause);
+
+            this.staleServed.increment();
+            return CompletableFuture.completedFuture(staleResult);
+        }).thenCompose(Function.identity());
     }
 
     public boolean deleteDevice(final String deviceId) throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/device/" + deviceId)
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
+        return TailscaleClient.await(this.deleteDeviceAsync(deviceId));
+    }
+
+    public CompletableFuture<Boolean> deleteDeviceAsync(final String deviceId) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.DELETE_DEVICE, deviceId)
                 .DELETE()
                 .build();
 
-        try (final Connection connection = new Connection(request)) {
-            final String body = connection.getBodyAsString();
+        return this.tailscaleClient.sendAsync(ApiEndpoint.DELETE_DEVICE, request, body -> {
+            this.dropStale(deviceId);
+            return true;
+        });
+    }
 
-            if (!connection.isSuccessful()) this.tailscaleClient.handleError(connection.getRawStatusCode(), body);
+    /**
+     * Forgets a deleted device in the stale results, so an outage right after the delete doesn't bring it back
+     *
+     * @param deviceId id or node id of the device
+     */
+    private void dropStale(final String deviceId) {
+        this.staleDevices.remove(deviceId);
+        synchronized (this.staleDevices) {
+            this.staleDevices.values().removeIf(device -> isDevice(device, deviceId));
+        }
 
-            return true;
+        final List<Device> devices = this.staleDeviceList;
+        if (devices != null && devices.stream().anyMatch(device -> isDevice(device, deviceId))) {
+            this.staleDeviceList = devices.stream().filter(device -> !isDevice(device, deviceId)).toList();
         }
     }
 
-    public boolean setExpire(final String deviceId) throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/device/" + deviceId + "/expire")
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
-                .POST(new RequestBody("".getBytes(StandardCharsets.UTF_8)))
-                .build();
+    private static boolean isDevice(final Device device, final String deviceId) {
+        return deviceId.equals(device.id()) || deviceId.equals(device.nodeId());
+    }
 
-        try (final Connection connection = new Connection(request)) {
+    public boolean setExpire(final String deviceId) throws IOException {
+        return TailscaleClient.await(this.setExpireAsync(deviceId));
+    }
 
-            if (!connection.isSuccessful())
-                this.tailscaleClient.handleError(connection.getRawStatusCode(), connection.getBodyAsString());
+    public CompletableFuture<Boolean> setExpireAsync(final String deviceId) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.SET_EXPIRE, deviceId)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
 
-            return true;
-        }
+        return this.tailscaleClient.sendAsync(ApiEndpoint.SET_EXPIRE, request, body -> true);
     }
 
     public RoutesResponse getRoutes(final String deviceId) throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/device/" + deviceId + "/routes")
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
+        return TailscaleClient.await(this.getRoutesAsync(deviceId));
+    }
+
+    public CompletableFuture<RoutesResponse> getRoutesAsync(final String deviceId) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.GET_ROUTES, deviceId)
                 .GET()
                 .build();
 
-        try (final Connection connection = new Connection(request)) {
-            final String body = connection.getBodyAsString();
-
-            if (!connection.isSuccessful()) this.tailscaleClient.handleError(connection.getRawStatusCode(), body);
-
-            return this.tailscaleClient.getGson().fromJson(body, RoutesResponse.class);
-        }
+        return this.tailscaleClient.sendAsync(ApiEndpoint.GET_ROUTES, request, body -> this.tailscaleClient.getGson().fromJson(body, RoutesResponse.class));
     }
 
     public RoutesResponse setRoutes(final String deviceId, final RoutesRequest routesRequest) throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/device/" + deviceId + "/routes")
-                .setContentType(ContentType.APPLICATION_JSON)
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
-                .POST(new RequestBody(this.tailscaleClient.getGson().toJson(routesRequest).getBytes(StandardCharsets.UTF_8)))
-                .build();
-
-        try (final Connection connection = new Connection(request)) {
-            final String body = connection.getBodyAsString();
+        return TailscaleClient.await(this.setRoutesAsync(deviceId, routesRequest));
+    }
 
-            if (!connection.isSuccessful()) this.tailscaleClient.handleError(connection.getRawStatusCode(), body);
+    public CompletableFuture<RoutesResponse> setRoutesAsync(final String deviceId, final RoutesRequest routesRequest) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.SET_ROUTES, deviceId)
+                .header("Content-Type", "application/json")
+                .POST(this.tailscaleClient.jsonBody(routesRequest))
+                .build();
 
-            return this.tailscaleClient.getGson().fromJson(body, RoutesResponse.class);
-        }
+        return this.tailscaleClient.sendAsync(ApiEndpoint.SET_ROUTES, request, body -> this.tailscaleClient.getGson().fromJson(body, RoutesResponse.class));
     }
 
     public boolean setAuthorized(final String deviceId, final boolean authorized) throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/device/" + deviceId + "/authorized")
-                .setContentType(ContentType.APPLICATION_JSON)
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
-                .POST(new RequestBody(this.tailscaleClient.getGson().toJson(new AuthorizedRequest(authorized)).getBytes(StandardCharsets.UTF_8)))
-                .build();
-
-        try (final Connection connection = new Connection(request)) {
+        return TailscaleClient.await(this.setAuthorizedAsync(deviceId, authorized));
+    }
 
-            if (!connection.isSuccessful())
-                this.tailscaleClient.handleError(connection.getRawStatusCode(), connection.getBodyAsString());
+    public CompletableFuture<Boolean> setAuthorizedAsync(final String deviceId, final boolean authorized) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.SET_AUTHORIZED, deviceId)
+                .header("Content-Type", "application/json")
+                .POST(this.tailscaleClient.constantJsonBody(new AuthorizedRequest(authorized)))
+                .build();
 
-            return true;
-        }
+        return this.tailscaleClient.sendAsync(ApiEndpoint.SET_AUTHORIZED, request, body -> true);
     }
 
     public boolean setName(final String deviceId, final String name) throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/device/" + deviceId + "/name")
-                .setContentType(ContentType.APPLICATION_JSON)
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
-                .POST(new RequestBody(this.tailscaleClient.getGson().toJson(new NameRequest(name)).getBytes(StandardCharsets.UTF_8)))
-                .build();
-
-        try (final Connection connection = new Connection(request)) {
+        return TailscaleClient.await(this.setNameAsync(deviceId, name));
+    }
 
-            if (!connection.isSuccessful())
-                this.tailscaleClient.handleError(connection.getRawStatusCode(), connection.getBodyAsString());
+    public CompletableFuture<Boolean> setNameAsync(final String deviceId, final String name) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.SET_NAME, deviceId)
+                .header("Content-Type", "application/json")
+                .POST(this.tailscaleClient.jsonBody(new NameRequest(name)))
+                .build();
 
-            return true;
-        }
+        return this.tailscaleClient.sendAsync(ApiEndpoint.SET_NAME, request, body -> true);
     }
 
     /**
      * I don't know how to use tags
      */
     public boolean setTags(final String deviceId, final Map<String, String> tags) throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/device/" + deviceId + "/tags")
-                .setContentType(ContentType.APPLICATION_JSON)
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
-                .POST(new RequestBody(this.tailscaleClient.getGson().toJson(new TagsRequest(tags)).getBytes(StandardCharsets.UTF_8)))
-                .build();
-
-        try (final Connection connection = new Connection(request)) {
-
-            if (!connection.isSuccessful())
-                this.tailscaleClient.handleError(connection.getRawStatusCode(), connection.getBodyAsString());
-
-            return true;
-        }
+        return TailscaleClient.await(this.setTagsAsync(deviceId, tags));
     }
 
-    public boolean setKeyExpiryDisabled(final String deviceId, final boolean keyExpiryDisabled) throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/device/" + deviceId + "/key")
-                .setContentType(ContentType.APPLICATION_JSON)
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
-                .POST(new RequestBody(this.tailscaleClient.getGson().toJson(new KeyExpiryDisabledRequest(keyExpiryDisabled)).getBytes(StandardCharsets.UTF_8)))
+    public CompletableFuture<Boolean> setTagsAsync(final String deviceId, final Map<String, String> tags) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.SET_TAGS, deviceId)
+                .header("Content-Type", "application/json")
+                .POST(this.tailscaleClient.jsonBody(new TagsRequest(tags)))
                 .build();
 
-        try (final Connection connection = new Connection(request)) {
-
-            if (!connection.isSuccessful())
-                this.tailscaleClient.handleError(connection.getRawStatusCode(), connection.getBodyAsString());
+        return this.tailscaleClient.sendAsync(ApiEndpoint.SET_TAGS, request, body -> true);
+    }
 
-            return true;
-        }
+    public boolean setKeyExpiryDisabled(final String deviceId, final boolean keyExpiryDisabled) throws IOException {
+        return TailscaleClient.await(this.setKeyExpiryDisabledAsync(deviceId, keyExpiryDisabled));
     }
 
-    public boolean setIpV4(final String deviceId, final String ipV4) throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/device/" + deviceId + "/ip")
-                .setContentType(ContentType.APPLICATION_JSON)
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
-                .POST(new RequestBody(this.tailscaleClient.getGson().toJson(new IpV4Request(ipV4)).getBytes(StandardCharsets.UTF_8)))
+    public CompletableFuture<Boolean> setKeyExpiryDisabledAsync(final String deviceId, final boolean keyExpiryDisabled) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.SET_KEY_EXPIRY_DISABLED, deviceId)
+                .header("Content-Type", "application/json")
+                .POST(this.tailscaleClient.constantJsonBody(new KeyExpiryDisabledRequest(keyExpiryDisabled)))
                 .build();
 
-        try (final Connection connection = new Connection(request)) {
-
-            if (!connection.isSuccessful())
-                this.tailscaleClient.handleError(connection.getRawStatusCode(), connection.getBodyAsString());
+        return this.tailscaleClient.sendAsync(ApiEndpoint.SET_KEY_EXPIRY_DISABLED, request, body -> true);
+    }
 
-            return true;
-        }
+    public boolean setIpV4(final String deviceId, final String ipV4) throws IOException {
+        return TailscaleClient.await(this.setIpV4Async(deviceId, ipV4));
     }
 
-    public boolean setAttributes(final String deviceId, final String attributeKey, final AttributesRequest attributesRequest) throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/device/" + deviceId + "/attributes/" + attributeKey)
-                .setContentType(ContentType.APPLICATION_JSON)
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
-                .POST(new RequestBody(this.tailscaleClient.getGson().toJson(attributesRequest).getBytes(StandardCharsets.UTF_8)))
+    public CompletableFuture<Boolean> setIpV4Async(final String deviceId, final String ipV4) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.SET_IP_V4, deviceId)
+                .header("Content-Type", "application/json")
+                .POST(this.tailscaleClient.jsonBody(new IpV4Request(ipV4)))
                 .build();
 
-        System.out.println(this.tailscaleClient.getGson().toJson(attributesRequest));
+        return this.tailscaleClient.sendAsync(ApiEndpoint.SET_IP_V4, request, body -> true);
+    }
 
-        try (final Connection connection = new Connection(request)) {
+    public boolean setAttributes(final String deviceId, final String attributeKey, final AttributesRequest attributesRequest) throws IOException {
+        return TailscaleClient.await(this.setAttributesAsync(deviceId, attributeKey, attributesRequest));
+    }
 
-            if (!connection.isSuccessful())
-                this.tailscaleClient.handleError(connection.getRawStatusCode(), connection.getBodyAsString());
+    public CompletableFuture<Boolean> setAttributesAsync(final String deviceId, final String attributeKey, final AttributesRequest attributesRequest) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.SET_ATTRIBUTES, deviceId, attributeKey)
+                .header("Content-Type", "application/json")
+                .POST(this.tailscaleClient.jsonBody(attributesRequest))
+                .build();
 
-            return true;
-        }
+        return this.tailscaleClient.sendAsync(ApiEndpoint.SET_ATTRIBUTES, request, body -> true);
     }
 
     public boolean deleteAttributes(final String deviceId, final String attributeKey) throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/device/" + deviceId + "/attributes/" + attributeKey)
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
+        return TailscaleClient.await(this.deleteAttributesAsync(deviceId, attributeKey));
+    }
+
+    public CompletableFuture<Boolean> deleteAttributesAsync(final String deviceId, final String attributeKey) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.DELETE_ATTRIBUTES, deviceId, attributeKey)
                 .DELETE()
                 .build();
 
-        try (final Connection connection = new Connection(request)) {
-            final String body = connection.getBodyAsString();
-
-            if (!connection.isSuccessful()) this.tailscaleClient.handleError(connection.getRawStatusCode(), body);
-
-            return true;
-        }
+        return this.tailscaleClient.sendAsync(ApiEndpoint.DELETE_ATTRIBUTES, request, body -> true);
     }
 
     public AttributesResponse getAttributes(final String deviceId) throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/device/" + deviceId + "/attributes")
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
+        return TailscaleClient.await(this.getAttributesAsync(deviceId));
+    }
+
+    public CompletableFuture<AttributesResponse> getAttributesAsync(final String deviceId) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.GET_ATTRIBUTES, deviceId)
                 .GET()
                 .build();
 
-        try (final Connection connection = new Connection(request)) {
-            final String body = connection.getBodyAsString();
+        return this.tailscaleClient.sendAsync(ApiEndpoint.GET_ATTRIBUTES, request, body -> this.tailscaleClient.getGson().fromJson(body, AttributesResponse.class));
+    }
 
-            if (!connection.isSuccessful()) this.tailscaleClient.handleError(connection.getRawStatusCode(), body);
+    public boolean isStaleFallback() {
+        return this.staleFallback;
+    }
 
-            return this.tailscaleClient.getGson().fromJson(body, AttributesResponse.class);
+    /**
+     * Serves the last successful {@link #getDevices()} and {@link #getDevice(String)} results while the API fails with
+     * server errors, I/O failures or an open circuit breaker, instead of failing the call. Turning it off forgets the kept results
+     */
+    public void setStaleFallback(final boolean staleFallback) {
+        this.staleFallback = staleFallback;
+
+        if (!staleFallback) {
+            this.staleDeviceList = null;
+            this.staleDevices.clear();
         }
     }
+
+    /**
+     * @return calls answered with a kept result instead of failing
+     */
+    public long getStaleServedCount() {
+        return this.staleServed.sum();
+    }
 }
@@ -0,0 +1,12 @@
+package pl.indianbartonka.tailscale;
+
+/**
+ * Groups of {@link ApiEndpoint} which share a circuit breaker, a failing part of the API doesn't block the others
+ */
+public enum EndpointGroup {
+
+    DEVICES_READ,
+    DEVICES_WRITE,
+    KEYS,
+    DNS
+}
@@ -0,0 +1,73 @@
+package pl.indianbartonka.tailscale;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link ApiEndpoint} templates resolved once against the base url and tailnet of a client.
+ * Endpoints without parameters are kept as ready {@link URI}s, the others as the literal parts between their parameters
+ */
+final class EndpointUris {
+
+    private final URI[] fixed;
+    private final String[][] parts;
+
+    EndpointUris(final String baseUrl, final String tailnet) {
+        final ApiEndpoint[] endpoints = ApiEndpoint.values();
+        this.fixed = new URI[endpoints.length];
+        this.parts = new String[endpoints.length][];
+
+        for (final ApiEndpoint endpoint : endpoints) {
+            final String[] literals = split(baseUrl + endpoint.getTemplate().replace("{tailnet}", tailnet));
+
+            this.parts[endpoint.ordinal()] = literals;
+            if (literals.length == 1) this.fixed[endpoint.ordinal()] = URI.create(literals[0]);
+        }
+    }
+
+    URI resolve(final ApiEndpoint endpoint) {
+        final URI uri = this.fixed[endpoint.ordinal()];
+        if (uri == null) throw new IllegalArgumentException(endpoint + " needs " + (this.parts[endpoint.ordinal()].length - 1) + " parameters");
+
+        return uri;
+    }
+
+    URI resolve(final ApiEndpoint endpoint, final String parameter) {
+        final String[] literals = this.literals(endpoint, 1);
+        final StringBuilder builder = new StringBuilder(literals[0].length() + parameter.length() + literals[1].length());
+
+        return URI.create(builder.append(literals[0]).append(parameter).append(literals[1]).toString());
+    }
+
+    URI resolve(final ApiEndpoint endpoint, final String first, final String second) {
+        final String[] literals = this.literals(endpoint, 2);
+        final StringBuilder builder = new StringBuilder(literals[0].length() + first.length() + literals[1].length() + second.length() + literals[2].length());
+
+        return URI.create(builder.append(literals[0]).append(first).append(literals[1]).append(second).append(literals[2]).toString());
+    }
+
+    private String[] literals(final ApiEndpoint endpoint, final int parameters) {
+        final String[] literals = this.parts[endpoint.ordinal()];
+        if (literals.length != parameters + 1) throw new IllegalArgumentException(endpoint + " needs " + (literals.length - 1) + " parameters");
+
+        return literals;
+    }
+
+    /**
+     * Splits {@code /device/{deviceId}/routes} into {@code /device/} and {@code /routes}
+     */
+    private static String[] split(final String template) {
+        final List<String> literals = new ArrayList<>();
+        int start = 0;
+        int open;
+
+        while ((open = template.indexOf('{', start)) != -1) {
+            literals.add(template.substring(start, open));
+            start = template.indexOf('}', open) + 1;
+        }
+        literals.add(template.substring(start));
+
+        return literals.toArray(new String[0]);
+    }
+}
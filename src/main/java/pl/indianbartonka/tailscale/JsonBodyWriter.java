@@ -0,0 +1,124 @@
+package pl.indianbartonka.tailscale;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Serializes request bodies straight to UTF-8 into a buffer that is reused by the thread,
+ * so the only allocation per body is its final {@code byte[]}
+ */
+final class JsonBodyWriter extends Writer {
+
+    private static final int MAX_RETAINED = 64 * 1024;
+
+    private static final ThreadLocal<JsonBodyWriter> WRITERS = ThreadLocal.withInitial(JsonBodyWriter::new);
+
+    private byte[] buffer;
+    private int count;
+    private char highSurrogate;
+
+    private JsonBodyWriter() {
+        this.buffer = new byte[512];
+    }
+
+    static byte[] toJson(final Gson gson, final Object body) {
+        final JsonBodyWriter bodyWriter = WRITERS.get();
+
+        try {
+            final byte[] json = bodyWriter.serialize(gson, body);
+
+            // Don't keep one huge body alive for the lifetime of the thread
+            if (bodyWriter.buffer.length > MAX_RETAINED) WRITERS.remove();
+
+            return json;
+        } catch (final IOException exception) {
+            throw new JsonIOException(exception);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serialize(final Gson gson, final Object body) throws IOException {
+        this.count = 0;
+        this.highSurrogate = 0;
+
+        final JsonWriter jsonWriter = gson.newJsonWriter(this);
+        if (body == null) {
+            jsonWriter.nullValue();
+        } else {
+            ((TypeAdapter<Object>) gson.getAdapter(body.getClass())).write(jsonWriter, body);
+        }
+
+        return Arrays.copyOf(this.buffer, this.count);
+    }
+
+    @Override
+    public void write(final int character) {
+        this.ensureCapacity(4);
+        this.encode((char) character);
+    }
+
+    @Override
+    public void write(final char[] characters, final int offset, final int length) {
+        this.ensureCapacity(length * 3);
+        for (int i = offset; i < offset + length; i++) this.encode(characters[i]);
+    }
+
+    @Override
+    public void write(final String string, final int offset, final int length) {
+        this.ensureCapacity(length * 3);
+        for (int i = offset; i < offset + length; i++) this.encode(string.charAt(i));
+    }
+
+    private void encode(final char character) {
+        if (character < 0x80 && this.highSurrogate == 0) {
+            this.buffer[this.count++] = (byte) character;
+        } else if (Character.isHighSurrogate(character)) {
+            if (this.highSurrogate != 0) this.buffer[this.count++] = '?';
+            this.highSurrogate = character;
+        } else if (Character.isLowSurrogate(character) && this.highSurrogate != 0) {
+            final int codePoint = Character.toCodePoint(this.highSurrogate, character);
+            this.highSurrogate = 0;
+            this.buffer[this.count++] = (byte) (0xF0 | codePoint >> 18);
+            this.buffer[this.count++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            this.buffer[this.count++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            this.buffer[this.count++] = (byte) (0x80 | codePoint & 0x3F);
+        } else {
+            if (this.highSurrogate != 0) {
+                // Unpaired surrogates are replaced the same way String#getBytes does it
+                this.buffer[this.count++] = '?';
+                this.highSurrogate = 0;
+            }
+
+            if (character < 0x80) {
+                this.buffer[this.count++] = (byte) character;
+            } else if (Character.isSurrogate(character)) {
+                this.buffer[this.count++] = '?';
+            } else if (character < 0x800) {
+                this.buffer[this.count++] = (byte) (0xC0 | character >> 6);
+                this.buffer[this.count++] = (byte) (0x80 | character & 0x3F);
+            } else {
+                this.buffer[this.count++] = (byte) (0xE0 | character >> 12);
+                this.buffer[this.count++] = (byte) (0x80 | character >> 6 & 0x3F);
+                this.buffer[this.count++] = (byte) (0x80 | character & 0x3F);
+            }
+        }
+    }
+
+    private void ensureCapacity(final int extra) {
+        final int needed = this.count + extra + 1;
+        if (needed > this.buffer.length) this.buffer = Arrays.copyOf(this.buffer, Math.max(needed, this.buffer.length * 2));
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -1,17 +1,13 @@
 package pl.indianbartonka.tailscale;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.net.http.HttpRequest;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import pl.indianbartonka.tailscale.data.request.ApiKeyRequest;
 import pl.indianbartonka.tailscale.data.response.key.ApiKey;
 import pl.indianbartonka.tailscale.data.response.key.ApiKeyResponse;
 import pl.indianbartonka.tailscale.data.response.key.ApiKeysResponse;
-import pl.indianbartonka.util.http.ContentType;
-import pl.indianbartonka.util.http.connection.Connection;
-import pl.indianbartonka.util.http.connection.request.Request;
-import pl.indianbartonka.util.http.connection.request.RequestBody;
-import pl.indianbartonka.util.http.connection.request.RequestBuilder;
 
 public class KeyClient {
 
@@ -22,67 +18,51 @@ public class KeyClient {
     }
 
     public List<ApiKey> getKeys() throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/tailnet/" + this.tailscaleClient.getOrganizationName() + "/keys")
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
+        return TailscaleClient.await(this.getKeysAsync());
+    }
+
+    public CompletableFuture<List<ApiKey>> getKeysAsync() {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.GET_KEYS)
                 .GET()
                 .build();
 
-        try (final Connection connection = new Connection(request)) {
-            final String body = connection.getBodyAsString();
-
-            if (!connection.isSuccessful()) this.tailscaleClient.handleError(connection.getRawStatusCode(), body);
-
-            return this.tailscaleClient.getGson().fromJson(body, ApiKeysResponse.class).keys();
-        }
+        return this.tailscaleClient.sendAsync(ApiEndpoint.GET_KEYS, request, body -> this.tailscaleClient.getGson().fromJson(body, ApiKeysResponse.class).keys());
     }
 
     public ApiKeyResponse createKey(final ApiKeyRequest apiKeyRequest) throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/tailnet/" + this.tailscaleClient.getOrganizationName() + "/keys")
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
-                .setContentType(ContentType.APPLICATION_JSON)
-                .POST(new RequestBody(this.tailscaleClient.getGson().toJson(apiKeyRequest).getBytes(StandardCharsets.UTF_8)))
-                .build();
-
-        try (final Connection connection = new Connection(request)) {
-            final String body = connection.getBodyAsString();
+        return TailscaleClient.await(this.createKeyAsync(apiKeyRequest));
+    }
 
-            if (!connection.isSuccessful()) this.tailscaleClient.handleError(connection.getRawStatusCode(), body);
+    public CompletableFuture<ApiKeyResponse> createKeyAsync(final ApiKeyRequest apiKeyRequest) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.CREATE_KEY)
+                .header("Content-Type", "application/json")
+                .POST(this.tailscaleClient.jsonBody(apiKeyRequest))
+                .build();
 
-            return this.tailscaleClient.getGson().fromJson(body, ApiKeyResponse.class);
-        }
+        return this.tailscaleClient.sendAsync(ApiEndpoint.CREATE_KEY, request, body -> this.tailscaleClient.getGson().fromJson(body, ApiKeyResponse.class));
     }
 
     public ApiKeyResponse getKey(final String keyId) throws IOException {
-    final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/tailnet/" + this.tailscaleClient.getOrganizationName() + "/keys/" + keyId)
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
-                .setContentType(ContentType.APPLICATION_JSON)
+        return TailscaleClient.await(this.getKeyAsync(keyId));
+    }
+
+    public CompletableFuture<ApiKeyResponse> getKeyAsync(final String keyId) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.GET_KEY, keyId)
                 .GET()
                 .build();
 
-        try (final Connection connection = new Connection(request)) {
-            final String body = connection.getBodyAsString();
-
-            if (!connection.isSuccessful()) this.tailscaleClient.handleError(connection.getRawStatusCode(), body);
-
-            return this.tailscaleClient.getGson().fromJson(body, ApiKeyResponse.class);
-        }
+        return this.tailscaleClient.sendAsync(ApiEndpoint.GET_KEY, request, body -> this.tailscaleClient.getGson().fromJson(body, ApiKeyResponse.class));
     }
 
     public void deleteKey(final String keyId) throws IOException {
-        final Request request = new RequestBuilder()
-                .setUrl(this.tailscaleClient.getBaseUrl() + "/tailnet/" + this.tailscaleClient.getOrganizationName() + "/keys/" + keyId)
-                .setAuthorization("Bearer " + this.tailscaleClient.getToken())
-                .setContentType(ContentType.APPLICATION_JSON)
+        TailscaleClient.await(this.deleteKeyAsync(keyId));
+    }
+
+    public CompletableFuture<Void> deleteKeyAsync(final String keyId) {
+        final HttpRequest request = this.tailscaleClient.newRequest(ApiEndpoint.DELETE_KEY, keyId)
                 .DELETE()
                 .build();
 
-        try (final Connection connection = new Connection(request)) {
-            final String body = connection.getBodyAsString();
-
-            if (!connection.isSuccessful()) this.tailscaleClient.handleError(connection.getRawStatusCode(), body);
-        }
+        return this.tailscaleClient.sendAsync(ApiEndpoint.DELETE_KEY, request, body -> null);
     }
 }
@@ -0,0 +1,137 @@
+package pl.indianbartonka.tailscale;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+import pl.indianbartonka.tailscale.metrics.ClientListener;
+import pl.indianbartonka.tailscale.metrics.RequestMetrics;
+import pl.indianbartonka.tailscale.transport.TransportResponse;
+
+/**
+ * Collects the {@link RequestMetrics} of one call across its attempts and hands them to the listeners
+ */
+final class RequestTrace {
+
+    private final ApiEndpoint endpoint;
+    private final HttpRequest request;
+    private final List<ClientListener> listeners;
+    private final long start;
+    private final AtomicBoolean finished;
+    private volatile int attempts;
+    private volatile long timeToFirstByte;
+    private volatile long bytesReceived;
+    private volatile int statusCode;
+    private volatile long decodeStart;
+    private volatile long decodeNanos;
+
+    RequestTrace(final ApiEndpoint endpoint, final HttpRequest request, final List<ClientListener> listeners) {
+        this.endpoint = endpoint;
+        this.request = request;
+        this.listeners = listeners;
+        this.start = System.nanoTime();
+        this.finished = new AtomicBoolean();
+        this.statusCode = -1;
+
+        for (final ClientListener listener : listeners) {
+            try {
+                listener.onRequestStart(endpoint, request);
+            } catch (final RuntimeException ignored) {
+            }
+        }
+    }
+
+    void attemptStarted() {
+        this.attempts++;
+    }
+
+    /**
+     * Takes the status, headers arrival and body size from the response of the last attempt
+     */
+    TransportResponse received(final TransportResponse response) {
+        this.statusCode = response.statusCode();
+        this.timeToFirstByte = response.timeToFirstByteNanos();
+        this.bytesReceived = response.bytesReceived();
+
+        return response;
+    }
+
+    void decodeStarted() {
+        this.decodeStart = System.nanoTime();
+    }
+
+    void decodeFinished() {
+        this.decodeNanos = System.nanoTime() - this.decodeStart;
+    }
+
+    /**
+     * Reports the call once its stream has been read and closed. When the transport could not tell the body size,
+     * the bytes read from the stream are counted instead
+     */
+    InputStream trackStream(final InputStream inputStream) {
+        this.decodeStarted();
+
+        final boolean counting = this.bytesReceived < 0;
+        if (counting) this.bytesReceived = 0;
+
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                final int read = super.read();
+                if (counting && read != -1) RequestTrace.this.bytesReceived++;
+                return read;
+            }
+
+            @Override
+            public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                final int read = super.read(buffer, offset, length);
+                if (counting && read > 0) RequestTrace.this.bytesReceived += read;
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    RequestTrace.this.decodeFinished();
+                    RequestTrace.this.finish(null, null);
+                }
+            }
+        };
+    }
+
+    void finish(final Object ignored, final Throwable throwable) {
+        if (!this.finished.compareAndSet(false, true)) return;
+
+        final Throwable failure = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        int code = this.statusCode;
+        if (failure instanceof final TailscaleException tailscaleException && tailscaleException.getStatusCode() != -1) {
+            code = tailscaleException.getStatusCode();
+        }
+
+        final RequestMetrics metrics = new RequestMetrics(
+                this.endpoint,
+                this.request.method(),
+                this.request.uri(),
+                code,
+                this.request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L),
+                Math.max(0, this.bytesReceived),
+                this.timeToFirstByte,
+                System.nanoTime() - this.start,
+                this.decodeNanos,
+                Math.max(0, this.attempts - 1),
+                failure);
+
+        for (final ClientListener listener : this.listeners) {
+            try {
+                listener.onRequestEnd(metrics);
+            } catch (final RuntimeException ignoredException) {
+            }
+        }
+    }
+}
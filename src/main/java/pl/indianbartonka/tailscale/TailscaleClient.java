@@ -1,43 +1,281 @@
 package pl.indianbartonka.tailscale;
 
 import com.google.gson.Gson;
-import java.net.http.HttpClient;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import org.jetbrains.annotations.Nullable;
+import pl.indianbartonka.tailscale.circuit.CircuitBreaker;
+import pl.indianbartonka.tailscale.circuit.CircuitBreakerConfig;
+import pl.indianbartonka.tailscale.circuit.CircuitBreakers;
 import pl.indianbartonka.tailscale.data.response.ErrorMessage;
 import pl.indianbartonka.tailscale.exception.TailscaleException;
+import pl.indianbartonka.tailscale.hedge.HedgePolicy;
+import pl.indianbartonka.tailscale.hedge.HedgeStats;
+import pl.indianbartonka.tailscale.hedge.Hedger;
+import pl.indianbartonka.tailscale.json.TailscaleTypeAdapterFactory;
+import pl.indianbartonka.tailscale.metrics.ClientListener;
+import pl.indianbartonka.tailscale.metrics.MetricsRecorder;
+import pl.indianbartonka.tailscale.scheduler.RequestScheduler;
+import pl.indianbartonka.tailscale.scheduler.RetryPolicy;
+import pl.indianbartonka.tailscale.transport.HttpClientTransport;
+import pl.indianbartonka.tailscale.transport.TailscaleTransport;
+import pl.indianbartonka.tailscale.transport.TransportResponse;
 import pl.indianbartonka.util.GsonUtil;
 import pl.indianbartonka.util.http.HttpStatusCode;
 
 public class TailscaleClient {
 
+    /**
+     * Characters of a body which is not the JSON error of the API kept in the exception message
+     */
+    private static final int MAX_ERROR_BODY_LENGTH = 200;
+
     private final String organizationName;
     private final String token;
+    private final String authorization;
     private final DeviceClient deviceClient;
     private final KeyClient keyClient;
     private final DNSClient dnsClient;
+    private TailscaleTransport transport;
+    private volatile Duration requestTimeout;
+    private volatile boolean compression;
     private String baseUrl;
     private Gson gson;
+    private volatile EndpointUris endpointUris;
+    private final Map<Object, byte[]> constantBodies;
+    private final List<ClientListener> listeners;
+    private RequestScheduler requestScheduler;
+    private volatile CircuitBreakers circuitBreakers;
+    private volatile Hedger hedger;
 
     public TailscaleClient(final String organizationName, final String token) {
+        this(organizationName, token, new HttpClientTransport(), TailscaleTypeAdapterFactory.register(GsonUtil.getGson()));
+    }
+
+    /**
+     * Creates a client on a transport and {@link Gson} shared with other clients, see {@link TailscaleClientManager}
+     */
+    public TailscaleClient(final String organizationName, final String token, final TailscaleTransport transport, final Gson gson) {
         this.organizationName = organizationName;
         this.token = token;
+        this.authorization = "Bearer " + token;
         this.baseUrl = "https://api.tailscale.com/api/v2";
-        this.gson = GsonUtil.getGson();
+        this.endpointUris = new EndpointUris(this.baseUrl, organizationName);
+        this.constantBodies = new ConcurrentHashMap<>();
+        this.gson = gson;
+        this.requestTimeout = HttpClientTransport.DEFAULT_REQUEST_TIMEOUT;
+        this.compression = true;
+        this.setTransport(transport);
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.requestScheduler = new RequestScheduler(20, 40, RetryPolicy.DEFAULT);
+        this.circuitBreakers = new CircuitBreakers(CircuitBreakerConfig.DEFAULT);
         this.deviceClient = new DeviceClient(this);
         this.keyClient = new KeyClient(this);
-        this.dnsClient = new DNSClient();
+        this.dnsClient = new DNSClient(this);
     }
 
+    /**
+     * Always throws a {@link TailscaleException} with the status code, also when the body is not the JSON error of the API,
+     * like the HTML or plain text page of a proxy answering {@code 502}
+     */
     public void handleError(final int code, final String body) {
-        final String error;
-        final ErrorMessage errorMessage = this.getGson().fromJson(body, ErrorMessage.class);
+        ErrorMessage errorMessage;
+        try {
+            errorMessage = this.getGson().fromJson(body, ErrorMessage.class);
+        } catch (final JsonParseException | IllegalStateException exception) {
+            errorMessage = null;
+        }
+
+        if (errorMessage != null && errorMessage.message() != null) throw new TailscaleException(errorMessage.message(), code);
+
+        final String status = HttpStatusCode.getByCode(code).name();
+        final String text = body == null ? "" : body.strip();
+        if (text.isEmpty()) throw new TailscaleException(status, code);
+
+        throw new TailscaleException(status + ": " + (text.length() > MAX_ERROR_BODY_LENGTH ? text.substring(0, MAX_ERROR_BODY_LENGTH) + "..." : text), code);
+    }
+
+    /**
+     * Creates a request builder for the given url with the authorization header already set
+     */
+    public HttpRequest.Builder newRequest(final String url) {
+        return this.newRequest(URI.create(url));
+    }
+
+    /**
+     * Like {@link #newRequest(String)} for an endpoint without parameters, the uri comes from the precomputed templates
+     */
+    public HttpRequest.Builder newRequest(final ApiEndpoint endpoint) {
+        return this.newRequest(this.endpointUris.resolve(endpoint));
+    }
+
+    /**
+     * @param parameter value of the only template parameter, for example the device id
+     */
+    public HttpRequest.Builder newRequest(final ApiEndpoint endpoint, final String parameter) {
+        return this.newRequest(this.endpointUris.resolve(endpoint, parameter));
+    }
+
+    public HttpRequest.Builder newRequest(final ApiEndpoint endpoint, final String first, final String second) {
+        return this.newRequest(this.endpointUris.resolve(endpoint, first, second));
+    }
+
+    private HttpRequest.Builder newRequest(final URI uri) {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(this.requestTimeout)
+                .header("Authorization", this.authorization);
+
+        if (this.compression) builder.header("Accept-Encoding", "gzip");
+        return builder;
+    }
+
+    /**
+     * Serializes the given object with the client {@link Gson} as a JSON request body
+     */
+    public HttpRequest.BodyPublisher jsonBody(final Object body) {
+        return HttpRequest.BodyPublishers.ofByteArray(JsonBodyWriter.toJson(this.gson, body));
+    }
+
+    /**
+     * Like {@link #jsonBody(Object)}, but keeps the serialized form for reuse.
+     * Only meant for bodies out of a small fixed set, like {@code new AuthorizedRequest(true)}
+     */
+    public HttpRequest.BodyPublisher constantJsonBody(final Object body) {
+        return HttpRequest.BodyPublishers.ofByteArray(this.constantBodies.computeIfAbsent(body, key -> JsonBodyWriter.toJson(this.gson, key)));
+    }
+
+    /**
+     * Sends the request through the {@link RequestScheduler} and the {@link TailscaleTransport} without blocking the calling thread.
+     * The body is decoded straight from the response stream, unsuccessful responses complete the future exceptionally with {@link TailscaleException}.
+     * While the circuit breaker of the endpoint group is open the future fails at once with {@link pl.indianbartonka.tailscale.exception.CircuitOpenException}
+     */
+    public <T> CompletableFuture<T> sendAsync(final ApiEndpoint endpoint, final HttpRequest request, final Function<Reader, T> bodyMapper) {
+        final CompletableFuture<T> rejected = this.checkCircuit(endpoint);
+        if (rejected != null) return rejected;
+
+        final RequestTrace trace = new RequestTrace(endpoint, request, this.listeners);
+
+        return this.requestScheduler.schedule(request, () -> this.attempt(endpoint, trace, request, false))
+                .thenApply(response -> {
+                    try (final Reader reader = new InputStreamReader(response.body(), StandardCharsets.UTF_8)) {
+                        if (!response.isSuccessful()) this.handleError(response.statusCode(), readBody(reader));
+
+                        trace.decodeStarted();
+                        final T result = bodyMapper.apply(reader);
+                        trace.decodeFinished();
+
+                        return result;
+                    } catch (final IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                })
+                .whenComplete(trace::finish);
+    }
+
+    /**
+     * Like {@link #sendAsync(ApiEndpoint, HttpRequest, Function)}, but completes as soon as the headers arrive and hands over
+     * the body stream of a successful response so it can be decoded without buffering. The caller has to close the stream
+     */
+    public CompletableFuture<InputStream> sendStreamAsync(final ApiEndpoint endpoint, final HttpRequest request) {
+        final CompletableFuture<InputStream> rejected = this.checkCircuit(endpoint);
+        if (rejected != null) return rejected;
+
+        final RequestTrace trace = new RequestTrace(endpoint, request, this.listeners);
+
+        return this.requestScheduler.schedule(request, () -> this.attempt(endpoint, trace, request, true))
+                .thenApply(response -> {
+                    if (!response.isSuccessful()) {
+                        try (final Reader reader = new InputStreamReader(response.body(), StandardCharsets.UTF_8)) {
+                            this.handleError(response.statusCode(), readBody(reader));
+                        } catch (final IOException exception) {
+                            throw new TailscaleException(String.valueOf(exception.getMessage()), exception);
+                        }
+                    }
+
+                    return trace.trackStream(response.body());
+                })
+                .whenComplete((inputStream, throwable) -> {
+                    if (throwable != null) trace.finish(null, throwable);
+                });
+    }
+
+    /**
+     * @return a failed future when the circuit breaker of the endpoint group is open, so the request doesn't even wait for the scheduler,
+     * {@code null} otherwise
+     */
+    private <T> CompletableFuture<T> checkCircuit(final ApiEndpoint endpoint) {
+        final CircuitBreakers breakers = this.circuitBreakers;
+        if (breakers == null) return null;
+
+        try {
+            breakers.get(endpoint).checkPermitted();
+            return null;
+        } catch (final TailscaleException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+    }
+
+    private CompletableFuture<TransportResponse> attempt(final ApiEndpoint endpoint, final RequestTrace trace, final HttpRequest request, final boolean streaming) {
+        final CircuitBreakers breakers = this.circuitBreakers;
+        final CircuitBreaker.Permit permit = breakers == null ? null : breakers.get(endpoint).acquire();
+
+        final Hedger currentHedger = this.hedger;
+
+        trace.attemptStarted();
 
-        if (errorMessage != null) {
-            error = errorMessage.message();
-        } else {
-            error = HttpStatusCode.getByCode(code).name();
+        final CompletableFuture<TransportResponse> response;
+        try {
+            response = currentHedger != null && currentHedger.isHedged(endpoint)
+                    ? currentHedger.send(endpoint, () -> this.transport.send(request, streaming))
+                    : this.transport.send(request, streaming);
+        } catch (final RuntimeException exception) {
+            if (permit != null) permit.complete(-1, exception);
+            throw exception;
         }
 
-        throw new TailscaleException(error);
+        if (permit != null) response.whenComplete((transportResponse, throwable) -> permit.complete(transportResponse == null ? -1 : transportResponse.statusCode(), throwable));
+
+        return response.thenApply(trace::received);
+    }
+
+    private static String readBody(final Reader reader) throws IOException {
+        final StringWriter writer = new StringWriter();
+        reader.transferTo(writer);
+
+        return writer.toString();
+    }
+
+    /**
+     * Waits for the result of one of the {@code *Async} calls, rethrowing its failure unwrapped
+     */
+    public static <T> T await(final CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (final CompletionException exception) {
+            final Throwable cause = exception.getCause();
+
+            if (cause instanceof final IOException ioException) throw ioException;
+            if (cause instanceof final RuntimeException runtimeException) throw runtimeException;
+            if (cause instanceof final Error error) throw error;
+
+            throw new IOException(cause);
+        }
     }
 
     public DeviceClient getDeviceClient() {
@@ -52,6 +290,102 @@ public class TailscaleClient {
         return this.dnsClient;
     }
 
+    public TailscaleTransport getTransport() {
+        return this.transport;
+    }
+
+    /**
+     * Replaces the transport used for all following requests, the previous one is not closed.
+     * The request timeout and compression of a {@link HttpClientTransport} are taken over
+     */
+    public void setTransport(final TailscaleTransport transport) {
+        this.transport = transport;
+
+        if (transport instanceof final HttpClientTransport httpClientTransport) {
+            this.requestTimeout = httpClientTransport.getRequestTimeout();
+            this.compression = httpClientTransport.isCompression();
+        }
+    }
+
+    public Duration getRequestTimeout() {
+        return this.requestTimeout;
+    }
+
+    /**
+     * @param requestTimeout how long following requests wait for the response headers
+     */
+    public void setRequestTimeout(final Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public boolean isCompression() {
+        return this.compression;
+    }
+
+    /**
+     * @param compression whether following requests ask for gzip compressed responses
+     */
+    public void setCompression(final boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Registers a listener called around every request, for example a {@link MetricsRecorder}
+     */
+    public void addListener(final ClientListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(final ClientListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    public RequestScheduler getRequestScheduler() {
+        return this.requestScheduler;
+    }
+
+    public void setRequestScheduler(final RequestScheduler requestScheduler) {
+        this.requestScheduler = requestScheduler;
+    }
+
+    /**
+     * @return breakers of the endpoint groups, {@code null} when they are turned off
+     */
+    public CircuitBreakers getCircuitBreakers() {
+        return this.circuitBreakers;
+    }
+
+    /**
+     * @param circuitBreakers breakers of the endpoint groups, {@code null} turns them off
+     */
+    public void setCircuitBreakers(@Nullable final CircuitBreakers circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    /**
+     * @return the hedging policy, {@code null} when reads are not hedged
+     */
+    public HedgePolicy getHedgePolicy() {
+        final Hedger currentHedger = this.hedger;
+        return currentHedger == null ? null : currentHedger.getPolicy();
+    }
+
+    /**
+     * Hedges the reads of the policy: a second request is sent when the first one is slower than usual, see {@link Hedger}.
+     * Off by default, {@code null} turns it off again. Setting a policy starts with fresh latencies and counters
+     */
+    public void setHedgePolicy(@Nullable final HedgePolicy hedgePolicy) {
+        this.hedger = hedgePolicy == null ? null : new Hedger(hedgePolicy);
+    }
+
+    /**
+     * @return how often hedging was used and won, {@code null} when it is off
+     */
+    public HedgeStats getHedgeStats() {
+        final Hedger currentHedger = this.hedger;
+        return currentHedger == null ? null : currentHedger.getStats();
+    }
+
     public String getOrganizationName() {
         return this.organizationName;
     }
@@ -66,13 +400,18 @@ public class TailscaleClient {
 
     public void setBaseUrl(final String baseUrl) {
         this.baseUrl = baseUrl;
+        this.endpointUris = new EndpointUris(baseUrl, this.organizationName);
     }
 
     public Gson getGson() {
         return this.gson;
     }
 
+    /**
+     * Use {@link TailscaleTypeAdapterFactory#register(Gson)} on a custom {@link Gson} to keep the reflection-free adapters
+     */
     public void setGson(final Gson gson) {
         this.gson = gson;
+        this.constantBodies.clear();
     }
 }
@@ -0,0 +1,118 @@
+package pl.indianbartonka.tailscale;
+
+import com.google.gson.Gson;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import pl.indianbartonka.tailscale.json.TailscaleTypeAdapterFactory;
+import pl.indianbartonka.tailscale.scheduler.RequestScheduler;
+import pl.indianbartonka.tailscale.transport.FairTransport;
+import pl.indianbartonka.tailscale.transport.HttpClientTransport;
+import pl.indianbartonka.tailscale.transport.TailscaleTransport;
+import pl.indianbartonka.tailscale.transport.TenantUsage;
+import pl.indianbartonka.util.GsonUtil;
+
+/**
+ * Hands out one {@link TailscaleClient} per tailnet, all of them on one shared transport (and so one connection pool
+ * and executor) and one {@link Gson}. The shared transport is divided between the tailnets by {@link FairTransport},
+ * so a large sync of one tailnet can't starve the others. Each tailnet keeps its own {@link RequestScheduler},
+ * because the API rate limits every tailnet on its own
+ */
+public class TailscaleClientManager implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    private final FairTransport transport;
+    private final Gson gson;
+    private final Map<String, TailscaleClient> clients;
+    private volatile String baseUrl;
+
+    public TailscaleClientManager() {
+        this(new HttpClientTransport(), TailscaleTypeAdapterFactory.register(GsonUtil.getGson()), DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param maxInFlight requests sent at once across all tailnets
+     */
+    public TailscaleClientManager(final TailscaleTransport transport, final Gson gson, final int maxInFlight) {
+        this.transport = new FairTransport(transport, maxInFlight);
+        this.gson = gson;
+        this.clients = new ConcurrentHashMap<>();
+    }
+
+    public TailscaleClient getClient(final String organizationName, final String token) {
+        return this.getClient(organizationName, token, 1);
+    }
+
+    /**
+     * Returns the client of the tailnet, creating it on first use or when the token changed
+     *
+     * @param weight share of the transport when several tailnets are waiting, for example higher for latency sensitive tailnets
+     */
+    public TailscaleClient getClient(final String organizationName, final String token, final int weight) {
+        return this.clients.compute(organizationName, (name, client) -> {
+            final TailscaleTransport tenantTransport = this.transport.tenant(name, weight);
+            if (client != null && client.getToken().equals(token)) return client;
+
+            final TailscaleClient created = new TailscaleClient(name, token, tenantTransport, this.gson);
+            if (this.baseUrl != null) created.setBaseUrl(this.baseUrl);
+            if (this.transport.getDelegate() instanceof final HttpClientTransport httpClientTransport) {
+                created.setRequestTimeout(httpClientTransport.getRequestTimeout());
+                created.setCompression(httpClientTransport.isCompression());
+            }
+            return created;
+        });
+    }
+
+    public void removeClient(final String organizationName) {
+        this.clients.remove(organizationName);
+        this.transport.removeTenant(organizationName);
+    }
+
+    public Collection<TailscaleClient> getClients() {
+        return new ArrayList<>(this.clients.values());
+    }
+
+    public List<TenantStats> getStats() {
+        final List<TenantStats> stats = new ArrayList<>(this.clients.size());
+
+        for (final TailscaleClient client : this.clients.values()) {
+            final TenantUsage usage = this.transport.getUsage(client.getOrganizationName());
+            if (usage == null) continue;
+
+            final RequestScheduler scheduler = client.getRequestScheduler();
+            stats.add(new TenantStats(client.getOrganizationName(), usage.weight(), usage.inFlight(), usage.queued(),
+                    usage.completed(), usage.rateLimited(), scheduler.getQueueDepth(), scheduler.getAvailablePermits(),
+                    scheduler.getThrottleRemaining()));
+        }
+
+        return stats;
+    }
+
+    /**
+     * Points every client, also the ones created later, at another API url
+     */
+    public void setBaseUrl(final String baseUrl) {
+        this.baseUrl = baseUrl;
+        for (final TailscaleClient client : this.clients.values()) client.setBaseUrl(baseUrl);
+    }
+
+    public FairTransport getTransport() {
+        return this.transport;
+    }
+
+    public Gson getGson() {
+        return this.gson;
+    }
+
+    /**
+     * Closes the shared transport, the clients can't be used afterwards
+     */
+    @Override
+    public void close() {
+        this.clients.clear();
+        this.transport.close();
+    }
+}
@@ -0,0 +1,26 @@
+package pl.indianbartonka.tailscale;
+
+import java.time.Duration;
+
+/**
+ * Load of one tailnet of a {@link TailscaleClientManager}
+ *
+ * @param inFlight          requests sent and not answered yet
+ * @param queued            requests waiting for a slot of the shared transport
+ * @param rateLimited       responses with {@code 429}
+ * @param pacedRequests     requests waiting in the {@code RequestScheduler} of the tailnet for a permit or a retry
+ * @param availablePermits  permits left in the token bucket of the tailnet, negative when requests are waiting
+ * @param throttleRemaining how long the server asked this tailnet to pause
+ */
+public record TenantStats(
+        String organizationName,
+        int weight,
+        int inFlight,
+        int queued,
+        long completed,
+        long rateLimited,
+        int pacedRequests,
+        double availablePermits,
+        Duration throttleRemaining
+) {
+}
@@ -0,0 +1,58 @@
+package pl.indianbartonka.tailscale.bulk;
+
+import java.util.Collection;
+import java.util.Map;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.data.request.RoutesRequest;
+import pl.indianbartonka.tailscale.data.response.RoutesResponse;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+
+/**
+ * Bulk variants of the {@link DeviceClient} calls, see {@link DeviceClient#bulk()}
+ */
+public class BulkDeviceOperations {
+
+    private final DeviceClient deviceClient;
+    private final int maxConcurrency;
+
+    public BulkDeviceOperations(final DeviceClient deviceClient, final int maxConcurrency) {
+        this.deviceClient = deviceClient;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public BulkResult<Device> getDevices(final Collection<String> deviceIds) {
+        return new BulkOperation<>(this.maxConcurrency, this.deviceClient::getDeviceAsync).run(deviceIds);
+    }
+
+    public BulkResult<Boolean> authorize(final Collection<String> deviceIds) {
+        return this.setAuthorized(deviceIds, true);
+    }
+
+    public BulkResult<Boolean> setAuthorized(final Collection<String> deviceIds, final boolean authorized) {
+        return new BulkOperation<>(this.maxConcurrency, deviceId -> this.deviceClient.setAuthorizedAsync(deviceId, authorized)).run(deviceIds);
+    }
+
+    public BulkResult<Boolean> setTags(final Collection<String> deviceIds, final Map<String, String> tags) {
+        return new BulkOperation<>(this.maxConcurrency, deviceId -> this.deviceClient.setTagsAsync(deviceId, tags)).run(deviceIds);
+    }
+
+    public BulkResult<Boolean> setKeyExpiryDisabled(final Collection<String> deviceIds, final boolean keyExpiryDisabled) {
+        return new BulkOperation<>(this.maxConcurrency, deviceId -> this.deviceClient.setKeyExpiryDisabledAsync(deviceId, keyExpiryDisabled)).run(deviceIds);
+    }
+
+    public BulkResult<RoutesResponse> setRoutes(final Collection<String> deviceIds, final RoutesRequest routesRequest) {
+        return new BulkOperation<>(this.maxConcurrency, deviceId -> this.deviceClient.setRoutesAsync(deviceId, routesRequest)).run(deviceIds);
+    }
+
+    public BulkResult<Boolean> setExpire(final Collection<String> deviceIds) {
+        return new BulkOperation<>(this.maxConcurrency, this.deviceClient::setExpireAsync).run(deviceIds);
+    }
+
+    public BulkResult<Boolean> deleteDevices(final Collection<String> deviceIds) {
+        return new BulkOperation<>(this.maxConcurrency, this.deviceClient::deleteDeviceAsync).run(deviceIds);
+    }
+
+    public int getMaxConcurrency() {
+        return this.maxConcurrency;
+    }
+}
@@ -0,0 +1,117 @@
+package pl.indianbartonka.tailscale.bulk;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+
+/**
+ * Runs one asynchronous call per id with at most {@code maxConcurrency} calls in flight.
+ * The calls don't park a thread each, so the limit is the only thing bounding throughput
+ */
+public class BulkOperation<T> {
+
+    private final int maxConcurrency;
+    private final Function<String, CompletableFuture<T>> operation;
+
+    public BulkOperation(final int maxConcurrency, final Function<String, CompletableFuture<T>> operation) {
+        if (maxConcurrency < 1) throw new IllegalArgumentException("maxConcurrency must be at least 1");
+
+        this.maxConcurrency = maxConcurrency;
+        this.operation = operation;
+    }
+
+    public BulkResult<T> run(final Collection<String> ids) {
+        return this.runAsync(ids).join();
+    }
+
+    /**
+     * Starts the first {@code maxConcurrency} calls and launches the next id whenever one completes,
+     * so the caller is never blocked waiting for a free slot
+     */
+    public CompletableFuture<BulkResult<T>> runAsync(final Collection<String> ids) {
+        return new Run(new ArrayList<>(ids).iterator()).start();
+    }
+
+    public int getMaxConcurrency() {
+        return this.maxConcurrency;
+    }
+
+    private final class Run {
+
+        private final Iterator<String> ids;
+        private final Map<String, T> successes = Collections.synchronizedMap(new LinkedHashMap<>());
+        private final Map<String, TailscaleException> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+        private final CompletableFuture<BulkResult<T>> result = new CompletableFuture<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger pumping = new AtomicInteger();
+
+        private Run(final Iterator<String> ids) {
+            this.ids = ids;
+        }
+
+        private CompletableFuture<BulkResult<T>> start() {
+            this.pump();
+            return this.result;
+        }
+
+        /**
+         * Only one thread launches at a time, a call that completes synchronously just asks the running loop
+         * for another pass instead of recursing into it
+         */
+        private void pump() {
+            if (this.pumping.getAndIncrement() != 0) return;
+
+            int missed = 1;
+            do {
+                while (this.inFlight.get() < BulkOperation.this.maxConcurrency && this.ids.hasNext()) {
+                    this.inFlight.incrementAndGet();
+                    this.launch(this.ids.next());
+                }
+
+                if (!this.ids.hasNext() && this.inFlight.get() == 0 && !this.result.isDone()) {
+                    this.result.complete(new BulkResult<>(
+                            Collections.unmodifiableMap(new LinkedHashMap<>(this.successes)),
+                            Collections.unmodifiableMap(new LinkedHashMap<>(this.failures))));
+                }
+
+                missed = this.pumping.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void launch(final String id) {
+            CompletableFuture<T> future;
+            try {
+                future = BulkOperation.this.operation.apply(id);
+            } catch (final RuntimeException exception) {
+                future = CompletableFuture.failedFuture(exception);
+            }
+
+            future.whenComplete((value, throwable) -> {
+                if (throwable == null) {
+                    this.successes.put(id, value);
+                } else {
+                    this.failures.put(id, toTailscaleException(throwable));
+                }
+
+                this.inFlight.decrementAndGet();
+                this.pump();
+            });
+        }
+    }
+
+    private static TailscaleException toTailscaleException(final Throwable throwable) {
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+
+        if (cause instanceof final TailscaleException tailscaleException) return tailscaleException;
+
+        return new TailscaleException(String.valueOf(cause.getMessage()), cause);
+    }
+}
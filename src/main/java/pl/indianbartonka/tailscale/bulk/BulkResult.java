@@ -0,0 +1,18 @@
+package pl.indianbartonka.tailscale.bulk;
+
+import java.util.Map;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+
+/**
+ * Per-id report of a bulk operation, successes and failures are kept apart
+ */
+public record BulkResult<T>(Map<String, T> successes, Map<String, TailscaleException> failures) {
+
+    public boolean isSuccessful() {
+        return this.failures.isEmpty();
+    }
+
+    public int size() {
+        return this.successes.size() + this.failures.size();
+    }
+}
@@ -0,0 +1,9 @@
+package pl.indianbartonka.tailscale.cache;
+
+public record CacheStats(long hits, long misses, long loads, long evictions, int size) {
+
+    public double hitRate() {
+        final long requests = this.hits + this.misses;
+        return requests == 0 ? 0 : (double) this.hits / requests;
+    }
+}
@@ -0,0 +1,271 @@
+package pl.indianbartonka.tailscale.cache;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.data.request.AttributesRequest;
+import pl.indianbartonka.tailscale.data.request.RoutesRequest;
+import pl.indianbartonka.tailscale.data.response.RoutesResponse;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+
+/**
+ * Caches {@link DeviceClient#getDevice(String)} and {@link DeviceClient#getDevices()} for a fixed time.
+ * Devices are found by their id and by their node id, like the API does.
+ * Concurrent misses for the same device share one request, writes made through this client invalidate the cached state
+ */
+public class CachedDeviceClient {
+
+    private final DeviceClient deviceClient;
+    private final long ttlNanos;
+    private final int maxSize;
+    private final Map<String, Entry> entries;
+    private final Map<String, String> aliases;
+    private final Map<String, CompletableFuture<Device>> loading;
+    private final AtomicReference<DevicesEntry> devices;
+    private final AtomicReference<CompletableFuture<List<Device>>> devicesLoading;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder loads;
+    private final LongAdder evictions;
+
+    public CachedDeviceClient(final DeviceClient deviceClient, final Duration ttl, final int maxSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("maxSize must be at least 1");
+
+        this.deviceClient = deviceClient;
+        this.ttlNanos = ttl.toNanos();
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                if (this.size() <= CachedDeviceClient.this.maxSize) return false;
+
+                CachedDeviceClient.this.evictions.increment();
+                CachedDeviceClient.this.aliases.remove(eldest.getValue().device().nodeId(), eldest.getKey());
+                return true;
+            }
+        };
+        this.aliases = new HashMap<>();
+        this.loading = new ConcurrentHashMap<>();
+        this.devices = new AtomicReference<>();
+        this.devicesLoading = new AtomicReference<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.loads = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    public Device getDevice(final String deviceId) throws IOException {
+        return TailscaleClient.await(this.getDeviceAsync(deviceId));
+    }
+
+    public CompletableFuture<Device> getDeviceAsync(final String deviceId) {
+        final Device cached = this.getIfPresent(deviceId);
+
+        if (cached != null) {
+            this.hits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        this.misses.increment();
+
+        final CompletableFuture<Device> promise = new CompletableFuture<>();
+        final CompletableFuture<Device> existing = this.loading.putIfAbsent(deviceId, promise);
+        if (existing != null) return existing;
+
+        this.loads.increment();
+        this.deviceClient.getDeviceAsync(deviceId).whenComplete((device, throwable) -> {
+            // An invalidation during the load removes the promise, the result is stale then and isn't stored
+            final boolean current = this.loading.remove(deviceId, promise);
+            if (throwable == null && current) this.put(device, System.nanoTime());
+
+            if (throwable == null) {
+                promise.complete(device);
+            } else {
+                promise.completeExceptionally(throwable);
+            }
+        });
+
+        return promise;
+    }
+
+    public List<Device> getDevices() throws IOException {
+        return TailscaleClient.await(this.getDevicesAsync());
+    }
+
+    public CompletableFuture<List<Device>> getDevicesAsync() {
+        final DevicesEntry cached = this.devices.get();
+
+        if (cached != null && cached.expiresAt() - System.nanoTime() > 0) {
+            this.hits.increment();
+            return CompletableFuture.completedFuture(cached.devices());
+        }
+
+        this.misses.increment();
+
+        final CompletableFuture<List<Device>> promise = new CompletableFuture<>();
+        if (!this.devicesLoading.compareAndSet(null, promise)) {
+            final CompletableFuture<List<Device>> existing = this.devicesLoading.get();
+            if (existing != null) return existing;
+            return this.getDevicesAsync();
+        }
+
+        this.loads.increment();
+        this.deviceClient.getDevicesAsync().whenComplete((deviceList, throwable) -> {
+            final boolean current = this.devicesLoading.compareAndSet(promise, null);
+            if (throwable == null && current && deviceList != null) {
+                final long now = System.nanoTime();
+
+                this.devices.set(new DevicesEntry(deviceList, now + this.ttlNanos));
+                for (final Device device : deviceList) this.put(device, now);
+            }
+
+            if (throwable == null) {
+                promise.complete(deviceList);
+            } else {
+                promise.completeExceptionally(throwable);
+            }
+        });
+
+        return promise;
+    }
+
+    public boolean deleteDevice(final String deviceId) throws IOException {
+        return this.write(deviceId, this.deviceClient.deleteDeviceAsync(deviceId));
+    }
+
+    public boolean setExpire(final String deviceId) throws IOException {
+        return this.write(deviceId, this.deviceClient.setExpireAsync(deviceId));
+    }
+
+    public RoutesResponse setRoutes(final String deviceId, final RoutesRequest routesRequest) throws IOException {
+        return this.write(deviceId, this.deviceClient.setRoutesAsync(deviceId, routesRequest));
+    }
+
+    public boolean setAuthorized(final String deviceId, final boolean authorized) throws IOException {
+        return this.write(deviceId, this.deviceClient.setAuthorizedAsync(deviceId, authorized));
+    }
+
+    public boolean setName(final String deviceId, final String name) throws IOException {
+        return this.write(deviceId, this.deviceClient.setNameAsync(deviceId, name));
+    }
+
+    public boolean setTags(final String deviceId, final Map<String, String> tags) throws IOException {
+        return this.write(deviceId, this.deviceClient.setTagsAsync(deviceId, tags));
+    }
+
+    public boolean setKeyExpiryDisabled(final String deviceId, final boolean keyExpiryDisabled) throws IOException {
+        return this.write(deviceId, this.deviceClient.setKeyExpiryDisabledAsync(deviceId, keyExpiryDisabled));
+    }
+
+    public boolean setIpV4(final String deviceId, final String ipV4) throws IOException {
+        return this.write(deviceId, this.deviceClient.setIpV4Async(deviceId, ipV4));
+    }
+
+    public boolean setAttributes(final String deviceId, final String attributeKey, final AttributesRequest attributesRequest) throws IOException {
+        return this.write(deviceId, this.deviceClient.setAttributesAsync(deviceId, attributeKey, attributesRequest));
+    }
+
+    public boolean deleteAttributes(final String deviceId, final String attributeKey) throws IOException {
+        return this.write(deviceId, this.deviceClient.deleteAttributesAsync(deviceId, attributeKey));
+    }
+
+    /**
+     * Invalidates the device even when the write failed, the server may have applied part of it
+     */
+    private <T> T write(final String deviceId, final CompletableFuture<T> future) throws IOException {
+        this.invalidate(deviceId);
+
+        return TailscaleClient.await(future.whenComplete((result, throwable) -> this.invalidate(deviceId)));
+    }
+
+    /**
+     * @param deviceId id or node id of the device, both are invalidated
+     */
+    public void invalidate(final String deviceId) {
+        this.loading.remove(deviceId);
+
+        synchronized (this.entries) {
+            final Entry entry = this.remove(this.aliases.getOrDefault(deviceId, deviceId));
+            if (entry != null) {
+                this.loading.remove(entry.device().id());
+                if (entry.device().nodeId() != null) this.loading.remove(entry.device().nodeId());
+            }
+        }
+
+        this.devicesLoading.set(null);
+        this.devices.set(null);
+    }
+
+    public void invalidateAll() {
+        this.loading.clear();
+
+        synchronized (this.entries) {
+            this.entries.clear();
+            this.aliases.clear();
+        }
+
+        this.devicesLoading.set(null);
+        this.devices.set(null);
+    }
+
+    public CacheStats getStats() {
+        final int size;
+        synchronized (this.entries) {
+            size = this.entries.size();
+        }
+
+        return new CacheStats(this.hits.sum(), this.misses.sum(), this.loads.sum(), this.evictions.sum(), size);
+    }
+
+    public DeviceClient getDeviceClient() {
+        return this.deviceClient;
+    }
+
+    private Device getIfPresent(final String deviceId) {
+        synchronized (this.entries) {
+            final String id = this.aliases.getOrDefault(deviceId, deviceId);
+            final Entry entry = this.entries.get(id);
+            if (entry == null) return null;
+
+            if (entry.expiresAt() - System.nanoTime() <= 0) {
+                this.remove(id);
+                return null;
+            }
+
+            return entry.device();
+        }
+    }
+
+    private void put(final Device device, final long loadedAt) {
+        if (device == null || device.id() == null) return;
+
+        synchronized (this.entries) {
+            this.entries.put(device.id(), new Entry(device, loadedAt + this.ttlNanos));
+            if (device.nodeId() != null && !device.nodeId().equals(device.id())) this.aliases.put(device.nodeId(), device.id());
+        }
+    }
+
+    /**
+     * Removes the entry together with the node id pointing at it, the caller holds the lock of the entries
+     */
+    private Entry remove(final String id) {
+        final Entry entry = this.entries.remove(id);
+        if (entry != null && entry.device().nodeId() != null) this.aliases.remove(entry.device().nodeId(), id);
+        return entry;
+    }
+
+    private record Entry(Device device, long expiresAt) {
+    }
+
+    private record DevicesEntry(List<Device> devices, long expiresAt) {
+    }
+}
@@ -0,0 +1,218 @@
+package pl.indianbartonka.tailscale.circuit;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import pl.indianbartonka.tailscale.EndpointGroup;
+import pl.indianbartonka.tailscale.exception.BulkheadFullException;
+import pl.indianbartonka.tailscale.exception.CircuitOpenException;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+
+/**
+ * Circuit breaker and bulkhead of one {@link EndpointGroup}. Looks at the outcome of the latest calls and opens
+ * when too many of them failed or were slow, open calls fail at once with {@link CircuitOpenException}.
+ * After {@link CircuitBreakerConfig#openDuration()} a few trial calls decide whether it closes again.
+ * Server errors and I/O failures count as failures, client errors and rate limiting don't
+ */
+public class CircuitBreaker {
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final EndpointGroup group;
+    private final CircuitBreakerConfig config;
+    private final byte[] window;
+    private int windowIndex;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+    private State state;
+    private long openedAt;
+    private int lastFailureStatus;
+    private int trialsStarted;
+    private int trialsSucceeded;
+    private int concurrentCalls;
+
+    public CircuitBreaker(final EndpointGroup group, final CircuitBreakerConfig config) {
+        this.group = group;
+        this.config = config;
+        this.window = new byte[config.windowSize()];
+        this.state = State.CLOSED;
+        this.lastFailureStatus = -1;
+    }
+
+    /**
+     * Fails fast when the breaker is open, without taking a call slot
+     */
+    public synchronized void checkPermitted() {
+        if (this.state == State.OPEN && this.openRemaining() > 0) throw this.openException();
+    }
+
+    /**
+     * Takes a call slot, which has to be given back with {@link Permit#complete(int, Throwable)}
+     *
+     * @throws CircuitOpenException   when the breaker is open or all trial calls are already running
+     * @throws BulkheadFullException  when the group has its maximum of calls in flight
+     */
+    public synchronized Permit acquire() {
+        if (this.state == State.OPEN) {
+            if (this.openRemaining() > 0) throw this.openException();
+
+            this.state = State.HALF_OPEN;
+            this.trialsStarted = 0;
+            this.trialsSucceeded = 0;
+        }
+
+        if (this.state == State.HALF_OPEN && this.trialsStarted >= this.config.halfOpenCalls()) throw this.openException();
+        if (this.concurrentCalls >= this.config.maxConcurrentCalls()) throw new BulkheadFullException(this.group, this.config.maxConcurrentCalls());
+
+        final boolean trial = this.state == State.HALF_OPEN;
+        if (trial) this.trialsStarted++;
+        this.concurrentCalls++;
+
+        return new Permit(trial);
+    }
+
+    private synchronized void record(final Permit permit, final boolean failed, final boolean slow, final int statusCode) {
+        this.concurrentCalls--;
+        if (failed) this.lastFailureStatus = statusCode;
+
+        if (permit.trial) {
+            // A trial started before the breaker opened again doesn't count anymore
+            if (this.state != State.HALF_OPEN) return;
+
+            if (failed || slow) {
+                this.open();
+            } else if (++this.trialsSucceeded >= this.config.halfOpenCalls()) {
+                this.close();
+            }
+            return;
+        }
+
+        if (this.state != State.CLOSED) return;
+
+        final byte previous = this.window[this.windowIndex];
+        if (this.recorded == this.window.length) {
+            if ((previous & FAILED) != 0) this.failures--;
+            if ((previous & SLOW) != 0) this.slowCalls--;
+        } else {
+            this.recorded++;
+        }
+
+        this.window[this.windowIndex] = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+        this.windowIndex = (this.windowIndex + 1) % this.window.length;
+        if (failed) this.failures++;
+        if (slow) this.slowCalls++;
+
+        if (this.recorded >= this.config.minimumCalls()
+                && (this.getFailureRate() >= this.config.failureRateThreshold() || this.getSlowCallRate() >= this.config.slowCallRateThreshold())) {
+            this.open();
+        }
+    }
+
+    private void open() {
+        this.state = State.OPEN;
+        this.openedAt = System.nanoTime();
+    }
+
+    private void close() {
+        this.state = State.CLOSED;
+        this.windowIndex = 0;
+        this.recorded = 0;
+        this.failures = 0;
+        this.slowCalls = 0;
+    }
+
+    private long openRemaining() {
+        return this.config.openDuration().toNanos() - (System.nanoTime() - this.openedAt);
+    }
+
+    private CircuitOpenException openException() {
+        return new CircuitOpenException(this.group, this.lastFailureStatus, Duration.ofNanos(Math.max(0, this.openRemaining())));
+    }
+
+    /**
+     * @return whether the outcome points at a degraded API rather than at a bad request
+     */
+    public static boolean isFailure(final Throwable throwable) {
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+
+        if (cause instanceof CircuitOpenException || cause instanceof BulkheadFullException) return true;
+        if (cause instanceof final TailscaleException tailscaleException) {
+            return tailscaleException.getStatusCode() >= 500 || tailscaleException.getStatusCode() == -1;
+        }
+
+        return cause instanceof IOException;
+    }
+
+    /**
+     * Moves an expired open breaker to half-open, so the state tells whether calls would be let through
+     */
+    public synchronized State getState() {
+        return this.state == State.OPEN && this.openRemaining() <= 0 ? State.HALF_OPEN : this.state;
+    }
+
+    public synchronized double getFailureRate() {
+        return this.recorded == 0 ? 0 : (double) this.failures / this.recorded;
+    }
+
+    public synchronized double getSlowCallRate() {
+        return this.recorded == 0 ? 0 : (double) this.slowCalls / this.recorded;
+    }
+
+    public synchronized int getConcurrentCalls() {
+        return this.concurrentCalls;
+    }
+
+    /**
+     * Closes the breaker and forgets the recorded calls
+     */
+    public synchronized void reset() {
+        this.close();
+    }
+
+    public EndpointGroup getGroup() {
+        return this.group;
+    }
+
+    public CircuitBreakerConfig getConfig() {
+        return this.config;
+    }
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * One call let through the breaker
+     */
+    public final class Permit {
+
+        private final boolean trial;
+        private final long start;
+        private boolean completed;
+
+        private Permit(final boolean trial) {
+            this.trial = trial;
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * @param statusCode status of the response, ignored when {@code failure} is set
+         * @param failure    exception of a call without a response, {@code null} otherwise
+         */
+        public void complete(final int statusCode, final Throwable failure) {
+            synchronized (CircuitBreaker.this) {
+                if (this.completed) return;
+                this.completed = true;
+            }
+
+            final boolean slow = System.nanoTime() - this.start > CircuitBreaker.this.config.slowCallDuration().toNanos();
+            final boolean failed = failure != null ? isFailure(failure) : statusCode >= 500;
+
+            CircuitBreaker.this.record(this, failed, slow, failure != null ? -1 : statusCode);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package pl.indianbartonka.tailscale.circuit;
+
+import java.time.Duration;
+
+/**
+ * @param failureRateThreshold  fraction of failed calls in the window, from 0 to 1, which opens the breaker
+ * @param slowCallRateThreshold fraction of calls slower than {@code slowCallDuration} which opens the breaker
+ * @param windowSize            how many of the latest calls are looked at
+ * @param minimumCalls          calls needed in the window before the rates are trusted
+ * @param openDuration          how long calls fail fast before trial calls are let through
+ * @param halfOpenCalls         trial calls which all have to succeed to close the breaker again
+ * @param maxConcurrentCalls    bulkhead, calls of the group in flight at the same time
+ */
+public record CircuitBreakerConfig(
+        double failureRateThreshold,
+        double slowCallRateThreshold,
+        Duration slowCallDuration,
+        int windowSize,
+        int minimumCalls,
+        Duration openDuration,
+        int halfOpenCalls,
+        int maxConcurrentCalls
+) {
+
+    public static final CircuitBreakerConfig DEFAULT = new CircuitBreakerConfig(0.5, 0.8, Duration.ofSeconds(5), 50, 10,
+            Duration.ofSeconds(30), 3, 128);
+
+    public CircuitBreakerConfig {
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1) throw new IllegalArgumentException("failureRateThreshold must be in (0, 1]");
+        if (slowCallRateThreshold <= 0 || slowCallRateThreshold > 1) throw new IllegalArgumentException("slowCallRateThreshold must be in (0, 1]");
+        if (windowSize < 1) throw new IllegalArgumentException("windowSize must be at least 1");
+        if (minimumCalls < 1 || minimumCalls > windowSize) throw new IllegalArgumentException("minimumCalls must be between 1 and windowSize");
+        if (halfOpenCalls < 1) throw new IllegalArgumentException("halfOpenCalls must be at least 1");
+        if (maxConcurrentCalls < 1) throw new IllegalArgumentException("maxConcurrentCalls must be at least 1");
+    }
+}
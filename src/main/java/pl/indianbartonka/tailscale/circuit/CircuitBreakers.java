@@ -0,0 +1,31 @@
+package pl.indianbartonka.tailscale.circuit;
+
+import java.util.EnumMap;
+import java.util.Map;
+import pl.indianbartonka.tailscale.ApiEndpoint;
+import pl.indianbartonka.tailscale.EndpointGroup;
+
+/**
+ * One {@link CircuitBreaker} per {@link EndpointGroup} of a client
+ */
+public class CircuitBreakers {
+
+    private final Map<EndpointGroup, CircuitBreaker> breakers;
+
+    public CircuitBreakers(final CircuitBreakerConfig config) {
+        this.breakers = new EnumMap<>(EndpointGroup.class);
+        for (final EndpointGroup group : EndpointGroup.values()) this.breakers.put(group, new CircuitBreaker(group, config));
+    }
+
+    public CircuitBreaker get(final EndpointGroup group) {
+        return this.breakers.get(group);
+    }
+
+    public CircuitBreaker get(final ApiEndpoint endpoint) {
+        return this.breakers.get(endpoint.getGroup());
+    }
+
+    public void resetAll() {
+        for (final CircuitBreaker breaker : this.breakers.values()) breaker.reset();
+    }
+}
@@ -0,0 +1,139 @@
+package pl.indianbartonka.tailscale.data;
+
+/**
+ * Allocation-free parsing and formatting of the IP addresses used by the API.
+ * IPv4 addresses are packed into an {@code int}, IPv6 addresses into two {@code long} halves
+ */
+public final class IpAddresses {
+
+    private IpAddresses() {
+    }
+
+    /**
+     * Parses dotted decimal into {@code target[index]}
+     *
+     * @return {@code false} when the address is malformed, {@code target} is left untouched then
+     */
+    public static boolean parseIpv4(final String address, final int[] target, final int index) {
+        int value = 0;
+        int octet = -1;
+        int octets = 0;
+
+        for (int i = 0; i <= address.length(); i++) {
+            final char character = i == address.length() ? '.' : address.charAt(i);
+
+            if (character == '.') {
+                if (octet == -1 || ++octets > 4) return false;
+                value = value << 8 | octet;
+                octet = -1;
+            } else if (character >= '0' && character <= '9') {
+                octet = (octet == -1 ? 0 : octet * 10) + (character - '0');
+                if (octet > 255) return false;
+            } else {
+                return false;
+            }
+        }
+
+        if (octets != 4) return false;
+
+        target[index] = value;
+        return true;
+    }
+
+    /**
+     * Parses the plain hex form with an optional {@code ::}, other notations are kept as strings
+     */
+    public static boolean parseIpv6(final String address, final long[] target) {
+        final int[] groups = new int[8];
+        final int gap = address.indexOf("::");
+
+        if (gap == -1) {
+            if (parseGroups(address, 0, address.length(), groups, 0) != 8) return false;
+        } else {
+            if (address.indexOf("::", gap + 1) != -1) return false;
+
+            final int[] tail = new int[8];
+            final int headCount = parseGroups(address, 0, gap, groups, 0);
+            final int tailCount = parseGroups(address, gap + 2, address.length(), tail, 0);
+            if (headCount < 0 || tailCount < 0 || headCount + tailCount > 7) return false;
+
+            System.arraycopy(tail, 0, groups, 8 - tailCount, tailCount);
+        }
+
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 4; i++) high = high << 16 | groups[i];
+        for (int i = 4; i < 8; i++) low = low << 16 | groups[i];
+
+        target[0] = high;
+        target[1] = low;
+        return true;
+    }
+
+    /**
+     * @return how many colon separated hex groups were parsed, {@code -1} when the range is malformed
+     */
+    private static int parseGroups(final String address, final int start, final int end, final int[] groups, final int offset) {
+        if (start == end) return 0;
+
+        int count = 0;
+        int group = 0;
+        int digits = 0;
+
+        for (int i = start; i <= end; i++) {
+            if (i == end || address.charAt(i) == ':') {
+                if (digits == 0 || offset + count == groups.length) return -1;
+                groups[offset + count++] = group;
+                group = 0;
+                digits = 0;
+                continue;
+            }
+
+            final int digit = Character.digit(address.charAt(i), 16);
+            if (digit == -1 || ++digits > 4) return -1;
+            group = group << 4 | digit;
+        }
+
+        return count;
+    }
+
+    public static String formatIpv4(final int address) {
+        return (address >>> 24) + "." + (address >>> 16 & 0xFF) + "." + (address >>> 8 & 0xFF) + "." + (address & 0xFF);
+    }
+
+    /**
+     * RFC 5952 form: lowercase, no leading zeros and the longest run of zero groups shortened to {@code ::}
+     */
+    public static String formatIpv6(final long high, final long low) {
+        final int[] groups = new int[8];
+        for (int i = 0; i < 4; i++) groups[i] = (int) (high >>> (48 - i * 16) & 0xFFFF);
+        for (int i = 0; i < 4; i++) groups[i + 4] = (int) (low >>> (48 - i * 16) & 0xFFFF);
+
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < 8; i++) {
+            int length = 0;
+            while (i + length < 8 && groups[i + length] == 0) length++;
+
+            if (length > bestLength) {
+                bestStart = i;
+                bestLength = length;
+            }
+            if (length > 0) i += length - 1;
+        }
+
+        final StringBuilder builder = new StringBuilder(39);
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                builder.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+
+            if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ':') builder.append(':');
+            builder.append(Integer.toHexString(groups[i]));
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,114 @@
+package pl.indianbartonka.tailscale.data;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Converts the ISO-8601 timestamps of the API into epoch milliseconds.
+ * The usual {@code 2024-01-01T10:00:00Z} form is parsed without allocating, anything else goes through {@link OffsetDateTime}
+ */
+public final class Timestamps {
+
+    /**
+     * Returned for missing or unparseable timestamps
+     */
+    public static final long UNKNOWN = Long.MIN_VALUE;
+
+    private Timestamps() {
+    }
+
+    public static long toEpochMillis(final String timestamp) {
+        if (timestamp == null || timestamp.isEmpty()) return UNKNOWN;
+
+        final long fast = parseFast(timestamp);
+        if (fast != UNKNOWN) return fast;
+
+        try {
+            return OffsetDateTime.parse(timestamp).toInstant().toEpochMilli();
+        } catch (final DateTimeParseException | ArithmeticException exception) {
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * {@code yyyy-MM-ddTHH:mm:ss}, optional fraction and {@code Z} or {@code ±HH:mm}
+     */
+    private static long parseFast(final String value) {
+        final int length = value.length();
+        if (length < 20 || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T'
+                || value.charAt(13) != ':' || value.charAt(16) != ':') return UNKNOWN;
+
+        final int year = digits(value, 0, 4);
+        final int month = digits(value, 5, 2);
+        final int day = digits(value, 8, 2);
+        final int hour = digits(value, 11, 2);
+        final int minute = digits(value, 14, 2);
+        final int second = digits(value, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59) return UNKNOWN;
+
+        int position = 19;
+        long millis = 0;
+        if (value.charAt(position) == '.') {
+            position++;
+            int scale = 100;
+            while (position < length) {
+                // Only ASCII digits, Character.isDigit also accepts the digits of other scripts
+                final char character = value.charAt(position);
+                if (character < '0' || character > '9') break;
+
+                millis += (character - '0') * scale;
+                scale /= 10;
+                position++;
+            }
+        }
+
+        final long offsetSeconds;
+        if (position == length - 1 && value.charAt(position) == 'Z') {
+            offsetSeconds = 0;
+        } else if (position == length - 6 && value.charAt(position + 3) == ':'
+                && (value.charAt(position) == '+' || value.charAt(position) == '-')) {
+            final int offsetHours = digits(value, position + 1, 2);
+            final int offsetMinutes = digits(value, position + 4, 2);
+            if (offsetHours < 0 || offsetMinutes < 0) return UNKNOWN;
+
+            final long offset = offsetHours * 3600L + offsetMinutes * 60L;
+            offsetSeconds = value.charAt(position) == '-' ? -offset : offset;
+        } else {
+            return UNKNOWN;
+        }
+
+        final long seconds = epochDay(year, month, day) * 86_400L + hour * 3600L + minute * 60L + second - offsetSeconds;
+        return seconds * 1000 + millis;
+    }
+
+    private static int digits(final String value, final int start, final int count) {
+        int result = 0;
+
+        for (int i = start; i < start + count; i++) {
+            final char character = value.charAt(i);
+            if (character < '0' || character > '9') return -1;
+            result = result * 10 + (character - '0');
+        }
+
+        return result;
+    }
+
+    private static int daysInMonth(final int year, final int month) {
+        if (month == 2) return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * Days since 1970-01-01 in the proleptic Gregorian calendar
+     */
+    private static long epochDay(final int year, final int month, final int day) {
+        final long adjustedYear = month <= 2 ? year - 1 : year;
+        final long era = Math.floorDiv(adjustedYear, 400);
+        final long yearOfEra = adjustedYear - era * 400;
+        final long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146_097 + dayOfEra - 719_468;
+    }
+}
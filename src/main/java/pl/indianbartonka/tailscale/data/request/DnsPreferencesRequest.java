@@ -0,0 +1,4 @@
+package pl.indianbartonka.tailscale.data.request;
+
+public record DnsPreferencesRequest(boolean magicDNS) {
+}
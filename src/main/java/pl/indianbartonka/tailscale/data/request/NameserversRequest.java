@@ -0,0 +1,6 @@
+package pl.indianbartonka.tailscale.data.request;
+
+import java.util.List;
+
+public record NameserversRequest(List<String> dns) {
+}
@@ -0,0 +1,10 @@
+package pl.indianbartonka.tailscale.data.request;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @param domains nameservers per domain, in a {@code PATCH} a {@code null} value removes the domain
+ */
+public record SplitDnsRequest(Map<String, List<String>> domains) {
+}
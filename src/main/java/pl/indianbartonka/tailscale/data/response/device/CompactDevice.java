@@ -0,0 +1,310 @@
+package pl.indianbartonka.tailscale.data.response.device;
+
+import com.google.gson.stream.JsonReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import pl.indianbartonka.tailscale.data.IpAddresses;
+import pl.indianbartonka.tailscale.data.Timestamps;
+import pl.indianbartonka.tailscale.json.DeviceTypeAdapter;
+
+/**
+ * Memory-compact variant of {@link Device} for keeping large inventories resident.
+ * Addresses are packed into numbers and {@code clientConnectivity} and {@code postureIdentity} are kept
+ * as raw JSON until first read. Decoded by {@code DeviceClient#getCompactDevices()}, which also shares
+ * equal strings and lists between devices
+ */
+public final class CompactDevice {
+
+    private static final int AUTHORIZED = 1;
+    private static final int BLOCKS_INCOMING_CONNECTIONS = 1 << 1;
+    private static final int EXTERNAL = 1 << 2;
+    private static final int KEY_EXPIRY_DISABLED = 1 << 3;
+    private static final int UPDATE_AVAILABLE = 1 << 4;
+
+    private static final int[] NO_IPV4 = new int[0];
+    private static final long[] NO_IPV6 = new long[0];
+
+    private final int[] ipv4Addresses;
+    private final long[] ipv6Addresses;
+    private final List<String> otherAddresses;
+    private final byte flags;
+    private final String clientVersion;
+    private final String created;
+    private final long createdMillis;
+    private final String expires;
+    private final long expiresMillis;
+    private final String hostname;
+    private final String id;
+    private final String lastSeen;
+    private final long lastSeenMillis;
+    private final String machineKey;
+    private final String name;
+    private final String nodeId;
+    private final String nodeKey;
+    private final String os;
+    private final List<String> enabledRoutes;
+    private final List<String> advertisedRoutes;
+    private final List<String> tags;
+    private final String tailnetLockError;
+    private final String tailnetLockKey;
+    private final String user;
+    private byte[] rawClientConnectivity;
+    private Device.ClientConnectivity clientConnectivity;
+    private byte[] rawPostureIdentity;
+    private Device.PostureIdentity postureIdentity;
+
+    /**
+     * Same fields as {@link Device}, with {@code clientConnectivity} and {@code postureIdentity} as raw UTF-8 JSON
+     */
+    public CompactDevice(final List<String> addresses, final boolean authorized, final boolean blocksIncomingConnections,
+                         final String clientVersion, final String created, final String expires, final String hostname,
+                         final String id, final boolean isExternal, final boolean keyExpiryDisabled, final String lastSeen,
+                         final String machineKey, final String name, final String nodeId, final String nodeKey, final String os,
+                         final List<String> enabledRoutes, final List<String> advertisedRoutes, final byte[] rawClientConnectivity,
+                         final List<String> tags, final String tailnetLockError, final String tailnetLockKey,
+                         final byte[] rawPostureIdentity, final boolean updateAvailable, final String user) {
+        int packedIpv4 = 0;
+        int packedIpv6 = 0;
+        final int[] ipv4 = new int[addresses == null ? 0 : addresses.size()];
+        final long[] ipv6 = new long[ipv4.length * 2];
+        final long[] ipv6Address = new long[2];
+        List<String> other = null;
+
+        if (addresses != null) {
+            for (final String address : addresses) {
+                if (address != null && address.indexOf(':') == -1 && IpAddresses.parseIpv4(address, ipv4, packedIpv4)) {
+                    packedIpv4++;
+                } else if (address != null && IpAddresses.parseIpv6(address, ipv6Address)) {
+                    ipv6[packedIpv6 * 2] = ipv6Address[0];
+                    ipv6[packedIpv6 * 2 + 1] = ipv6Address[1];
+                    packedIpv6++;
+                } else {
+                    if (other == null) other = new ArrayList<>(1);
+                    other.add(address);
+                }
+            }
+        }
+
+        this.ipv4Addresses = packedIpv4 == 0 ? NO_IPV4 : Arrays.copyOf(ipv4, packedIpv4);
+        this.ipv6Addresses = packedIpv6 == 0 ? NO_IPV6 : Arrays.copyOf(ipv6, packedIpv6 * 2);
+        this.otherAddresses = addresses == null ? null : other == null ? List.of() : other;
+        this.flags = (byte) ((authorized ? AUTHORIZED : 0)
+                | (blocksIncomingConnections ? BLOCKS_INCOMING_CONNECTIONS : 0)
+                | (isExternal ? EXTERNAL : 0)
+                | (keyExpiryDisabled ? KEY_EXPIRY_DISABLED : 0)
+                | (updateAvailable ? UPDATE_AVAILABLE : 0));
+        this.clientVersion = clientVersion;
+        this.created = created;
+        this.createdMillis = Timestamps.toEpochMillis(created);
+        this.expires = expires;
+        this.expiresMillis = Timestamps.toEpochMillis(expires);
+        this.hostname = hostname;
+        this.id = id;
+        this.lastSeen = lastSeen;
+        this.lastSeenMillis = Timestamps.toEpochMillis(lastSeen);
+        this.machineKey = machineKey;
+        this.name = name;
+        this.nodeId = nodeId;
+        this.nodeKey = nodeKey;
+        this.os = os;
+        this.enabledRoutes = enabledRoutes;
+        this.advertisedRoutes = advertisedRoutes;
+        this.rawClientConnectivity = rawClientConnectivity;
+        this.tags = tags;
+        this.tailnetLockError = tailnetLockError;
+        this.tailnetLockKey = tailnetLockKey;
+        this.rawPostureIdentity = rawPostureIdentity;
+        this.user = user;
+    }
+
+    /**
+     * Formats the packed addresses, IPv4 ones first and IPv6 ones in the canonical RFC 5952 form
+     */
+    public List<String> addresses() {
+        if (this.otherAddresses == null) return null;
+
+        final List<String> addresses = new ArrayList<>(this.ipv4Addresses.length + this.ipv6Addresses.length / 2 + this.otherAddresses.size());
+        for (final int address : this.ipv4Addresses) addresses.add(IpAddresses.formatIpv4(address));
+        for (int i = 0; i < this.ipv6Addresses.length; i += 2) addresses.add(IpAddresses.formatIpv6(this.ipv6Addresses[i], this.ipv6Addresses[i + 1]));
+        addresses.addAll(this.otherAddresses);
+
+        return addresses;
+    }
+
+    /**
+     * @return the IPv4 addresses as big-endian ints
+     */
+    public int[] ipv4Addresses() {
+        return this.ipv4Addresses.clone();
+    }
+
+    /**
+     * @return the IPv6 addresses as pairs of big-endian longs, high half first
+     */
+    public long[] ipv6Addresses() {
+        return this.ipv6Addresses.clone();
+    }
+
+    public boolean authorized() {
+        return (this.flags & AUTHORIZED) != 0;
+    }
+
+    public boolean blocksIncomingConnections() {
+        return (this.flags & BLOCKS_INCOMING_CONNECTIONS) != 0;
+    }
+
+    public String clientVersion() {
+        return this.clientVersion;
+    }
+
+    public String created() {
+        return this.created;
+    }
+
+    /**
+     * Parsed once while decoding, {@link Timestamps#UNKNOWN} when missing
+     */
+    public long createdMillis() {
+        return this.createdMillis;
+    }
+
+    public String expires() {
+        return this.expires;
+    }
+
+    /**
+     * Parsed once while decoding, {@link Timestamps#UNKNOWN} when missing
+     */
+    public long expiresMillis() {
+        return this.expiresMillis;
+    }
+
+    public String hostname() {
+        return this.hostname;
+    }
+
+    public String id() {
+        return this.id;
+    }
+
+    public boolean isExternal() {
+        return (this.flags & EXTERNAL) != 0;
+    }
+
+    public boolean keyExpiryDisabled() {
+        return (this.flags & KEY_EXPIRY_DISABLED) != 0;
+    }
+
+    public String lastSeen() {
+        return this.lastSeen;
+    }
+
+    /**
+     * Parsed once while decoding, {@link Timestamps#UNKNOWN} when missing
+     */
+    public long lastSeenMillis() {
+        return this.lastSeenMillis;
+    }
+
+    public String machineKey() {
+        return this.machineKey;
+    }
+
+    public String name() {
+        return this.name;
+    }
+
+    public String nodeId() {
+        return this.nodeId;
+    }
+
+    public String nodeKey() {
+        return this.nodeKey;
+    }
+
+    public String os() {
+        return this.os;
+    }
+
+    public List<String> enabledRoutes() {
+        return this.enabledRoutes;
+    }
+
+    public List<String> advertisedRoutes() {
+        return this.advertisedRoutes;
+    }
+
+    /**
+     * Parsed on first call, the raw JSON is dropped afterwards
+     */
+    public synchronized Device.ClientConnectivity clientConnectivity() {
+        if (this.rawClientConnectivity != null) {
+            try (final JsonReader reader = newReader(this.rawClientConnectivity)) {
+                this.clientConnectivity = DeviceTypeAdapter.readClientConnectivity(reader);
+            } catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            this.rawClientConnectivity = null;
+        }
+
+        return this.clientConnectivity;
+    }
+
+    public List<String> tags() {
+        return this.tags;
+    }
+
+    public String tailnetLockError() {
+        return this.tailnetLockError;
+    }
+
+    public String tailnetLockKey() {
+        return this.tailnetLockKey;
+    }
+
+    /**
+     * Parsed on first call, the raw JSON is dropped afterwards
+     */
+    public synchronized Device.PostureIdentity postureIdentity() {
+        if (this.rawPostureIdentity != null) {
+            try (final JsonReader reader = newReader(this.rawPostureIdentity)) {
+                this.postureIdentity = DeviceTypeAdapter.readPostureIdentity(reader);
+            } catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            this.rawPostureIdentity = null;
+        }
+
+        return this.postureIdentity;
+    }
+
+    public boolean updateAvailable() {
+        return (this.flags & UPDATE_AVAILABLE) != 0;
+    }
+
+    public String user() {
+        return this.user;
+    }
+
+    public Device toDevice() {
+        return new Device(this.addresses(), this.authorized(), this.blocksIncomingConnections(), this.clientVersion, this.created,
+                this.expires, this.hostname, this.id, this.isExternal(), this.keyExpiryDisabled(), this.lastSeen, this.machineKey,
+                this.name, this.nodeId, this.nodeKey, this.os, this.enabledRoutes, this.advertisedRoutes, this.clientConnectivity(),
+                this.tags, this.tailnetLockError, this.tailnetLockKey, this.postureIdentity(), this.updateAvailable(), this.user);
+    }
+
+    @Override
+    public String toString() {
+        return "CompactDevice[id=" + this.id + ", name=" + this.name + ", addresses=" + this.addresses() + "]";
+    }
+
+    private static JsonReader newReader(final byte[] json) {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8));
+    }
+}
@@ -2,6 +2,7 @@ package pl.indianbartonka.tailscale.data.response.device;
 
 import java.util.List;
 import java.util.Map;
+import pl.indianbartonka.tailscale.data.Timestamps;
 
 public record Device(
         List<String> addresses,
@@ -31,6 +32,33 @@ public record Device(
         String user
 ) {
 
+    /**
+     * Parses {@link #created()} on every call, keep the result when it's needed more than once
+     *
+     * @return {@link #created()} in epoch milliseconds, {@link Timestamps#UNKNOWN} when missing
+     */
+    public long createdMillis() {
+        return Timestamps.toEpochMillis(this.created);
+    }
+
+    /**
+     * Parses {@link #expires()} on every call, keep the result when it's needed more than once
+     *
+     * @return {@link #expires()} in epoch milliseconds, {@link Timestamps#UNKNOWN} when missing
+     */
+    public long expiresMillis() {
+        return Timestamps.toEpochMillis(this.expires);
+    }
+
+    /**
+     * Parses {@link #lastSeen()} on every call, keep the result when it's needed more than once
+     *
+     * @return {@link #lastSeen()} in epoch milliseconds, {@link Timestamps#UNKNOWN} when missing
+     */
+    public long lastSeenMillis() {
+        return Timestamps.toEpochMillis(this.lastSeen);
+    }
+
     public record Latency(Double latencyMs, Boolean preferred) {
     }
 
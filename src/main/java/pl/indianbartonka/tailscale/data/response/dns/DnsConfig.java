@@ -0,0 +1,18 @@
+package pl.indianbartonka.tailscale.data.response.dns;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The whole DNS configuration of a tailnet as cached by {@code DNSClient}
+ *
+ * @param version increases every time the client sees the configuration change
+ */
+public record DnsConfig(
+        long version,
+        List<String> nameservers,
+        boolean magicDNS,
+        List<String> searchPaths,
+        Map<String, List<String>> splitDns
+) {
+}
@@ -0,0 +1,4 @@
+package pl.indianbartonka.tailscale.data.response.dns;
+
+public record DnsPreferences(boolean magicDNS) {
+}
@@ -0,0 +1,6 @@
+package pl.indianbartonka.tailscale.data.response.dns;
+
+import java.util.List;
+
+public record SearchPathsResponse(List<String> searchPaths) {
+}
@@ -0,0 +1,36 @@
+package pl.indianbartonka.tailscale.data.response.dns;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import pl.indianbartonka.tailscale.data.request.SplitDnsRequest;
+
+/**
+ * Difference between the current and a desired split DNS configuration
+ */
+public record SplitDnsChanges(
+        Map<String, List<String>> added,
+        Map<String, List<String>> changed,
+        Set<String> removed
+) {
+
+    public boolean isEmpty() {
+        return this.added.isEmpty() && this.changed.isEmpty() && this.removed.isEmpty();
+    }
+
+    public int size() {
+        return this.added.size() + this.changed.size() + this.removed.size();
+    }
+
+    /**
+     * @return the {@code PATCH} body applying only these changes
+     */
+    public SplitDnsRequest toRequest() {
+        final Map<String, List<String>> domains = new LinkedHashMap<>(this.added);
+        domains.putAll(this.changed);
+        for (final String domain : this.removed) domains.put(domain, null);
+
+        return new SplitDnsRequest(domains);
+    }
+}
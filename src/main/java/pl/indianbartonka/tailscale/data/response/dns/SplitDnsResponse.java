@@ -0,0 +1,10 @@
+package pl.indianbartonka.tailscale.data.response.dns;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @param domains nameservers per split DNS domain
+ */
+public record SplitDnsResponse(Map<String, List<String>> domains) {
+}
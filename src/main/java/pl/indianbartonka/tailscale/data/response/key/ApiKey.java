@@ -1,5 +1,7 @@
 package pl.indianbartonka.tailscale.data.response.key;
 
+import pl.indianbartonka.tailscale.data.Timestamps;
+
 public record ApiKey(
         String id,
         String keyType,
@@ -10,4 +12,22 @@ public record ApiKey(
         String description,
         String userId
 ) {
+
+    /**
+     * Parses {@link #created()} on every call, keep the result when it's needed more than once
+     *
+     * @return {@link #created()} in epoch milliseconds, {@link Timestamps#UNKNOWN} when missing
+     */
+    public long createdMillis() {
+        return Timestamps.toEpochMillis(this.created);
+    }
+
+    /**
+     * Parses {@link #expires()} on every call, keep the result when it's needed more than once
+     *
+     * @return {@link #expires()} in epoch milliseconds, {@link Timestamps#UNKNOWN} when missing
+     */
+    public long expiresMillis() {
+        return Timestamps.toEpochMillis(this.expires);
+    }
 }
@@ -0,0 +1,44 @@
+package pl.indianbartonka.tailscale.data.response.webhook;
+
+import java.util.Map;
+import pl.indianbartonka.tailscale.data.Timestamps;
+
+/**
+ * One event of a webhook delivery
+ *
+ * @param type raw event type, see {@link #eventType()}
+ * @param data event details, values which are not strings are kept as their JSON
+ */
+public record WebhookEvent(
+        String timestamp,
+        int version,
+        String type,
+        String tailnet,
+        String message,
+        Map<String, String> data
+) {
+
+    public WebhookEventType eventType() {
+        return WebhookEventType.of(this.type);
+    }
+
+    /**
+     * @return stable node id of the device for device events, {@code null} otherwise
+     */
+    public String nodeId() {
+        return this.data == null ? null : this.data.get("nodeID");
+    }
+
+    public String deviceName() {
+        return this.data == null ? null : this.data.get("deviceName");
+    }
+
+    /**
+     * Parses {@link #timestamp()} on every call, keep the result when it's needed more than once
+     *
+     * @return {@link #timestamp()} in epoch milliseconds, {@link Timestamps#UNKNOWN} when missing
+     */
+    public long timestampMillis() {
+        return Timestamps.toEpochMillis(this.timestamp);
+    }
+}
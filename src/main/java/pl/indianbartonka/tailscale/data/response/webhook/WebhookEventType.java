@@ -0,0 +1,55 @@
+package pl.indianbartonka.tailscale.data.response.webhook;
+
+/**
+ * Event types sent by Tailscale webhooks, types added later by Tailscale map to {@link #UNKNOWN}
+ */
+public enum WebhookEventType {
+
+    NODE_CREATED("nodeCreated", true),
+    NODE_NEEDS_APPROVAL("nodeNeedsApproval", true),
+    NODE_APPROVED("nodeApproved", true),
+    NODE_KEY_EXPIRING_IN_ONE_DAY("nodeKeyExpiringInOneDay", true),
+    NODE_KEY_EXPIRED("nodeKeyExpired", true),
+    NODE_DELETED("nodeDeleted", true),
+    NODE_NEEDS_SIGNATURE("nodeNeedsSignature", true),
+    NODE_SIGNED("nodeSigned", true),
+    SUBNET_IP_FORWARDING_NOT_ENABLED("subnetIPForwardingNotEnabled", true),
+    EXIT_NODE_IP_FORWARDING_NOT_ENABLED("exitNodeIPForwardingNotEnabled", true),
+    POLICY_UPDATE("policyUpdate", false),
+    USER_CREATED("userCreated", false),
+    USER_NEEDS_APPROVAL("userNeedsApproval", false),
+    USER_APPROVED("userApproved", false),
+    USER_SUSPENDED("userSuspended", false),
+    USER_RESTORED("userRestored", false),
+    USER_DELETED("userDeleted", false),
+    USER_ROLE_UPDATED("userRoleUpdated", false),
+    TEST("test", false),
+    UNKNOWN("", false);
+
+    private final String apiName;
+    private final boolean deviceEvent;
+
+    WebhookEventType(final String apiName, final boolean deviceEvent) {
+        this.apiName = apiName;
+        this.deviceEvent = deviceEvent;
+    }
+
+    public static WebhookEventType of(final String apiName) {
+        for (final WebhookEventType type : values()) {
+            if (type.apiName.equals(apiName)) return type;
+        }
+
+        return UNKNOWN;
+    }
+
+    public String getApiName() {
+        return this.apiName;
+    }
+
+    /**
+     * @return whether the event is about one device, named by {@link WebhookEvent#nodeId()}
+     */
+    public boolean isDeviceEvent() {
+        return this.deviceEvent;
+    }
+}
@@ -0,0 +1,20 @@
+package pl.indianbartonka.tailscale.exception;
+
+import pl.indianbartonka.tailscale.EndpointGroup;
+
+/**
+ * Thrown without sending the request when the endpoint group already has its maximum of calls in flight
+ */
+public class BulkheadFullException extends TailscaleException {
+
+    private final EndpointGroup group;
+
+    public BulkheadFullException(final EndpointGroup group, final int maxConcurrentCalls) {
+        super("Endpoint group " + group + " already has " + maxConcurrentCalls + " calls in flight");
+        this.group = group;
+    }
+
+    public EndpointGroup getGroup() {
+        return this.group;
+    }
+}
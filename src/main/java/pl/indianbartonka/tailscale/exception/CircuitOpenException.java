@@ -0,0 +1,31 @@
+package pl.indianbartonka.tailscale.exception;
+
+import java.time.Duration;
+import pl.indianbartonka.tailscale.EndpointGroup;
+
+/**
+ * Thrown without sending the request while the circuit breaker of the endpoint group is open.
+ * {@link #getStatusCode()} is the status of the last failure that opened it, {@code -1} when that was an I/O failure
+ */
+public class CircuitOpenException extends TailscaleException {
+
+    private final EndpointGroup group;
+    private final Duration retryAfter;
+
+    public CircuitOpenException(final EndpointGroup group, final int statusCode, final Duration retryAfter) {
+        super("Circuit breaker of " + group + " is open", statusCode);
+        this.group = group;
+        this.retryAfter = retryAfter;
+    }
+
+    public EndpointGroup getGroup() {
+        return this.group;
+    }
+
+    /**
+     * @return how long until the breaker lets trial calls through again
+     */
+    public Duration getRetryAfter() {
+        return this.retryAfter;
+    }
+}
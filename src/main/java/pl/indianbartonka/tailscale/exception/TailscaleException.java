@@ -2,7 +2,26 @@ package pl.indianbartonka.tailscale.exception;
 
 public class TailscaleException extends RuntimeException {
 
+    private final int statusCode;
+
     public TailscaleException(final String message) {
+        this(message, -1);
+    }
+
+    public TailscaleException(final String message, final int statusCode) {
         super(message);
+        this.statusCode = statusCode;
+    }
+
+    public TailscaleException(final String message, final Throwable cause) {
+        super(message, cause);
+        this.statusCode = -1;
+    }
+
+    /**
+     * @return HTTP status of the failed response, {@code -1} when the request didn't get one
+     */
+    public int getStatusCode() {
+        return this.statusCode;
     }
 }
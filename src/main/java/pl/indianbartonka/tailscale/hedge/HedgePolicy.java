@@ -0,0 +1,38 @@
+package pl.indianbartonka.tailscale.hedge;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Set;
+import pl.indianbartonka.tailscale.ApiEndpoint;
+
+/**
+ * When a read is hedged: a second request is sent once the first one took longer than the {@code percentile}
+ * of the recent latencies of its endpoint, clamped between {@code minDelay} and {@code maxDelay}
+ *
+ * @param percentile    from 0 to 100, {@code 95} hedges roughly the slowest 5% of the calls
+ * @param budgetPercent extra requests hedging may add, in percent of the hedged calls
+ * @param minSamples    latencies needed before the endpoint is hedged at all
+ * @param endpoints     hedged endpoints, only {@code GET} ones are allowed
+ */
+public record HedgePolicy(double percentile, Duration minDelay, Duration maxDelay, double budgetPercent, int minSamples, Set<ApiEndpoint> endpoints) {
+
+    public static final HedgePolicy DEFAULT = new HedgePolicy(95, Duration.ofMillis(10), Duration.ofSeconds(2), 5, 100,
+            EnumSet.of(ApiEndpoint.GET_DEVICE, ApiEndpoint.GET_ATTRIBUTES));
+
+    public HedgePolicy {
+        if (percentile <= 0 || percentile >= 100) throw new IllegalArgumentException("percentile must be between 0 and 100");
+        if (minDelay.isNegative() || maxDelay.compareTo(minDelay) < 0) throw new IllegalArgumentException("maxDelay must not be below minDelay");
+        if (budgetPercent < 0) throw new IllegalArgumentException("budgetPercent can't be negative");
+        if (minSamples < 1) throw new IllegalArgumentException("minSamples must be at least 1");
+
+        for (final ApiEndpoint endpoint : endpoints) {
+            if (!endpoint.getMethod().equals("GET")) throw new IllegalArgumentException(endpoint + " is not idempotent and can't be hedged");
+        }
+
+        endpoints = Set.copyOf(endpoints);
+    }
+
+    public HedgePolicy withEndpoints(final Set<ApiEndpoint> endpoints) {
+        return new HedgePolicy(this.percentile, this.minDelay, this.maxDelay, this.budgetPercent, this.minSamples, endpoints);
+    }
+}
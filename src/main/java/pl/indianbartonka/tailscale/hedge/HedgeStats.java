@@ -0,0 +1,24 @@
+package pl.indianbartonka.tailscale.hedge;
+
+/**
+ * @param calls           calls to hedged endpoints
+ * @param hedged          calls which sent a second request
+ * @param hedgeWins       hedged calls answered by the second request
+ * @param budgetExhausted calls which were slow enough to hedge, but the budget was used up
+ */
+public record HedgeStats(long calls, long hedged, long hedgeWins, long budgetExhausted) {
+
+    /**
+     * @return extra requests sent by hedging, in percent of the calls
+     */
+    public double getHedgePercent() {
+        return this.calls == 0 ? 0 : 100D * this.hedged / this.calls;
+    }
+
+    /**
+     * @return share of the hedged calls where the second request was faster, from 0 to 1
+     */
+    public double getWinRate() {
+        return this.hedged == 0 ? 0 : (double) this.hedgeWins / this.hedged;
+    }
+}
@@ -0,0 +1,289 @@
+package pl.indianbartonka.tailscale.hedge;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import pl.indianbartonka.tailscale.ApiEndpoint;
+import pl.indianbartonka.tailscale.metrics.LatencyHistogram;
+import pl.indianbartonka.tailscale.transport.TransportResponse;
+
+/**
+ * Sends a second request when the first one of a hedged read takes longer than usual and takes whichever answers first,
+ * the slower one is cancelled. Server errors and rate-limited responses don't win the race while the other request is still running.
+ * Each call adds {@code budgetPercent / 100} to a budget and each hedge takes one from it, so hedging can't add more than
+ * that share of extra requests, not even when the API slows down as a whole
+ */
+public class Hedger {
+
+    /**
+     * Latencies counted before the histogram of an endpoint is swapped, so the delay follows changes in the latency
+     */
+    private static final int SAMPLE_WINDOW = 1024;
+    private static final double MAX_BUDGET = 10;
+
+    private final HedgePolicy policy;
+    private final Map<ApiEndpoint, Samples> samples;
+    private final LongAdder calls;
+    private final LongAdder hedged;
+    private final LongAdder hedgeWins;
+    private final LongAdder budgetExhausted;
+    private double budget;
+
+    public Hedger(final HedgePolicy policy) {
+        this.policy = policy;
+        this.samples = new EnumMap<>(ApiEndpoint.class);
+        for (final ApiEndpoint endpoint : policy.endpoints()) this.samples.put(endpoint, new Samples());
+        this.calls = new LongAdder();
+        this.hedged = new LongAdder();
+        this.hedgeWins = new LongAdder();
+        this.budgetExhausted = new LongAdder();
+    }
+
+    public boolean isHedged(final ApiEndpoint endpoint) {
+        return this.samples.containsKey(endpoint);
+    }
+
+    /**
+     * @param sender sends one request, called a second time for the hedge
+     */
+    public CompletableFuture<TransportResponse> send(final ApiEndpoint endpoint, final Supplier<CompletableFuture<TransportResponse>> sender) {
+        final Samples endpointSamples = this.samples.get(endpoint);
+        if (endpointSamples == null) return sender.get();
+
+        this.calls.increment();
+        synchronized (this) {
+            this.budget = Math.min(MAX_BUDGET, this.budget + this.policy.budgetPercent() / 100);
+        }
+
+        final Race race = new Race(endpointSamples, sender);
+        race.start();
+
+        final Duration delay = this.getDelay(endpoint);
+        if (delay != null) CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS).execute(race::hedge);
+
+        return race.result;
+    }
+
+    /**
+     * @return how long the first request may take before the hedge is sent, {@code null} while there are too few latencies
+     */
+    public Duration getDelay(final ApiEndpoint endpoint) {
+        final Samples endpointSamples = this.samples.get(endpoint);
+        if (endpointSamples == null) return null;
+
+        final LatencyHistogram histogram = endpointSamples.histogram(this.policy.minSamples());
+        if (histogram == null) return null;
+
+        final Duration delay = histogram.getPercentile(this.policy.percentile());
+        if (delay.compareTo(this.policy.minDelay()) < 0) return this.policy.minDelay();
+        if (delay.compareTo(this.policy.maxDelay()) > 0) return this.policy.maxDelay();
+
+        return delay;
+    }
+
+    private synchronized boolean takeBudget() {
+        if (this.budget < 1) return false;
+
+        this.budget -= 1;
+        return true;
+    }
+
+    public HedgeStats getStats() {
+        return new HedgeStats(this.calls.sum(), this.hedged.sum(), this.hedgeWins.sum(), this.budgetExhausted.sum());
+    }
+
+    public HedgePolicy getPolicy() {
+        return this.policy;
+    }
+
+    private static boolean usable(final TransportResponse response, final Throwable throwable) {
+        return throwable == null && response.statusCode() < 500 && response.statusCode() != 429;
+    }
+
+    private static void discard(final TransportResponse response) {
+        if (response == null) return;
+
+        try {
+            response.body().close();
+        } catch (final IOException ignored) {
+        }
+    }
+
+    /**
+     * Latencies of the first request of each call, the percentile comes from the last full window once there is one.
+     * When the hedge wins, the time the first request had taken until then is counted, so hedged calls
+     * don't pull the percentile down to the latency of the hedges
+     */
+    private static final class Samples {
+
+        private volatile LatencyHistogram current = new LatencyHistogram();
+        private volatile LatencyHistogram previous;
+
+        private void record(final long nanos) {
+            final LatencyHistogram histogram = this.current;
+            histogram.record(nanos);
+
+            if (histogram.getCount() >= SAMPLE_WINDOW) {
+                synchronized (this) {
+                    if (this.current == histogram) {
+                        this.previous = histogram;
+                        this.current = new LatencyHistogram();
+                    }
+                }
+            }
+        }
+
+        private LatencyHistogram histogram(final int minSamples) {
+            final LatencyHistogram full = this.previous;
+            if (full != null) return full;
+
+            final LatencyHistogram histogram = this.current;
+            return histogram.getCount() >= minSamples ? histogram : null;
+        }
+    }
+
+    /**
+     * The first request and the possible hedge of one call, fields are guarded by the race itself
+     */
+    private final class Race {
+
+        private final Samples samples;
+        private final Supplier<CompletableFuture<TransportResponse>> sender;
+        private final CompletableFuture<TransportResponse> result;
+        private CompletableFuture<TransportResponse> primary;
+        private CompletableFuture<TransportResponse> hedge;
+        private long primaryStart;
+        private int running;
+        private boolean closed;
+        private TransportResponse failedResponse;
+        private Throwable failure;
+
+        private Race(final Samples samples, final Supplier<CompletableFuture<TransportResponse>> sender) {
+            this.samples = samples;
+            this.sender = sender;
+            this.result = new CompletableFuture<>();
+            // Cancelling the call cancels both requests
+            this.result.whenComplete((response, throwable) -> {
+                if (this.result.isCancelled()) this.cancelRunning();
+            });
+        }
+
+        private void start() {
+            synchronized (this) {
+                this.running++;
+                this.primaryStart = System.nanoTime();
+            }
+
+            final CompletableFuture<TransportResponse> future = this.launch(false);
+            synchronized (this) {
+                this.primary = future;
+            }
+        }
+
+        private void hedge() {
+            synchronized (this) {
+                if (this.closed) return;
+
+                if (!Hedger.this.takeBudget()) {
+                    Hedger.this.budgetExhausted.increment();
+                    return;
+                }
+
+                this.running++;
+            }
+
+            Hedger.this.hedged.increment();
+            final CompletableFuture<TransportResponse> future = this.launch(true);
+
+            synchronized (this) {
+                this.hedge = future;
+                if (!this.closed) return;
+            }
+
+            if (!future.isDone()) future.cancel(true);
+        }
+
+        private CompletableFuture<TransportResponse> launch(final boolean hedge) {
+            final long start = System.nanoTime();
+
+            CompletableFuture<TransportResponse> future;
+            try {
+                future = this.sender.get();
+            } catch (final RuntimeException exception) {
+                future = CompletableFuture.failedFuture(exception);
+            }
+
+            future.whenComplete((response, throwable) -> this.finished(response, throwable, hedge, System.nanoTime() - start));
+            return future;
+        }
+
+        private void finished(final TransportResponse response, final Throwable throwable, final boolean hedge, final long nanos) {
+            final CompletableFuture<TransportResponse> loser;
+
+            synchronized (this) {
+                this.running--;
+
+                if (this.closed) {
+                    discard(response);
+                    return;
+                }
+
+                if (!usable(response, throwable)) {
+                    // Keeps the outcome of the first request in case both fail and waits for the other one
+                    this.keepFailure(response, throwable, hedge);
+                    if (this.running > 0) return;
+
+                    this.closed = true;
+                } else {
+                    this.closed = true;
+                    discard(this.failedResponse);
+                    this.failedResponse = null;
+                    this.failure = null;
+                }
+
+                loser = hedge ? this.primary : this.hedge;
+            }
+
+            if (this.failure != null) {
+                this.result.completeExceptionally(this.failure);
+            } else if (this.failedResponse != null) {
+                this.result.complete(this.failedResponse);
+            } else {
+                this.samples.record(hedge ? System.nanoTime() - this.primaryStart : nanos);
+                if (hedge) Hedger.this.hedgeWins.increment();
+                this.result.complete(response);
+                if (loser != null && !loser.isDone()) loser.cancel(true);
+            }
+        }
+
+        private void keepFailure(final TransportResponse response, final Throwable throwable, final boolean hedge) {
+            if (hedge && (this.failedResponse != null || this.failure != null)) {
+                discard(response);
+                return;
+            }
+
+            discard(this.failedResponse);
+            this.failedResponse = response;
+            this.failure = throwable;
+        }
+
+        private void cancelRunning() {
+            final CompletableFuture<TransportResponse> first;
+            final CompletableFuture<TransportResponse> second;
+
+            synchronized (this) {
+                this.closed = true;
+                first = this.primary;
+                second = this.hedge;
+            }
+
+            if (first != null && !first.isDone()) first.cancel(true);
+            if (second != null && !second.isDone()) second.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package pl.indianbartonka.tailscale.index;
+
+import pl.indianbartonka.tailscale.data.IpAddresses;
+
+/**
+ * Parsed IPv4 or IPv6 prefix. The address is kept left-aligned in 128 bits, so IPv4 uses only the top 32 bits of {@code high},
+ * and the bits after the prefix are always zero
+ */
+public record Cidr(boolean ipv6, long high, long low, int prefixLength) {
+
+    /**
+     * @param value prefix like {@code 10.0.0.0/24}, a plain address is taken as a single host
+     * @throws IllegalArgumentException when the value is not a valid prefix
+     */
+    public static Cidr parse(final String value) {
+        final int slash = value.indexOf('/');
+        final String address = slash == -1 ? value : value.substring(0, slash);
+        final boolean ipv6 = address.indexOf(':') != -1;
+        final int maxLength = ipv6 ? 128 : 32;
+
+        int prefixLength = maxLength;
+        if (slash != -1) {
+            try {
+                prefixLength = Integer.parseInt(value.substring(slash + 1));
+            } catch (final NumberFormatException exception) {
+                throw new IllegalArgumentException("Invalid prefix length: " + value);
+            }
+            if (prefixLength < 0 || prefixLength > maxLength) throw new IllegalArgumentException("Invalid prefix length: " + value);
+        }
+
+        if (ipv6) {
+            final long[] parsed = new long[2];
+            if (!IpAddresses.parseIpv6(address, parsed)) throw new IllegalArgumentException("Invalid IPv6 address: " + value);
+            return masked(true, parsed[0], parsed[1], prefixLength);
+        }
+
+        final int[] parsed = new int[1];
+        if (!IpAddresses.parseIpv4(address, parsed, 0)) throw new IllegalArgumentException("Invalid IPv4 address: " + value);
+        return masked(false, (parsed[0] & 0xFFFFFFFFL) << 32, 0, prefixLength);
+    }
+
+    private static Cidr masked(final boolean ipv6, final long high, final long low, final int prefixLength) {
+        final long highMask = prefixLength == 0 ? 0 : prefixLength >= 64 ? -1L : -1L << (64 - prefixLength);
+        final long lowMask = prefixLength <= 64 ? 0 : prefixLength == 128 ? -1L : -1L << (128 - prefixLength);
+
+        return new Cidr(ipv6, high & highMask, low & lowMask, prefixLength);
+    }
+
+    /**
+     * @param index bit position counted from the most significant bit of the address
+     */
+    public int bit(final int index) {
+        return (int) (index < 64 ? this.high >>> (63 - index) & 1 : this.low >>> (127 - index) & 1);
+    }
+
+    /**
+     * @return whether every address of {@code other} is also in this prefix
+     */
+    public boolean contains(final Cidr other) {
+        if (this.ipv6 != other.ipv6 || this.prefixLength > other.prefixLength) return false;
+
+        return masked(this.ipv6, other.high, other.low, this.prefixLength).equals(this);
+    }
+
+    public boolean overlaps(final Cidr other) {
+        return this.contains(other) || other.contains(this);
+    }
+
+    @Override
+    public String toString() {
+        final String address = this.ipv6 ? IpAddresses.formatIpv6(this.high, this.low) : IpAddresses.formatIpv4((int) (this.high >>> 32));
+        return address + "/" + this.prefixLength;
+    }
+}
@@ -0,0 +1,273 @@
+package pl.indianbartonka.tailscale.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+
+/**
+ * In-memory lookup tables over the device inventory. Reads never take a lock,
+ * writes are serialized and update only the keys of the changed device
+ */
+public class DeviceIndex {
+
+    private final Map<String, Device> byId;
+    private final UniqueKey byAddress;
+    private final UniqueKey byName;
+    private final UniqueKey byNodeId;
+    private final UniqueKey byNodeKey;
+    private final UniqueKey byMachineKey;
+    private final MultiKey byHostname;
+    private final MultiKey byUser;
+    private final MultiKey byTag;
+    private final List<Key> keys;
+
+    public DeviceIndex() {
+        this.byId = new ConcurrentHashMap<>();
+        this.byAddress = new UniqueKey(Device::addresses);
+        this.byName = new UniqueKey(device -> single(device.name()));
+        this.byNodeId = new UniqueKey(device -> single(device.nodeId()));
+        this.byNodeKey = new UniqueKey(device -> single(device.nodeKey()));
+        this.byMachineKey = new UniqueKey(device -> single(device.machineKey()));
+        this.byHostname = new MultiKey(device -> single(device.hostname()));
+        this.byUser = new MultiKey(device -> single(device.user()));
+        this.byTag = new MultiKey(Device::tags);
+        this.keys = List.of(this.byAddress, this.byName, this.byNodeId, this.byNodeKey, this.byMachineKey, this.byHostname, this.byUser, this.byTag);
+    }
+
+    public static DeviceIndex of(final Collection<Device> devices) {
+        final DeviceIndex index = new DeviceIndex();
+        index.putAll(devices);
+        return index;
+    }
+
+    /**
+     * Streams the current device list into the index and drops devices which no longer exist
+     */
+    public void refresh(final DeviceClient deviceClient) throws IOException {
+        final Set<String> seen = new HashSet<>();
+
+        deviceClient.forEachDevice(device -> {
+            this.put(device);
+            seen.add(device.id());
+        });
+
+        for (final String id : this.byId.keySet()) {
+            if (!seen.contains(id)) this.remove(id);
+        }
+    }
+
+    public void replaceAll(final Collection<Device> devices) {
+        final Set<String> seen = new HashSet<>();
+
+        for (final Device device : devices) {
+            this.put(device);
+            seen.add(device.id());
+        }
+
+        for (final String id : this.byId.keySet()) {
+            if (!seen.contains(id)) this.remove(id);
+        }
+    }
+
+    public void putAll(final Collection<Device> devices) {
+        for (final Device device : devices) this.put(device);
+    }
+
+    public synchronized void put(final Device device) {
+        final String id = device.id();
+        if (id == null) throw new IllegalArgumentException("Device without id can't be indexed");
+
+        final Device previous = this.byId.get(id);
+        if (device.equals(previous)) return;
+
+        for (final Key key : this.keys) key.add(id, device);
+        this.byId.put(id, device);
+        for (final Key key : this.keys) key.remove(id, previous, device);
+    }
+
+    public synchronized boolean remove(final String deviceId) {
+        final Device previous = this.byId.remove(deviceId);
+        if (previous == null) return false;
+
+        for (final Key key : this.keys) key.remove(deviceId, previous, null);
+        return true;
+    }
+
+    public synchronized void clear() {
+        this.byId.clear();
+        for (final Key key : this.keys) key.clear();
+    }
+
+    public Optional<Device> getById(final String deviceId) {
+        return Optional.ofNullable(this.byId.get(deviceId));
+    }
+
+    /**
+     * @param address one of the {@link Device#addresses()}, like {@code 100.64.0.1}
+     */
+    public Optional<Device> getByAddress(final String address) {
+        return this.byAddress.get(address, this.byId);
+    }
+
+    public Optional<Device> getByName(final String name) {
+        return this.byName.get(name, this.byId);
+    }
+
+    public Optional<Device> getByNodeId(final String nodeId) {
+        return this.byNodeId.get(nodeId, this.byId);
+    }
+
+    public Optional<Device> getByNodeKey(final String nodeKey) {
+        return this.byNodeKey.get(nodeKey, this.byId);
+    }
+
+    public Optional<Device> getByMachineKey(final String machineKey) {
+        return this.byMachineKey.get(machineKey, this.byId);
+    }
+
+    public List<Device> getByHostname(final String hostname) {
+        return this.byHostname.get(hostname, this.byId);
+    }
+
+    public List<Device> getByUser(final String user) {
+        return this.byUser.get(user, this.byId);
+    }
+
+    public List<Device> getByTag(final String tag) {
+        return this.byTag.get(tag, this.byId);
+    }
+
+    public Set<String> getTags() {
+        return Collections.unmodifiableSet(this.byTag.values.keySet());
+    }
+
+    public Collection<Device> getDevices() {
+        return Collections.unmodifiableCollection(this.byId.values());
+    }
+
+    public int size() {
+        return this.byId.size();
+    }
+
+    private static Collection<String> single(final String value) {
+        return value == null ? List.of() : List.of(value);
+    }
+
+    private static Collection<String> extract(final Function<Device, Collection<String>> extractor, final Device device) {
+        if (device == null) return List.of();
+
+        final Collection<String> values = extractor.apply(device);
+        return values == null ? List.of() : values;
+    }
+
+    private interface Key {
+
+        /**
+         * Adds the keys of {@code device}, called before the device is published
+         */
+        void add(String id, Device device);
+
+        /**
+         * Removes the keys of {@code previous} which {@code current} doesn't have anymore
+         */
+        void remove(String id, Device previous, Device current);
+
+        void clear();
+    }
+
+    private static final class UniqueKey implements Key {
+
+        private final Function<Device, Collection<String>> extractor;
+        private final Map<String, String> values;
+
+        private UniqueKey(final Function<Device, Collection<String>> extractor) {
+            this.extractor = extractor;
+            this.values = new ConcurrentHashMap<>();
+        }
+
+        @Override
+        public void add(final String id, final Device device) {
+            for (final String value : extract(this.extractor, device)) this.values.put(value, id);
+        }
+
+        @Override
+        public void remove(final String id, final Device previous, final Device current) {
+            if (previous == null) return;
+
+            final Collection<String> kept = extract(this.extractor, current);
+            for (final String value : extract(this.extractor, previous)) {
+                if (!kept.contains(value)) this.values.remove(value, id);
+            }
+        }
+
+        @Override
+        public void clear() {
+            this.values.clear();
+        }
+
+        private Optional<Device> get(final String value, final Map<String, Device> byId) {
+            final String id = this.values.get(value);
+            return id == null ? Optional.empty() : Optional.ofNullable(byId.get(id));
+        }
+    }
+
+    private static final class MultiKey implements Key {
+
+        private final Function<Device, Collection<String>> extractor;
+        private final Map<String, Set<String>> values;
+
+        private MultiKey(final Function<Device, Collection<String>> extractor) {
+            this.extractor = extractor;
+            this.values = new ConcurrentHashMap<>();
+        }
+
+        @Override
+        public void add(final String id, final Device device) {
+            for (final String value : extract(this.extractor, device)) {
+                this.values.computeIfAbsent(value, ignored -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+        }
+
+        @Override
+        public void remove(final String id, final Device previous, final Device current) {
+            if (previous == null) return;
+
+            final Collection<String> kept = extract(this.extractor, current);
+            for (final String value : extract(this.extractor, previous)) {
+                if (kept.contains(value)) continue;
+
+                this.values.computeIfPresent(value, (ignored, ids) -> {
+                    ids.remove(id);
+                    return ids.isEmpty() ? null : ids;
+                });
+            }
+        }
+
+        @Override
+        public void clear() {
+            this.values.clear();
+        }
+
+        private List<Device> get(final String value, final Map<String, Device> byId) {
+            final Set<String> ids = this.values.get(value);
+            if (ids == null) return List.of();
+
+            final List<Device> devices = new ArrayList<>(ids.size());
+            for (final String id : ids) {
+                final Device device = byId.get(id);
+                if (device != null) devices.add(device);
+            }
+            return devices;
+        }
+    }
+}
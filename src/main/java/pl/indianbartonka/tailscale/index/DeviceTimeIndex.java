@@ -0,0 +1,101 @@
+package pl.indianbartonka.tailscale.index;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.data.response.device.CompactDevice;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+
+/**
+ * Snapshot of the device timestamps, parsed once and sorted for staleness and expiry queries in logarithmic time.
+ * Build a new one after the inventory changed
+ */
+public final class DeviceTimeIndex {
+
+    private final TimeColumn created;
+    private final TimeColumn expires;
+    private final TimeColumn lastSeen;
+
+    private DeviceTimeIndex(final TimeColumn created, final TimeColumn expires, final TimeColumn lastSeen) {
+        this.created = created;
+        this.expires = expires;
+        this.lastSeen = lastSeen;
+    }
+
+    public static DeviceTimeIndex of(final Collection<Device> devices) {
+        final Builder builder = new Builder();
+        for (final Device device : devices) builder.add(device);
+        return builder.build();
+    }
+
+    public static DeviceTimeIndex ofCompact(final Collection<CompactDevice> devices) {
+        final Builder builder = new Builder();
+
+        for (final CompactDevice device : devices) {
+            builder.created.add(device.id(), device.createdMillis());
+            if (!device.keyExpiryDisabled()) builder.expires.add(device.id(), device.expiresMillis());
+            builder.lastSeen.add(device.id(), device.lastSeenMillis());
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Builds the index from the streamed device list without keeping the devices in memory
+     */
+    public static DeviceTimeIndex load(final DeviceClient deviceClient) throws IOException {
+        final Builder builder = new Builder();
+        deviceClient.forEachDevice(builder::add);
+        return builder.build();
+    }
+
+    public List<String> devicesNotSeenSince(final Instant instant) {
+        return this.lastSeen.before(instant.toEpochMilli());
+    }
+
+    public List<String> devicesSeenSince(final Instant instant) {
+        return this.lastSeen.atOrAfter(instant.toEpochMilli());
+    }
+
+    /**
+     * Devices with key expiry disabled are never returned
+     */
+    public List<String> devicesExpiringBefore(final Instant instant) {
+        return this.expires.before(instant.toEpochMilli());
+    }
+
+    public List<String> devicesCreatedBetween(final Instant from, final Instant to) {
+        return this.created.between(from.toEpochMilli(), to.toEpochMilli());
+    }
+
+    public TimeColumn getCreated() {
+        return this.created;
+    }
+
+    public TimeColumn getExpires() {
+        return this.expires;
+    }
+
+    public TimeColumn getLastSeen() {
+        return this.lastSeen;
+    }
+
+    private static final class Builder {
+
+        private final TimeColumn.Builder created = TimeColumn.builder();
+        private final TimeColumn.Builder expires = TimeColumn.builder();
+        private final TimeColumn.Builder lastSeen = TimeColumn.builder();
+
+        private void add(final Device device) {
+            this.created.add(device.id(), device.createdMillis());
+            if (!device.keyExpiryDisabled()) this.expires.add(device.id(), device.expiresMillis());
+            this.lastSeen.add(device.id(), device.lastSeenMillis());
+        }
+
+        private DeviceTimeIndex build() {
+            return new DeviceTimeIndex(this.created.build(), this.expires.build(), this.lastSeen.build());
+        }
+    }
+}
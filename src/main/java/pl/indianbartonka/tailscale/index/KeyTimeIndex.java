@@ -0,0 +1,58 @@
+package pl.indianbartonka.tailscale.index;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import pl.indianbartonka.tailscale.KeyClient;
+import pl.indianbartonka.tailscale.data.response.key.ApiKey;
+
+/**
+ * Snapshot of the key timestamps, parsed once and sorted for expiry queries in logarithmic time
+ */
+public final class KeyTimeIndex {
+
+    private final TimeColumn created;
+    private final TimeColumn expires;
+
+    private KeyTimeIndex(final TimeColumn created, final TimeColumn expires) {
+        this.created = created;
+        this.expires = expires;
+    }
+
+    public static KeyTimeIndex of(final Collection<ApiKey> keys) {
+        final TimeColumn.Builder created = TimeColumn.builder();
+        final TimeColumn.Builder expires = TimeColumn.builder();
+
+        for (final ApiKey key : keys) {
+            created.add(key.id(), key.createdMillis());
+            expires.add(key.id(), key.expiresMillis());
+        }
+
+        return new KeyTimeIndex(created.build(), expires.build());
+    }
+
+    public static KeyTimeIndex load(final KeyClient keyClient) throws IOException {
+        return of(keyClient.getKeys());
+    }
+
+    public List<String> keysExpiringBefore(final Instant instant) {
+        return this.expires.before(instant.toEpochMilli());
+    }
+
+    public List<String> keysExpiringBetween(final Instant from, final Instant to) {
+        return this.expires.between(from.toEpochMilli(), to.toEpochMilli());
+    }
+
+    public List<String> keysCreatedBefore(final Instant instant) {
+        return this.created.before(instant.toEpochMilli());
+    }
+
+    public TimeColumn getCreated() {
+        return this.created;
+    }
+
+    public TimeColumn getExpires() {
+        return this.expires;
+    }
+}
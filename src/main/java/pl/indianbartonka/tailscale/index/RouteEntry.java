@@ -0,0 +1,18 @@
+package pl.indianbartonka.tailscale.index;
+
+import pl.indianbartonka.tailscale.data.response.device.Device;
+
+/**
+ * One subnet route of one device
+ *
+ * @param route the route as returned by the API
+ */
+public record RouteEntry(Cidr cidr, String route, Device device, boolean advertised, boolean enabled) {
+
+    /**
+     * @return advertised by the device, but not approved yet
+     */
+    public boolean isPending() {
+        return this.advertised && !this.enabled;
+    }
+}
@@ -0,0 +1,319 @@
+package pl.indianbartonka.tailscale.index;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+import org.jetbrains.annotations.Nullable;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.bulk.BulkOperation;
+import pl.indianbartonka.tailscale.bulk.BulkResult;
+import pl.indianbartonka.tailscale.data.request.RoutesRequest;
+import pl.indianbartonka.tailscale.data.response.RoutesResponse;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+
+/**
+ * Snapshot of the advertised and enabled subnet routes in a binary trie of the parsed prefixes, one trie per address family.
+ * Lookups and overlap checks walk at most one path of the trie instead of comparing every pair of routes.
+ * Exit node routes ({@code 0.0.0.0/0} and {@code ::/0}) are kept as well and match every address. Build a new one after the inventory changed
+ */
+public final class RouteIndex {
+
+    private final Node ipv4;
+    private final Node ipv6;
+    private final List<RouteEntry> entries;
+    private final List<String> invalidRoutes;
+    private final Map<String, List<String>> enabledRoutes;
+
+    private RouteIndex() {
+        this.ipv4 = new Node();
+        this.ipv6 = new Node();
+        this.entries = new ArrayList<>();
+        this.invalidRoutes = new ArrayList<>();
+        this.enabledRoutes = new HashMap<>();
+    }
+
+    /**
+     * Builds the index from devices which already carry their routes, for example from a list requested with all fields.
+     * Devices without route lists are indexed without routes
+     */
+    public static RouteIndex of(final Collection<Device> devices) {
+        final RouteIndex index = new RouteIndex();
+        for (final Device device : devices) index.add(device, device.advertisedRoutes(), device.enabledRoutes());
+        return index;
+    }
+
+    public static RouteIndex load(final DeviceClient deviceClient) throws IOException {
+        return load(deviceClient, DeviceClient.DEFAULT_BULK_CONCURRENCY);
+    }
+
+    public static RouteIndex load(final DeviceClient deviceClient, final int maxConcurrency) throws IOException {
+        return TailscaleClient.await(loadAsync(deviceClient, maxConcurrency));
+    }
+
+    /**
+     * The device list leaves the routes out, they are read with one {@code getRoutes} call per device which doesn't carry them.
+     * Fails with the first failed read, an index missing the routes of some devices would report them as unrouted
+     *
+     * @param maxConcurrency how many route reads are in flight at the same time
+     */
+    public static CompletableFuture<RouteIndex> loadAsync(final DeviceClient deviceClient, final int maxConcurrency) {
+        return deviceClient.getDevicesAsync().thenCompose(devices -> {
+            final List<String> routeReads = new ArrayList<>();
+            for (final Device device : devices) {
+                if (device.advertisedRoutes() == null || device.enabledRoutes() == null) routeReads.add(device.id());
+            }
+
+            return new BulkOperation<>(maxConcurrency, deviceClient::getRoutesAsync).runAsync(routeReads).thenApply(routes -> {
+                if (!routes.isSuccessful()) throw routes.failures().values().iterator().next();
+
+                final RouteIndex index = new RouteIndex();
+                for (final Device device : devices) {
+                    final RoutesResponse response = routes.successes().get(device.id());
+                    if (response == null) {
+                        index.add(device, device.advertisedRoutes(), device.enabledRoutes());
+                    } else {
+                        index.add(device, response.advertisedRoutes(), response.enabledRoutes());
+                    }
+                }
+                return index;
+            });
+        });
+    }
+
+    private void add(final Device device, @Nullable final List<String> advertisedRoutes, @Nullable final List<String> enabledRoutes) {
+        final Set<String> advertised = advertisedRoutes == null ? Set.of() : new LinkedHashSet<>(advertisedRoutes);
+        final Set<String> enabled = enabledRoutes == null ? Set.of() : new LinkedHashSet<>(enabledRoutes);
+        final Set<String> routes = new LinkedHashSet<>(advertised);
+        routes.addAll(enabled);
+
+        this.enabledRoutes.put(device.id(), List.copyOf(enabled));
+
+        for (final String route : routes) {
+            final Cidr cidr;
+            try {
+                cidr = Cidr.parse(route);
+            } catch (final IllegalArgumentException exception) {
+                this.invalidRoutes.add(route);
+                continue;
+            }
+
+            final RouteEntry entry = new RouteEntry(cidr, route, device, advertised.contains(route), enabled.contains(route));
+
+            this.node(cidr, true).add(entry);
+            this.entries.add(entry);
+        }
+    }
+
+    /**
+     * @return the node of the prefix, {@code null} when it doesn't exist and {@code create} is false
+     */
+    private Node node(final Cidr cidr, final boolean create) {
+        Node node = cidr.ipv6() ? this.ipv6 : this.ipv4;
+
+        for (int i = 0; i < cidr.prefixLength() && node != null; i++) {
+            node = create ? node.childOrCreate(cidr.bit(i)) : node.child(cidr.bit(i));
+        }
+
+        return node;
+    }
+
+    /**
+     * Longest-prefix match: the routes of the most specific prefix containing the address or prefix
+     *
+     * @param enabledOnly only consider approved routes, which are the ones actually serving traffic
+     * @return routes of every device with that prefix, empty when nothing matches
+     */
+    public List<RouteEntry> longestMatch(final String addressOrPrefix, final boolean enabledOnly) {
+        final Cidr cidr = Cidr.parse(addressOrPrefix);
+        Node node = cidr.ipv6() ? this.ipv6 : this.ipv4;
+        List<RouteEntry> best = List.of();
+
+        for (int i = 0; node != null; i++) {
+            final List<RouteEntry> matching = node.entries(enabledOnly);
+            if (!matching.isEmpty()) best = matching;
+            if (i == cidr.prefixLength()) break;
+
+            node = node.child(cidr.bit(i));
+        }
+
+        return best;
+    }
+
+    /**
+     * @return devices serving the address with an enabled route of the most specific prefix
+     */
+    public List<Device> routersFor(final String address) {
+        final List<Device> devices = new ArrayList<>();
+        for (final RouteEntry entry : this.longestMatch(address, true)) devices.add(entry.device());
+        return devices;
+    }
+
+    /**
+     * @return every route containing, contained in or equal to the prefix
+     */
+    public List<RouteEntry> overlapping(final String prefix) {
+        final Cidr cidr = Cidr.parse(prefix);
+        final List<RouteEntry> result = new ArrayList<>();
+        Node node = cidr.ipv6() ? this.ipv6 : this.ipv4;
+
+        for (int i = 0; i < cidr.prefixLength() && node != null; i++) {
+            result.addAll(node.entries(false));
+            node = node.child(cidr.bit(i));
+        }
+
+        if (node != null) node.collect(result);
+        return result;
+    }
+
+    /**
+     * Pairs of routes where one prefix lies inside another, shorter one. Identical prefixes of different devices
+     * are redundant routers rather than overlaps, and exit node routes contain everything, neither is reported
+     */
+    public List<RouteOverlap> overlaps() {
+        final List<RouteOverlap> overlaps = new ArrayList<>();
+        this.collectOverlaps(this.ipv4, overlaps);
+        this.collectOverlaps(this.ipv6, overlaps);
+        return overlaps;
+    }
+
+    private void collectOverlaps(final Node root, final List<RouteOverlap> overlaps) {
+        final Deque<Node> nodes = new ArrayDeque<>();
+        final Deque<List<RouteEntry>> ancestors = new ArrayDeque<>();
+
+        // The root holds the exit node routes, the walk starts below it
+        for (final Node child : root.children) {
+            if (child == null) continue;
+            nodes.push(child);
+            ancestors.push(List.of());
+        }
+
+        while (!nodes.isEmpty()) {
+            final Node node = nodes.pop();
+            List<RouteEntry> above = ancestors.pop();
+
+            if (node.entries != null) {
+                for (final RouteEntry outer : above) {
+                    for (final RouteEntry inner : node.entries) overlaps.add(new RouteOverlap(outer, inner));
+                }
+
+                final List<RouteEntry> extended = new ArrayList<>(above.size() + node.entries.size());
+                extended.addAll(above);
+                extended.addAll(node.entries);
+                above = extended;
+            }
+
+            for (final Node child : node.children) {
+                if (child == null) continue;
+                nodes.push(child);
+                ancestors.push(above);
+            }
+        }
+    }
+
+    /**
+     * @return routes advertised by their device but not approved yet
+     */
+    public List<RouteEntry> pending() {
+        final List<RouteEntry> pending = new ArrayList<>();
+        for (final RouteEntry entry : this.entries) {
+            if (entry.isPending()) pending.add(entry);
+        }
+        return pending;
+    }
+
+    /**
+     * Enables every pending route accepted by the policy with one {@code setRoutes} call per device.
+     * The routes enabled on the device when the index was built stay enabled
+     */
+    public BulkResult<RoutesResponse> approvePending(final DeviceClient deviceClient, final Predicate<RouteEntry> policy, final int maxConcurrency) {
+        final Map<String, List<String>> routesByDevice = new LinkedHashMap<>();
+
+        for (final RouteEntry entry : this.pending()) {
+            if (!policy.test(entry)) continue;
+
+            routesByDevice.computeIfAbsent(entry.device().id(), deviceId -> new ArrayList<>(this.enabledRoutes.get(deviceId))).add(entry.route());
+        }
+
+        return new BulkOperation<>(maxConcurrency, deviceId -> deviceClient.setRoutesAsync(deviceId, new RoutesRequest(routesByDevice.get(deviceId))))
+                .run(routesByDevice.keySet());
+    }
+
+    public List<RouteEntry> getEntries() {
+        return Collections.unmodifiableList(this.entries);
+    }
+
+    /**
+     * @return routes which couldn't be parsed as a prefix and are left out of the index
+     */
+    public List<String> getInvalidRoutes() {
+        return Collections.unmodifiableList(this.invalidRoutes);
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    private static final class Node {
+
+        private final Node[] children = new Node[2];
+        private List<RouteEntry> entries;
+
+        private Node child(final int bit) {
+            return this.children[bit];
+        }
+
+        private Node childOrCreate(final int bit) {
+            Node child = this.children[bit];
+            if (child == null) {
+                child = new Node();
+                this.children[bit] = child;
+            }
+            return child;
+        }
+
+        private void add(final RouteEntry entry) {
+            if (this.entries == null) this.entries = new ArrayList<>(1);
+            this.entries.add(entry);
+        }
+
+        private List<RouteEntry> entries(final boolean enabledOnly) {
+            if (this.entries == null) return List.of();
+            if (!enabledOnly) return this.entries;
+
+            final List<RouteEntry> enabled = new ArrayList<>();
+            for (final RouteEntry entry : this.entries) {
+                if (entry.enabled()) enabled.add(entry);
+            }
+            return enabled;
+        }
+
+        /**
+         * Adds the routes of this node and of every node below it
+         */
+        private void collect(final List<RouteEntry> result) {
+            final Deque<Node> nodes = new ArrayDeque<>();
+            nodes.push(this);
+
+            while (!nodes.isEmpty()) {
+                final Node node = nodes.pop();
+                if (node.entries != null) result.addAll(node.entries);
+
+                for (final Node child : node.children) {
+                    if (child != null) nodes.push(child);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package pl.indianbartonka.tailscale.index;
+
+/**
+ * Two routes where {@code inner} is a more specific part of {@code outer}
+ */
+public record RouteOverlap(RouteEntry outer, RouteEntry inner) {
+}
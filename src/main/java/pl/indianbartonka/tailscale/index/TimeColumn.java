@@ -0,0 +1,193 @@
+package pl.indianbartonka.tailscale.index;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import pl.indianbartonka.tailscale.data.Timestamps;
+
+/**
+ * Ids sorted by one of their timestamps, kept in two parallel arrays. Range queries are two binary searches
+ * and return views of the sorted ids, nothing gets parsed or scanned
+ */
+public final class TimeColumn {
+
+    private final long[] times;
+    private final String[] ids;
+
+    private TimeColumn(final long[] times, final String[] ids) {
+        this.times = times;
+        this.ids = ids;
+    }
+
+    /**
+     * @return ids with a timestamp strictly before the given epoch milliseconds, oldest first
+     */
+    public List<String> before(final long epochMillis) {
+        return this.view(0, this.lowerBound(epochMillis));
+    }
+
+    /**
+     * @return ids with a timestamp at or after the given epoch milliseconds, oldest first
+     */
+    public List<String> atOrAfter(final long epochMillis) {
+        return this.view(this.lowerBound(epochMillis), this.ids.length);
+    }
+
+    /**
+     * @return ids with a timestamp in {@code [from, to)}, oldest first
+     */
+    public List<String> between(final long fromEpochMillis, final long toEpochMillis) {
+        final int from = this.lowerBound(fromEpochMillis);
+        return this.view(from, Math.max(from, this.lowerBound(toEpochMillis)));
+    }
+
+    public int countBefore(final long epochMillis) {
+        return this.lowerBound(epochMillis);
+    }
+
+    /**
+     * @return the oldest timestamp, {@link Timestamps#UNKNOWN} when the column is empty
+     */
+    public long oldest() {
+        return this.times.length == 0 ? Timestamps.UNKNOWN : this.times[0];
+    }
+
+    /**
+     * @return the newest timestamp, {@link Timestamps#UNKNOWN} when the column is empty
+     */
+    public long newest() {
+        return this.times.length == 0 ? Timestamps.UNKNOWN : this.times[this.times.length - 1];
+    }
+
+    public int size() {
+        return this.ids.length;
+    }
+
+    private List<String> view(final int from, final int to) {
+        return Collections.unmodifiableList(Arrays.asList(this.ids).subList(from, to));
+    }
+
+    /**
+     * @return index of the first timestamp that is not before the given one
+     */
+    private int lowerBound(final long epochMillis) {
+        int low = 0;
+        int high = this.times.length;
+
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (this.times[middle] < epochMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Collects id and timestamp pairs, entries with an unknown timestamp are left out
+     */
+    static final class Builder {
+
+        private long[] times;
+        private String[] ids;
+        private int size;
+
+        private Builder() {
+            this.times = new long[64];
+            this.ids = new String[64];
+        }
+
+        void add(final String id, final long epochMillis) {
+            if (id == null || epochMillis == Timestamps.UNKNOWN) return;
+
+            if (this.size == this.times.length) {
+                this.times = Arrays.copyOf(this.times, this.size * 2);
+                this.ids = Arrays.copyOf(this.ids, this.size * 2);
+            }
+
+            this.times[this.size] = epochMillis;
+            this.ids[this.size] = id;
+            this.size++;
+        }
+
+        TimeColumn build() {
+            final long[] times = Arrays.copyOf(this.times, this.size);
+            final String[] ids = Arrays.copyOf(this.ids, this.size);
+            sort(times, ids, 0, this.size - 1);
+
+            return new TimeColumn(times, ids);
+        }
+
+        /**
+         * Sorts both arrays by the timestamps without boxing
+         */
+        private static void sort(final long[] times, final String[] ids, final int from, final int to) {
+            int low = from;
+            int high = to;
+
+            while (low < high) {
+                if (high - low < 16) {
+                    insertionSort(times, ids, low, high);
+                    return;
+                }
+
+                final long pivot = median(times[low], times[(low + high) >>> 1], times[high]);
+                int left = low;
+                int right = high;
+
+                while (left <= right) {
+                    while (times[left] < pivot) left++;
+                    while (times[right] > pivot) right--;
+                    if (left <= right) swap(times, ids, left++, right--);
+                }
+
+                // Recurse into the smaller half to keep the stack shallow
+                if (right - low < high - left) {
+                    sort(times, ids, low, right);
+                    low = left;
+                } else {
+                    sort(times, ids, left, high);
+                    high = right;
+                }
+            }
+        }
+
+        private static void insertionSort(final long[] times, final String[] ids, final int from, final int to) {
+            for (int i = from + 1; i <= to; i++) {
+                final long time = times[i];
+                final String id = ids[i];
+                int j = i - 1;
+
+                while (j >= from && times[j] > time) {
+                    times[j + 1] = times[j];
+                    ids[j + 1] = ids[j];
+                    j--;
+                }
+
+                times[j + 1] = time;
+                ids[j + 1] = id;
+            }
+        }
+
+        private static long median(final long first, final long second, final long third) {
+            return Math.max(Math.min(first, second), Math.min(Math.max(first, second), third));
+        }
+
+        private static void swap(final long[] times, final String[] ids, final int first, final int second) {
+            final long time = times[first];
+            times[first] = times[second];
+            times[second] = time;
+
+            final String id = ids[first];
+            ids[first] = ids[second];
+            ids[second] = id;
+        }
+    }
+}
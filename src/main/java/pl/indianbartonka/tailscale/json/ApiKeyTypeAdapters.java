@@ -0,0 +1,342 @@
+package pl.indianbartonka.tailscale.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import pl.indianbartonka.tailscale.data.request.ApiKeyRequest;
+import pl.indianbartonka.tailscale.data.response.key.ApiKey;
+import pl.indianbartonka.tailscale.data.response.key.ApiKeyResponse;
+import pl.indianbartonka.tailscale.data.response.key.ApiKeysResponse;
+import pl.indianbartonka.tailscale.data.response.key.Capabilities;
+import pl.indianbartonka.tailscale.data.response.key.Create;
+import pl.indianbartonka.tailscale.data.response.key.Devices;
+
+import static pl.indianbartonka.tailscale.json.JsonStreams.readBoolean;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readLong;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readString;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readStringList;
+import static pl.indianbartonka.tailscale.json.JsonStreams.skipNull;
+import static pl.indianbartonka.tailscale.json.JsonStreams.writeStringList;
+
+/**
+ * Streaming adapters for the key records
+ */
+public final class ApiKeyTypeAdapters {
+
+    public static final TypeAdapter<Capabilities> CAPABILITIES = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final Capabilities capabilities) throws IOException {
+            if (capabilities == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("devices");
+
+            final Devices devices = capabilities.devices();
+            if (devices == null) {
+                writer.nullValue();
+            } else {
+                writer.beginObject();
+                writer.name("create");
+
+                final Create create = devices.create();
+                if (create == null) {
+                    writer.nullValue();
+                } else {
+                    writer.beginObject();
+                    writer.name("reusable").value(create.reusable());
+                    writer.name("ephemeral").value(create.ephemeral());
+                    writer.name("preauthorized").value(create.preauthorized());
+                    writer.name("tags");
+                    writeStringList(writer, create.tags());
+                    writer.endObject();
+                }
+                writer.endObject();
+            }
+            writer.endObject();
+        }
+
+        @Override
+        public Capabilities read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            Devices devices = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("devices")) {
+                    devices = readDevices(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new Capabilities(devices);
+        }
+    };
+
+    public static final TypeAdapter<ApiKey> API_KEY = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final ApiKey key) throws IOException {
+            if (key == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("id").value(key.id());
+            writer.name("keyType").value(key.keyType());
+            writer.name("expirySeconds").value(key.expirySeconds());
+            writer.name("created").value(key.created());
+            writer.name("expires").value(key.expires());
+            writer.name("capabilities");
+            CAPABILITIES.write(writer, key.capabilities());
+            writer.name("description").value(key.description());
+            writer.name("userId").value(key.userId());
+            writer.endObject();
+        }
+
+        @Override
+        public ApiKey read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            String id = null;
+            String keyType = null;
+            long expirySeconds = 0;
+            String created = null;
+            String expires = null;
+            Capabilities capabilities = null;
+            String description = null;
+            String userId = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "id" -> id = readString(reader);
+                    case "keyType" -> keyType = readString(reader);
+                    case "expirySeconds" -> expirySeconds = readLong(reader);
+                    case "created" -> created = readString(reader);
+                    case "expires" -> expires = readString(reader);
+                    case "capabilities" -> capabilities = CAPABILITIES.read(reader);
+                    case "description" -> description = readString(reader);
+                    case "userId" -> userId = readString(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new ApiKey(id, keyType, expirySeconds, created, expires, capabilities, description, userId);
+        }
+    };
+
+    public static final TypeAdapter<ApiKeysResponse> API_KEYS_RESPONSE = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final ApiKeysResponse response) throws IOException {
+            if (response == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("keys");
+            if (response.keys() == null) {
+                writer.nullValue();
+            } else {
+                writer.beginArray();
+                for (final ApiKey key : response.keys()) API_KEY.write(writer, key);
+                writer.endArray();
+            }
+            writer.endObject();
+        }
+
+        @Override
+        public ApiKeysResponse read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            List<ApiKey> keys = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("keys") && !skipNull(reader)) {
+                    keys = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) keys.add(API_KEY.read(reader));
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new ApiKeysResponse(keys);
+        }
+    };
+
+    public static final TypeAdapter<ApiKeyResponse> API_KEY_RESPONSE = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final ApiKeyResponse key) throws IOException {
+            if (key == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("id").value(key.id());
+            writer.name("key").value(key.key());
+            writer.name("keyType").value(key.keyType());
+            writer.name("expirySeconds").value(key.expirySeconds());
+            writer.name("created").value(key.created());
+            writer.name("expires").value(key.expires());
+            writer.name("revoked").value(key.revoked());
+            writer.name("capabilities");
+            CAPABILITIES.write(writer, key.capabilities());
+            writer.name("scopes");
+            writeStringList(writer, key.scopes());
+            writer.name("tags");
+            writeStringList(writer, key.tags());
+            writer.name("description").value(key.description());
+            writer.name("invalid").value(key.invalid());
+            writer.name("userId").value(key.userId());
+            writer.endObject();
+        }
+
+        @Override
+        public ApiKeyResponse read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            String id = null;
+            String key = null;
+            String keyType = null;
+            long expirySeconds = 0;
+            String created = null;
+            String expires = null;
+            String revoked = null;
+            Capabilities capabilities = null;
+            List<String> scopes = null;
+            List<String> tags = null;
+            String description = null;
+            boolean invalid = false;
+            String userId = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "id" -> id = readString(reader);
+                    case "key" -> key = readString(reader);
+                    case "keyType" -> keyType = readString(reader);
+                    case "expirySeconds" -> expirySeconds = readLong(reader);
+                    case "created" -> created = readString(reader);
+                    case "expires" -> expires = readString(reader);
+                    case "revoked" -> revoked = readString(reader);
+                    case "capabilities" -> capabilities = CAPABILITIES.read(reader);
+                    case "scopes" -> scopes = readStringList(reader);
+                    case "tags" -> tags = readStringList(reader);
+                    case "description" -> description = readString(reader);
+                    case "invalid" -> invalid = readBoolean(reader);
+                    case "userId" -> userId = readString(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new ApiKeyResponse(id, key, keyType, expirySeconds, created, expires, revoked, capabilities, scopes, tags, description, invalid, userId);
+        }
+    };
+
+    public static final TypeAdapter<ApiKeyRequest> API_KEY_REQUEST = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final ApiKeyRequest request) throws IOException {
+            if (request == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("description").value(request.description());
+            writer.name("capabilities");
+            CAPABILITIES.write(writer, request.capabilities());
+            writer.name("expirySeconds").value(request.expirySeconds());
+            writer.name("scopes");
+            writeStringList(writer, request.scopes());
+            writer.name("tags");
+            writeStringList(writer, request.tags());
+            writer.endObject();
+        }
+
+        @Override
+        public ApiKeyRequest read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            String description = null;
+            Capabilities capabilities = null;
+            long expirySeconds = 0;
+            List<String> scopes = null;
+            List<String> tags = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "description" -> description = readString(reader);
+                    case "capabilities" -> capabilities = CAPABILITIES.read(reader);
+                    case "expirySeconds" -> expirySeconds = readLong(reader);
+                    case "scopes" -> scopes = readStringList(reader);
+                    case "tags" -> tags = readStringList(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new ApiKeyRequest(description, capabilities, expirySeconds, scopes, tags);
+        }
+    };
+
+    private ApiKeyTypeAdapters() {
+    }
+
+    private static Devices readDevices(final JsonReader reader) throws IOException {
+        if (skipNull(reader)) return null;
+
+        Create create = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("create")) {
+                create = readCreate(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Devices(create);
+    }
+
+    private static Create readCreate(final JsonReader reader) throws IOException {
+        if (skipNull(reader)) return null;
+
+        boolean reusable = false;
+        boolean ephemeral = false;
+        boolean preauthorized = false;
+        List<String> tags = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "reusable" -> reusable = readBoolean(reader);
+                case "ephemeral" -> ephemeral = readBoolean(reader);
+                case "preauthorized" -> preauthorized = readBoolean(reader);
+                case "tags" -> tags = readStringList(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Create(reusable, ephemeral, preauthorized, tags);
+    }
+}
@@ -0,0 +1,166 @@
+package pl.indianbartonka.tailscale.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import pl.indianbartonka.tailscale.data.response.device.CompactDevice;
+
+import static pl.indianbartonka.tailscale.json.JsonStreams.readBoolean;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readRawJson;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readString;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readStringList;
+import static pl.indianbartonka.tailscale.json.JsonStreams.skipNull;
+import static pl.indianbartonka.tailscale.json.JsonStreams.writeStringList;
+
+/**
+ * Decodes the device JSON straight into {@link CompactDevice}, sharing low-cardinality values through a {@link StringDictionary}
+ */
+public class CompactDeviceTypeAdapter extends TypeAdapter<CompactDevice> {
+
+    private final StringDictionary dictionary;
+
+    public CompactDeviceTypeAdapter(final StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Reads the {@code devices} array of a device list response
+     */
+    public List<CompactDevice> readDevices(final JsonReader reader) throws IOException {
+        if (skipNull(reader)) return null;
+
+        List<CompactDevice> devices = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("devices") && !skipNull(reader)) {
+                devices = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) devices.add(this.read(reader));
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return devices;
+    }
+
+    @Override
+    public void write(final JsonWriter writer, final CompactDevice device) throws IOException {
+        if (device == null) {
+            writer.nullValue();
+            return;
+        }
+
+        writer.beginObject();
+        writer.name("addresses");
+        writeStringList(writer, device.addresses());
+        writer.name("authorized").value(device.authorized());
+        writer.name("blocksIncomingConnections").value(device.blocksIncomingConnections());
+        writer.name("clientVersion").value(device.clientVersion());
+        writer.name("created").value(device.created());
+        writer.name("expires").value(device.expires());
+        writer.name("hostname").value(device.hostname());
+        writer.name("id").value(device.id());
+        writer.name("isExternal").value(device.isExternal());
+        writer.name("keyExpiryDisabled").value(device.keyExpiryDisabled());
+        writer.name("lastSeen").value(device.lastSeen());
+        writer.name("machineKey").value(device.machineKey());
+        writer.name("name").value(device.name());
+        writer.name("nodeId").value(device.nodeId());
+        writer.name("nodeKey").value(device.nodeKey());
+        writer.name("os").value(device.os());
+        writer.name("enabledRoutes");
+        writeStringList(writer, device.enabledRoutes());
+        writer.name("advertisedRoutes");
+        writeStringList(writer, device.advertisedRoutes());
+        writer.name("clientConnectivity");
+        DeviceTypeAdapter.writeClientConnectivity(writer, device.clientConnectivity());
+        writer.name("tags");
+        writeStringList(writer, device.tags());
+        writer.name("tailnetLockError").value(device.tailnetLockError());
+        writer.name("tailnetLockKey").value(device.tailnetLockKey());
+        writer.name("postureIdentity");
+        DeviceTypeAdapter.writePostureIdentity(writer, device.postureIdentity());
+        writer.name("updateAvailable").value(device.updateAvailable());
+        writer.name("user").value(device.user());
+        writer.endObject();
+    }
+
+    @Override
+    public CompactDevice read(final JsonReader reader) throws IOException {
+        if (skipNull(reader)) return null;
+
+        List<String> addresses = null;
+        boolean authorized = false;
+        boolean blocksIncomingConnections = false;
+        String clientVersion = null;
+        String created = null;
+        String expires = null;
+        String hostname = null;
+        String id = null;
+        boolean isExternal = false;
+        boolean keyExpiryDisabled = false;
+        String lastSeen = null;
+        String machineKey = null;
+        String name = null;
+        String nodeId = null;
+        String nodeKey = null;
+        String os = null;
+        List<String> enabledRoutes = null;
+        List<String> advertisedRoutes = null;
+        byte[] clientConnectivity = null;
+        List<String> tags = null;
+        String tailnetLockError = null;
+        String tailnetLockKey = null;
+        byte[] postureIdentity = null;
+        boolean updateAvailable = false;
+        String user = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "addresses" -> addresses = readStringList(reader);
+                case "authorized" -> authorized = readBoolean(reader);
+                case "blocksIncomingConnections" -> blocksIncomingConnections = readBoolean(reader);
+                case "clientVersion" -> clientVersion = this.dictionary.intern(readString(reader));
+                case "created" -> created = readString(reader);
+                case "expires" -> expires = readString(reader);
+                case "hostname" -> hostname = readString(reader);
+                case "id" -> id = readString(reader);
+                case "isExternal" -> isExternal = readBoolean(reader);
+                case "keyExpiryDisabled" -> keyExpiryDisabled = readBoolean(reader);
+                case "lastSeen" -> lastSeen = readString(reader);
+                case "machineKey" -> machineKey = readString(reader);
+                case "name" -> name = readString(reader);
+                case "nodeId" -> nodeId = readString(reader);
+                case "nodeKey" -> nodeKey = readString(reader);
+                case "os" -> os = this.dictionary.intern(readString(reader));
+                case "enabledRoutes" -> enabledRoutes = this.dictionary.intern(readStringList(reader));
+                case "advertisedRoutes" -> advertisedRoutes = this.dictionary.intern(readStringList(reader));
+                case "clientConnectivity" -> clientConnectivity = readRawJson(reader);
+                case "tags" -> tags = this.dictionary.intern(readStringList(reader));
+                case "tailnetLockError" -> tailnetLockError = this.dictionary.intern(readString(reader));
+                case "tailnetLockKey" -> tailnetLockKey = readString(reader);
+                case "postureIdentity" -> postureIdentity = readRawJson(reader);
+                case "updateAvailable" -> updateAvailable = readBoolean(reader);
+                case "user" -> user = this.dictionary.intern(readString(reader));
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new CompactDevice(addresses, authorized, blocksIncomingConnections, clientVersion, created, expires, hostname, id,
+                isExternal, keyExpiryDisabled, lastSeen, machineKey, name, nodeId, nodeKey, os, enabledRoutes, advertisedRoutes,
+                clientConnectivity, tags, tailnetLockError, tailnetLockKey, postureIdentity, updateAvailable, user);
+    }
+
+    public StringDictionary getDictionary() {
+        return this.dictionary;
+    }
+}
@@ -0,0 +1,111 @@
+package pl.indianbartonka.tailscale.json;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import pl.indianbartonka.tailscale.reconcile.DeviceChange;
+
+import static pl.indianbartonka.tailscale.json.JsonStreams.readBoolean;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readString;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readStringList;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readStringMap;
+import static pl.indianbartonka.tailscale.json.JsonStreams.skipNull;
+import static pl.indianbartonka.tailscale.json.JsonStreams.writeStringList;
+import static pl.indianbartonka.tailscale.json.JsonStreams.writeStringMap;
+
+/**
+ * Streaming adapter for {@link DeviceChange}, the kind of change is kept in a {@code type} field
+ */
+public final class DeviceChangeTypeAdapter extends TypeAdapter<DeviceChange> {
+
+    public static final DeviceChangeTypeAdapter INSTANCE = new DeviceChangeTypeAdapter();
+
+    private DeviceChangeTypeAdapter() {
+    }
+
+    @Override
+    public void write(final JsonWriter writer, final DeviceChange change) throws IOException {
+        if (change == null) {
+            writer.nullValue();
+            return;
+        }
+
+        writer.beginObject();
+        writer.name("deviceId").value(change.deviceId());
+
+        if (change instanceof final DeviceChange.Rename rename) {
+            writer.name("type").value("rename");
+            writer.name("name").value(rename.name());
+        } else if (change instanceof final DeviceChange.SetTags setTags) {
+            writer.name("type").value("setTags");
+            writer.name("tags");
+            writeStringMap(writer, setTags.tags());
+        } else if (change instanceof final DeviceChange.SetAuthorized setAuthorized) {
+            writer.name("type").value("setAuthorized");
+            writer.name("authorized").value(setAuthorized.authorized());
+        } else if (change instanceof final DeviceChange.SetKeyExpiryDisabled setKeyExpiryDisabled) {
+            writer.name("type").value("setKeyExpiryDisabled");
+            writer.name("keyExpiryDisabled").value(setKeyExpiryDisabled.keyExpiryDisabled());
+        } else if (change instanceof final DeviceChange.SetRoutes setRoutes) {
+            writer.name("type").value("setRoutes");
+            writer.name("routes");
+            writeStringList(writer, setRoutes.routes());
+        } else if (change instanceof final DeviceChange.SetAttribute setAttribute) {
+            writer.name("type").value("setAttribute");
+            writer.name("key").value(setAttribute.key());
+            writer.name("value").value(setAttribute.value());
+        } else if (change instanceof final DeviceChange.DeleteAttribute deleteAttribute) {
+            writer.name("type").value("deleteAttribute");
+            writer.name("key").value(deleteAttribute.key());
+        }
+
+        writer.endObject();
+    }
+
+    @Override
+    public DeviceChange read(final JsonReader reader) throws IOException {
+        if (skipNull(reader)) return null;
+
+        String type = null;
+        String deviceId = null;
+        String name = null;
+        Map<String, String> tags = null;
+        boolean flag = false;
+        List<String> routes = null;
+        String key = null;
+        String value = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "type" -> type = readString(reader);
+                case "deviceId" -> deviceId = readString(reader);
+                case "name" -> name = readString(reader);
+                case "tags" -> tags = readStringMap(reader);
+                case "authorized", "keyExpiryDisabled" -> flag = readBoolean(reader);
+                case "routes" -> routes = readStringList(reader);
+                case "key" -> key = readString(reader);
+                case "value" -> value = readString(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (type == null) throw new JsonParseException("Device change without type at " + reader.getPath());
+
+        return switch (type) {
+            case "rename" -> new DeviceChange.Rename(deviceId, name);
+            case "setTags" -> new DeviceChange.SetTags(deviceId, tags);
+            case "setAuthorized" -> new DeviceChange.SetAuthorized(deviceId, flag);
+            case "setKeyExpiryDisabled" -> new DeviceChange.SetKeyExpiryDisabled(deviceId, flag);
+            case "setRoutes" -> new DeviceChange.SetRoutes(deviceId, routes);
+            case "setAttribute" -> new DeviceChange.SetAttribute(deviceId, key, value);
+            case "deleteAttribute" -> new DeviceChange.DeleteAttribute(deviceId, key);
+            default -> throw new JsonParseException("Unknown device change " + type);
+        };
+    }
+}
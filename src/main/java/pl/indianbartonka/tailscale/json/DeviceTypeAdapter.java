@@ -0,0 +1,347 @@
+package pl.indianbartonka.tailscale.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.data.response.device.DevicesResponse;
+
+import static pl.indianbartonka.tailscale.json.JsonStreams.readBoolean;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readBooleanObject;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readDoubleObject;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readString;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readStringList;
+import static pl.indianbartonka.tailscale.json.JsonStreams.skipNull;
+import static pl.indianbartonka.tailscale.json.JsonStreams.writeStringList;
+
+/**
+ * Streaming adapter for {@link Device} and its nested records, decodes without reflection
+ */
+public class DeviceTypeAdapter extends TypeAdapter<Device> {
+
+    public static final DeviceTypeAdapter INSTANCE = new DeviceTypeAdapter();
+
+    static final TypeAdapter<DevicesResponse> DEVICES_RESPONSE = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final DevicesResponse value) throws IOException {
+            if (value == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("devices");
+            if (value.devices() == null) {
+                writer.nullValue();
+            } else {
+                writer.beginArray();
+                for (final Device device : value.devices()) INSTANCE.write(writer, device);
+                writer.endArray();
+            }
+            writer.endObject();
+        }
+
+        @Override
+        public DevicesResponse read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            List<Device> devices = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("devices") && !skipNull(reader)) {
+                    devices = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) devices.add(INSTANCE.read(reader));
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new DevicesResponse(devices);
+        }
+    };
+
+    private DeviceTypeAdapter() {
+    }
+
+    @Override
+    public void write(final JsonWriter writer, final Device device) throws IOException {
+        if (device == null) {
+            writer.nullValue();
+            return;
+        }
+
+        writer.beginObject();
+        writer.name("addresses");
+        writeStringList(writer, device.addresses());
+        writer.name("authorized").value(device.authorized());
+        writer.name("blocksIncomingConnections").value(device.blocksIncomingConnections());
+        writer.name("clientVersion").value(device.clientVersion());
+        writer.name("created").value(device.created());
+        writer.name("expires").value(device.expires());
+        writer.name("hostname").value(device.hostname());
+        writer.name("id").value(device.id());
+        writer.name("isExternal").value(device.isExternal());
+        writer.name("keyExpiryDisabled").value(device.keyExpiryDisabled());
+        writer.name("lastSeen").value(device.lastSeen());
+        writer.name("machineKey").value(device.machineKey());
+        writer.name("name").value(device.name());
+        writer.name("nodeId").value(device.nodeId());
+        writer.name("nodeKey").value(device.nodeKey());
+        writer.name("os").value(device.os());
+        writer.name("enabledRoutes");
+        writeStringList(writer, device.enabledRoutes());
+        writer.name("advertisedRoutes");
+        writeStringList(writer, device.advertisedRoutes());
+        writer.name("clientConnectivity");
+        writeClientConnectivity(writer, device.clientConnectivity());
+        writer.name("tags");
+        writeStringList(writer, device.tags());
+        writer.name("tailnetLockError").value(device.tailnetLockError());
+        writer.name("tailnetLockKey").value(device.tailnetLockKey());
+        writer.name("postureIdentity");
+        writePostureIdentity(writer, device.postureIdentity());
+        writer.name("updateAvailable").value(device.updateAvailable());
+        writer.name("user").value(device.user());
+        writer.endObject();
+    }
+
+    @Override
+    public Device read(final JsonReader reader) throws IOException {
+        if (skipNull(reader)) return null;
+
+        List<String> addresses = null;
+        boolean authorized = false;
+        boolean blocksIncomingConnections = false;
+        String clientVersion = null;
+        String created = null;
+        String expires = null;
+        String hostname = null;
+        String id = null;
+        boolean isExternal = false;
+        boolean keyExpiryDisabled = false;
+        String lastSeen = null;
+        String machineKey = null;
+        String name = null;
+        String nodeId = null;
+        String nodeKey = null;
+        String os = null;
+        List<String> enabledRoutes = null;
+        List<String> advertisedRoutes = null;
+        Device.ClientConnectivity clientConnectivity = null;
+        List<String> tags = null;
+        String tailnetLockError = null;
+        String tailnetLockKey = null;
+        Device.PostureIdentity postureIdentity = null;
+        boolean updateAvailable = false;
+        String user = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "addresses" -> addresses = readStringList(reader);
+                case "authorized" -> authorized = readBoolean(reader);
+                case "blocksIncomingConnections" -> blocksIncomingConnections = readBoolean(reader);
+                case "clientVersion" -> clientVersion = readString(reader);
+                case "created" -> created = readString(reader);
+                case "expires" -> expires = readString(reader);
+                case "hostname" -> hostname = readString(reader);
+                case "id" -> id = readString(reader);
+                case "isExternal" -> isExternal = readBoolean(reader);
+                case "keyExpiryDisabled" -> keyExpiryDisabled = readBoolean(reader);
+                case "lastSeen" -> lastSeen = readString(reader);
+                case "machineKey" -> machineKey = readString(reader);
+                case "name" -> name = readString(reader);
+                case "nodeId" -> nodeId = readString(reader);
+                case "nodeKey" -> nodeKey = readString(reader);
+                case "os" -> os = readString(reader);
+                case "enabledRoutes" -> enabledRoutes = readStringList(reader);
+                case "advertisedRoutes" -> advertisedRoutes = readStringList(reader);
+                case "clientConnectivity" -> clientConnectivity = readClientConnectivity(reader);
+                case "tags" -> tags = readStringList(reader);
+                case "tailnetLockError" -> tailnetLockError = readString(reader);
+                case "tailnetLockKey" -> tailnetLockKey = readString(reader);
+                case "postureIdentity" -> postureIdentity = readPostureIdentity(reader);
+                case "updateAvailable" -> updateAvailable = readBoolean(reader);
+                case "user" -> user = readString(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Device(addresses, authorized, blocksIncomingConnections, clientVersion, created, expires, hostname, id,
+                isExternal, keyExpiryDisabled, lastSeen, machineKey, name, nodeId, nodeKey, os, enabledRoutes, advertisedRoutes,
+                clientConnectivity, tags, tailnetLockError, tailnetLockKey, postureIdentity, updateAvailable, user);
+    }
+
+    public static Device.ClientConnectivity readClientConnectivity(final JsonReader reader) throws IOException {
+        if (skipNull(reader)) return null;
+
+        List<String> endpoints = null;
+        Map<String, Device.Latency> latency = null;
+        boolean mappingVariesByDestIP = false;
+        Device.ClientSupports clientSupports = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "endpoints" -> endpoints = readStringList(reader);
+                case "latency" -> latency = readLatencyMap(reader);
+                case "mappingVariesByDestIP" -> mappingVariesByDestIP = readBoolean(reader);
+                case "clientSupports" -> clientSupports = readClientSupports(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Device.ClientConnectivity(endpoints, latency, mappingVariesByDestIP, clientSupports);
+    }
+
+    private static Map<String, Device.Latency> readLatencyMap(final JsonReader reader) throws IOException {
+        if (skipNull(reader)) return null;
+
+        final Map<String, Device.Latency> latency = new LinkedHashMap<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String region = reader.nextName();
+
+            if (skipNull(reader)) {
+                latency.put(region, null);
+                continue;
+            }
+
+            Double latencyMs = null;
+            Boolean preferred = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "latencyMs" -> latencyMs = readDoubleObject(reader);
+                    case "preferred" -> preferred = readBooleanObject(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            latency.put(region, new Device.Latency(latencyMs, preferred));
+        }
+        reader.endObject();
+
+        return latency;
+    }
+
+    private static Device.ClientSupports readClientSupports(final JsonReader reader) throws IOException {
+        if (skipNull(reader)) return null;
+
+        boolean hairPinning = false;
+        boolean ipv6 = false;
+        boolean pcp = false;
+        boolean pmp = false;
+        boolean udp = false;
+        boolean upnp = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "hairPinning" -> hairPinning = readBoolean(reader);
+                case "ipv6" -> ipv6 = readBoolean(reader);
+                case "pcp" -> pcp = readBoolean(reader);
+                case "pmp" -> pmp = readBoolean(reader);
+                case "udp" -> udp = readBoolean(reader);
+                case "upnp" -> upnp = readBoolean(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Device.ClientSupports(hairPinning, ipv6, pcp, pmp, udp, upnp);
+    }
+
+    public static Device.PostureIdentity readPostureIdentity(final JsonReader reader) throws IOException {
+        if (skipNull(reader)) return null;
+
+        List<String> serialNumbers = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("serialNumbers")) {
+                serialNumbers = readStringList(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Device.PostureIdentity(serialNumbers);
+    }
+
+    static void writePostureIdentity(final JsonWriter writer, final Device.PostureIdentity postureIdentity) throws IOException {
+        if (postureIdentity == null) {
+            writer.nullValue();
+            return;
+        }
+
+        writer.beginObject();
+        writer.name("serialNumbers");
+        writeStringList(writer, postureIdentity.serialNumbers());
+        writer.endObject();
+    }
+
+    static void writeClientConnectivity(final JsonWriter writer, final Device.ClientConnectivity connectivity) throws IOException {
+        if (connectivity == null) {
+            writer.nullValue();
+            return;
+        }
+
+        writer.beginObject();
+        writer.name("endpoints");
+        writeStringList(writer, connectivity.endpoints());
+        writer.name("latency");
+        if (connectivity.latency() == null) {
+            writer.nullValue();
+        } else {
+            writer.beginObject();
+            for (final Map.Entry<String, Device.Latency> entry : connectivity.latency().entrySet()) {
+                writer.name(entry.getKey());
+
+                final Device.Latency latency = entry.getValue();
+                if (latency == null) {
+                    writer.nullValue();
+                    continue;
+                }
+
+                writer.beginObject();
+                writer.name("latencyMs").value(latency.latencyMs());
+                writer.name("preferred").value(latency.preferred());
+                writer.endObject();
+            }
+            writer.endObject();
+        }
+        writer.name("mappingVariesByDestIP").value(connectivity.mappingVariesByDestIP());
+        writer.name("clientSupports");
+
+        final Device.ClientSupports supports = connectivity.clientSupports();
+        if (supports == null) {
+            writer.nullValue();
+        } else {
+            writer.beginObject();
+            writer.name("hairPinning").value(supports.hairPinning());
+            writer.name("ipv6").value(supports.ipv6());
+            writer.name("pcp").value(supports.pcp());
+            writer.name("pmp").value(supports.pmp());
+            writer.name("udp").value(supports.udp());
+            writer.name("upnp").value(supports.upnp());
+            writer.endObject();
+        }
+        writer.endObject();
+    }
+}
@@ -0,0 +1,279 @@
+package pl.indianbartonka.tailscale.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import pl.indianbartonka.tailscale.data.request.DnsPreferencesRequest;
+import pl.indianbartonka.tailscale.data.request.NameserversRequest;
+import pl.indianbartonka.tailscale.data.request.SearchPathsRequest;
+import pl.indianbartonka.tailscale.data.request.SplitDnsRequest;
+import pl.indianbartonka.tailscale.data.response.dns.DnsPreferences;
+import pl.indianbartonka.tailscale.data.response.dns.NameserversResponse;
+import pl.indianbartonka.tailscale.data.response.dns.SearchPathsResponse;
+import pl.indianbartonka.tailscale.data.response.dns.SplitDnsResponse;
+
+import static pl.indianbartonka.tailscale.json.JsonStreams.readBoolean;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readBooleanObject;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readStringList;
+import static pl.indianbartonka.tailscale.json.JsonStreams.skipNull;
+import static pl.indianbartonka.tailscale.json.JsonStreams.writeStringList;
+
+/**
+ * Streaming adapters for the DNS request and response records
+ */
+public final class DnsTypeAdapters {
+
+    public static final TypeAdapter<NameserversRequest> NAMESERVERS_REQUEST = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final NameserversRequest request) throws IOException {
+            if (request == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("dns");
+            writeStringList(writer, request.dns());
+            writer.endObject();
+        }
+
+        @Override
+        public NameserversRequest read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            return new NameserversRequest(readSingleList(reader, "dns"));
+        }
+    };
+
+    public static final TypeAdapter<NameserversResponse> NAMESERVERS_RESPONSE = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final NameserversResponse response) throws IOException {
+            if (response == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("dns");
+            writeStringList(writer, response.dns());
+            writer.name("magicDNS").value(response.magicDNS());
+            writer.endObject();
+        }
+
+        @Override
+        public NameserversResponse read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            List<String> dns = null;
+            Boolean magicDNS = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "dns" -> dns = readStringList(reader);
+                    case "magicDNS" -> magicDNS = readBooleanObject(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new NameserversResponse(dns, magicDNS);
+        }
+    };
+
+    public static final TypeAdapter<DnsPreferencesRequest> PREFERENCES_REQUEST = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final DnsPreferencesRequest request) throws IOException {
+            if (request == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("magicDNS").value(request.magicDNS());
+            writer.endObject();
+        }
+
+        @Override
+        public DnsPreferencesRequest read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            return new DnsPreferencesRequest(readMagicDns(reader));
+        }
+    };
+
+    public static final TypeAdapter<DnsPreferences> PREFERENCES = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final DnsPreferences preferences) throws IOException {
+            if (preferences == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("magicDNS").value(preferences.magicDNS());
+            writer.endObject();
+        }
+
+        @Override
+        public DnsPreferences read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            return new DnsPreferences(readMagicDns(reader));
+        }
+    };
+
+    public static final TypeAdapter<SearchPathsRequest> SEARCH_PATHS_REQUEST = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final SearchPathsRequest request) throws IOException {
+            if (request == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("searchPaths");
+            writeStringList(writer, request.searchPaths());
+            writer.endObject();
+        }
+
+        @Override
+        public SearchPathsRequest read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            return new SearchPathsRequest(readSingleList(reader, "searchPaths"));
+        }
+    };
+
+    public static final TypeAdapter<SearchPathsResponse> SEARCH_PATHS_RESPONSE = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final SearchPathsResponse response) throws IOException {
+            if (response == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("searchPaths");
+            writeStringList(writer, response.searchPaths());
+            writer.endObject();
+        }
+
+        @Override
+        public SearchPathsResponse read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            return new SearchPathsResponse(readSingleList(reader, "searchPaths"));
+        }
+    };
+
+    /**
+     * Split DNS bodies are a bare object of domain to nameservers
+     */
+    public static final TypeAdapter<SplitDnsRequest> SPLIT_DNS_REQUEST = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final SplitDnsRequest request) throws IOException {
+            if (request == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writeSplitDns(writer, request.domains());
+        }
+
+        @Override
+        public SplitDnsRequest read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            return new SplitDnsRequest(readSplitDns(reader));
+        }
+    };
+
+    public static final TypeAdapter<SplitDnsResponse> SPLIT_DNS_RESPONSE = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final SplitDnsResponse response) throws IOException {
+            if (response == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writeSplitDns(writer, response.domains());
+        }
+
+        @Override
+        public SplitDnsResponse read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            return new SplitDnsResponse(readSplitDns(reader));
+        }
+    };
+
+    private DnsTypeAdapters() {
+    }
+
+    private static void writeSplitDns(final JsonWriter writer, final Map<String, List<String>> domains) throws IOException {
+        writer.beginObject();
+
+        // A null value removes the domain in a PATCH, so it has to be written even when nulls are not serialized
+        final boolean serializeNulls = writer.getSerializeNulls();
+        writer.setSerializeNulls(true);
+        try {
+            if (domains != null) {
+                for (final Map.Entry<String, List<String>> entry : domains.entrySet()) {
+                    writer.name(entry.getKey());
+                    writeStringList(writer, entry.getValue());
+                }
+            }
+        } finally {
+            writer.setSerializeNulls(serializeNulls);
+        }
+
+        writer.endObject();
+    }
+
+    private static Map<String, List<String>> readSplitDns(final JsonReader reader) throws IOException {
+        final Map<String, List<String>> domains = new LinkedHashMap<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) domains.put(reader.nextName(), readStringList(reader));
+        reader.endObject();
+
+        return domains;
+    }
+
+    private static List<String> readSingleList(final JsonReader reader, final String field) throws IOException {
+        List<String> value = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(field)) {
+                value = readStringList(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return value;
+    }
+
+    private static boolean readMagicDns(final JsonReader reader) throws IOException {
+        boolean value = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("magicDNS")) {
+                value = readBoolean(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return value;
+    }
+}
@@ -0,0 +1,88 @@
+package pl.indianbartonka.tailscale.json;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Decodes the elements of one top level array field (like {@code {"devices": [...]}}) one by one,
+ * straight from the response stream. Only the current element is held in memory
+ */
+public class JsonArrayIterator<T> implements Iterator<T>, Closeable {
+
+    private final JsonReader reader;
+    private final TypeAdapter<T> adapter;
+    private boolean inArray;
+    private boolean finished;
+
+    public JsonArrayIterator(final Gson gson, final InputStream inputStream, final String fieldName, final Class<T> elementType) throws IOException {
+        this.reader = new JsonReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        this.adapter = gson.getAdapter(elementType);
+
+        try {
+            this.seek(fieldName);
+        } catch (final IOException | RuntimeException exception) {
+            this.close();
+            throw exception;
+        }
+    }
+
+    private void seek(final String fieldName) throws IOException {
+        this.reader.beginObject();
+
+        while (this.reader.hasNext()) {
+            if (this.reader.nextName().equals(fieldName) && this.reader.peek() == JsonToken.BEGIN_ARRAY) {
+                this.reader.beginArray();
+                this.inArray = true;
+                return;
+            }
+            this.reader.skipValue();
+        }
+
+        this.finished = true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.finished) return false;
+
+        try {
+            if (this.inArray && this.reader.hasNext()) return true;
+
+            this.finished = true;
+            this.close();
+            return false;
+        } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    @Override
+    public T next() {
+        if (!this.hasNext()) throw new NoSuchElementException();
+
+        try {
+            return this.adapter.read(this.reader);
+        } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.reader.close();
+        } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
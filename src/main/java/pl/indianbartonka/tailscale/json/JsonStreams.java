@@ -0,0 +1,143 @@
+package pl.indianbartonka.tailscale.json;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Null tolerant read and write helpers shared by the streaming type adapters
+ */
+final class JsonStreams {
+
+    private JsonStreams() {
+    }
+
+    static boolean skipNull(final JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.NULL) return false;
+
+        reader.nextNull();
+        return true;
+    }
+
+    static String readString(final JsonReader reader) throws IOException {
+        return skipNull(reader) ? null : reader.nextString();
+    }
+
+    static boolean readBoolean(final JsonReader reader) throws IOException {
+        return !skipNull(reader) && reader.nextBoolean();
+    }
+
+    static Boolean readBooleanObject(final JsonReader reader) throws IOException {
+        return skipNull(reader) ? null : reader.nextBoolean();
+    }
+
+    static long readLong(final JsonReader reader) throws IOException {
+        return skipNull(reader) ? 0 : reader.nextLong();
+    }
+
+    static Double readDoubleObject(final JsonReader reader) throws IOException {
+        return skipNull(reader) ? null : reader.nextDouble();
+    }
+
+    static List<String> readStringList(final JsonReader reader) throws IOException {
+        if (skipNull(reader)) return null;
+
+        final List<String> list = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) list.add(readString(reader));
+        reader.endArray();
+
+        return list;
+    }
+
+    static Map<String, String> readStringMap(final JsonReader reader) throws IOException {
+        if (skipNull(reader)) return null;
+
+        final Map<String, String> map = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) map.put(reader.nextName(), readString(reader));
+        reader.endObject();
+
+        return map;
+    }
+
+    /**
+     * Copies the next value as compact UTF-8 JSON without building objects for it
+     *
+     * @return {@code null} for a JSON null
+     */
+    static byte[] readRawJson(final JsonReader reader) throws IOException {
+        if (skipNull(reader)) return null;
+
+        final StringWriter buffer = new StringWriter();
+        final JsonWriter writer = new JsonWriter(buffer);
+        writer.setSerializeNulls(true);
+        int depth = 0;
+
+        do {
+            switch (reader.peek()) {
+                case BEGIN_OBJECT -> {
+                    reader.beginObject();
+                    writer.beginObject();
+                    depth++;
+                }
+                case END_OBJECT -> {
+                    reader.endObject();
+                    writer.endObject();
+                    depth--;
+                }
+                case BEGIN_ARRAY -> {
+                    reader.beginArray();
+                    writer.beginArray();
+                    depth++;
+                }
+                case END_ARRAY -> {
+                    reader.endArray();
+                    writer.endArray();
+                    depth--;
+                }
+                case NAME -> writer.name(reader.nextName());
+                case STRING -> writer.value(reader.nextString());
+                case NUMBER -> writer.jsonValue(reader.nextString());
+                case BOOLEAN -> writer.value(reader.nextBoolean());
+                case NULL -> {
+                    reader.nextNull();
+                    writer.nullValue();
+                }
+                default -> throw new IOException("Unexpected " + reader.peek() + " at " + reader.getPath());
+            }
+        } while (depth > 0);
+
+        writer.flush();
+        return buffer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static void writeStringList(final JsonWriter writer, final List<String> list) throws IOException {
+        if (list == null) {
+            writer.nullValue();
+            return;
+        }
+
+        writer.beginArray();
+        for (final String value : list) writer.value(value);
+        writer.endArray();
+    }
+
+    static void writeStringMap(final JsonWriter writer, final Map<String, String> map) throws IOException {
+        if (map == null) {
+            writer.nullValue();
+            return;
+        }
+
+        writer.beginObject();
+        for (final Map.Entry<String, String> entry : map.entrySet()) writer.name(entry.getKey()).value(entry.getValue());
+        writer.endObject();
+    }
+}
@@ -0,0 +1,361 @@
+package pl.indianbartonka.tailscale.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import pl.indianbartonka.tailscale.data.request.AttributesRequest;
+import pl.indianbartonka.tailscale.data.request.AuthorizedRequest;
+import pl.indianbartonka.tailscale.data.request.IpV4Request;
+import pl.indianbartonka.tailscale.data.request.KeyExpiryDisabledRequest;
+import pl.indianbartonka.tailscale.data.request.NameRequest;
+import pl.indianbartonka.tailscale.data.request.RoutesRequest;
+import pl.indianbartonka.tailscale.data.request.TagsRequest;
+import pl.indianbartonka.tailscale.data.response.AttributesResponse;
+import pl.indianbartonka.tailscale.data.response.ErrorMessage;
+import pl.indianbartonka.tailscale.data.response.RoutesResponse;
+
+import static pl.indianbartonka.tailscale.json.JsonStreams.readBoolean;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readString;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readStringList;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readStringMap;
+import static pl.indianbartonka.tailscale.json.JsonStreams.skipNull;
+import static pl.indianbartonka.tailscale.json.JsonStreams.writeStringList;
+import static pl.indianbartonka.tailscale.json.JsonStreams.writeStringMap;
+
+/**
+ * Streaming adapters for the small request and response records
+ */
+public final class MessageTypeAdapters {
+
+    public static final TypeAdapter<RoutesResponse> ROUTES_RESPONSE = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final RoutesResponse response) throws IOException {
+            if (response == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("advertisedRoutes");
+            writeStringList(writer, response.advertisedRoutes());
+            writer.name("enabledRoutes");
+            writeStringList(writer, response.enabledRoutes());
+            writer.endObject();
+        }
+
+        @Override
+        public RoutesResponse read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            List<String> advertisedRoutes = null;
+            List<String> enabledRoutes = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "advertisedRoutes" -> advertisedRoutes = readStringList(reader);
+                    case "enabledRoutes" -> enabledRoutes = readStringList(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new RoutesResponse(advertisedRoutes, enabledRoutes);
+        }
+    };
+
+    public static final TypeAdapter<AttributesResponse> ATTRIBUTES_RESPONSE = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final AttributesResponse response) throws IOException {
+            if (response == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("attributes");
+            writeStringMap(writer, response.attributes());
+            writer.name("expiries");
+            writeStringMap(writer, response.expiries());
+            writer.endObject();
+        }
+
+        @Override
+        public AttributesResponse read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            Map<String, String> attributes = null;
+            Map<String, String> expiries = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "attributes" -> attributes = readStringMap(reader);
+                    case "expiries" -> expiries = readStringMap(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new AttributesResponse(attributes, expiries);
+        }
+    };
+
+    public static final TypeAdapter<ErrorMessage> ERROR_MESSAGE = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final ErrorMessage errorMessage) throws IOException {
+            if (errorMessage == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("message").value(errorMessage.message());
+            writer.endObject();
+        }
+
+        @Override
+        public ErrorMessage read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            String message = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("message")) {
+                    message = readString(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new ErrorMessage(message);
+        }
+    };
+
+    public static final TypeAdapter<RoutesRequest> ROUTES_REQUEST = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final RoutesRequest request) throws IOException {
+            if (request == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("routes");
+            writeStringList(writer, request.routes());
+            writer.endObject();
+        }
+
+        @Override
+        public RoutesRequest read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            List<String> routes = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("routes")) {
+                    routes = readStringList(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new RoutesRequest(routes);
+        }
+    };
+
+    public static final TypeAdapter<AttributesRequest> ATTRIBUTES_REQUEST = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final AttributesRequest request) throws IOException {
+            if (request == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("value").value(request.value());
+            writer.name("expiry").value(request.expiry());
+            writer.endObject();
+        }
+
+        @Override
+        public AttributesRequest read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            String value = null;
+            String expiry = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "value" -> value = readString(reader);
+                    case "expiry" -> expiry = readString(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new AttributesRequest(value, expiry);
+        }
+    };
+
+    public static final TypeAdapter<TagsRequest> TAGS_REQUEST = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final TagsRequest request) throws IOException {
+            if (request == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("tags");
+            writeStringMap(writer, request.tags());
+            writer.endObject();
+        }
+
+        @Override
+        public TagsRequest read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            Map<String, String> tags = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("tags")) {
+                    tags = readStringMap(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new TagsRequest(tags);
+        }
+    };
+
+    public static final TypeAdapter<AuthorizedRequest> AUTHORIZED_REQUEST = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final AuthorizedRequest request) throws IOException {
+            if (request == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("authorized").value(request.authorized());
+            writer.endObject();
+        }
+
+        @Override
+        public AuthorizedRequest read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            return new AuthorizedRequest(readSingleBoolean(reader, "authorized"));
+        }
+    };
+
+    public static final TypeAdapter<KeyExpiryDisabledRequest> KEY_EXPIRY_DISABLED_REQUEST = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final KeyExpiryDisabledRequest request) throws IOException {
+            if (request == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("keyExpiryDisabled").value(request.keyExpiryDisabled());
+            writer.endObject();
+        }
+
+        @Override
+        public KeyExpiryDisabledRequest read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            return new KeyExpiryDisabledRequest(readSingleBoolean(reader, "keyExpiryDisabled"));
+        }
+    };
+
+    public static final TypeAdapter<NameRequest> NAME_REQUEST = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final NameRequest request) throws IOException {
+            if (request == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("name").value(request.name());
+            writer.endObject();
+        }
+
+        @Override
+        public NameRequest read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            return new NameRequest(readSingleString(reader, "name"));
+        }
+    };
+
+    public static final TypeAdapter<IpV4Request> IP_V4_REQUEST = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final IpV4Request request) throws IOException {
+            if (request == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("ipv4").value(request.ipv4());
+            writer.endObject();
+        }
+
+        @Override
+        public IpV4Request read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            return new IpV4Request(readSingleString(reader, "ipv4"));
+        }
+    };
+
+    private MessageTypeAdapters() {
+    }
+
+    private static String readSingleString(final JsonReader reader, final String field) throws IOException {
+        String value = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(field)) {
+                value = readString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return value;
+    }
+
+    private static boolean readSingleBoolean(final JsonReader reader, final String field) throws IOException {
+        boolean value = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(field)) {
+                value = readBoolean(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return value;
+    }
+}
@@ -0,0 +1,74 @@
+package pl.indianbartonka.tailscale.json;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out one shared instance for equal strings and string lists, so low-cardinality values like
+ * {@code os}, {@code clientVersion}, tags and routes are kept in memory once, however many devices use them.
+ * Once full it starts over empty, values handed out before stay shared by whoever holds them
+ */
+public final class StringDictionary {
+
+    public static final int DEFAULT_MAX_SIZE = 65_536;
+
+    private final int maxSize;
+    private final Map<String, String> strings;
+    private final Map<List<String>, List<String>> lists;
+
+    public StringDictionary() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize how many strings and how many lists are kept at most
+     */
+    public StringDictionary(final int maxSize) {
+        this.maxSize = maxSize;
+        this.strings = new ConcurrentHashMap<>();
+        this.lists = new ConcurrentHashMap<>();
+    }
+
+    public String intern(final String value) {
+        if (value == null) return null;
+
+        final String existing = this.strings.get(value);
+        if (existing != null) return existing;
+        if (this.strings.size() >= this.maxSize) this.strings.clear();
+
+        final String previous = this.strings.putIfAbsent(value, value);
+        return previous == null ? value : previous;
+    }
+
+    /**
+     * @return an unmodifiable list with interned elements, shared with every equal list
+     */
+    public List<String> intern(final List<String> values) {
+        if (values == null) return null;
+        if (values.isEmpty()) return List.of();
+
+        final List<String> existing = this.lists.get(values);
+        if (existing != null) return existing;
+
+        final List<String> interned = new ArrayList<>(values.size());
+        for (final String value : values) interned.add(this.intern(value));
+
+        final List<String> list = interned.contains(null) ? Collections.unmodifiableList(interned) : List.copyOf(interned);
+        if (this.lists.size() >= this.maxSize) this.lists.clear();
+
+        final List<String> previous = this.lists.putIfAbsent(list, list);
+        return previous == null ? list : previous;
+    }
+
+    public int size() {
+        return this.strings.size() + this.lists.size();
+    }
+
+    public void clear() {
+        this.strings.clear();
+        this.lists.clear();
+    }
+}
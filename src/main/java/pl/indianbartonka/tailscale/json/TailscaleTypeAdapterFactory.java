@@ -0,0 +1,98 @@
+package pl.indianbartonka.tailscale.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import java.util.Map;
+import pl.indianbartonka.tailscale.data.request.ApiKeyRequest;
+import pl.indianbartonka.tailscale.data.request.AttributesRequest;
+import pl.indianbartonka.tailscale.data.request.AuthorizedRequest;
+import pl.indianbartonka.tailscale.data.request.DnsPreferencesRequest;
+import pl.indianbartonka.tailscale.data.request.IpV4Request;
+import pl.indianbartonka.tailscale.data.request.KeyExpiryDisabledRequest;
+import pl.indianbartonka.tailscale.data.request.NameRequest;
+import pl.indianbartonka.tailscale.data.request.NameserversRequest;
+import pl.indianbartonka.tailscale.data.request.RoutesRequest;
+import pl.indianbartonka.tailscale.data.request.SearchPathsRequest;
+import pl.indianbartonka.tailscale.data.request.SplitDnsRequest;
+import pl.indianbartonka.tailscale.data.request.TagsRequest;
+import pl.indianbartonka.tailscale.data.response.AttributesResponse;
+import pl.indianbartonka.tailscale.data.response.ErrorMessage;
+import pl.indianbartonka.tailscale.data.response.RoutesResponse;
+import pl.indianbartonka.tailscale.data.response.device.CompactDevice;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.data.response.device.DevicesResponse;
+import pl.indianbartonka.tailscale.data.response.dns.DnsPreferences;
+import pl.indianbartonka.tailscale.data.response.dns.NameserversResponse;
+import pl.indianbartonka.tailscale.data.response.dns.SearchPathsResponse;
+import pl.indianbartonka.tailscale.data.response.dns.SplitDnsResponse;
+import pl.indianbartonka.tailscale.data.response.key.ApiKey;
+import pl.indianbartonka.tailscale.data.response.key.ApiKeyResponse;
+import pl.indianbartonka.tailscale.data.response.key.ApiKeysResponse;
+import pl.indianbartonka.tailscale.data.response.key.Capabilities;
+import pl.indianbartonka.tailscale.data.response.webhook.WebhookEvent;
+import pl.indianbartonka.tailscale.reconcile.DeviceChange;
+
+/**
+ * Hands out the streaming adapters of all request and response records,
+ * so {@link Gson} doesn't fall back to reflection for them
+ */
+public class TailscaleTypeAdapterFactory implements TypeAdapterFactory {
+
+    public static final TailscaleTypeAdapterFactory INSTANCE = new TailscaleTypeAdapterFactory();
+
+    private static final Map<Class<?>, TypeAdapter<?>> ADAPTERS = Map.ofEntries(
+            Map.entry(Device.class, DeviceTypeAdapter.INSTANCE),
+            Map.entry(DevicesResponse.class, DeviceTypeAdapter.DEVICES_RESPONSE),
+            Map.entry(Capabilities.class, ApiKeyTypeAdapters.CAPABILITIES),
+            Map.entry(ApiKey.class, ApiKeyTypeAdapters.API_KEY),
+            Map.entry(ApiKeysResponse.class, ApiKeyTypeAdapters.API_KEYS_RESPONSE),
+            Map.entry(ApiKeyResponse.class, ApiKeyTypeAdapters.API_KEY_RESPONSE),
+            Map.entry(ApiKeyRequest.class, ApiKeyTypeAdapters.API_KEY_REQUEST),
+            Map.entry(RoutesResponse.class, MessageTypeAdapters.ROUTES_RESPONSE),
+            Map.entry(AttributesResponse.class, MessageTypeAdapters.ATTRIBUTES_RESPONSE),
+            Map.entry(ErrorMessage.class, MessageTypeAdapters.ERROR_MESSAGE),
+            Map.entry(RoutesRequest.class, MessageTypeAdapters.ROUTES_REQUEST),
+            Map.entry(AttributesRequest.class, MessageTypeAdapters.ATTRIBUTES_REQUEST),
+            Map.entry(TagsRequest.class, MessageTypeAdapters.TAGS_REQUEST),
+            Map.entry(AuthorizedRequest.class, MessageTypeAdapters.AUTHORIZED_REQUEST),
+            Map.entry(KeyExpiryDisabledRequest.class, MessageTypeAdapters.KEY_EXPIRY_DISABLED_REQUEST),
+            Map.entry(NameRequest.class, MessageTypeAdapters.NAME_REQUEST),
+            Map.entry(IpV4Request.class, MessageTypeAdapters.IP_V4_REQUEST),
+            Map.entry(NameserversRequest.class, DnsTypeAdapters.NAMESERVERS_REQUEST),
+            Map.entry(NameserversResponse.class, DnsTypeAdapters.NAMESERVERS_RESPONSE),
+            Map.entry(DnsPreferencesRequest.class, DnsTypeAdapters.PREFERENCES_REQUEST),
+            Map.entry(DnsPreferences.class, DnsTypeAdapters.PREFERENCES),
+            Map.entry(SearchPathsRequest.class, DnsTypeAdapters.SEARCH_PATHS_REQUEST),
+            Map.entry(SearchPathsResponse.class, DnsTypeAdapters.SEARCH_PATHS_RESPONSE),
+            Map.entry(SplitDnsRequest.class, DnsTypeAdapters.SPLIT_DNS_REQUEST),
+            Map.entry(SplitDnsResponse.class, DnsTypeAdapters.SPLIT_DNS_RESPONSE),
+            Map.entry(WebhookEvent.class, WebhookTypeAdapters.WEBHOOK_EVENT),
+            Map.entry(DeviceChange.class, DeviceChangeTypeAdapter.INSTANCE)
+    );
+
+    private TailscaleTypeAdapterFactory() {
+    }
+
+    /**
+     * Copies the configuration of the given {@link Gson} and adds the streaming adapters to it
+     */
+    public static Gson register(final Gson gson) {
+        return register(gson.newBuilder()).create();
+    }
+
+    public static GsonBuilder register(final GsonBuilder gsonBuilder) {
+        return gsonBuilder.registerTypeAdapterFactory(INSTANCE);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> type) {
+        // Gson asks once per instance, so every Gson interns into its own dictionary
+        if (type.getRawType() == CompactDevice.class) return (TypeAdapter<T>) new CompactDeviceTypeAdapter(new StringDictionary());
+
+        return (TypeAdapter<T>) ADAPTERS.get(type.getRawType());
+    }
+}
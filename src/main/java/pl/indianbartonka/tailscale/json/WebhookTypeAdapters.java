@@ -0,0 +1,121 @@
+package pl.indianbartonka.tailscale.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import pl.indianbartonka.tailscale.data.response.webhook.WebhookEvent;
+
+import static pl.indianbartonka.tailscale.json.JsonStreams.readLong;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readRawJson;
+import static pl.indianbartonka.tailscale.json.JsonStreams.readString;
+import static pl.indianbartonka.tailscale.json.JsonStreams.skipNull;
+import static pl.indianbartonka.tailscale.json.JsonStreams.writeStringMap;
+
+/**
+ * Streaming adapter for the events of a webhook delivery
+ */
+public final class WebhookTypeAdapters {
+
+    public static final TypeAdapter<WebhookEvent> WEBHOOK_EVENT = new TypeAdapter<>() {
+        @Override
+        public void write(final JsonWriter writer, final WebhookEvent event) throws IOException {
+            if (event == null) {
+                writer.nullValue();
+                return;
+            }
+
+            writer.beginObject();
+            writer.name("timestamp").value(event.timestamp());
+            writer.name("version").value(event.version());
+            writer.name("type").value(event.type());
+            writer.name("tailnet").value(event.tailnet());
+            writer.name("message").value(event.message());
+            writer.name("data");
+            writeStringMap(writer, event.data());
+            writer.endObject();
+        }
+
+        @Override
+        public WebhookEvent read(final JsonReader reader) throws IOException {
+            if (skipNull(reader)) return null;
+
+            String timestamp = null;
+            int version = 0;
+            String type = null;
+            String tailnet = null;
+            String message = null;
+            Map<String, String> data = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "timestamp" -> timestamp = readString(reader);
+                    case "version" -> version = (int) readLong(reader);
+                    case "type" -> type = readString(reader);
+                    case "tailnet" -> tailnet = readString(reader);
+                    case "message" -> message = readString(reader);
+                    case "data" -> data = readData(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return new WebhookEvent(timestamp, version, type, tailnet, message, data);
+        }
+    };
+
+    private WebhookTypeAdapters() {
+    }
+
+    /**
+     * Reads a delivery, which is a JSON array of events. A single event object is accepted as well
+     */
+    public static List<WebhookEvent> readEvents(final JsonReader reader) throws IOException {
+        final List<WebhookEvent> events = new ArrayList<>();
+        if (skipNull(reader)) return events;
+
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            events.add(WEBHOOK_EVENT.read(reader));
+            return events;
+        }
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            final WebhookEvent event = WEBHOOK_EVENT.read(reader);
+            if (event != null) events.add(event);
+        }
+        reader.endArray();
+
+        return events;
+    }
+
+    private static Map<String, String> readData(final JsonReader reader) throws IOException {
+        if (skipNull(reader)) return null;
+
+        final Map<String, String> data = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+
+            switch (reader.peek()) {
+                case STRING, NUMBER -> data.put(name, reader.nextString());
+                case BOOLEAN -> data.put(name, String.valueOf(reader.nextBoolean()));
+                case NULL -> {
+                    reader.nextNull();
+                    data.put(name, null);
+                }
+                default -> data.put(name, new String(readRawJson(reader), StandardCharsets.UTF_8));
+            }
+        }
+        reader.endObject();
+
+        return data;
+    }
+}
@@ -0,0 +1,17 @@
+package pl.indianbartonka.tailscale.metrics;
+
+import java.net.http.HttpRequest;
+import pl.indianbartonka.tailscale.ApiEndpoint;
+import pl.indianbartonka.tailscale.TailscaleClient;
+
+/**
+ * Called around every request made through a {@link TailscaleClient}, see {@link TailscaleClient#addListener(ClientListener)}.
+ * Callbacks run on the thread completing the request and must not block
+ */
+public interface ClientListener {
+
+    default void onRequestStart(final ApiEndpoint endpoint, final HttpRequest request) {
+    }
+
+    void onRequestEnd(RequestMetrics metrics);
+}
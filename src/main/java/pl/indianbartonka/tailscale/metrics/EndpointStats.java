@@ -0,0 +1,21 @@
+package pl.indianbartonka.tailscale.metrics;
+
+import java.time.Duration;
+import pl.indianbartonka.tailscale.ApiEndpoint;
+
+public record EndpointStats(
+        ApiEndpoint endpoint,
+        long calls,
+        long failures,
+        long retries,
+        long bytesSent,
+        long bytesReceived,
+        Duration totalTime,
+        Duration p50,
+        Duration p90,
+        Duration p99,
+        Duration max,
+        Duration p99TimeToFirstByte,
+        Duration p99Decode
+) {
+}
@@ -0,0 +1,99 @@
+package pl.indianbartonka.tailscale.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram in the spirit of HdrHistogram. Values below 64 are exact,
+ * larger ones fall into one of 32 linear sub-buckets per power of two, so the error stays under about 3%
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT_LIMIT = SUB_BUCKETS * 2;
+    private static final int BUCKETS = indexOf(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    static int indexOf(final long value) {
+        if (value < EXACT_LIMIT) return (int) Math.max(0, value);
+
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the highest value which falls into the bucket
+     */
+    static long upperBoundOf(final int index) {
+        if (index < EXACT_LIMIT) return index;
+
+        final int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        final long top = index - ((long) shift << SUB_BUCKET_BITS);
+        return ((top + 1) << shift) - 1;
+    }
+
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+
+        this.counts.incrementAndGet(indexOf(value));
+        this.count.increment();
+        this.sum.add(value);
+        this.max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     */
+    public Duration getPercentile(final double percentile) {
+        final long total = this.count.sum();
+        if (total == 0) return Duration.ZERO;
+
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= target) return Duration.ofNanos(Math.min(upperBoundOf(i), this.max.get()));
+        }
+
+        return Duration.ofNanos(this.max.get());
+    }
+
+    public Duration getMean() {
+        final long total = this.count.sum();
+        return total == 0 ? Duration.ZERO : Duration.ofNanos(this.sum.sum() / total);
+    }
+
+    public Duration getMax() {
+        return Duration.ofNanos(this.max.get());
+    }
+
+    public Duration getTotal() {
+        return Duration.ofNanos(this.sum.sum());
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) this.counts.set(i, 0);
+        this.count.reset();
+        this.sum.reset();
+        this.max.set(0);
+    }
+}
@@ -0,0 +1,100 @@
+package pl.indianbartonka.tailscale.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import pl.indianbartonka.tailscale.ApiEndpoint;
+
+/**
+ * Built-in {@link ClientListener} keeping per-endpoint counters and latency histograms
+ */
+public class MetricsRecorder implements ClientListener {
+
+    private final Map<ApiEndpoint, Recorder> recorders;
+
+    public MetricsRecorder() {
+        this.recorders = new EnumMap<>(ApiEndpoint.class);
+        for (final ApiEndpoint endpoint : ApiEndpoint.values()) this.recorders.put(endpoint, new Recorder());
+    }
+
+    @Override
+    public void onRequestEnd(final RequestMetrics metrics) {
+        final Recorder recorder = this.recorders.get(metrics.endpoint());
+
+        recorder.calls.increment();
+        if (!metrics.isSuccessful()) recorder.failures.increment();
+        recorder.retries.add(metrics.retries());
+        if (metrics.bytesSent() > 0) recorder.bytesSent.add(metrics.bytesSent());
+        if (metrics.bytesReceived() > 0) recorder.bytesReceived.add(metrics.bytesReceived());
+        recorder.latency.record(metrics.totalNanos());
+        recorder.timeToFirstByte.record(metrics.timeToFirstByteNanos());
+        recorder.decode.record(metrics.decodeNanos());
+    }
+
+    public LatencyHistogram getLatency(final ApiEndpoint endpoint) {
+        return this.recorders.get(endpoint).latency;
+    }
+
+    public EndpointStats getStats(final ApiEndpoint endpoint) {
+        final Recorder recorder = this.recorders.get(endpoint);
+
+        return new EndpointStats(
+                endpoint,
+                recorder.calls.sum(),
+                recorder.failures.sum(),
+                recorder.retries.sum(),
+                recorder.bytesSent.sum(),
+                recorder.bytesReceived.sum(),
+                recorder.latency.getTotal(),
+                recorder.latency.getPercentile(50),
+                recorder.latency.getPercentile(90),
+                recorder.latency.getPercentile(99),
+                recorder.latency.getMax(),
+                recorder.timeToFirstByte.getPercentile(99),
+                recorder.decode.getPercentile(99));
+    }
+
+    /**
+     * @return stats of the called endpoints, the ones with the most total time first
+     */
+    public List<EndpointStats> getStats() {
+        final List<EndpointStats> stats = new ArrayList<>();
+
+        for (final ApiEndpoint endpoint : ApiEndpoint.values()) {
+            if (this.recorders.get(endpoint).calls.sum() > 0) stats.add(this.getStats(endpoint));
+        }
+
+        stats.sort(Comparator.comparing(EndpointStats::totalTime).reversed());
+        return stats;
+    }
+
+    public void reset() {
+        for (final Recorder recorder : this.recorders.values()) recorder.reset();
+    }
+
+    private static final class Recorder {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+        private final LatencyHistogram decode = new LatencyHistogram();
+
+        private void reset() {
+            this.calls.reset();
+            this.failures.reset();
+            this.retries.reset();
+            this.bytesSent.reset();
+            this.bytesReceived.reset();
+            this.latency.reset();
+            this.timeToFirstByte.reset();
+            this.decode.reset();
+        }
+    }
+}
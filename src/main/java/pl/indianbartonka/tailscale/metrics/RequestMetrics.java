@@ -0,0 +1,35 @@
+package pl.indianbartonka.tailscale.metrics;
+
+import java.net.URI;
+import org.jetbrains.annotations.Nullable;
+import pl.indianbartonka.tailscale.ApiEndpoint;
+
+/**
+ * Measurements of one finished API call, retries included
+ *
+ * @param statusCode            status of the last response, {@code -1} when there was none
+ * @param bytesSent             request body size, {@code -1} when unknown
+ * @param bytesReceived         response body bytes read
+ * @param timeToFirstByteNanos  time from sending the last attempt until its response headers arrived
+ * @param totalNanos            time from the call until the result was decoded, queueing and retries included
+ * @param decodeNanos           time spent turning the body into the result
+ * @param retries               attempts made on top of the first one
+ */
+public record RequestMetrics(
+        ApiEndpoint endpoint,
+        String method,
+        URI uri,
+        int statusCode,
+        long bytesSent,
+        long bytesReceived,
+        long timeToFirstByteNanos,
+        long totalNanos,
+        long decodeNanos,
+        int retries,
+        @Nullable Throwable failure
+) {
+
+    public boolean isSuccessful() {
+        return this.failure == null;
+    }
+}
@@ -0,0 +1,22 @@
+package pl.indianbartonka.tailscale.outbox;
+
+import java.util.List;
+import java.util.Map;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+import pl.indianbartonka.tailscale.reconcile.DeviceChange;
+
+/**
+ * Outcome of one {@link MutationOutbox#flush()}
+ *
+ * @param applied  changes written to the API
+ * @param retried  changes put back into the outbox after a server error, I/O failure or rate limit
+ * @param failures changes the API refused, they are dropped from the outbox
+ */
+public record FlushResult(List<DeviceChange> applied, int retried, Map<DeviceChange, TailscaleException> failures) {
+
+    public static final FlushResult EMPTY = new FlushResult(List.of(), 0, Map.of());
+
+    public boolean isSuccessful() {
+        return this.failures.isEmpty() && this.retried == 0;
+    }
+}
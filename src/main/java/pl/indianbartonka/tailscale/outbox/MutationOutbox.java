@@ -0,0 +1,459 @@
+package pl.indianbartonka.tailscale.outbox;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.bulk.BulkOperation;
+import pl.indianbartonka.tailscale.circuit.CircuitBreaker;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+import pl.indianbartonka.tailscale.reconcile.DeviceChange;
+import pl.indianbartonka.tailscale.scheduler.RetryPolicy;
+
+/**
+ * Collects device writes in a file-backed log and sends them in batches. A write replaces the pending write of the same
+ * device and field (last write wins), so a burst of updates turns into one call per field. Writes of one device are applied
+ * one after another in the order of their latest update, devices are flushed concurrently.
+ * Server errors, I/O failures and rate limits put the write back with a backoff, writes the API refuses are dropped.
+ * Pending writes survive a restart: a new outbox on the same file picks them up
+ */
+public class MutationOutbox implements AutoCloseable {
+
+    public static final Duration DEFAULT_FLUSH_DELAY = Duration.ofSeconds(1);
+
+    /**
+     * Size of the log after which it is rewritten with only the pending writes
+     */
+    private static final long COMPACT_THRESHOLD = 1024 * 1024;
+    private static final RetryPolicy BACKOFF = RetryPolicy.DEFAULT;
+
+    private final DeviceClient deviceClient;
+    private final OutboxLog log;
+    private final int maxConcurrency;
+    private final Duration flushDelay;
+    private final Map<String, Map<String, Entry>> queues;
+    private final LongAdder submitted;
+    private final LongAdder coalesced;
+    private final LongAdder applied;
+    private final LongAdder failed;
+    private CompletableFuture<FlushResult> flushing;
+    private CompletableFuture<FlushResult> followUp;
+    private boolean flushScheduled;
+    private long flushDeadline;
+    private boolean closed;
+
+    public MutationOutbox(final DeviceClient deviceClient, final Path file) throws IOException {
+        this(deviceClient, file, DeviceClient.DEFAULT_BULK_CONCURRENCY, DEFAULT_FLUSH_DELAY);
+    }
+
+    /**
+     * @param maxConcurrency how many devices are flushed at the same time
+     * @param flushDelay     how long writes are collected before they are sent, {@code null} to only flush on {@link #flush()}
+     */
+    public MutationOutbox(final DeviceClient deviceClient, final Path file, final int maxConcurrency, final Duration flushDelay) throws IOException {
+        if (maxConcurrency < 1) throw new IllegalArgumentException("maxConcurrency must be at least 1");
+
+        this.deviceClient = deviceClient;
+        this.log = new OutboxLog(file);
+        this.maxConcurrency = maxConcurrency;
+        this.flushDelay = flushDelay;
+        this.queues = new LinkedHashMap<>();
+        this.submitted = new LongAdder();
+        this.coalesced = new LongAdder();
+        this.applied = new LongAdder();
+        this.failed = new LongAdder();
+
+        synchronized (this) {
+            for (final OutboxLog.Record record : this.log.replay()) this.enqueue(new Entry(record.seq(), record.change()));
+            this.log.rewrite(this.pendingRecords());
+            if (!this.queues.isEmpty()) this.scheduleFlush(0);
+        }
+    }
+
+    public CompletableFuture<Boolean> setName(final String deviceId, final String name) {
+        return this.submit(new DeviceChange.Rename(deviceId, name));
+    }
+
+    public CompletableFuture<Boolean> setTags(final String deviceId, final Map<String, String> tags) {
+        return this.submit(new DeviceChange.SetTags(deviceId, tags));
+    }
+
+    public CompletableFuture<Boolean> setAuthorized(final String deviceId, final boolean authorized) {
+        return this.submit(new DeviceChange.SetAuthorized(deviceId, authorized));
+    }
+
+    public CompletableFuture<Boolean> setKeyExpiryDisabled(final String deviceId, final boolean keyExpiryDisabled) {
+        return this.submit(new DeviceChange.SetKeyExpiryDisabled(deviceId, keyExpiryDisabled));
+    }
+
+    public CompletableFuture<Boolean> setRoutes(final String deviceId, final List<String> routes) {
+        return this.submit(new DeviceChange.SetRoutes(deviceId, routes));
+    }
+
+    public CompletableFuture<Boolean> setAttribute(final String deviceId, final String key, final String value) {
+        return this.submit(new DeviceChange.SetAttribute(deviceId, key, value));
+    }
+
+    public CompletableFuture<Boolean> deleteAttribute(final String deviceId, final String key) {
+        return this.submit(new DeviceChange.DeleteAttribute(deviceId, key));
+    }
+
+    /**
+     * Writes the change to the log and queues it. The future completes once the change, or a later write of the same field
+     * which replaced it, has been applied. It fails with {@link IOException} when the log can't be written
+     */
+    public CompletableFuture<Boolean> submit(final DeviceChange change) {
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        synchronized (this) {
+            if (this.closed) throw new IllegalStateException("Outbox is closed");
+
+            final long seq;
+            try {
+                seq = this.log.append(change);
+            } catch (final IOException exception) {
+                return CompletableFuture.failedFuture(exception);
+            }
+
+            final Entry entry = new Entry(seq, change);
+            entry.waiters.add(result);
+            this.enqueue(entry);
+            this.submitted.increment();
+
+            this.scheduleFlush(this.flushDelay == null ? 0 : this.flushDelay.toNanos());
+        }
+
+        return result;
+    }
+
+    private void enqueue(final Entry entry) {
+        final Map<String, Entry> queue = this.queues.computeIfAbsent(entry.change.deviceId(), ignored -> new LinkedHashMap<>());
+        final String field = field(entry.change);
+
+        // Removing first moves the field to the end, so the device sees its writes in the order of their latest update
+        final Entry previous = queue.remove(field);
+        if (previous != null) {
+            entry.waiters.addAll(previous.waiters);
+            this.coalesced.increment();
+        }
+
+        queue.put(field, entry);
+    }
+
+    /**
+     * Sends every pending write which is not waiting for a retry. Only one flush runs at a time,
+     * calls made during a flush share a single flush started after it
+     */
+    public CompletableFuture<FlushResult> flush() {
+        final CompletableFuture<FlushResult> result = new CompletableFuture<>();
+        final Map<String, List<Entry>> batch;
+
+        synchronized (this) {
+            if (this.closed) return CompletableFuture.completedFuture(FlushResult.EMPTY);
+            if (this.flushing != null) {
+                if (this.followUp == null) {
+                    this.followUp = this.flushing.thenCompose(ignored -> {
+                        synchronized (this) {
+                            this.followUp = null;
+                        }
+                        return this.flush();
+                    });
+                }
+                return this.followUp;
+            }
+
+            batch = this.takeReady(System.nanoTime());
+            if (batch.isEmpty()) {
+                this.scheduleRetry();
+                return CompletableFuture.completedFuture(FlushResult.EMPTY);
+            }
+
+            this.flushing = result;
+        }
+
+        final List<DeviceChange> appliedChanges = Collections.synchronizedList(new ArrayList<>());
+        final Map<DeviceChange, TailscaleException> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+        final AtomicInteger retried = new AtomicInteger();
+
+        new BulkOperation<>(this.maxConcurrency, deviceId -> this.flushDevice(batch.get(deviceId), 0, appliedChanges, failures, retried))
+                .runAsync(batch.keySet())
+                .whenComplete((ignored, throwable) -> {
+                    synchronized (this) {
+                        this.flushing = null;
+                        this.compactIfNeeded();
+                        this.scheduleRetry();
+                    }
+
+                    result.complete(new FlushResult(List.copyOf(appliedChanges), retried.get(),
+                            Collections.unmodifiableMap(new LinkedHashMap<>(failures))));
+                });
+
+        return result;
+    }
+
+    /**
+     * Takes the writes which can be sent now, per device up to the first one still waiting for a retry
+     */
+    private Map<String, List<Entry>> takeReady(final long now) {
+        final Map<String, List<Entry>> batch = new LinkedHashMap<>();
+        final Iterator<Map.Entry<String, Map<String, Entry>>> devices = this.queues.entrySet().iterator();
+
+        while (devices.hasNext()) {
+            final Map.Entry<String, Map<String, Entry>> device = devices.next();
+            final Iterator<Entry> entries = device.getValue().values().iterator();
+
+            while (entries.hasNext()) {
+                final Entry entry = entries.next();
+                if (entry.notBefore - now > 0) break;
+
+                batch.computeIfAbsent(device.getKey(), ignored -> new ArrayList<>()).add(entry);
+                entries.remove();
+            }
+
+            if (device.getValue().isEmpty()) devices.remove();
+        }
+
+        return batch;
+    }
+
+    private CompletableFuture<Boolean> flushDevice(final List<Entry> entries, final int index, final List<DeviceChange> appliedChanges,
+                                                   final Map<DeviceChange, TailscaleException> failures, final AtomicInteger retried) {
+        if (index == entries.size()) return CompletableFuture.completedFuture(true);
+
+        final Entry entry = entries.get(index);
+        CompletableFuture<Boolean> call;
+        try {
+            call = entry.change.apply(this.deviceClient);
+        } catch (final RuntimeException exception) {
+            call = CompletableFuture.failedFuture(exception);
+        }
+
+        return call.handle((ignored, throwable) -> {
+            if (throwable == null) {
+                appliedChanges.add(entry.change);
+                this.finish(entry, null);
+                return this.flushDevice(entries, index + 1, appliedChanges, failures, retried);
+            }
+
+            final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+            if (isRetryable(cause)) {
+                // The rest of the device waits as well, so its writes stay in order
+                final List<Entry> remaining = entries.subList(index, entries.size());
+                retried.addAndGet(remaining.size());
+                this.requeue(remaining);
+                return CompletableFuture.completedFuture(true);
+            }
+
+            final TailscaleException exception = cause instanceof final TailscaleException tailscaleException
+                    ? tailscaleException
+                    : new TailscaleException(String.valueOf(cause.getMessage()), cause);
+            failures.put(entry.change, exception);
+            this.finish(entry, exception);
+            return this.flushDevice(entries, index + 1, appliedChanges, failures, retried);
+        }).thenCompose(Function.identity());
+    }
+
+    private void finish(final Entry entry, final TailscaleException failure) {
+        synchronized (this) {
+            try {
+                this.log.ack(entry.seq);
+            } catch (final IOException ignored) {
+                // Without the mark the write is sent once more after a restart, which sets the same value again
+            }
+        }
+
+        if (failure == null) {
+            this.applied.increment();
+            for (final CompletableFuture<Boolean> waiter : entry.waiters) waiter.complete(true);
+        } else {
+            this.failed.increment();
+            for (final CompletableFuture<Boolean> waiter : entry.waiters) waiter.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Puts writes back in front of the queue of their device, unless a newer write of the same field arrived in the meantime
+     */
+    private synchronized void requeue(final List<Entry> entries) {
+        final String deviceId = entries.get(0).change.deviceId();
+        final Map<String, Entry> newer = this.queues.getOrDefault(deviceId, Map.of());
+        final Map<String, Entry> queue = new LinkedHashMap<>();
+        final long now = System.nanoTime();
+
+        for (final Entry entry : entries) {
+            final String field = field(entry.change);
+            final Entry replacement = newer.get(field);
+
+            if (replacement != null) {
+                replacement.waiters.addAll(entry.waiters);
+                this.coalesced.increment();
+                continue;
+            }
+
+            entry.notBefore = now + BACKOFF.backoffNanos(Math.min(entry.attempts++, 16));
+            queue.put(field, entry);
+        }
+
+        queue.putAll(newer);
+        this.queues.put(deviceId, queue);
+    }
+
+    /**
+     * Keeps the earlier of the scheduled flushes, without a flush delay everything waits for {@link #flush()}
+     */
+    private void scheduleFlush(final long delayNanos) {
+        if (this.closed || this.flushDelay == null) return;
+
+        final long deadline = System.nanoTime() + delayNanos;
+        if (this.flushScheduled && this.flushDeadline - deadline <= 0) return;
+
+        this.flushScheduled = true;
+        this.flushDeadline = deadline;
+        CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(() -> {
+            synchronized (this) {
+                if (this.flushDeadline == deadline) this.flushScheduled = false;
+            }
+            this.flush();
+        });
+    }
+
+    /**
+     * Schedules a flush for the earliest write waiting for a retry
+     */
+    private void scheduleRetry() {
+        final long now = System.nanoTime();
+        long delay = Long.MAX_VALUE;
+
+        for (final Map<String, Entry> queue : this.queues.values()) {
+            if (queue.isEmpty()) continue;
+            delay = Math.min(delay, Math.max(0, queue.values().iterator().next().notBefore - now));
+        }
+
+        if (delay != Long.MAX_VALUE) this.scheduleFlush(delay);
+    }
+
+    private void compactIfNeeded() {
+        if (this.log.size() < COMPACT_THRESHOLD) return;
+
+        try {
+            this.log.rewrite(this.pendingRecords());
+        } catch (final IOException ignored) {
+            // The longer log is still valid, it is compacted on the next flush
+        }
+    }
+
+    private List<OutboxLog.Record> pendingRecords() {
+        final List<OutboxLog.Record> records = new ArrayList<>();
+        for (final Map<String, Entry> queue : this.queues.values()) {
+            for (final Entry entry : queue.values()) records.add(new OutboxLog.Record(entry.seq, entry.change));
+        }
+
+        records.sort(Comparator.comparingLong(OutboxLog.Record::seq));
+        return records;
+    }
+
+    /**
+     * @return the coalescing key, writes with the same key replace each other
+     */
+    static String field(final DeviceChange change) {
+        if (change instanceof final DeviceChange.SetAttribute setAttribute) return "attribute:" + setAttribute.key();
+        if (change instanceof final DeviceChange.DeleteAttribute deleteAttribute) return "attribute:" + deleteAttribute.key();
+        if (change instanceof DeviceChange.Rename) return "name";
+        if (change instanceof DeviceChange.SetTags) return "tags";
+        if (change instanceof DeviceChange.SetAuthorized) return "authorized";
+        if (change instanceof DeviceChange.SetKeyExpiryDisabled) return "keyExpiryDisabled";
+
+        return "routes";
+    }
+
+    private static boolean isRetryable(final Throwable throwable) {
+        if (throwable instanceof final TailscaleException tailscaleException && tailscaleException.getStatusCode() == 429) return true;
+
+        return CircuitBreaker.isFailure(throwable);
+    }
+
+    public synchronized int getPendingCount() {
+        int pending = 0;
+        for (final Map<String, Entry> queue : this.queues.values()) pending += queue.size();
+        return pending;
+    }
+
+    public long getSubmittedCount() {
+        return this.submitted.sum();
+    }
+
+    /**
+     * @return writes replaced by a later write of the same field before they were sent
+     */
+    public long getCoalescedCount() {
+        return this.coalesced.sum();
+    }
+
+    public long getAppliedCount() {
+        return this.applied.sum();
+    }
+
+    public long getFailedCount() {
+        return this.failed.sum();
+    }
+
+    public Path getFile() {
+        return this.log.getFile();
+    }
+
+    /**
+     * Waits for a running flush and closes the log. Writes still pending stay in the log for the next outbox on the file,
+     * their futures fail
+     */
+    @Override
+    public void close() throws IOException {
+        final CompletableFuture<FlushResult> running;
+        synchronized (this) {
+            if (this.closed) return;
+            this.closed = true;
+            running = this.flushing;
+        }
+
+        if (running != null) running.join();
+
+        final List<CompletableFuture<Boolean>> waiters = new ArrayList<>();
+        synchronized (this) {
+            for (final Map<String, Entry> queue : this.queues.values()) {
+                for (final Entry entry : queue.values()) waiters.addAll(entry.waiters);
+            }
+            this.log.close();
+        }
+
+        final TailscaleException exception = new TailscaleException("Outbox was closed, the change stays in the log");
+        for (final CompletableFuture<Boolean> waiter : waiters) waiter.completeExceptionally(exception);
+    }
+
+    private static final class Entry {
+
+        private final long seq;
+        private final DeviceChange change;
+        private final List<CompletableFuture<Boolean>> waiters;
+        private int attempts;
+        private long notBefore;
+
+        private Entry(final long seq, final DeviceChange change) {
+            this.seq = seq;
+            this.change = change;
+            this.waiters = new ArrayList<>(1);
+            this.notBefore = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package pl.indianbartonka.tailscale.outbox;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import pl.indianbartonka.tailscale.json.DeviceChangeTypeAdapter;
+import pl.indianbartonka.tailscale.reconcile.DeviceChange;
+
+/**
+ * Append-only file of the {@link MutationOutbox}, one JSON object per line. A change is written as
+ * {@code {"seq":1,"change":{...}}} and marked as handled with {@code {"seq":1,"done":true}}.
+ * Not thread safe, the outbox guards it with its own lock
+ */
+final class OutboxLog implements Closeable {
+
+    private final Path file;
+    private FileChannel channel;
+    private long nextSeq;
+    private long size;
+
+    OutboxLog(final Path file) {
+        this.file = file;
+        this.nextSeq = 1;
+    }
+
+    /**
+     * Reads the changes which were not handled yet and opens the file for appending, called once before anything else.
+     * A line torn by a crash in the middle of a write is skipped
+     */
+    List<Record> replay() throws IOException {
+        final Map<Long, DeviceChange> pending = new LinkedHashMap<>();
+        final Map<String, Long> latest = new HashMap<>();
+
+        if (Files.exists(this.file)) {
+            try (final BufferedReader reader = Files.newBufferedReader(this.file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) continue;
+
+                    try {
+                        this.readLine(line, pending, latest);
+                    } catch (final IOException | JsonParseException | IllegalStateException | NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+
+        final Path parent = this.file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+
+        this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.size = this.channel.size();
+
+        final List<Record> records = new ArrayList<>(pending.size());
+        for (final Map.Entry<Long, DeviceChange> entry : pending.entrySet()) records.add(new Record(entry.getKey(), entry.getValue()));
+        return records;
+    }
+
+    /**
+     * @param latest sequence number of the newest change per device and field, older ones were replaced by it
+     */
+    private void readLine(final String line, final Map<Long, DeviceChange> pending, final Map<String, Long> latest) throws IOException {
+        final JsonReader reader = new JsonReader(new StringReader(line));
+        long seq = -1;
+        DeviceChange change = null;
+        boolean done = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "seq" -> seq = reader.nextLong();
+                case "change" -> change = DeviceChangeTypeAdapter.INSTANCE.read(reader);
+                case "done" -> done = reader.nextBoolean();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (seq < 0) return;
+        this.nextSeq = Math.max(this.nextSeq, seq + 1);
+
+        if (done) {
+            pending.remove(seq);
+        } else if (change != null) {
+            final Long replaced = latest.put(change.deviceId() + '/' + MutationOutbox.field(change), seq);
+            if (replaced != null) pending.remove(replaced);
+            pending.put(seq, change);
+        }
+    }
+
+    /**
+     * Writes the change and forces it to the disk before returning
+     *
+     * @return sequence number of the change
+     */
+    long append(final DeviceChange change) throws IOException {
+        final long seq = this.nextSeq++;
+        this.write(changeLine(seq, change));
+        this.channel.force(false);
+
+        return seq;
+    }
+
+    /**
+     * Marks the change as handled. Not forced: after a crash the change is applied once more, which sets the same value again
+     */
+    void ack(final long seq) throws IOException {
+        final StringWriter buffer = new StringWriter();
+        final JsonWriter writer = new JsonWriter(buffer);
+        writer.beginObject();
+        writer.name("seq").value(seq);
+        writer.name("done").value(true);
+        writer.endObject();
+        writer.flush();
+
+        this.write(buffer.append('\n').toString());
+    }
+
+    /**
+     * Replaces the file with one holding only the given changes, through a temporary file so a crash keeps either version
+     */
+    void rewrite(final Collection<Record> records) throws IOException {
+        final Path temporary = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+
+        try (final FileChannel output = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (final Record record : records) {
+                final ByteBuffer buffer = ByteBuffer.wrap(changeLine(record.seq(), record.change()).getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) output.write(buffer);
+            }
+            output.force(true);
+        }
+
+        this.channel.close();
+        Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.size = this.channel.size();
+    }
+
+    private void write(final String line) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        this.size += buffer.remaining();
+        while (buffer.hasRemaining()) this.channel.write(buffer);
+    }
+
+    private static String changeLine(final long seq, final DeviceChange change) throws IOException {
+        final StringWriter buffer = new StringWriter();
+        final JsonWriter writer = new JsonWriter(buffer);
+        writer.beginObject();
+        writer.name("seq").value(seq);
+        writer.name("change");
+        DeviceChangeTypeAdapter.INSTANCE.write(writer, change);
+        writer.endObject();
+        writer.flush();
+
+        return buffer.append('\n').toString();
+    }
+
+    long size() {
+        return this.size;
+    }
+
+    Path getFile() {
+        return this.file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.channel != null) this.channel.close();
+    }
+
+    record Record(long seq, DeviceChange change) {
+    }
+}
@@ -0,0 +1,333 @@
+package pl.indianbartonka.tailscale.pool;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import pl.indianbartonka.tailscale.KeyClient;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.data.Timestamps;
+import pl.indianbartonka.tailscale.data.request.ApiKeyRequest;
+import pl.indianbartonka.tailscale.data.response.key.ApiKeyResponse;
+
+/**
+ * Keeps auth keys created ahead of time for each registered {@link ApiKeyRequest} profile,
+ * so handing one out is an in-memory operation. Used keys are replaced in the background,
+ * keys close to their expiry are deleted and replaced, unused keys are revoked on {@link #close()}.
+ * Every key is handed out once, also for reusable profiles
+ */
+public class KeyPool implements AutoCloseable {
+
+    private static final long FAILURE_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final KeyClient keyClient;
+    private final int batchSize;
+    private final long retireBeforeMillis;
+    private final Map<ApiKeyRequest, Profile> profiles;
+    private final Set<CompletableFuture<Void>> creations;
+    private final ScheduledExecutorService executor;
+    private final LongAdder handedOut;
+    private final LongAdder misses;
+    private final LongAdder created;
+    private final LongAdder retired;
+    private final LongAdder revoked;
+    private final LongAdder failures;
+    private volatile boolean closed;
+    private Consumer<Throwable> errorHandler;
+    private ScheduledFuture<?> task;
+
+    /**
+     * @param batchSize    how many keys of one profile can be created at the same time
+     * @param retireBefore keys with less lifetime left are not handed out anymore
+     */
+    public KeyPool(final KeyClient keyClient, final int batchSize, final Duration retireBefore) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be at least 1");
+
+        this.keyClient = keyClient;
+        this.batchSize = batchSize;
+        this.retireBeforeMillis = retireBefore.toMillis();
+        this.profiles = new ConcurrentHashMap<>();
+        this.creations = ConcurrentHashMap.newKeySet();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "Tailscale-KeyPool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.handedOut = new LongAdder();
+        this.misses = new LongAdder();
+        this.created = new LongAdder();
+        this.retired = new LongAdder();
+        this.revoked = new LongAdder();
+        this.failures = new LongAdder();
+        this.errorHandler = throwable -> {
+        };
+    }
+
+    /**
+     * Starts keeping {@code targetSize} keys of the given profile ready, filling begins right away
+     */
+    public void register(final ApiKeyRequest profile, final int targetSize) {
+        if (this.closed) throw new IllegalStateException("Key pool is closed");
+        if (targetSize < 0) throw new IllegalArgumentException("targetSize must not be negative");
+        if (profile.expirySeconds() > 0 && TimeUnit.SECONDS.toMillis(profile.expirySeconds()) <= this.retireBeforeMillis) {
+            throw new IllegalArgumentException("Keys of this profile would be retired as soon as they are created");
+        }
+
+        final Profile previous = this.profiles.putIfAbsent(profile, new Profile(profile, targetSize));
+        if (previous != null) throw new IllegalArgumentException("Profile is already registered");
+
+        this.executor.execute(() -> this.refill(this.profiles.get(profile)));
+    }
+
+    /**
+     * Checks the expiry of the ready keys and tops up every profile at the given interval
+     */
+    public synchronized void start(final Duration interval) {
+        if (this.task != null) throw new IllegalStateException("Key pool is already running");
+
+        this.task = this.executor.scheduleWithFixedDelay(this::maintain, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (this.task == null) return;
+
+        this.task.cancel(false);
+        this.task = null;
+    }
+
+    /**
+     * Hands out a ready key without calling the API
+     *
+     * @return empty when no key of the profile is ready
+     */
+    public Optional<ApiKeyResponse> poll(final ApiKeyRequest profile) {
+        final Profile pool = this.profile(profile);
+        final long now = System.currentTimeMillis();
+
+        PooledKey pooledKey;
+        while ((pooledKey = pool.keys.pollFirst()) != null) {
+            pool.available.decrementAndGet();
+
+            if (this.isExpiring(pooledKey, now)) {
+                this.retire(pooledKey);
+                continue;
+            }
+
+            this.handedOut.increment();
+            this.executor.execute(() -> this.refill(pool));
+            return Optional.of(pooledKey.key());
+        }
+
+        this.executor.execute(() -> this.refill(pool));
+        return Optional.empty();
+    }
+
+    /**
+     * Like {@link #poll(ApiKeyRequest)}, but creates the key on the spot when the pool of the profile is empty
+     */
+    public ApiKeyResponse take(final ApiKeyRequest profile) throws IOException {
+        return TailscaleClient.await(this.takeAsync(profile));
+    }
+
+    public CompletableFuture<ApiKeyResponse> takeAsync(final ApiKeyRequest profile) {
+        final Optional<ApiKeyResponse> key = this.poll(profile);
+        if (key.isPresent()) return CompletableFuture.completedFuture(key.get());
+
+        this.misses.increment();
+        return this.keyClient.createKeyAsync(profile).thenApply(created -> {
+            this.created.increment();
+            this.handedOut.increment();
+            return created;
+        });
+    }
+
+    /**
+     * Deletes ready keys close to their expiry and tops up all profiles
+     *
+     * @return number of retired keys
+     */
+    public int maintain() {
+        final long now = System.currentTimeMillis();
+        int retiredKeys = 0;
+
+        for (final Profile profile : this.profiles.values()) {
+            for (final PooledKey pooledKey : profile.keys) {
+                if (this.isExpiring(pooledKey, now) && profile.keys.removeFirstOccurrence(pooledKey)) {
+                    profile.available.decrementAndGet();
+                    this.retire(pooledKey);
+                    retiredKeys++;
+                }
+            }
+
+            this.refill(profile);
+        }
+
+        return retiredKeys;
+    }
+
+    private void refill(final Profile profile) {
+        if (this.closed || System.currentTimeMillis() < profile.backoffUntil) return;
+
+        int batch;
+        while (true) {
+            final int pending = profile.pending.get();
+            final int deficit = profile.targetSize - profile.available.get() - pending;
+
+            batch = Math.min(deficit, this.batchSize - pending);
+            if (batch <= 0) return;
+            if (profile.pending.compareAndSet(pending, pending + batch)) break;
+        }
+
+        for (int i = 0; i < batch; i++) {
+            final CompletableFuture<Void> creation = this.keyClient.createKeyAsync(profile.request)
+                    .thenCompose(key -> this.accept(profile, key))
+                    .exceptionally(throwable -> {
+                        this.failures.increment();
+                        profile.backoffUntil = System.currentTimeMillis() + FAILURE_BACKOFF_MILLIS;
+                        this.errorHandler.accept(throwable);
+                        return null;
+                    })
+                    .whenComplete((ignored, throwable) -> {
+                        profile.pending.decrementAndGet();
+                        // Keep refilling, at most one batch in flight, until the target size is reached
+                        if (!this.closed) this.executor.execute(() -> this.refill(profile));
+                    });
+
+            this.creations.add(creation);
+            creation.whenComplete((ignored, throwable) -> this.creations.remove(creation));
+        }
+    }
+
+    private CompletableFuture<Void> accept(final Profile profile, final ApiKeyResponse key) {
+        this.created.increment();
+
+        // Keys which finished creating after close() are revoked right away
+        if (this.closed) return this.revoke(key);
+
+        profile.keys.addLast(new PooledKey(key, expiresAt(key, profile.request)));
+        profile.available.incrementAndGet();
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private boolean isExpiring(final PooledKey pooledKey, final long now) {
+        return pooledKey.expiresAt() != Timestamps.UNKNOWN && pooledKey.expiresAt() - now <= this.retireBeforeMillis;
+    }
+
+    private void retire(final PooledKey pooledKey) {
+        this.keyClient.deleteKeyAsync(pooledKey.key().id()).whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                this.failures.increment();
+                this.errorHandler.accept(throwable);
+            } else {
+                this.retired.increment();
+            }
+        });
+    }
+
+    private CompletableFuture<Void> revoke(final ApiKeyResponse key) {
+        return this.keyClient.deleteKeyAsync(key.id()).handle((ignored, throwable) -> {
+            if (throwable != null) {
+                this.failures.increment();
+                this.errorHandler.accept(throwable);
+            } else {
+                this.revoked.increment();
+            }
+            return null;
+        });
+    }
+
+    private static long expiresAt(final ApiKeyResponse key, final ApiKeyRequest request) {
+        final long expires = key.expiresMillis();
+        if (expires != Timestamps.UNKNOWN) return expires;
+
+        final long expirySeconds = key.expirySeconds() > 0 ? key.expirySeconds() : request.expirySeconds();
+        return expirySeconds > 0 ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(expirySeconds) : Timestamps.UNKNOWN;
+    }
+
+    private Profile profile(final ApiKeyRequest profile) {
+        final Profile pool = this.profiles.get(profile);
+        if (pool == null) throw new IllegalArgumentException("Profile is not registered");
+
+        return pool;
+    }
+
+    public int getAvailable(final ApiKeyRequest profile) {
+        return this.profile(profile).available.get();
+    }
+
+    public KeyPoolStats getStats() {
+        int available = 0;
+        int pending = 0;
+
+        for (final Profile profile : this.profiles.values()) {
+            available += profile.available.get();
+            pending += profile.pending.get();
+        }
+
+        return new KeyPoolStats(available, pending, this.handedOut.sum(), this.misses.sum(), this.created.sum(),
+                this.retired.sum(), this.revoked.sum(), this.failures.sum());
+    }
+
+    public void setErrorHandler(final Consumer<Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Stops refilling, waits for keys still being created and revokes every key which was not handed out
+     */
+    @Override
+    public void close() {
+        if (this.closed) return;
+        this.closed = true;
+        this.stop();
+
+        CompletableFuture.allOf(this.creations.toArray(new CompletableFuture<?>[0])).join();
+
+        final List<CompletableFuture<Void>> revocations = new ArrayList<>();
+        for (final Profile profile : this.profiles.values()) {
+            PooledKey pooledKey;
+            while ((pooledKey = profile.keys.pollFirst()) != null) {
+                profile.available.decrementAndGet();
+                revocations.add(this.revoke(pooledKey.key()));
+            }
+        }
+
+        CompletableFuture.allOf(revocations.toArray(new CompletableFuture<?>[0])).join();
+        this.executor.shutdown();
+    }
+
+    private record PooledKey(ApiKeyResponse key, long expiresAt) {
+    }
+
+    private static final class Profile {
+
+        private final ApiKeyRequest request;
+        private final int targetSize;
+        private final ConcurrentLinkedDeque<PooledKey> keys;
+        private final AtomicInteger available;
+        private final AtomicInteger pending;
+        private volatile long backoffUntil;
+
+        private Profile(final ApiKeyRequest request, final int targetSize) {
+            this.request = request;
+            this.targetSize = targetSize;
+            this.keys = new ConcurrentLinkedDeque<>();
+            this.available = new AtomicInteger();
+            this.pending = new AtomicInteger();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package pl.indianbartonka.tailscale.pool;
+
+/**
+ * @param available keys ready to be handed out
+ * @param pending   keys being created right now
+ * @param misses    requests that found the pool empty and created a key on the spot
+ * @param retired   keys deleted because they got too close to their expiry
+ * @param revoked   unused keys deleted when the pool was closed
+ */
+public record KeyPoolStats(int available, int pending, long handedOut, long misses, long created, long retired, long revoked, long failures) {
+}
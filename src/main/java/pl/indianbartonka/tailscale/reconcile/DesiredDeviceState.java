@@ -0,0 +1,24 @@
+package pl.indianbartonka.tailscale.reconcile;
+
+import java.util.List;
+import java.util.Map;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Desired state of one device for the {@link DeviceReconciler}, a {@code null} component leaves that field unmanaged
+ *
+ * @param name          short machine name, compared against the first label of {@code Device#name()}
+ * @param tags          tags in the form taken by {@code DeviceClient#setTags}, only the values are compared
+ * @param enabledRoutes subnet routes to enable, compared without regard to order
+ * @param attributes    posture attributes to set, a {@code null} value deletes the attribute. Attributes not listed are left alone
+ */
+public record DesiredDeviceState(
+        String deviceId,
+        @Nullable String name,
+        @Nullable Map<String, String> tags,
+        @Nullable Boolean authorized,
+        @Nullable Boolean keyExpiryDisabled,
+        @Nullable List<String> enabledRoutes,
+        @Nullable Map<String, String> attributes
+) {
+}
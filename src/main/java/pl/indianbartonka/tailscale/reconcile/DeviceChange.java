@@ -0,0 +1,67 @@
+package pl.indianbartonka.tailscale.reconcile;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.data.request.AttributesRequest;
+import pl.indianbartonka.tailscale.data.request.RoutesRequest;
+
+/**
+ * One mutation planned by the {@link DeviceReconciler}, every change is a single API call
+ */
+public sealed interface DeviceChange {
+
+    String deviceId();
+
+    CompletableFuture<Boolean> apply(DeviceClient deviceClient);
+
+    record Rename(String deviceId, String name) implements DeviceChange {
+        @Override
+        public CompletableFuture<Boolean> apply(final DeviceClient deviceClient) {
+            return deviceClient.setNameAsync(this.deviceId, this.name);
+        }
+    }
+
+    record SetTags(String deviceId, Map<String, String> tags) implements DeviceChange {
+        @Override
+        public CompletableFuture<Boolean> apply(final DeviceClient deviceClient) {
+            return deviceClient.setTagsAsync(this.deviceId, this.tags);
+        }
+    }
+
+    record SetAuthorized(String deviceId, boolean authorized) implements DeviceChange {
+        @Override
+        public CompletableFuture<Boolean> apply(final DeviceClient deviceClient) {
+            return deviceClient.setAuthorizedAsync(this.deviceId, this.authorized);
+        }
+    }
+
+    record SetKeyExpiryDisabled(String deviceId, boolean keyExpiryDisabled) implements DeviceChange {
+        @Override
+        public CompletableFuture<Boolean> apply(final DeviceClient deviceClient) {
+            return deviceClient.setKeyExpiryDisabledAsync(this.deviceId, this.keyExpiryDisabled);
+        }
+    }
+
+    record SetRoutes(String deviceId, List<String> routes) implements DeviceChange {
+        @Override
+        public CompletableFuture<Boolean> apply(final DeviceClient deviceClient) {
+            return deviceClient.setRoutesAsync(this.deviceId, new RoutesRequest(this.routes)).thenApply(response -> true);
+        }
+    }
+
+    record SetAttribute(String deviceId, String key, String value) implements DeviceChange {
+        @Override
+        public CompletableFuture<Boolean> apply(final DeviceClient deviceClient) {
+            return deviceClient.setAttributesAsync(this.deviceId, this.key, new AttributesRequest(this.value, null));
+        }
+    }
+
+    record DeleteAttribute(String deviceId, String key) implements DeviceChange {
+        @Override
+        public CompletableFuture<Boolean> apply(final DeviceClient deviceClient) {
+            return deviceClient.deleteAttributesAsync(this.deviceId, this.key);
+        }
+    }
+}
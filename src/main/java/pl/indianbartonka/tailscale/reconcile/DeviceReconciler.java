@@ -0,0 +1,232 @@
+package pl.indianbartonka.tailscale.reconcile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.jetbrains.annotations.Nullable;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.bulk.BulkOperation;
+import pl.indianbartonka.tailscale.bulk.BulkResult;
+import pl.indianbartonka.tailscale.data.response.AttributesResponse;
+import pl.indianbartonka.tailscale.data.response.RoutesResponse;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+
+/**
+ * Compares {@link DesiredDeviceState} with the current devices and issues only the calls needed to reach it.
+ * The current state takes one {@link DeviceClient#getDevices()} call, plus one attributes read per device with managed attributes.
+ * Devices are handled concurrently, the changes of one device are applied one after another
+ */
+public class DeviceReconciler {
+
+    private final DeviceClient deviceClient;
+    private final int maxConcurrency;
+
+    /**
+     * @param maxConcurrency how many devices are read or changed at the same time
+     */
+    public DeviceReconciler(final DeviceClient deviceClient, final int maxConcurrency) {
+        if (maxConcurrency < 1) throw new IllegalArgumentException("maxConcurrency must be at least 1");
+
+        this.deviceClient = deviceClient;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public ReconcileResult reconcile(final Collection<DesiredDeviceState> desired) throws IOException {
+        return TailscaleClient.await(this.reconcileAsync(desired));
+    }
+
+    public CompletableFuture<ReconcileResult> reconcileAsync(final Collection<DesiredDeviceState> desired) {
+        return this.planAsync(desired).thenCompose(this::applyAsync);
+    }
+
+    public ReconcilePlan plan(final Collection<DesiredDeviceState> desired) throws IOException {
+        return TailscaleClient.await(this.planAsync(desired));
+    }
+
+    public CompletableFuture<ReconcilePlan> planAsync(final Collection<DesiredDeviceState> desired) {
+        return this.deviceClient.getDevicesAsync().thenCompose(devices -> this.planAsync(desired, devices, 1));
+    }
+
+    /**
+     * Plans against devices the caller already has, for example from a cache or a {@code DeviceWatcher}
+     */
+    public CompletableFuture<ReconcilePlan> planAsync(final Collection<DesiredDeviceState> desired, final Collection<Device> devices) {
+        return this.planAsync(desired, devices, 0);
+    }
+
+    private CompletableFuture<ReconcilePlan> planAsync(final Collection<DesiredDeviceState> desired, final Collection<Device> devices, final int reads) {
+        final Map<String, Device> byId = new HashMap<>();
+        for (final Device device : devices) byId.put(device.id(), device);
+
+        final List<String> missing = new ArrayList<>();
+        final List<String> attributeReads = new ArrayList<>();
+        final List<String> routeReads = new ArrayList<>();
+
+        for (final DesiredDeviceState state : desired) {
+            final Device device = byId.get(state.deviceId());
+            if (device == null) {
+                missing.add(state.deviceId());
+                continue;
+            }
+
+            if (state.attributes() != null && !state.attributes().isEmpty()) attributeReads.add(state.deviceId());
+            // The device list leaves the routes out unless all fields were requested
+            if (state.enabledRoutes() != null && device.enabledRoutes() == null) routeReads.add(state.deviceId());
+        }
+
+        final CompletableFuture<BulkResult<AttributesResponse>> attributes = attributeReads.isEmpty()
+                ? CompletableFuture.completedFuture(new BulkResult<>(Map.of(), Map.of()))
+                : new BulkOperation<>(this.maxConcurrency, this.deviceClient::getAttributesAsync).runAsync(attributeReads);
+        final CompletableFuture<BulkResult<RoutesResponse>> routes = routeReads.isEmpty()
+                ? CompletableFuture.completedFuture(new BulkResult<>(Map.of(), Map.of()))
+                : new BulkOperation<>(this.maxConcurrency, this.deviceClient::getRoutesAsync).runAsync(routeReads);
+
+        return attributes.thenCombine(routes, (attributesResult, routesResult) -> {
+            if (!attributesResult.isSuccessful()) throw firstFailure(attributesResult);
+            if (!routesResult.isSuccessful()) throw firstFailure(routesResult);
+
+            final List<DeviceChange> changes = new ArrayList<>();
+            for (final DesiredDeviceState state : desired) {
+                final Device device = byId.get(state.deviceId());
+                if (device == null) continue;
+
+                final RoutesResponse routesResponse = routesResult.successes().get(state.deviceId());
+                final AttributesResponse attributesResponse = attributesResult.successes().get(state.deviceId());
+
+                changes.addAll(diff(state, device,
+                        routesResponse == null ? device.enabledRoutes() : routesResponse.enabledRoutes(),
+                        attributesResponse == null ? null : attributesResponse.attributes()));
+            }
+
+            return new ReconcilePlan(Collections.unmodifiableList(changes), Collections.unmodifiableList(missing),
+                    reads + attributeReads.size() + routeReads.size());
+        });
+    }
+
+    public ReconcileResult apply(final ReconcilePlan plan) throws IOException {
+        return TailscaleClient.await(this.applyAsync(plan));
+    }
+
+    public CompletableFuture<ReconcileResult> applyAsync(final ReconcilePlan plan) {
+        final Map<String, List<DeviceChange>> byDevice = new LinkedHashMap<>();
+        for (final DeviceChange change : plan.changes()) {
+            byDevice.computeIfAbsent(change.deviceId(), ignored -> new ArrayList<>()).add(change);
+        }
+
+        final List<DeviceChange> applied = Collections.synchronizedList(new ArrayList<>());
+        final Map<DeviceChange, TailscaleException> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        return new BulkOperation<>(this.maxConcurrency, deviceId -> {
+            CompletableFuture<Boolean> chain = CompletableFuture.completedFuture(true);
+
+            for (final DeviceChange change : byDevice.get(deviceId)) {
+                chain = chain.thenCompose(ignored -> this.applyChange(change)
+                        .handle((result, throwable) -> {
+                            if (throwable == null) {
+                                applied.add(change);
+                            } else {
+                                failures.put(change, toTailscaleException(throwable));
+                            }
+                            return true;
+                        }));
+            }
+
+            return chain;
+        }).runAsync(byDevice.keySet()).thenApply(ignored -> new ReconcileResult(plan,
+                List.copyOf(applied), Collections.unmodifiableMap(new LinkedHashMap<>(failures))));
+    }
+
+    private CompletableFuture<Boolean> applyChange(final DeviceChange change) {
+        try {
+            return change.apply(this.deviceClient);
+        } catch (final RuntimeException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+    }
+
+    /**
+     * @param enabledRoutes current routes, {@code null} when unknown
+     * @param attributes    current posture attributes, {@code null} when unknown
+     * @return the changes needed to bring {@code device} to {@code desired}
+     */
+    public static List<DeviceChange> diff(final DesiredDeviceState desired, final Device device,
+                                          @Nullable final List<String> enabledRoutes, @Nullable final Map<String, String> attributes) {
+        final String deviceId = desired.deviceId();
+        final List<DeviceChange> changes = new ArrayList<>();
+
+        if (desired.name() != null && !sameName(device.name(), desired.name())) {
+            changes.add(new DeviceChange.Rename(deviceId, desired.name()));
+        }
+
+        if (desired.tags() != null && !sameElements(device.tags(), desired.tags().values())) {
+            changes.add(new DeviceChange.SetTags(deviceId, desired.tags()));
+        }
+
+        if (desired.authorized() != null && desired.authorized() != device.authorized()) {
+            changes.add(new DeviceChange.SetAuthorized(deviceId, desired.authorized()));
+        }
+
+        if (desired.keyExpiryDisabled() != null && desired.keyExpiryDisabled() != device.keyExpiryDisabled()) {
+            changes.add(new DeviceChange.SetKeyExpiryDisabled(deviceId, desired.keyExpiryDisabled()));
+        }
+
+        if (desired.enabledRoutes() != null && !sameElements(enabledRoutes, desired.enabledRoutes())) {
+            changes.add(new DeviceChange.SetRoutes(deviceId, desired.enabledRoutes()));
+        }
+
+        if (desired.attributes() != null) {
+            final Map<String, String> current = attributes == null ? Map.of() : attributes;
+
+            for (final Map.Entry<String, String> entry : desired.attributes().entrySet()) {
+                if (entry.getValue() == null) {
+                    if (current.containsKey(entry.getKey())) changes.add(new DeviceChange.DeleteAttribute(deviceId, entry.getKey()));
+                } else if (!entry.getValue().equals(current.get(entry.getKey()))) {
+                    changes.add(new DeviceChange.SetAttribute(deviceId, entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+
+        return changes;
+    }
+
+    /**
+     * The API returns the full MagicDNS name, but takes the short one
+     */
+    private static boolean sameName(final String current, final String desired) {
+        if (current == null) return false;
+
+        return current.equals(desired) || (current.startsWith(desired) && current.length() > desired.length() && current.charAt(desired.length()) == '.');
+    }
+
+    private static boolean sameElements(@Nullable final Collection<String> current, final Collection<String> desired) {
+        final Collection<String> currentElements = current == null ? List.of() : current;
+
+        return new HashSet<>(currentElements).equals(new HashSet<>(desired));
+    }
+
+    private static TailscaleException firstFailure(final BulkResult<?> result) {
+        return result.failures().values().iterator().next();
+    }
+
+    private static TailscaleException toTailscaleException(final Throwable throwable) {
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+
+        if (cause instanceof final TailscaleException tailscaleException) return tailscaleException;
+
+        return new TailscaleException(String.valueOf(cause.getMessage()), cause);
+    }
+
+    public int getMaxConcurrency() {
+        return this.maxConcurrency;
+    }
+}
@@ -0,0 +1,19 @@
+package pl.indianbartonka.tailscale.reconcile;
+
+import java.util.List;
+
+/**
+ * @param changes        mutations needed to reach the desired state, in device order
+ * @param missingDevices desired devices which don't exist in the tailnet
+ * @param reads          API calls made to read the current state
+ */
+public record ReconcilePlan(List<DeviceChange> changes, List<String> missingDevices, int reads) {
+
+    public boolean isEmpty() {
+        return this.changes.isEmpty();
+    }
+
+    public int size() {
+        return this.changes.size();
+    }
+}
@@ -0,0 +1,22 @@
+package pl.indianbartonka.tailscale.reconcile;
+
+import java.util.List;
+import java.util.Map;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+
+/**
+ * Outcome of {@link DeviceReconciler#apply(ReconcilePlan)}, a failed change doesn't stop the other changes of its device
+ */
+public record ReconcileResult(ReconcilePlan plan, List<DeviceChange> applied, Map<DeviceChange, TailscaleException> failures) {
+
+    public boolean isSuccessful() {
+        return this.failures.isEmpty();
+    }
+
+    /**
+     * @return reads and writes together
+     */
+    public int apiCalls() {
+        return this.plan.reads() + this.applied.size() + this.failures.size();
+    }
+}
@@ -0,0 +1,215 @@
+package pl.indianbartonka.tailscale.scheduler;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import pl.indianbartonka.tailscale.transport.TransportResponse;
+
+/**
+ * Paces every request of one tailnet with a token bucket, honours {@code Retry-After}
+ * on rate-limited responses and retries failed attempts according to the {@link RetryPolicy}.
+ * Waiting is done with delayed futures, no thread is blocked while a request is queued
+ */
+public class RequestScheduler {
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final long nanosPerPermit;
+    private final RetryPolicy retryPolicy;
+    private final AtomicInteger queued;
+    private final AtomicInteger inFlight;
+    private double permits;
+    private long lastRefill;
+    private long throttledUntil;
+
+    /**
+     * @param permitsPerSecond sustained request rate
+     * @param burst            how many requests can be sent at once after an idle period
+     */
+    public RequestScheduler(final double permitsPerSecond, final int burst, final RetryPolicy retryPolicy) {
+        if (permitsPerSecond <= 0) throw new IllegalArgumentException("permitsPerSecond must be positive");
+        if (burst < 1) throw new IllegalArgumentException("burst must be at least 1");
+
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.nanosPerPermit = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.retryPolicy = retryPolicy;
+        this.queued = new AtomicInteger();
+        this.inFlight = new AtomicInteger();
+        this.permits = burst;
+        this.lastRefill = System.nanoTime();
+        this.throttledUntil = this.lastRefill;
+    }
+
+    public CompletableFuture<TransportResponse> schedule(final HttpRequest request, final Supplier<CompletableFuture<TransportResponse>> attempt) {
+        return this.schedule(request, attempt, 0, 0);
+    }
+
+    private CompletableFuture<TransportResponse> schedule(final HttpRequest request, final Supplier<CompletableFuture<TransportResponse>> attempt,
+                                                         final int attemptNumber, final long extraDelayNanos) {
+        final long delay = Math.max(this.reserve(), extraDelayNanos);
+
+        final CompletableFuture<TransportResponse> response;
+        if (delay <= 0) {
+            response = this.send(attempt);
+        } else {
+            this.queued.incrementAndGet();
+            final Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS);
+            response = CompletableFuture.runAsync(this.queued::decrementAndGet, delayed)
+                    .thenCompose(ignored -> this.send(attempt));
+        }
+
+        return response.handle((httpResponse, throwable) -> {
+            final String method = request.method();
+
+            if (throwable != null) {
+                final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+
+                if (this.retryPolicy.shouldRetry(attemptNumber, method, cause)) {
+                    return this.schedule(request, attempt, attemptNumber + 1, this.retryPolicy.backoffNanos(attemptNumber));
+                }
+                return CompletableFuture.<TransportResponse>failedFuture(cause);
+            }
+
+            final int code = httpResponse.statusCode();
+
+            if (code == 429) {
+                this.throttle(parseRetryAfter(httpResponse).orElseGet(() -> this.retryPolicy.backoffNanos(attemptNumber)));
+            }
+
+            if (this.retryPolicy.shouldRetry(attemptNumber, method, code)) {
+                discardBody(httpResponse);
+                // Rate-limited retries wait in reserve() until the throttle pause is over
+                return this.schedule(request, attempt, attemptNumber + 1, code == 429 ? 0 : this.retryPolicy.backoffNanos(attemptNumber));
+            }
+
+            return CompletableFuture.completedFuture(httpResponse);
+        }).thenCompose(future -> future);
+    }
+
+    private CompletableFuture<TransportResponse> send(final Supplier<CompletableFuture<TransportResponse>> attempt) {
+        this.inFlight.incrementAndGet();
+
+        final CompletableFuture<TransportResponse> response;
+        try {
+            response = attempt.get();
+        } catch (final RuntimeException exception) {
+            this.inFlight.decrementAndGet();
+            return CompletableFuture.failedFuture(exception);
+        }
+
+        return response.whenComplete((httpResponse, throwable) -> this.inFlight.decrementAndGet());
+    }
+
+    private static void discardBody(final TransportResponse response) {
+        try {
+            response.body().close();
+        } catch (final IOException ignored) {
+        }
+    }
+
+    /**
+     * Takes one permit from the bucket, going into debt when it is empty
+     *
+     * @return nanoseconds the caller has to wait before sending
+     */
+    private synchronized long reserve() {
+        final long now = System.nanoTime();
+        this.refill(now);
+        this.permits -= 1;
+
+        long wait = this.permits < 0 ? (long) (-this.permits * this.nanosPerPermit) : 0;
+        if (this.throttledUntil - now > wait) wait = this.throttledUntil - now;
+
+        return wait;
+    }
+
+    private void refill(final long now) {
+        final long elapsed = now - this.lastRefill;
+        if (elapsed <= 0) return;
+
+        this.permits = Math.min(this.burst, this.permits + (double) elapsed / this.nanosPerPermit);
+        this.lastRefill = now;
+    }
+
+    /**
+     * Pauses the whole bucket, the server told us that we are over the limit
+     */
+    private synchronized void throttle(final long nanos) {
+        final long until = System.nanoTime() + nanos;
+        if (until - this.throttledUntil > 0) this.throttledUntil = until;
+
+        // Don't let the saved up burst hit the server again as soon as the pause ends
+        this.refill(System.nanoTime());
+        this.permits = Math.min(this.permits, 0);
+    }
+
+    static Optional<Long> parseRetryAfter(final TransportResponse response) {
+        return response.headers().firstValue("Retry-After").flatMap(RequestScheduler::parseRetryAfter);
+    }
+
+    static Optional<Long> parseRetryAfter(final String value) {
+        final String trimmed = value.trim();
+
+        try {
+            return Optional.of(TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(trimmed))));
+        } catch (final NumberFormatException ignored) {
+        }
+
+        try {
+            final Duration duration = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME));
+            return Optional.of(Math.max(0, duration.toNanos()));
+        } catch (final DateTimeParseException | ArithmeticException ignored) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return requests waiting for a permit, a {@code Retry-After} pause or a retry backoff
+     */
+    public int getQueueDepth() {
+        return this.queued.get();
+    }
+
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    public synchronized boolean isThrottled() {
+        return this.throttledUntil - System.nanoTime() > 0;
+    }
+
+    /**
+     * @return how long the server asked us to pause, {@link Duration#ZERO} when not throttled
+     */
+    public synchronized Duration getThrottleRemaining() {
+        return Duration.ofNanos(Math.max(0, this.throttledUntil - System.nanoTime()));
+    }
+
+    public synchronized double getAvailablePermits() {
+        this.refill(System.nanoTime());
+        return this.permits;
+    }
+
+    public double getPermitsPerSecond() {
+        return this.permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return this.burst;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return this.retryPolicy;
+    }
+}
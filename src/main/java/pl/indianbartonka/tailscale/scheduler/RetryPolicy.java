@@ -0,0 +1,52 @@
+package pl.indianbartonka.tailscale.scheduler;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import pl.indianbartonka.tailscale.exception.BulkheadFullException;
+import pl.indianbartonka.tailscale.exception.CircuitOpenException;
+
+/**
+ * Exponential backoff with full jitter. Rate-limited responses are retried for every method,
+ * server errors and I/O failures only for idempotent methods. Calls refused by a circuit breaker or bulkhead are never retried
+ */
+public record RetryPolicy(int maxRetries, Duration baseDelay, Duration maxDelay) {
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(4, Duration.ofMillis(200), Duration.ofSeconds(20));
+    public static final RetryPolicy NONE = new RetryPolicy(0, Duration.ZERO, Duration.ZERO);
+
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "DELETE", "PUT", "OPTIONS");
+    private static final Set<Integer> RETRYABLE_SERVER_CODES = Set.of(500, 502, 503, 504);
+
+    public RetryPolicy {
+        if (maxRetries < 0) throw new IllegalArgumentException("maxRetries can't be negative");
+    }
+
+    public boolean isIdempotent(final String method) {
+        return IDEMPOTENT_METHODS.contains(method);
+    }
+
+    public boolean shouldRetry(final int attempt, final String method, final int statusCode) {
+        if (attempt >= this.maxRetries) return false;
+        if (statusCode == 429) return true;
+
+        return RETRYABLE_SERVER_CODES.contains(statusCode) && this.isIdempotent(method);
+    }
+
+    public boolean shouldRetry(final int attempt, final String method, final Throwable throwable) {
+        if (throwable instanceof CircuitOpenException || throwable instanceof BulkheadFullException) return false;
+
+        return attempt < this.maxRetries && this.isIdempotent(method);
+    }
+
+    /**
+     * @return random delay between zero and {@code baseDelay * 2^attempt}, capped at {@code maxDelay}
+     */
+    public long backoffNanos(final int attempt) {
+        final long base = this.baseDelay.toNanos();
+        final long cap = this.maxDelay.toNanos();
+        final long ceiling = attempt >= 30 ? cap : Math.min(cap, base << attempt);
+
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
@@ -0,0 +1,11 @@
+package pl.indianbartonka.tailscale.snapshot;
+
+/**
+ * What one {@link WarmInventory#refreshAsync()} changed in the inventory
+ */
+public record InventoryDiff(int devicesAdded, int devicesUpdated, int devicesRemoved, int keysAdded, int keysUpdated, int keysRemoved) {
+
+    public boolean isEmpty() {
+        return this.devicesAdded + this.devicesUpdated + this.devicesRemoved + this.keysAdded + this.keysUpdated + this.keysRemoved == 0;
+    }
+}
@@ -0,0 +1,624 @@
+package pl.indianbartonka.tailscale.snapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.IntUnaryOperator;
+import java.util.zip.CRC32C;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.data.response.key.ApiKey;
+import pl.indianbartonka.tailscale.data.response.key.Capabilities;
+import pl.indianbartonka.tailscale.data.response.key.Create;
+import pl.indianbartonka.tailscale.data.response.key.Devices;
+
+/**
+ * Device and key inventory in a compact binary file, read through a memory mapping. Every string is stored once and
+ * referenced by its index, records are decoded only when they are accessed and lookups by id are a binary search
+ * over the record offsets, so opening a snapshot costs a checksum pass over the file and a bounds check of the offset tables
+ * and of the string references in the records.
+ * The mapping stays valid after the file has been replaced by a newer snapshot.
+ * <p>
+ * Layout, big endian: header, string offsets, device offsets and key offsets (both sorted by id), strings, records.
+ * The CRC32C at the end of the header covers the rest of the header and everything after it
+ */
+public final class InventorySnapshot {
+
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int MAGIC = 0x54534E50;
+    private static final int HEADER_SIZE = 40;
+    private static final int CRC_OFFSET = 36;
+    private static final int NULL = -1;
+
+    private static final int AUTHORIZED = 1;
+    private static final int BLOCKS_INCOMING_CONNECTIONS = 1 << 1;
+    private static final int IS_EXTERNAL = 1 << 2;
+    private static final int KEY_EXPIRY_DISABLED = 1 << 3;
+    private static final int UPDATE_AVAILABLE = 1 << 4;
+
+    private final ByteBuffer buffer;
+    private final long version;
+    private final long timestampMillis;
+    private final int stringCount;
+    private final int deviceCount;
+    private final int keyCount;
+    private final String[] strings;
+
+    private InventorySnapshot(final ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) throw new IOException("Not an inventory snapshot");
+        if (buffer.getShort(4) != FORMAT_VERSION) throw new IOException("Unsupported snapshot format " + buffer.getShort(4));
+        if (checksum(buffer.duplicate().position(0).limit(CRC_OFFSET), buffer.duplicate().position(HEADER_SIZE)) != buffer.getInt(CRC_OFFSET)) {
+            throw new IOException("Snapshot checksum mismatch");
+        }
+
+        this.buffer = buffer;
+        this.version = buffer.getLong(8);
+        this.timestampMillis = buffer.getLong(16);
+        this.stringCount = buffer.getInt(24);
+        this.deviceCount = buffer.getInt(28);
+        this.keyCount = buffer.getInt(32);
+        this.checkTables();
+        this.strings = new String[this.stringCount];
+        this.checkRecords();
+    }
+
+    /**
+     * The checksum only proves the file is the one that was written, the counts and offsets are still checked
+     * so a bad writer fails here instead of with an index error on some later read
+     */
+    private void checkTables() throws IOException {
+        if (this.stringCount < 0 || this.deviceCount < 0 || this.keyCount < 0) throw new IOException("Snapshot has a negative record count");
+
+        final long tablesEnd = HEADER_SIZE + 4L * ((long) this.stringCount + this.deviceCount + this.keyCount);
+        final int limit = this.buffer.limit();
+        if (tablesEnd > limit) throw new IOException("Snapshot offset tables exceed the file");
+
+        for (int i = 0; i < this.stringCount; i++) {
+            final int offset = this.buffer.getInt(HEADER_SIZE + 4 * i);
+            if (offset < tablesEnd || offset > limit - 4) throw new IOException("Snapshot string " + i + " is out of bounds");
+
+            final int length = this.buffer.getInt(offset);
+            if (length < 0 || length > limit - offset - 4) throw new IOException("Snapshot string " + i + " is out of bounds");
+        }
+
+        for (int i = this.stringCount; i < this.stringCount + this.deviceCount + this.keyCount; i++) {
+            final int offset = this.buffer.getInt(HEADER_SIZE + 4 * i);
+            if (offset < tablesEnd || offset >= limit) throw new IOException("Snapshot record " + (i - this.stringCount) + " is out of bounds");
+        }
+    }
+
+    /**
+     * Walks every record without decoding its strings, so a bad string index or a record running past the file
+     * fails the open instead of a later read
+     */
+    private void checkRecords() throws IOException {
+        for (int i = 0; i < this.deviceCount; i++) {
+            try {
+                this.readDevice(new Cursor(this.deviceOffset(i), true));
+            } catch (final IndexOutOfBoundsException exception) {
+                throw new IOException("Snapshot device " + i + " is corrupt", exception);
+            }
+        }
+
+        for (int i = 0; i < this.keyCount; i++) {
+            try {
+                this.readKey(new Cursor(this.keyOffset(i), true));
+            } catch (final IndexOutOfBoundsException exception) {
+                throw new IOException("Snapshot key " + i + " is corrupt", exception);
+            }
+        }
+    }
+
+    /**
+     * CRC32C of the header up to the checksum field and of everything after the header
+     */
+    private static int checksum(final ByteBuffer header, final ByteBuffer body) {
+        final CRC32C crc = new CRC32C();
+        crc.update(header);
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Maps the snapshot file and verifies its checksum
+     *
+     * @throws IOException when the file can't be read or is not a complete snapshot
+     */
+    public static InventorySnapshot open(final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new InventorySnapshot(buffer);
+        }
+    }
+
+    /**
+     * Writes a snapshot through a temporary file, so readers see either the old or the new one
+     */
+    public static void write(final Path file, final long version, final Instant timestamp, final Collection<Device> devices,
+                             final Collection<ApiKey> keys) throws IOException {
+        final Writer writer = new Writer();
+        final List<Device> sortedDevices = new ArrayList<>(devices);
+        sortedDevices.sort(Comparator.comparing(Device::id));
+        final List<ApiKey> sortedKeys = new ArrayList<>(keys);
+        sortedKeys.sort(Comparator.comparing(ApiKey::id));
+
+        final int[] deviceOffsets = new int[sortedDevices.size()];
+        for (int i = 0; i < deviceOffsets.length; i++) deviceOffsets[i] = writer.device(sortedDevices.get(i));
+
+        final int[] keyOffsets = new int[sortedKeys.size()];
+        for (int i = 0; i < keyOffsets.length; i++) keyOffsets[i] = writer.key(sortedKeys.get(i));
+
+        final byte[] body = writer.body(deviceOffsets, keyOffsets);
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putShort((short) FORMAT_VERSION)
+                .putShort((short) 0)
+                .putLong(version)
+                .putLong(timestamp.toEpochMilli())
+                .putInt(writer.strings.size())
+                .putInt(deviceOffsets.length)
+                .putInt(keyOffsets.length)
+                .putInt(0)
+                .flip();
+        header.putInt(CRC_OFFSET, checksum(header.duplicate().limit(CRC_OFFSET), ByteBuffer.wrap(body)));
+
+        final Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+
+        final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+            while (header.hasRemaining()) channel.write(header);
+            while (bodyBuffer.hasRemaining()) channel.write(bodyBuffer);
+            channel.force(true);
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    public Instant getTimestamp() {
+        return Instant.ofEpochMilli(this.timestampMillis);
+    }
+
+    public int getDeviceCount() {
+        return this.deviceCount;
+    }
+
+    public int getKeyCount() {
+        return this.keyCount;
+    }
+
+    /**
+     * @param index from 0 to {@link #getDeviceCount()}, devices are ordered by id
+     */
+    public Device getDevice(final int index) {
+        return this.readDevice(new Cursor(this.deviceOffset(index), false));
+    }
+
+    public Optional<Device> findDevice(final String deviceId) {
+        final int index = this.search(deviceId, this.deviceCount, this::deviceOffset);
+        return index < 0 ? Optional.empty() : Optional.of(this.getDevice(index));
+    }
+
+    public List<Device> getDevices() {
+        final List<Device> devices = new ArrayList<>(this.deviceCount);
+        for (int i = 0; i < this.deviceCount; i++) devices.add(this.getDevice(i));
+        return devices;
+    }
+
+    /**
+     * @param index from 0 to {@link #getKeyCount()}, keys are ordered by id
+     */
+    public ApiKey getKey(final int index) {
+        return this.readKey(new Cursor(this.keyOffset(index), false));
+    }
+
+    public Optional<ApiKey> findKey(final String keyId) {
+        final int index = this.search(keyId, this.keyCount, this::keyOffset);
+        return index < 0 ? Optional.empty() : Optional.of(this.getKey(index));
+    }
+
+    public List<ApiKey> getKeys() {
+        final List<ApiKey> keys = new ArrayList<>(this.keyCount);
+        for (int i = 0; i < this.keyCount; i++) keys.add(this.getKey(i));
+        return keys;
+    }
+
+    /**
+     * @return size of the snapshot in bytes
+     */
+    public int getSize() {
+        return this.buffer.limit();
+    }
+
+    private int deviceOffset(final int index) {
+        if (index < 0 || index >= this.deviceCount) throw new IndexOutOfBoundsException(index);
+        return this.buffer.getInt(HEADER_SIZE + 4 * (this.stringCount + index));
+    }
+
+    private int keyOffset(final int index) {
+        if (index < 0 || index >= this.keyCount) throw new IndexOutOfBoundsException(index);
+        return this.buffer.getInt(HEADER_SIZE + 4 * (this.stringCount + this.deviceCount + index));
+    }
+
+    /**
+     * Records start with the string index of their id
+     */
+    private int search(final String id, final int count, final IntUnaryOperator offsets) {
+        int low = 0;
+        int high = count - 1;
+
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int comparison = this.string(this.buffer.getInt(offsets.applyAsInt(middle))).compareTo(id);
+
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Strings are decoded once, racing threads at worst decode the same string twice
+     */
+    private String string(final int index) {
+        if (index == NULL) return null;
+        this.checkString(index);
+
+        String value = this.strings[index];
+        if (value == null) {
+            final int offset = this.buffer.getInt(HEADER_SIZE + 4 * index);
+            final byte[] bytes = new byte[this.buffer.getInt(offset)];
+            this.buffer.get(offset + 4, bytes);
+
+            value = new String(bytes, StandardCharsets.UTF_8);
+            this.strings[index] = value;
+        }
+
+        return value;
+    }
+
+    private void checkString(final int index) {
+        if (index < 0 || index >= this.stringCount) {
+            throw new IndexOutOfBoundsException("Snapshot string index " + index + " is outside of the " + this.stringCount + " strings");
+        }
+    }
+
+    private Device readDevice(final Cursor cursor) {
+        final String id = cursor.string();
+        final List<String> addresses = cursor.stringList();
+        final int flags = cursor.u8();
+        final String clientVersion = cursor.string();
+        final String created = cursor.string();
+        final String expires = cursor.string();
+        final String hostname = cursor.string();
+        final String lastSeen = cursor.string();
+        final String machineKey = cursor.string();
+        final String name = cursor.string();
+        final String nodeId = cursor.string();
+        final String nodeKey = cursor.string();
+        final String os = cursor.string();
+        final List<String> enabledRoutes = cursor.stringList();
+        final List<String> advertisedRoutes = cursor.stringList();
+        final Device.ClientConnectivity clientConnectivity = cursor.u8() == 0 ? null : cursor.clientConnectivity();
+        final List<String> tags = cursor.stringList();
+        final String tailnetLockError = cursor.string();
+        final String tailnetLockKey = cursor.string();
+        final Device.PostureIdentity postureIdentity = cursor.u8() == 0 ? null : new Device.PostureIdentity(cursor.stringList());
+        final String user = cursor.string();
+
+        return new Device(addresses, (flags & AUTHORIZED) != 0, (flags & BLOCKS_INCOMING_CONNECTIONS) != 0, clientVersion, created, expires,
+                hostname, id, (flags & IS_EXTERNAL) != 0, (flags & KEY_EXPIRY_DISABLED) != 0, lastSeen, machineKey, name, nodeId, nodeKey, os,
+                enabledRoutes, advertisedRoutes, clientConnectivity, tags, tailnetLockError, tailnetLockKey, postureIdentity,
+                (flags & UPDATE_AVAILABLE) != 0, user);
+    }
+
+    private ApiKey readKey(final Cursor cursor) {
+        final String id = cursor.string();
+        final String keyType = cursor.string();
+        final long expirySeconds = cursor.i64();
+        final String created = cursor.string();
+        final String expires = cursor.string();
+
+        // 0 no capabilities, 1 without devices, 2 without create, 3 complete
+        final int depth = cursor.u8();
+        Capabilities capabilities = null;
+        if (depth > 0) {
+            Create create = null;
+            if (depth > 2) {
+                final int flags = cursor.u8();
+                create = new Create((flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0, cursor.stringList());
+            }
+            capabilities = new Capabilities(depth > 1 ? new Devices(create) : null);
+        }
+
+        final String description = cursor.string();
+        final String userId = cursor.string();
+
+        return new ApiKey(id, keyType, expirySeconds, created, expires, capabilities, description, userId);
+    }
+
+    /**
+     * Reads one record with absolute gets, so the buffer itself can be shared between threads
+     */
+    private final class Cursor {
+
+        private final boolean checkOnly;
+        private int position;
+
+        /**
+         * @param checkOnly only check the string indexes, without decoding the strings
+         */
+        private Cursor(final int position, final boolean checkOnly) {
+            this.position = position;
+            this.checkOnly = checkOnly;
+        }
+
+        private int u8() {
+            return InventorySnapshot.this.buffer.get(this.position++) & 0xFF;
+        }
+
+        private int i32() {
+            final int value = InventorySnapshot.this.buffer.getInt(this.position);
+            this.position += 4;
+            return value;
+        }
+
+        private long i64() {
+            final long value = InventorySnapshot.this.buffer.getLong(this.position);
+            this.position += 8;
+            return value;
+        }
+
+        private double f64() {
+            final double value = InventorySnapshot.this.buffer.getDouble(this.position);
+            this.position += 8;
+            return value;
+        }
+
+        private String string() {
+            final int index = this.i32();
+            if (!this.checkOnly) return InventorySnapshot.this.string(index);
+
+            if (index != NULL) InventorySnapshot.this.checkString(index);
+            return null;
+        }
+
+        private List<String> stringList() {
+            final int size = this.i32();
+            if (size == NULL) return null;
+            if (size < 0 || size > (InventorySnapshot.this.buffer.limit() - this.position) / 4) {
+                throw new IndexOutOfBoundsException("Snapshot list of " + size + " strings exceeds the file");
+            }
+
+            final List<String> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) list.add(this.string());
+            return list;
+        }
+
+        private Device.ClientConnectivity clientConnectivity() {
+            final List<String> endpoints = this.stringList();
+
+            final int latencyCount = this.i32();
+            Map<String, Device.Latency> latency = null;
+            if (latencyCount != NULL) {
+                latency = new LinkedHashMap<>();
+                for (int i = 0; i < latencyCount; i++) {
+                    final String region = this.string();
+                    final int flags = this.u8();
+                    if ((flags & 1) == 0) {
+                        latency.put(region, null);
+                        continue;
+                    }
+
+                    final Double latencyMs = (flags & 2) != 0 ? this.f64() : null;
+                    final Boolean preferred = (flags & 4) != 0 ? (flags & 8) != 0 : null;
+                    latency.put(region, new Device.Latency(latencyMs, preferred));
+                }
+            }
+
+            final int flags = this.u8();
+            final Device.ClientSupports supports = (flags & 2) == 0 ? null : new Device.ClientSupports((flags & 4) != 0, (flags & 8) != 0,
+                    (flags & 16) != 0, (flags & 32) != 0, (flags & 64) != 0, (flags & 128) != 0);
+
+            return new Device.ClientConnectivity(endpoints, latency, (flags & 1) != 0, supports);
+        }
+    }
+
+    /**
+     * Encodes the records first, the strings they reference are collected on the way
+     */
+    private static final class Writer {
+
+        private final Map<String, Integer> strings;
+        private final ByteArrayOutputStream records;
+        private final DataOutputStream output;
+
+        private Writer() {
+            this.strings = new HashMap<>();
+            this.records = new ByteArrayOutputStream();
+            this.output = new DataOutputStream(this.records);
+        }
+
+        /**
+         * @return offset of the record within the record section
+         */
+        private int device(final Device device) throws IOException {
+            final int offset = this.output.size();
+
+            this.string(device.id());
+            this.stringList(device.addresses());
+            this.output.writeByte((device.authorized() ? AUTHORIZED : 0)
+                    | (device.blocksIncomingConnections() ? BLOCKS_INCOMING_CONNECTIONS : 0)
+                    | (device.isExternal() ? IS_EXTERNAL : 0)
+                    | (device.keyExpiryDisabled() ? KEY_EXPIRY_DISABLED : 0)
+                    | (device.updateAvailable() ? UPDATE_AVAILABLE : 0));
+            this.string(device.clientVersion());
+            this.string(device.created());
+            this.string(device.expires());
+            this.string(device.hostname());
+            this.string(device.lastSeen());
+            this.string(device.machineKey());
+            this.string(device.name());
+            this.string(device.nodeId());
+            this.string(device.nodeKey());
+            this.string(device.os());
+            this.stringList(device.enabledRoutes());
+            this.stringList(device.advertisedRoutes());
+            this.clientConnectivity(device.clientConnectivity());
+            this.stringList(device.tags());
+            this.string(device.tailnetLockError());
+            this.string(device.tailnetLockKey());
+            this.output.writeByte(device.postureIdentity() == null ? 0 : 1);
+            if (device.postureIdentity() != null) this.stringList(device.postureIdentity().serialNumbers());
+            this.string(device.user());
+
+            return offset;
+        }
+
+        private int key(final ApiKey key) throws IOException {
+            final int offset = this.output.size();
+
+            this.string(key.id());
+            this.string(key.keyType());
+            this.output.writeLong(key.expirySeconds());
+            this.string(key.created());
+            this.string(key.expires());
+
+            final Capabilities capabilities = key.capabilities();
+            final Devices devices = capabilities == null ? null : capabilities.devices();
+            final Create create = devices == null ? null : devices.create();
+            this.output.writeByte(capabilities == null ? 0 : devices == null ? 1 : create == null ? 2 : 3);
+            if (create != null) {
+                this.output.writeByte((create.reusable() ? 1 : 0) | (create.ephemeral() ? 2 : 0) | (create.preauthorized() ? 4 : 0));
+                this.stringList(create.tags());
+            }
+
+            this.string(key.description());
+            this.string(key.userId());
+
+            return offset;
+        }
+
+        private void clientConnectivity(final Device.ClientConnectivity connectivity) throws IOException {
+            if (connectivity == null) {
+                this.output.writeByte(0);
+                return;
+            }
+
+            this.output.writeByte(1);
+            this.stringList(connectivity.endpoints());
+
+            if (connectivity.latency() == null) {
+                this.output.writeInt(NULL);
+            } else {
+                this.output.writeInt(connectivity.latency().size());
+                for (final Map.Entry<String, Device.Latency> entry : connectivity.latency().entrySet()) {
+                    this.string(entry.getKey());
+
+                    final Device.Latency latency = entry.getValue();
+                    if (latency == null) {
+                        this.output.writeByte(0);
+                        continue;
+                    }
+
+                    this.output.writeByte(1
+                            | (latency.latencyMs() != null ? 2 : 0)
+                            | (latency.preferred() != null ? 4 : 0)
+                            | (Boolean.TRUE.equals(latency.preferred()) ? 8 : 0));
+                    if (latency.latencyMs() != null) this.output.writeDouble(latency.latencyMs());
+                }
+            }
+
+            final Device.ClientSupports supports = connectivity.clientSupports();
+            int flags = connectivity.mappingVariesByDestIP() ? 1 : 0;
+            if (supports != null) {
+                flags |= 2
+                        | (supports.hairPinning() ? 4 : 0)
+                        | (supports.ipv6() ? 8 : 0)
+                        | (supports.pcp() ? 16 : 0)
+                        | (supports.pmp() ? 32 : 0)
+                        | (supports.udp() ? 64 : 0)
+                        | (supports.upnp() ? 128 : 0);
+            }
+            this.output.writeByte(flags);
+        }
+
+        private void string(final String value) throws IOException {
+            this.output.writeInt(value == null ? NULL : this.strings.computeIfAbsent(value, ignored -> this.strings.size()));
+        }
+
+        private void stringList(final List<String> list) throws IOException {
+            if (list == null) {
+                this.output.writeInt(NULL);
+                return;
+            }
+
+            this.output.writeInt(list.size());
+            for (final String value : list) this.string(value);
+        }
+
+        /**
+         * @param deviceOffsets record offsets, turned into file offsets here
+         * @return everything after the header
+         */
+        private byte[] body(final int[] deviceOffsets, final int[] keyOffsets) throws IOException {
+            final String[] values = new String[this.strings.size()];
+            for (final Map.Entry<String, Integer> entry : this.strings.entrySet()) values[entry.getValue()] = entry.getKey();
+
+            final ByteArrayOutputStream stringData = new ByteArrayOutputStream();
+            final DataOutputStream stringOutput = new DataOutputStream(stringData);
+            final int[] stringOffsets = new int[values.length];
+            final long tablesEnd = HEADER_SIZE + 4L * (values.length + deviceOffsets.length + keyOffsets.length);
+
+            for (int i = 0; i < values.length; i++) {
+                stringOffsets[i] = Math.toIntExact(tablesEnd + stringOutput.size());
+
+                final byte[] bytes = values[i].getBytes(StandardCharsets.UTF_8);
+                stringOutput.writeInt(bytes.length);
+                stringOutput.write(bytes);
+            }
+
+            final long recordsStart = tablesEnd + stringOutput.size();
+            if (recordsStart + this.output.size() > Integer.MAX_VALUE) throw new IOException("Inventory is too large for a snapshot");
+
+            final ByteArrayOutputStream body = new ByteArrayOutputStream((int) (recordsStart - HEADER_SIZE) + this.output.size());
+            final DataOutputStream bodyOutput = new DataOutputStream(body);
+            for (final int offset : stringOffsets) bodyOutput.writeInt(offset);
+            for (final int offset : deviceOffsets) bodyOutput.writeInt((int) recordsStart + offset);
+            for (final int offset : keyOffsets) bodyOutput.writeInt((int) recordsStart + offset);
+            stringData.writeTo(bodyOutput);
+            this.records.writeTo(bodyOutput);
+            bodyOutput.flush();
+
+            return body.toByteArray();
+        }
+    }
+}
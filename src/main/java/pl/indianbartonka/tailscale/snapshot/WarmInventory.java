@@ -0,0 +1,294 @@
+package pl.indianbartonka.tailscale.snapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.data.response.key.ApiKey;
+import pl.indianbartonka.tailscale.index.DeviceIndex;
+
+/**
+ * Device and key inventory which starts from the last {@link InventorySnapshot} on disk and is brought up to date
+ * in the background. Until the first refresh, reads are served straight from the mapped snapshot, so {@link #load()}
+ * decodes nothing and a lookup by id decodes one record. A refresh applies only the devices and keys that differ,
+ * swaps in the in-memory inventory and writes a new snapshot. The content version only moves when something changed
+ */
+public class WarmInventory {
+
+    private final TailscaleClient tailscaleClient;
+    private final Path file;
+    private final DeviceIndex deviceIndex;
+    private final Map<String, ApiKey> keys;
+    private final AtomicReference<CompletableFuture<InventoryDiff>> refreshing;
+    private volatile InventorySnapshot snapshot;
+    private volatile long version;
+    private volatile Instant timestamp;
+    private volatile boolean fresh;
+    private Consumer<Throwable> errorHandler;
+
+    public WarmInventory(final TailscaleClient tailscaleClient, final Path file) {
+        this.tailscaleClient = tailscaleClient;
+        this.file = file;
+        this.deviceIndex = new DeviceIndex();
+        this.keys = new ConcurrentHashMap<>();
+        this.refreshing = new AtomicReference<>();
+        this.errorHandler = throwable -> {
+        };
+    }
+
+    /**
+     * Maps the snapshot file, its records are decoded when they are read
+     *
+     * @return {@code false} when there is no usable snapshot, a damaged one is reported to the error handler
+     */
+    public synchronized boolean load() {
+        if (!Files.exists(this.file)) return false;
+
+        final InventorySnapshot snapshot;
+        try {
+            snapshot = InventorySnapshot.open(this.file);
+        } catch (final IOException exception) {
+            this.errorHandler.accept(exception);
+            return false;
+        }
+
+        this.deviceIndex.clear();
+        this.keys.clear();
+        this.snapshot = snapshot;
+        this.version = snapshot.getVersion();
+        this.timestamp = snapshot.getTimestamp();
+
+        return true;
+    }
+
+    /**
+     * Loads the snapshot and refreshes in the background after a random delay, so replicas restarting together
+     * don't all hit the API at the same moment
+     *
+     * @param maxJitter upper bound of the delay, {@link Duration#ZERO} to refresh at once
+     */
+    public CompletableFuture<InventoryDiff> start(final Duration maxJitter) {
+        this.load();
+
+        final long delay = maxJitter.isZero() ? 0 : ThreadLocalRandom.current().nextLong(maxJitter.toNanos());
+        return CompletableFuture.runAsync(() -> {
+        }, CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS)).thenCompose(ignored -> this.refreshAsync());
+    }
+
+    public InventoryDiff refresh() throws IOException {
+        return TailscaleClient.await(this.refreshAsync());
+    }
+
+    /**
+     * Fetches devices and keys, applies the differences and writes a new snapshot. Concurrent calls share one refresh
+     */
+    public CompletableFuture<InventoryDiff> refreshAsync() {
+        final CompletableFuture<InventoryDiff> promise = new CompletableFuture<>();
+        final CompletableFuture<InventoryDiff> running = this.refreshing.compareAndExchange(null, promise);
+        if (running != null) return running;
+
+        this.tailscaleClient.getDeviceClient().getDevicesAsync()
+                .thenCombine(this.tailscaleClient.getKeyClient().getKeysAsync(), this::apply)
+                .whenComplete((diff, throwable) -> {
+                    this.refreshing.set(null);
+
+                    if (throwable != null) {
+                        promise.completeExceptionally(throwable);
+                    } else {
+                        promise.complete(diff);
+                    }
+                });
+
+        return promise;
+    }
+
+    private synchronized InventoryDiff apply(final List<Device> devices, final List<ApiKey> currentKeys) {
+        final InventorySnapshot loaded = this.snapshot;
+        if (loaded != null) return this.swapIn(loaded, devices, currentKeys);
+
+        int devicesAdded = 0;
+        int devicesUpdated = 0;
+        final Set<String> seenDevices = new HashSet<>();
+
+        for (final Device device : devices) {
+            seenDevices.add(device.id());
+
+            final Optional<Device> previous = this.deviceIndex.getById(device.id());
+            if (previous.isEmpty()) {
+                devicesAdded++;
+            } else if (!previous.get().equals(device)) {
+                devicesUpdated++;
+            } else {
+                continue;
+            }
+
+            this.deviceIndex.put(device);
+        }
+
+        int devicesRemoved = 0;
+        for (final Device device : List.copyOf(this.deviceIndex.getDevices())) {
+            if (!seenDevices.contains(device.id()) && this.deviceIndex.remove(device.id())) devicesRemoved++;
+        }
+
+        int keysAdded = 0;
+        int keysUpdated = 0;
+        final Set<String> seenKeys = new HashSet<>();
+
+        for (final ApiKey key : currentKeys) {
+            seenKeys.add(key.id());
+
+            final ApiKey previous = this.keys.put(key.id(), key);
+            if (previous == null) {
+                keysAdded++;
+            } else if (!previous.equals(key)) {
+                keysUpdated++;
+            }
+        }
+
+        final int keysBefore = this.keys.size();
+        this.keys.keySet().retainAll(seenKeys);
+        final int keysRemoved = keysBefore - this.keys.size();
+
+        return this.finish(new InventoryDiff(devicesAdded, devicesUpdated, devicesRemoved, keysAdded, keysUpdated, keysRemoved));
+    }
+
+    /**
+     * First refresh after {@link #load()}: diffs against the snapshot with one lookup per fetched record,
+     * fills the in-memory inventory and stops serving reads from the snapshot
+     */
+    private InventoryDiff swapIn(final InventorySnapshot loaded, final List<Device> devices, final List<ApiKey> currentKeys) {
+        int devicesAdded = 0;
+        int devicesUpdated = 0;
+        int devicesKept = 0;
+
+        for (final Device device : devices) {
+            final Optional<Device> previous = loaded.findDevice(device.id());
+            if (previous.isEmpty()) {
+                devicesAdded++;
+            } else {
+                devicesKept++;
+                if (!previous.get().equals(device)) devicesUpdated++;
+            }
+        }
+
+        int keysAdded = 0;
+        int keysUpdated = 0;
+        int keysKept = 0;
+
+        for (final ApiKey key : currentKeys) {
+            final Optional<ApiKey> previous = loaded.findKey(key.id());
+            if (previous.isEmpty()) {
+                keysAdded++;
+            } else {
+                keysKept++;
+                if (!previous.get().equals(key)) keysUpdated++;
+            }
+        }
+
+        this.deviceIndex.replaceAll(devices);
+        this.keys.clear();
+        for (final ApiKey key : currentKeys) this.keys.put(key.id(), key);
+        this.snapshot = null;
+
+        return this.finish(new InventoryDiff(devicesAdded, devicesUpdated, loaded.getDeviceCount() - devicesKept,
+                keysAdded, keysUpdated, loaded.getKeyCount() - keysKept));
+    }
+
+    private InventoryDiff finish(final InventoryDiff diff) {
+        if (!diff.isEmpty() || this.timestamp == null) this.version++;
+        this.timestamp = Instant.now();
+        this.fresh = true;
+
+        try {
+            InventorySnapshot.write(this.file, this.version, this.timestamp, this.deviceIndex.getDevices(), this.keys.values());
+        } catch (final IOException exception) {
+            // The inventory in memory is up to date, only the next warm start is older
+            this.errorHandler.accept(exception);
+        }
+
+        return diff;
+    }
+
+    /**
+     * Decodes the whole snapshot into the index when no refresh has happened yet, prefer {@link #findDevice(String)}
+     * for single lookups during a warm start
+     */
+    public DeviceIndex getDeviceIndex() {
+        this.materialize();
+        return this.deviceIndex;
+    }
+
+    public Optional<Device> findDevice(final String deviceId) {
+        final InventorySnapshot loaded = this.snapshot;
+        return loaded == null ? this.deviceIndex.getById(deviceId) : loaded.findDevice(deviceId);
+    }
+
+    public Collection<Device> getDevices() {
+        final InventorySnapshot loaded = this.snapshot;
+        return loaded == null ? this.deviceIndex.getDevices() : Collections.unmodifiableList(loaded.getDevices());
+    }
+
+    public Optional<ApiKey> getKey(final String keyId) {
+        final InventorySnapshot loaded = this.snapshot;
+        return loaded == null ? Optional.ofNullable(this.keys.get(keyId)) : loaded.findKey(keyId);
+    }
+
+    public Collection<ApiKey> getKeys() {
+        final InventorySnapshot loaded = this.snapshot;
+        return loaded == null ? Collections.unmodifiableCollection(this.keys.values()) : Collections.unmodifiableList(loaded.getKeys());
+    }
+
+    private synchronized void materialize() {
+        final InventorySnapshot loaded = this.snapshot;
+        if (loaded == null) return;
+
+        this.deviceIndex.replaceAll(loaded.getDevices());
+        for (final ApiKey key : loaded.getKeys()) this.keys.put(key.id(), key);
+        this.snapshot = null;
+    }
+
+    /**
+     * @return content version of the inventory, {@code 0} before anything was loaded
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return when the inventory was last fetched from the API, {@code null} before anything was loaded
+     */
+    public Instant getTimestamp() {
+        return this.timestamp;
+    }
+
+    /**
+     * @return whether the inventory was refreshed since this instance was created, {@code false} while it is served from the snapshot only
+     */
+    public boolean isFresh() {
+        return this.fresh;
+    }
+
+    public Path getFile() {
+        return this.file;
+    }
+
+    public void setErrorHandler(final Consumer<Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+}
@@ -0,0 +1,239 @@
+package pl.indianbartonka.tailscale.transport;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shares one transport between tenants with at most {@code maxInFlight} requests sent at once.
+ * Waiting requests are started by weighted fair queueing (start-time fair queueing): each tenant gets
+ * a share of the slots proportional to its weight, so a tenant with a long queue only delays its own requests.
+ * A tenant that was idle starts at the current virtual time instead of cashing in saved up credit.
+ * A streamed response holds its slot until its body is closed
+ */
+public class FairTransport implements AutoCloseable {
+
+    private final TailscaleTransport delegate;
+    private final int maxInFlight;
+    private final PriorityQueue<Pending> queue;
+    private final Map<String, Tenant> tenants;
+    private int inFlight;
+    private double virtualTime;
+    private long sequence;
+
+    public FairTransport(final TailscaleTransport delegate, final int maxInFlight) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be at least 1");
+
+        this.delegate = delegate;
+        this.maxInFlight = maxInFlight;
+        this.queue = new PriorityQueue<>((first, second) -> first.startTag != second.startTag
+                ? Double.compare(first.startTag, second.startTag)
+                : Long.compare(first.sequence, second.sequence));
+        this.tenants = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the transport of one tenant, creating it on first use. Calling it again changes the weight of the tenant
+     *
+     * @param weight relative share of the slots when several tenants are waiting
+     */
+    public TailscaleTransport tenant(final String name, final int weight) {
+        if (weight < 1) throw new IllegalArgumentException("weight must be at least 1");
+
+        final Tenant tenant = this.tenants.computeIfAbsent(name, Tenant::new);
+        synchronized (this) {
+            tenant.weight = weight;
+        }
+
+        return tenant;
+    }
+
+    /**
+     * Forgets the tenant, requests it already queued are still sent
+     */
+    public void removeTenant(final String name) {
+        this.tenants.remove(name);
+    }
+
+    private CompletableFuture<TransportResponse> submit(final Tenant tenant, final HttpRequest request, final boolean streaming) {
+        final CompletableFuture<TransportResponse> result = new CompletableFuture<>();
+
+        synchronized (this) {
+            final double startTag = Math.max(this.virtualTime, tenant.lastFinishTag);
+            tenant.lastFinishTag = startTag + 1D / tenant.weight;
+            tenant.queued++;
+            this.queue.add(new Pending(tenant, request, streaming, result, startTag, this.sequence++));
+        }
+
+        this.drain();
+        return result;
+    }
+
+    private void drain() {
+        while (true) {
+            final Pending next;
+
+            synchronized (this) {
+                if (this.inFlight >= this.maxInFlight || this.queue.isEmpty()) return;
+
+                next = this.queue.poll();
+                next.tenant.queued--;
+                // Cancelled while waiting
+                if (next.result.isDone()) continue;
+
+                this.virtualTime = Math.max(this.virtualTime, next.startTag);
+                this.inFlight++;
+                next.tenant.inFlight++;
+            }
+
+            this.start(next);
+        }
+    }
+
+    private void start(final Pending pending) {
+        CompletableFuture<TransportResponse> sent;
+        try {
+            sent = this.delegate.send(pending.request, pending.streaming);
+        } catch (final RuntimeException exception) {
+            sent = CompletableFuture.failedFuture(exception);
+        }
+
+        final CompletableFuture<TransportResponse> response = sent;
+        // Cancelling the request of a tenant cancels the one sent on the shared transport
+        pending.result.whenComplete((transportResponse, throwable) -> {
+            if (pending.result.isCancelled()) response.cancel(true);
+        });
+
+        response.whenComplete((transportResponse, throwable) -> {
+            synchronized (this) {
+                pending.tenant.completed++;
+                if (transportResponse != null && transportResponse.statusCode() == 429) pending.tenant.rateLimited++;
+            }
+
+            if (throwable != null) {
+                this.release(pending);
+                pending.result.completeExceptionally(throwable);
+                return;
+            }
+
+            if (!pending.streaming) {
+                this.release(pending);
+                pending.result.complete(transportResponse);
+                return;
+            }
+
+            // A streamed body is still being received after the headers, the slot is held until it is closed
+            final TransportResponse streamed = new TransportResponse(transportResponse.statusCode(), transportResponse.headers(),
+                    this.releaseOnClose(transportResponse.body(), pending), transportResponse.bytesReceived(), transportResponse.timeToFirstByteNanos());
+
+            if (!pending.result.complete(streamed)) {
+                try {
+                    streamed.body().close();
+                } catch (final IOException ignored) {
+                }
+            }
+        });
+    }
+
+    private InputStream releaseOnClose(final InputStream inputStream, final Pending pending) {
+        final AtomicBoolean released = new AtomicBoolean();
+
+        return new FilterInputStream(inputStream) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (released.compareAndSet(false, true)) FairTransport.this.release(pending);
+                }
+            }
+        };
+    }
+
+    private void release(final Pending pending) {
+        synchronized (this) {
+            this.inFlight--;
+            pending.tenant.inFlight--;
+        }
+
+        this.drain();
+    }
+
+    public synchronized List<TenantUsage> getUsage() {
+        final List<TenantUsage> usage = new ArrayList<>(this.tenants.size());
+        for (final Tenant tenant : this.tenants.values()) usage.add(tenant.usage());
+        return usage;
+    }
+
+    /**
+     * @return usage of one tenant, {@code null} when it doesn't exist
+     */
+    public synchronized TenantUsage getUsage(final String name) {
+        final Tenant tenant = this.tenants.get(name);
+        return tenant == null ? null : tenant.usage();
+    }
+
+    public synchronized int getInFlight() {
+        return this.inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return this.queue.size();
+    }
+
+    public int getMaxInFlight() {
+        return this.maxInFlight;
+    }
+
+    public TailscaleTransport getDelegate() {
+        return this.delegate;
+    }
+
+    /**
+     * Closes the shared transport
+     */
+    @Override
+    public void close() {
+        this.delegate.close();
+    }
+
+    /**
+     * Fields are guarded by the lock of the {@link FairTransport}
+     */
+    private final class Tenant implements TailscaleTransport {
+
+        private final String name;
+        private int weight;
+        private double lastFinishTag;
+        private int inFlight;
+        private int queued;
+        private long completed;
+        private long rateLimited;
+
+        private Tenant(final String name) {
+            this.name = name;
+            this.weight = 1;
+        }
+
+        @Override
+        public CompletableFuture<TransportResponse> send(final HttpRequest request, final boolean streaming) {
+            return FairTransport.this.submit(this, request, streaming);
+        }
+
+        private TenantUsage usage() {
+            return new TenantUsage(this.name, this.weight, this.inFlight, this.queued, this.completed, this.rateLimited);
+        }
+    }
+
+    private record Pending(Tenant tenant, HttpRequest request, boolean streaming, CompletableFuture<TransportResponse> result,
+                           double startTag, long sequence) {
+    }
+}
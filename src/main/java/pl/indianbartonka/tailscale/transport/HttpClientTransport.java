@@ -0,0 +1,160 @@
+package pl.indianbartonka.tailscale.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Default transport on top of one long-lived HTTP/2 {@link HttpClient}. Connections are kept alive and reused
+ * (the pool size follows the {@code jdk.httpclient.connectionPoolSize} system property), gzip compressed responses
+ * are decompressed while they are being parsed. The requests are sent as they are, a {@code TailscaleClient} on this
+ * transport sets the request timeout and asks for compression when it builds them
+ */
+public class HttpClientTransport implements TailscaleTransport {
+
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final boolean compression;
+
+    public HttpClientTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT, true);
+    }
+
+    /**
+     * @param requestTimeout how long the requests of a client on this transport wait for the response headers
+     * @param compression    whether the requests of a client on this transport ask for gzip compressed responses
+     */
+    public HttpClientTransport(final Duration connectTimeout, final Duration requestTimeout, final boolean compression) {
+        this(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build(), requestTimeout, compression);
+    }
+
+    public HttpClientTransport(final HttpClient httpClient, final Duration requestTimeout, final boolean compression) {
+        this.httpClient = httpClient;
+        this.requestTimeout = requestTimeout;
+        this.compression = compression;
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> send(final HttpRequest request, final boolean streaming) {
+        final long start = System.nanoTime();
+        final long[] timeToFirstByte = {-1};
+
+        if (streaming) {
+            final CompletableFuture<HttpResponse<InputStream>> exchange = this.httpClient.sendAsync(request, responseInfo -> {
+                timeToFirstByte[0] = System.nanoTime() - start;
+                return HttpResponse.BodySubscribers.ofInputStream();
+            });
+
+            return cancellable(exchange, exchange.thenApply(response -> new TransportResponse(response.statusCode(), response.headers(),
+                    decompress(response.headers(), response.body()), -1, timeToFirstByte[0])));
+        }
+
+        final CompletableFuture<HttpResponse<byte[]>> exchange = this.httpClient.sendAsync(request, responseInfo -> {
+            timeToFirstByte[0] = System.nanoTime() - start;
+            return HttpResponse.BodySubscribers.ofByteArray();
+        });
+
+        return cancellable(exchange, exchange.thenApply(response -> {
+            final byte[] body = response.body();
+            final InputStream inputStream = new ByteArrayInputStream(body);
+
+            return new TransportResponse(response.statusCode(), response.headers(),
+                    body.length == 0 ? inputStream : decompress(response.headers(), inputStream), body.length, timeToFirstByte[0]);
+        }));
+    }
+
+    /**
+     * Cancelling the returned future aborts the exchange, so a request which lost a hedge race doesn't keep its stream busy
+     */
+    private static CompletableFuture<TransportResponse> cancellable(final CompletableFuture<?> exchange, final CompletableFuture<TransportResponse> response) {
+        response.whenComplete((transportResponse, throwable) -> {
+            if (response.isCancelled()) exchange.cancel(true);
+        });
+
+        return response;
+    }
+
+    private static InputStream decompress(final HttpHeaders headers, final InputStream inputStream) {
+        final boolean gzip = headers.firstValue("Content-Encoding")
+                .map(encoding -> encoding.toLowerCase().contains("gzip"))
+                .orElse(false);
+
+        if (!gzip) return inputStream;
+
+        return new LazyGzipInputStream(inputStream);
+    }
+
+    public HttpClient getHttpClient() {
+        return this.httpClient;
+    }
+
+    public Duration getRequestTimeout() {
+        return this.requestTimeout;
+    }
+
+    public boolean isCompression() {
+        return this.compression;
+    }
+
+    /**
+     * Reads the gzip header on first use, so nothing blocks on the network while the response is handed over
+     */
+    private static final class LazyGzipInputStream extends FilterInputStream {
+
+        private final InputStream compressed;
+
+        private LazyGzipInputStream(final InputStream compressed) {
+            super(null);
+            this.compressed = compressed;
+        }
+
+        private InputStream delegate() throws IOException {
+            if (this.in == null) this.in = new GZIPInputStream(this.compressed, 8192);
+            return this.in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return this.delegate().read();
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            return this.delegate().read(buffer, offset, length);
+        }
+
+        @Override
+        public long skip(final long count) throws IOException {
+            return this.delegate().skip(count);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return this.delegate().available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.in != null) {
+                this.in.close();
+            } else {
+                this.compressed.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package pl.indianbartonka.tailscale.transport;
+
+import java.net.http.HttpRequest;
+import java.util.concurrent.CompletableFuture;
+import pl.indianbartonka.tailscale.TailscaleClient;
+
+/**
+ * Sends the requests of a {@link TailscaleClient}, see {@link TailscaleClient#setTransport(TailscaleTransport)}.
+ * {@link HttpClientTransport} is used by default
+ */
+public interface TailscaleTransport extends AutoCloseable {
+
+    /**
+     * @param streaming {@code false} to complete the future once the whole body has been received,
+     *                  {@code true} to complete it as soon as the headers arrive and stream the body
+     */
+    CompletableFuture<TransportResponse> send(HttpRequest request, boolean streaming);
+
+    @Override
+    default void close() {
+    }
+}
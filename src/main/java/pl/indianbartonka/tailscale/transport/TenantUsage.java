@@ -0,0 +1,11 @@
+package pl.indianbartonka.tailscale.transport;
+
+/**
+ * Requests of one tenant of a {@link FairTransport}
+ *
+ * @param inFlight    requests sent and not answered yet
+ * @param queued      requests waiting for a slot
+ * @param rateLimited responses with {@code 429}
+ */
+public record TenantUsage(String tenant, int weight, int inFlight, int queued, long completed, long rateLimited) {
+}
@@ -0,0 +1,18 @@
+package pl.indianbartonka.tailscale.transport;
+
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+
+/**
+ * Response handed back by a {@link TailscaleTransport}
+ *
+ * @param body                 decoded body, already decompressed
+ * @param bytesReceived        bytes read from the wire, {@code -1} when unknown (for example while streaming)
+ * @param timeToFirstByteNanos time until the response headers arrived, {@code -1} when unknown
+ */
+public record TransportResponse(int statusCode, HttpHeaders headers, InputStream body, long bytesReceived, long timeToFirstByteNanos) {
+
+    public boolean isSuccessful() {
+        return this.statusCode >= 200 && this.statusCode < 300;
+    }
+}
@@ -0,0 +1,27 @@
+package pl.indianbartonka.tailscale.watch;
+
+import java.util.Set;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+
+public sealed interface DeviceEvent {
+
+    Device device();
+
+    record DeviceAdded(Device device) implements DeviceEvent {
+    }
+
+    record DeviceRemoved(Device device) implements DeviceEvent {
+    }
+
+    /**
+     * @param fieldsChanged names of the {@link Device} components which differ
+     */
+    record DeviceChanged(Device previous, Device device, Set<String> fieldsChanged) implements DeviceEvent {
+    }
+
+    /**
+     * Only {@link Device#lastSeen()} (and possibly the client connectivity) changed
+     */
+    record LastSeenUpdated(Device previous, Device device) implements DeviceEvent {
+    }
+}
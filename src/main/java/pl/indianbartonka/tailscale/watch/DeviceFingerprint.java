@@ -0,0 +1,109 @@
+package pl.indianbartonka.tailscale.watch;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+
+/**
+ * 64-bit hash over the device fields worth reporting. {@link Device#lastSeen()} and
+ * {@link Device#clientConnectivity()} change all the time and are left out on purpose
+ */
+public final class DeviceFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final Map<String, Function<Device, Object>> FIELDS = new LinkedHashMap<>();
+
+    static {
+        FIELDS.put("addresses", Device::addresses);
+        FIELDS.put("authorized", Device::authorized);
+        FIELDS.put("blocksIncomingConnections", Device::blocksIncomingConnections);
+        FIELDS.put("clientVersion", Device::clientVersion);
+        FIELDS.put("created", Device::created);
+        FIELDS.put("expires", Device::expires);
+        FIELDS.put("hostname", Device::hostname);
+        FIELDS.put("isExternal", Device::isExternal);
+        FIELDS.put("keyExpiryDisabled", Device::keyExpiryDisabled);
+        FIELDS.put("machineKey", Device::machineKey);
+        FIELDS.put("name", Device::name);
+        FIELDS.put("nodeId", Device::nodeId);
+        FIELDS.put("nodeKey", Device::nodeKey);
+        FIELDS.put("os", Device::os);
+        FIELDS.put("enabledRoutes", Device::enabledRoutes);
+        FIELDS.put("advertisedRoutes", Device::advertisedRoutes);
+        FIELDS.put("tags", Device::tags);
+        FIELDS.put("tailnetLockError", Device::tailnetLockError);
+        FIELDS.put("tailnetLockKey", Device::tailnetLockKey);
+        FIELDS.put("postureIdentity", Device::postureIdentity);
+        FIELDS.put("updateAvailable", Device::updateAvailable);
+        FIELDS.put("user", Device::user);
+    }
+
+    private DeviceFingerprint() {
+    }
+
+    /**
+     * FNV-1a over the bytes of every field, tagged with their type and length, so equal fingerprints
+     * mean equal fields unless two devices collide on all 64 bits
+     */
+    public static long of(final Device device) {
+        long hash = FNV_OFFSET;
+
+        for (final Function<Device, Object> field : FIELDS.values()) {
+            hash = mix(hash, field.apply(device));
+        }
+
+        return hash;
+    }
+
+    private static long mix(long hash, final Object value) {
+        if (value == null) return mixByte(hash, 0);
+
+        if (value instanceof final Boolean bool) return mixByte(mixByte(hash, 1), bool ? 1 : 0);
+
+        if (value instanceof final List<?> list) {
+            hash = mixInt(mixByte(hash, 2), list.size());
+            for (final Object element : list) hash = mix(hash, element);
+            return hash;
+        }
+
+        // Strings, and records whose toString covers every component
+        final String string = value.toString();
+        hash = mixInt(mixByte(hash, 3), string.length());
+        for (int i = 0; i < string.length(); i++) {
+            final char character = string.charAt(i);
+            hash = mixByte(mixByte(hash, character >>> 8), character);
+        }
+
+        return hash;
+    }
+
+    private static long mixInt(long hash, final int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) hash = mixByte(hash, value >>> shift);
+        return hash;
+    }
+
+    private static long mixByte(final long hash, final int value) {
+        return (hash ^ (value & 0xff)) * FNV_PRIME;
+    }
+
+    /**
+     * @return names of the fingerprinted fields that differ between the two devices
+     */
+    public static Set<String> diff(final Device previous, final Device current) {
+        final Set<String> changed = new LinkedHashSet<>();
+
+        for (final Map.Entry<String, Function<Device, Object>> field : FIELDS.entrySet()) {
+            if (!Objects.equals(field.getValue().apply(previous), field.getValue().apply(current))) {
+                changed.add(field.getKey());
+            }
+        }
+
+        return changed;
+    }
+}
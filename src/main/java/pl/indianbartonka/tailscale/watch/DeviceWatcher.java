@@ -0,0 +1,201 @@
+package pl.indianbartonka.tailscale.watch;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+
+/**
+ * Polls the device list and publishes only what changed since the previous poll.
+ * Unchanged devices are recognised by their {@link DeviceFingerprint} without a deep comparison.
+ * Slow subscribers hold back the polling thread instead of buffering events without a limit
+ */
+public class DeviceWatcher implements AutoCloseable {
+
+    private final DeviceClient deviceClient;
+    private final SubmissionPublisher<DeviceEvent> publisher;
+    private final ScheduledExecutorService executor;
+    private final ExecutorService subscriberExecutor;
+    private final Map<String, Known> known;
+    private Consumer<Throwable> errorHandler;
+    private ScheduledFuture<?> task;
+
+    public DeviceWatcher(final DeviceClient deviceClient) {
+        this(deviceClient, Flow.defaultBufferSize());
+    }
+
+    /**
+     * @param bufferSize events buffered per subscriber before polling waits for it
+     */
+    public DeviceWatcher(final DeviceClient deviceClient, final int bufferSize) {
+        this.deviceClient = deviceClient;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "Tailscale-DeviceWatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.subscriberExecutor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "Tailscale-DeviceWatcher-Subscriber");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.publisher = new SubmissionPublisher<>(this.subscriberExecutor, bufferSize);
+        this.known = new HashMap<>();
+        this.errorHandler = throwable -> {
+        };
+    }
+
+    public synchronized void start(final Duration interval) {
+        if (this.task != null) throw new IllegalStateException("Watcher is already running");
+
+        this.task = this.executor.scheduleWithFixedDelay(() -> {
+            try {
+                this.poll();
+            } catch (final Exception exception) {
+                this.errorHandler.accept(exception);
+            }
+        }, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (this.task == null) return;
+
+        this.task.cancel(false);
+        this.task = null;
+    }
+
+    /**
+     * Fetches the device list once and publishes the differences
+     *
+     * @return number of published events
+     */
+    public int poll() throws IOException {
+        synchronized (this.known) {
+            return this.pollDevices();
+        }
+    }
+
+    private int pollDevices() throws IOException {
+        final Set<String> seen = new HashSet<>();
+        final int[] events = {0};
+
+        this.deviceClient.forEachDevice(device -> {
+            seen.add(device.id());
+
+            final DeviceEvent event = this.compare(device);
+            if (event != null) {
+                this.publisher.submit(event);
+                events[0]++;
+            }
+        });
+
+        this.known.entrySet().removeIf(entry -> {
+            if (seen.contains(entry.getKey())) return false;
+
+            this.publisher.submit(new DeviceEvent.DeviceRemoved(entry.getValue().device()));
+            events[0]++;
+            return true;
+        });
+
+        return events[0];
+    }
+
+    /**
+     * Fetches one device and publishes its change, a device which no longer exists is published as removed.
+     * Meant for notifications naming the changed device, like webhooks, instead of polling the whole list
+     *
+     * @param deviceId device id or stable node id
+     * @return number of published events
+     */
+    public int refresh(final String deviceId) throws IOException {
+        Device device = null;
+        try {
+            device = this.deviceClient.getDevice(deviceId);
+        } catch (final TailscaleException exception) {
+            if (exception.getStatusCode() != 404) throw exception;
+        }
+
+        synchronized (this.known) {
+            if (device != null) {
+                final DeviceEvent event = this.compare(device);
+                if (event == null) return 0;
+
+                this.publisher.submit(event);
+                return 1;
+            }
+
+            final Iterator<Known> iterator = this.known.values().iterator();
+            while (iterator.hasNext()) {
+                final Device removed = iterator.next().device();
+                if (!deviceId.equals(removed.id()) && !deviceId.equals(removed.nodeId())) continue;
+
+                iterator.remove();
+                this.publisher.submit(new DeviceEvent.DeviceRemoved(removed));
+                return 1;
+            }
+
+            return 0;
+        }
+    }
+
+    private DeviceEvent compare(final Device device) {
+        final long fingerprint = DeviceFingerprint.of(device);
+        final Known previous = this.known.put(device.id(), new Known(device, fingerprint));
+
+        if (previous == null) return new DeviceEvent.DeviceAdded(device);
+
+        if (previous.fingerprint() == fingerprint) {
+            if (Objects.equals(previous.device().lastSeen(), device.lastSeen())) return null;
+            return new DeviceEvent.LastSeenUpdated(previous.device(), device);
+        }
+
+        return new DeviceEvent.DeviceChanged(previous.device(), device, DeviceFingerprint.diff(previous.device(), device));
+    }
+
+    public Flow.Publisher<DeviceEvent> getPublisher() {
+        return this.publisher;
+    }
+
+    public CompletableFuture<Void> addListener(final Consumer<DeviceEvent> listener) {
+        return this.publisher.consume(listener);
+    }
+
+    public void setErrorHandler(final Consumer<Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    public Map<String, Device> getKnownDevices() {
+        synchronized (this.known) {
+            final Map<String, Device> devices = new HashMap<>();
+            this.known.forEach((id, known) -> devices.put(id, known.device()));
+            return devices;
+        }
+    }
+
+    @Override
+    public void close() {
+        this.stop();
+        this.executor.shutdownNow();
+        this.publisher.close();
+        this.subscriberExecutor.shutdown();
+    }
+
+    private record Known(Device device, long fingerprint) {
+    }
+}
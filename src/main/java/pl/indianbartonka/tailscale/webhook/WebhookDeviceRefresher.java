@@ -0,0 +1,89 @@
+package pl.indianbartonka.tailscale.webhook;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.data.response.webhook.WebhookEvent;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+import pl.indianbartonka.tailscale.index.DeviceIndex;
+import pl.indianbartonka.tailscale.watch.DeviceWatcher;
+
+/**
+ * Webhook listener which refreshes only the device named by each device event with one {@code getDevice} call.
+ * A burst of events for the same device while its refresh is running leads to a single follow-up refresh
+ */
+public class WebhookDeviceRefresher implements Consumer<WebhookEvent> {
+
+    private final Refresh refresh;
+    private final Map<String, Boolean> running;
+    private Consumer<Throwable> errorHandler;
+
+    public WebhookDeviceRefresher(final Refresh refresh) {
+        this.refresh = refresh;
+        this.running = new ConcurrentHashMap<>();
+        this.errorHandler = throwable -> {
+        };
+    }
+
+    /**
+     * Publishes the refreshed devices as events of the watcher, see {@link DeviceWatcher#refresh(String)}
+     */
+    public static WebhookDeviceRefresher of(final DeviceWatcher deviceWatcher) {
+        return new WebhookDeviceRefresher(deviceWatcher::refresh);
+    }
+
+    /**
+     * Puts the refreshed devices into the index and removes the deleted ones
+     */
+    public static WebhookDeviceRefresher of(final DeviceClient deviceClient, final DeviceIndex deviceIndex) {
+        return new WebhookDeviceRefresher(nodeId -> {
+            try {
+                deviceIndex.put(deviceClient.getDevice(nodeId));
+            } catch (final TailscaleException exception) {
+                if (exception.getStatusCode() != 404) throw exception;
+
+                deviceIndex.getByNodeId(nodeId).or(() -> deviceIndex.getById(nodeId))
+                        .map(Device::id)
+                        .ifPresent(deviceIndex::remove);
+            }
+        });
+    }
+
+    @Override
+    public void accept(final WebhookEvent event) {
+        if (!event.eventType().isDeviceEvent() || event.nodeId() == null) return;
+
+        final String nodeId = event.nodeId();
+        final boolean[] first = {false};
+
+        // The value tells whether another event arrived while the refresh was running
+        this.running.compute(nodeId, (key, rerun) -> {
+            if (rerun != null) return true;
+
+            first[0] = true;
+            return false;
+        });
+        if (!first[0]) return;
+
+        do {
+            try {
+                this.refresh.refresh(nodeId);
+            } catch (final IOException | RuntimeException exception) {
+                this.errorHandler.accept(exception);
+            }
+        } while (this.running.compute(nodeId, (key, rerun) -> rerun ? false : null) != null);
+    }
+
+    public void setErrorHandler(final Consumer<Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    @FunctionalInterface
+    public interface Refresh {
+
+        void refresh(String nodeId) throws IOException;
+    }
+}
@@ -0,0 +1,187 @@
+package pl.indianbartonka.tailscale.webhook;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.Nullable;
+import pl.indianbartonka.tailscale.data.response.webhook.WebhookEvent;
+import pl.indianbartonka.tailscale.json.WebhookTypeAdapters;
+
+/**
+ * Endpoint for Tailscale webhooks. Deliveries with a missing, wrong or stale signature are rejected with {@code 401},
+ * accepted events are handed to the listeners on a bounded pool. When the pool is full the delivery is answered
+ * with {@code 503}, so Tailscale sends it again later instead of the receiver buffering without a limit.
+ * It doesn't depend on an HTTP server, the web framework of the application passes every POST to {@link #handle(String, InputStream)}
+ * and answers with the returned status. {@code webhook.httpserver} has the glue for the HTTP server of the JDK
+ */
+public class WebhookReceiver implements AutoCloseable {
+
+    public static final Duration DEFAULT_TOLERANCE = Duration.ofMinutes(5);
+    public static final int MAX_BODY_SIZE = 1024 * 1024;
+
+    private final String secret;
+    private final ThreadPoolExecutor executor;
+    private final List<Consumer<WebhookEvent>> listeners;
+    private final LongAdder delivered;
+    private final LongAdder rejected;
+    private final LongAdder deferred;
+    private volatile Duration tolerance;
+    private Consumer<Throwable> errorHandler;
+
+    public WebhookReceiver(final String secret) {
+        this(secret, 2, 1024);
+    }
+
+    /**
+     * @param threads   threads calling the listeners
+     * @param queueSize events waiting for a thread before deliveries are deferred
+     */
+    public WebhookReceiver(final String secret, final int threads, final int queueSize) {
+        if (secret == null || secret.isEmpty()) throw new IllegalArgumentException("secret must not be empty");
+
+        this.secret = secret;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), runnable -> {
+            final Thread thread = new Thread(runnable, "Tailscale-Webhook");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.delivered = new LongAdder();
+        this.rejected = new LongAdder();
+        this.deferred = new LongAdder();
+        this.tolerance = DEFAULT_TOLERANCE;
+        this.errorHandler = throwable -> {
+        };
+    }
+
+    /**
+     * Verifies and dispatches one delivery, reading at most {@link #MAX_BODY_SIZE} bytes of the body
+     *
+     * @param signature value of the {@link WebhookSignature#HEADER} header, {@code null} when missing
+     * @return status code to answer the delivery with
+     */
+    public int handle(@Nullable final String signature, final InputStream body) throws IOException {
+        final byte[] bytes = body.readNBytes(MAX_BODY_SIZE + 1);
+        return this.handle(signature, bytes);
+    }
+
+    /**
+     * Verifies and dispatches one delivery
+     *
+     * @param signature value of the {@link WebhookSignature#HEADER} header, {@code null} when missing
+     * @return {@code 200} when the events were queued, {@code 401} for a bad signature, {@code 400} for broken JSON,
+     * {@code 413} for a body larger than {@link #MAX_BODY_SIZE} and {@code 503} when the queue is full
+     */
+    public int handle(@Nullable final String signature, final byte[] body) {
+        if (body.length > MAX_BODY_SIZE) {
+            this.rejected.increment();
+            return 413;
+        }
+
+        if (!WebhookSignature.verify(this.secret, signature, body, Instant.now(), this.tolerance)) {
+            this.rejected.increment();
+            return 401;
+        }
+
+        final List<WebhookEvent> events;
+        try {
+            events = WebhookTypeAdapters.readEvents(new JsonReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8)));
+        } catch (final IOException | JsonParseException | IllegalStateException exception) {
+            this.rejected.increment();
+            return 400;
+        }
+
+        return this.dispatch(events) ? 200 : 503;
+    }
+
+    /**
+     * Queues the events of one delivery, all of them or none
+     */
+    private synchronized boolean dispatch(final List<WebhookEvent> events) {
+        if (this.executor.getQueue().remainingCapacity() < events.size()) {
+            this.deferred.increment();
+            return false;
+        }
+
+        for (final WebhookEvent event : events) {
+            try {
+                this.executor.execute(() -> this.notifyListeners(event));
+            } catch (final RejectedExecutionException exception) {
+                this.errorHandler.accept(exception);
+            }
+        }
+
+        this.delivered.add(events.size());
+        return true;
+    }
+
+    private void notifyListeners(final WebhookEvent event) {
+        for (final Consumer<WebhookEvent> listener : this.listeners) {
+            try {
+                listener.accept(event);
+            } catch (final RuntimeException exception) {
+                this.errorHandler.accept(exception);
+            }
+        }
+    }
+
+    public void addListener(final Consumer<WebhookEvent> listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(final Consumer<WebhookEvent> listener) {
+        this.listeners.remove(listener);
+    }
+
+    public void setErrorHandler(final Consumer<Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    public Duration getTolerance() {
+        return this.tolerance;
+    }
+
+    public void setTolerance(final Duration tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @return events handed to the listeners
+     */
+    public long getDeliveredCount() {
+        return this.delivered.sum();
+    }
+
+    /**
+     * @return deliveries refused because of their signature, size or JSON
+     */
+    public long getRejectedCount() {
+        return this.rejected.sum();
+    }
+
+    /**
+     * @return deliveries answered with {@code 503} because the queue was full
+     */
+    public long getDeferredCount() {
+        return this.deferred.sum();
+    }
+
+    @Override
+    public void close() {
+        this.executor.shutdown();
+    }
+}
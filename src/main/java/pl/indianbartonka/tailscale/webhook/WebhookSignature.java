@@ -0,0 +1,84 @@
+package pl.indianbartonka.tailscale.webhook;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The {@code Tailscale-Webhook-Signature} header: {@code t=<unix seconds>,v1=<hex HMAC-SHA256 of "<t>.<body>">}.
+ * Checking the timestamp keeps an intercepted delivery from being replayed later
+ */
+public final class WebhookSignature {
+
+    public static final String HEADER = "Tailscale-Webhook-Signature";
+
+    private WebhookSignature() {
+    }
+
+    /**
+     * @return the header value for the body, for example to post signed sample payloads
+     */
+    public static String sign(final String secret, final long timestampSeconds, final byte[] body) {
+        return "t=" + timestampSeconds + ",v1=" + HexFormat.of().formatHex(hmac(secret, timestampSeconds, body));
+    }
+
+    /**
+     * @param tolerance how far the signed timestamp may be from {@code now} in either direction
+     * @return whether one of the {@code v1} signatures matches, compared in constant time
+     */
+    public static boolean verify(final String secret, final String header, final byte[] body, final Instant now, final Duration tolerance) {
+        if (header == null) return false;
+
+        long timestamp = -1;
+        boolean timestampFound = false;
+        for (final String part : header.split(",")) {
+            if (!part.trim().startsWith("t=")) continue;
+
+            try {
+                timestamp = Long.parseLong(part.trim().substring(2));
+                timestampFound = true;
+            } catch (final NumberFormatException exception) {
+                return false;
+            }
+        }
+
+        if (!timestampFound || Math.abs(now.getEpochSecond() - timestamp) > tolerance.toSeconds()) return false;
+
+        final byte[] expected = hmac(secret, timestamp, body);
+        boolean valid = false;
+
+        // More than one v1 is sent while the webhook secret is being rotated
+        for (final String part : header.split(",")) {
+            final String trimmed = part.trim();
+            if (!trimmed.startsWith("v1=")) continue;
+
+            final byte[] signature;
+            try {
+                signature = HexFormat.of().parseHex(trimmed.substring(3));
+            } catch (final IllegalArgumentException exception) {
+                continue;
+            }
+
+            valid |= MessageDigest.isEqual(expected, signature);
+        }
+
+        return valid;
+    }
+
+    private static byte[] hmac(final String secret, final long timestampSeconds, final byte[] body) {
+        try {
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            mac.update((timestampSeconds + ".").getBytes(StandardCharsets.UTF_8));
+            return mac.doFinal(body);
+        } catch (final NoSuchAlgorithmException | InvalidKeyException exception) {
+            throw new IllegalStateException("HmacSHA256 is not available", exception);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package pl.indianbartonka.tailscale.webhook.httpserver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import pl.indianbartonka.tailscale.webhook.WebhookReceiver;
+import pl.indianbartonka.tailscale.webhook.WebhookSignature;
+
+/**
+ * Serves a {@link WebhookReceiver} with the HTTP server of the JDK. Kept out of the main jar, it ships in the
+ * {@code httpserver} classifier for applications without an own web framework.
+ * Use it as an {@link HttpHandler} of an existing server or let {@link #start(InetSocketAddress, String)} create one
+ */
+public class WebhookHttpServer implements HttpHandler, AutoCloseable {
+
+    private final WebhookReceiver receiver;
+    private HttpServer server;
+
+    public WebhookHttpServer(final WebhookReceiver receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Starts an own HTTP server with the receiver on the given path
+     *
+     * @return the bound address, useful with port {@code 0}
+     */
+    public synchronized InetSocketAddress start(final InetSocketAddress address, final String path) throws IOException {
+        if (this.server != null) throw new IllegalStateException("Server is already running");
+
+        this.server = HttpServer.create(address, 0);
+        this.server.createContext(path, this);
+        this.server.start();
+
+        return this.server.getAddress();
+    }
+
+    @Override
+    public void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            final String signature = exchange.getRequestHeaders().getFirst(WebhookSignature.HEADER);
+            exchange.sendResponseHeaders(this.receiver.handle(signature, exchange.getRequestBody()), -1);
+        }
+    }
+
+    public WebhookReceiver getReceiver() {
+        return this.receiver;
+    }
+
+    /**
+     * Stops the server, the receiver stays open
+     */
+    @Override
+    public synchronized void close() {
+        if (this.server != null) {
+            this.server.stop(0);
+            this.server = null;
+        }
+    }
+}
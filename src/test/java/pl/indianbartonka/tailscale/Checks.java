@@ -0,0 +1,37 @@
+package pl.indianbartonka.tailscale;
+
+import java.util.Objects;
+
+/**
+ * Assertions of the behaviour tests, which run as plain {@code main} methods and fail with an {@link AssertionError}
+ */
+public final class Checks {
+
+    private Checks() {
+    }
+
+    public static void check(final boolean condition, final String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+
+    public static void checkEquals(final Object expected, final Object actual, final String what) {
+        if (!Objects.equals(expected, actual)) throw new AssertionError(what + ": expected <" + expected + "> but was <" + actual + ">");
+    }
+
+    public static <T extends Throwable> T checkThrows(final Class<T> type, final ThrowingRunnable runnable, final String what) {
+        try {
+            runnable.run();
+        } catch (final Throwable throwable) {
+            if (type.isInstance(throwable)) return type.cast(throwable);
+            throw new AssertionError(what + ": expected " + type.getSimpleName() + " but got " + throwable, throwable);
+        }
+
+        throw new AssertionError(what + ": expected " + type.getSimpleName() + " but nothing was thrown");
+    }
+
+    @FunctionalInterface
+    public interface ThrowingRunnable {
+
+        void run() throws Exception;
+    }
+}
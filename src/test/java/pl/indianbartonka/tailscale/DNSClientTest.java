@@ -0,0 +1,124 @@
+package pl.indianbartonka.tailscale;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import pl.indianbartonka.tailscale.data.response.dns.DnsConfig;
+import pl.indianbartonka.tailscale.data.response.dns.SplitDnsChanges;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+
+public final class DNSClientTest {
+
+    public static void main(final String[] args) throws Exception {
+        diffSortsDomains();
+
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            configIsCachedAndShared(simulator);
+            writesUpdateTheCache(simulator);
+            versionMovesOnlyOnChanges(simulator);
+            reconcileSendsOnlyTheChanges(simulator);
+        }
+    }
+
+    private static void diffSortsDomains() {
+        final Map<String, List<String>> current = Map.of("kept.example", List.of("10.0.0.1"), "changed.example", List.of("10.0.0.2"),
+                "removed.example", List.of("10.0.0.3"));
+        final Map<String, List<String>> desired = Map.of("kept.example", List.of("10.0.0.1"), "changed.example", List.of("10.0.0.20"),
+                "added.example", List.of("10.0.0.4"));
+
+        final SplitDnsChanges changes = DNSClient.diff(current, desired);
+        checkEquals(Map.of("added.example", List.of("10.0.0.4")), changes.added(), "added");
+        checkEquals(Map.of("changed.example", List.of("10.0.0.20")), changes.changed(), "changed");
+        checkEquals(Set.of("removed.example"), changes.removed(), "removed");
+        checkEquals(3, changes.size(), "size");
+
+        final Map<String, List<String>> request = changes.toRequest().domains();
+        check(request.containsKey("removed.example") && request.get("removed.example") == null, "removal in the request");
+        checkEquals(3, request.size(), "domains in the request");
+
+        check(DNSClient.diff(null, Map.of()).isEmpty(), "nothing to change");
+        check(DNSClient.diff(desired, desired).isEmpty(), "same configuration");
+    }
+
+    private static void configIsCachedAndShared(final TailscaleSimulator simulator) throws Exception {
+        final DNSClient dnsClient = simulator.createClient().getDnsClient();
+        final long requests = simulator.getRequestCount();
+
+        final List<CompletableFuture<DnsConfig>> calls = new ArrayList<>();
+        for (int i = 0; i < 10; i++) calls.add(dnsClient.getConfigAsync());
+        final DnsConfig config = calls.get(0).join();
+
+        for (final CompletableFuture<DnsConfig> call : calls) checkEquals(config, call.join(), "shared fetch");
+        checkEquals(4L, simulator.getRequestCount() - requests, "one fetch of the four parts");
+
+        checkEquals(config, dnsClient.getConfig(), "cached configuration");
+        checkEquals(4L, simulator.getRequestCount() - requests, "requests after a cache hit");
+    }
+
+    private static void writesUpdateTheCache(final TailscaleSimulator simulator) throws Exception {
+        final DNSClient dnsClient = simulator.createClient().getDnsClient();
+        final DnsConfig before = dnsClient.getConfig();
+
+        dnsClient.setNameservers(List.of("1.1.1.1", "8.8.8.8"));
+        dnsClient.setPreferences(!before.magicDNS());
+        dnsClient.setSearchPaths(List.of("corp.example"));
+
+        final long requests = simulator.getRequestCount();
+        final DnsConfig after = dnsClient.getConfig();
+        checkEquals(0L, simulator.getRequestCount() - requests, "cache hit after writes");
+        checkEquals(List.of("1.1.1.1", "8.8.8.8"), after.nameservers(), "nameservers");
+        checkEquals(!before.magicDNS(), after.magicDNS(), "magic DNS");
+        checkEquals(List.of("corp.example"), after.searchPaths(), "search paths");
+        checkEquals(before.version() + 3, after.version(), "version after three writes");
+
+        dnsClient.setNameservers(List.of("1.1.1.1", "8.8.8.8"));
+        checkEquals(after.version(), dnsClient.getConfig().version(), "version after writing the same nameservers");
+    }
+
+    private static void versionMovesOnlyOnChanges(final TailscaleSimulator simulator) throws Exception {
+        final DNSClient dnsClient = simulator.createClient().getDnsClient();
+        final DNSClient other = simulator.createClient().getDnsClient();
+        final DnsConfig before = dnsClient.getConfig();
+
+        dnsClient.invalidate();
+        checkEquals(before, dnsClient.getConfig(), "refetched unchanged configuration");
+
+        other.setSearchPaths(List.of("other.example"));
+        checkEquals(before, dnsClient.getConfig(), "cache does not see other clients");
+
+        dnsClient.invalidate();
+        final DnsConfig after = dnsClient.getConfig();
+        checkEquals(before.version() + 1, after.version(), "version after a change of another client");
+        checkEquals(List.of("other.example"), after.searchPaths(), "search paths of the other client");
+    }
+
+    private static void reconcileSendsOnlyTheChanges(final TailscaleSimulator simulator) throws Exception {
+        final DNSClient dnsClient = simulator.createClient().getDnsClient();
+        final Map<String, List<String>> desired = new LinkedHashMap<>();
+        for (int i = 0; i < 50; i++) desired.put("d" + i + ".example", List.of("10.0.0." + i));
+
+        checkEquals(50, dnsClient.reconcileSplitDns(desired).added().size(), "added domains");
+        checkEquals(desired, simulator.getSplitDns(), "split DNS after the first reconcile");
+
+        long requests = simulator.getRequestCount();
+        check(dnsClient.reconcileSplitDns(desired).isEmpty(), "nothing to change");
+        checkEquals(1L, simulator.getRequestCount() - requests, "only the split DNS read");
+
+        desired.remove("d0.example");
+        desired.put("d1.example", List.of("10.0.1.1"));
+        desired.put("new.example", List.of("10.0.2.1"));
+
+        requests = simulator.getRequestCount();
+        final SplitDnsChanges changes = dnsClient.reconcileSplitDns(desired);
+        checkEquals(3, changes.size(), "changes");
+        checkEquals(2L, simulator.getRequestCount() - requests, "one read and one patch");
+        checkEquals(desired, simulator.getSplitDns(), "split DNS after the second reconcile");
+        checkEquals(desired, dnsClient.getConfig().splitDns(), "cached split DNS");
+    }
+}
@@ -0,0 +1,77 @@
+package pl.indianbartonka.tailscale;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import pl.indianbartonka.tailscale.data.request.ApiKeyRequest;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.data.response.key.ApiKey;
+import pl.indianbartonka.tailscale.data.response.key.ApiKeyResponse;
+import pl.indianbartonka.tailscale.data.response.key.Capabilities;
+import pl.indianbartonka.tailscale.data.response.key.Create;
+import pl.indianbartonka.tailscale.data.response.key.Devices;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+import static pl.indianbartonka.tailscale.Checks.checkThrows;
+
+public final class DeviceClientTest {
+
+    public static void main(final String[] args) throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            final List<Device> devices = simulator.generateDevices(30);
+            final TailscaleClient client = simulator.createClient();
+
+            asyncAndBlockingCallsAgree(client.getDeviceClient(), devices);
+            concurrentCallsComplete(client.getDeviceClient(), devices);
+            failuresAreUnwrapped(client.getDeviceClient());
+            keyLifecycle(client.getKeyClient());
+        }
+    }
+
+    private static void asyncAndBlockingCallsAgree(final DeviceClient deviceClient, final List<Device> devices) throws Exception {
+        final Set<String> expected = devices.stream().map(Device::id).collect(Collectors.toSet());
+
+        checkEquals(expected, ids(deviceClient.getDevices()), "blocking device list");
+        checkEquals(expected, ids(deviceClient.getDevicesAsync().join()), "async device list");
+        checkEquals(deviceClient.getDevice(devices.get(0).id()), deviceClient.getDeviceAsync(devices.get(0).id()).join(), "single device");
+    }
+
+    private static void concurrentCallsComplete(final DeviceClient deviceClient, final List<Device> devices) {
+        final List<CompletableFuture<Device>> futures = new ArrayList<>();
+        for (final Device device : devices) futures.add(deviceClient.getDeviceAsync(device.id()));
+
+        for (int i = 0; i < devices.size(); i++) {
+            checkEquals(devices.get(i).id(), futures.get(i).join().id(), "device of call " + i);
+        }
+    }
+
+    private static void failuresAreUnwrapped(final DeviceClient deviceClient) {
+        final TailscaleException blocking = checkThrows(TailscaleException.class, () -> deviceClient.getDevice("missing"), "blocking call");
+        checkEquals(404, blocking.getStatusCode(), "status code");
+
+        final CompletionException async = checkThrows(CompletionException.class, () -> deviceClient.getDeviceAsync("missing").join(), "async call");
+        check(async.getCause() instanceof TailscaleException, "cause " + async.getCause());
+    }
+
+    private static void keyLifecycle(final KeyClient keyClient) throws Exception {
+        final ApiKeyResponse created = keyClient.createKey(new ApiKeyRequest("ci",
+                new Capabilities(new Devices(new Create(true, true, false, List.of("tag:ci")))), 3600, null, null));
+        check(created.key() != null, "secret of the new key");
+
+        checkEquals(created.id(), keyClient.getKeyAsync(created.id()).join().id(), "key by id");
+        check(keyClient.getKeys().stream().map(ApiKey::id).anyMatch(created.id()::equals), "key in the list");
+
+        keyClient.deleteKey(created.id());
+        check(keyClient.getKeysAsync().join().stream().map(ApiKey::id).noneMatch(created.id()::equals), "deleted key");
+    }
+
+    private static Set<String> ids(final List<Device> devices) {
+        return devices.stream().map(Device::id).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,82 @@
+package pl.indianbartonka.tailscale;
+
+import com.google.gson.Gson;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import pl.indianbartonka.tailscale.data.request.NameRequest;
+import pl.indianbartonka.tailscale.data.request.TagsRequest;
+import pl.indianbartonka.tailscale.json.TailscaleTypeAdapterFactory;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+import static pl.indianbartonka.tailscale.Checks.checkThrows;
+
+public final class EndpointUrisTest {
+
+    private static final String BASE_URL = "https://api.tailscale.com/api/v2";
+
+    public static void main(final String[] args) {
+        resolvesEveryEndpoint();
+        rejectsWrongParameterCounts();
+        bodiesMatchGson();
+    }
+
+    private static void resolvesEveryEndpoint() {
+        final EndpointUris uris = new EndpointUris(BASE_URL, "example.com");
+
+        for (final ApiEndpoint endpoint : ApiEndpoint.values()) {
+            final String template = BASE_URL + endpoint.getTemplate().replace("{tailnet}", "example.com");
+            final String[] parameters = {"12345", "custom:env"};
+            final int count = (int) template.chars().filter(character -> character == '{').count();
+
+            String expected = template;
+            for (int i = 0; i < count; i++) expected = expected.replaceFirst("\\{[^}]+}", parameters[i]);
+
+            final URI resolved = switch (count) {
+                case 0 -> uris.resolve(endpoint);
+                case 1 -> uris.resolve(endpoint, parameters[0]);
+                case 2 -> uris.resolve(endpoint, parameters[0], parameters[1]);
+                default -> throw new AssertionError(endpoint + " has " + count + " parameters");
+            };
+            checkEquals(URI.create(expected), resolved, endpoint.name());
+        }
+
+        check(uris.resolve(ApiEndpoint.GET_DEVICES) == uris.resolve(ApiEndpoint.GET_DEVICES), "fixed uris are reused");
+    }
+
+    private static void rejectsWrongParameterCounts() {
+        final EndpointUris uris = new EndpointUris(BASE_URL, "example.com");
+
+        checkThrows(IllegalArgumentException.class, () -> uris.resolve(ApiEndpoint.GET_DEVICE), "missing parameter");
+        checkThrows(IllegalArgumentException.class, () -> uris.resolve(ApiEndpoint.GET_DEVICES, "1"), "extra parameter");
+        checkThrows(IllegalArgumentException.class, () -> uris.resolve(ApiEndpoint.GET_DEVICE, "1", "2"), "two parameters");
+    }
+
+    private static void bodiesMatchGson() {
+        final Gson gson = TailscaleTypeAdapterFactory.register(new Gson());
+        final char[] large = new char[200_000];
+        Arrays.fill(large, 'ż');
+
+        final List<Object> bodies = Arrays.asList(
+                new NameRequest("plain"),
+                new NameRequest("zażółć gęślą jaźń €"),
+                new NameRequest("emoji 🚀 and a lone \uD83D surrogate"),
+                new NameRequest("quote \" backslash \\ newline \n <html>"),
+                new TagsRequest(Map.of("0", "tag:a")),
+                Map.of("key", "value"),
+                new NameRequest(new String(large)),
+                new NameRequest("small after a large body"),
+                null
+        );
+
+        for (final Object body : bodies) {
+            // Unpaired surrogates become '?' exactly like String#getBytes encodes them
+            final String expected = gson.toJson(body);
+            check(Arrays.equals(expected.getBytes(StandardCharsets.UTF_8), JsonBodyWriter.toJson(gson, body)),
+                    "UTF-8 bytes of " + (expected.length() > 40 ? expected.substring(0, 40) : expected));
+        }
+    }
+}
@@ -17,6 +17,8 @@ import pl.indianbartonka.tailscale.data.response.key.Capabilities;
 import pl.indianbartonka.tailscale.data.response.key.Create;
 import pl.indianbartonka.tailscale.data.response.key.Devices;
 import pl.indianbartonka.tailscale.exception.TailscaleException;
+import pl.indianbartonka.tailscale.metrics.EndpointStats;
+import pl.indianbartonka.tailscale.metrics.MetricsRecorder;
 import pl.indianbartonka.util.DateUtil;
 import pl.indianbartonka.util.EnvironmentReader;
 import pl.indianbartonka.util.MessageUtil;
@@ -42,8 +44,21 @@ public final class TailscaleClientTest {
         // TailscaleClient#setGson
         // TailscaleClient#setBaseUrl
 
+        // Per-endpoint call counts, bytes and latency percentiles
+        final MetricsRecorder metrics = new MetricsRecorder();
+        client.addListener(metrics);
+
+        // Every call also has a non-blocking variant, all of them share one HTTP/2 client
+        client.getDeviceClient().getDevicesAsync()
+                .thenAccept(devices -> LOGGER.info("Devices (async): " + devices.size()))
+                .join();
+
         keyExamples(client.getKeyClient(), client.getGson());
         deviceExamples(client.getDeviceClient());
+
+        for (final EndpointStats stats : metrics.getStats()) {
+            LOGGER.info(stats.endpoint() + " calls: " + stats.calls() + " p99: " + stats.p99().toMillis() + "ms");
+        }
     }
 
     private static void keyExamples(final KeyClient client, final Gson gson) throws IOException {
@@ -100,6 +115,9 @@ public final class TailscaleClientTest {
         // Getting all network devices
         final List<Device> devices = client.getDevices();
 
+        // Streaming the device list, only one device is decoded at a time
+        client.forEachDevice(device -> LOGGER.info("Streamed device: " + device.name()));
+
         final String deviceId = devices.get(0).id();
         final Device device = client.getDevice(deviceId);
 
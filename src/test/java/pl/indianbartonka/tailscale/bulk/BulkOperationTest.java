@@ -0,0 +1,100 @@
+package pl.indianbartonka.tailscale.bulk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+
+public final class BulkOperationTest {
+
+    public static void main(final String[] args) {
+        runAsyncDoesNotBlockTheCaller();
+        concurrencyStaysBounded();
+        synchronousCallsDoNotOverflowTheStack();
+        failuresAreReportedPerId();
+        emptyInputCompletesAtOnce();
+    }
+
+    private static void runAsyncDoesNotBlockTheCaller() {
+        final ConcurrentLinkedQueue<CompletableFuture<String>> started = new ConcurrentLinkedQueue<>();
+        final BulkOperation<String> operation = new BulkOperation<>(2, id -> {
+            final CompletableFuture<String> future = new CompletableFuture<>();
+            started.add(future);
+            return future;
+        });
+
+        final CompletableFuture<BulkResult<String>> result = operation.runAsync(ids(5));
+        checkEquals(2, started.size(), "calls started before any completed");
+        check(!result.isDone(), "result completes only after the last call");
+
+        while (!result.isDone()) {
+            final CompletableFuture<String> next = started.poll();
+            check(next != null, "a completed call launches the next id");
+            next.complete("ok");
+        }
+
+        checkEquals(5, result.join().successes().size(), "successes");
+    }
+
+    private static void concurrencyStaysBounded() {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final List<CompletableFuture<Integer>> pending = new ArrayList<>();
+
+        final BulkOperation<Integer> operation = new BulkOperation<>(3, id -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            final CompletableFuture<Integer> future = new CompletableFuture<>();
+            synchronized (pending) {
+                pending.add(future);
+            }
+            return future.whenComplete((value, throwable) -> inFlight.decrementAndGet());
+        });
+
+        final CompletableFuture<BulkResult<Integer>> result = operation.runAsync(ids(50));
+        while (!result.isDone()) {
+            final CompletableFuture<Integer> next;
+            synchronized (pending) {
+                next = pending.remove(0);
+            }
+            next.complete(1);
+        }
+
+        checkEquals(3, maxInFlight.get(), "most calls in flight");
+        checkEquals(50, result.join().size(), "results");
+    }
+
+    private static void synchronousCallsDoNotOverflowTheStack() {
+        final BulkResult<String> result = new BulkOperation<>(4, CompletableFuture::completedFuture).run(ids(200_000));
+        checkEquals(200_000, result.successes().size(), "successes of already completed calls");
+    }
+
+    private static void failuresAreReportedPerId() {
+        final BulkResult<String> result = new BulkOperation<String>(4, id -> {
+            if (id.equals("3")) throw new IllegalStateException("thrown");
+            if (id.equals("4")) return CompletableFuture.failedFuture(new TailscaleException("not found", 404));
+            return CompletableFuture.completedFuture(id);
+        }).run(ids(6));
+
+        check(!result.isSuccessful(), "result with failures");
+        checkEquals(4, result.successes().size(), "successes");
+        checkEquals("thrown", result.failures().get("3").getMessage(), "thrown exception");
+        checkEquals(404, result.failures().get("4").getStatusCode(), "status code of the failed call");
+    }
+
+    private static void emptyInputCompletesAtOnce() {
+        final CompletableFuture<BulkResult<String>> result = new BulkOperation<>(1, CompletableFuture::completedFuture).runAsync(List.of());
+        check(result.isDone(), "empty run completes immediately");
+        checkEquals(0, result.join().size(), "results");
+    }
+
+    private static List<String> ids(final int count) {
+        return IntStream.range(0, count).mapToObj(String::valueOf).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,127 @@
+package pl.indianbartonka.tailscale.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+
+public final class CachedDeviceClientTest {
+
+    public static void main(final String[] args) throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            final List<Device> devices = simulator.generateDevices(10);
+            final DeviceClient deviceClient = simulator.createClient().getDeviceClient();
+
+            concurrentMissesShareOneRequest(simulator, deviceClient, devices.get(0).id());
+            entriesExpire(simulator, deviceClient, devices.get(1).id());
+            writesInvalidate(deviceClient, devices.get(2).id());
+            nodeIdsShareTheEntry(simulator, deviceClient, devices.get(4));
+            leastRecentlyUsedIsEvicted(deviceClient, devices);
+            deviceListFillsTheEntries(simulator, deviceClient, devices);
+        }
+    }
+
+    private static void concurrentMissesShareOneRequest(final TailscaleSimulator simulator, final DeviceClient deviceClient, final String deviceId) {
+        final CachedDeviceClient cache = new CachedDeviceClient(deviceClient, Duration.ofMinutes(1), 100);
+        simulator.setLatency(Duration.ofMillis(100), Duration.ofMillis(100));
+
+        try {
+            final long before = simulator.getRequestCount();
+            final List<CompletableFuture<Device>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) futures.add(cache.getDeviceAsync(deviceId));
+
+            for (final CompletableFuture<Device> future : futures) checkEquals(deviceId, future.join().id(), "loaded device");
+            checkEquals(1L, simulator.getRequestCount() - before, "requests of 50 concurrent misses");
+            checkEquals(1L, cache.getStats().loads(), "loads");
+        } finally {
+            simulator.setLatency(Duration.ZERO, Duration.ZERO);
+        }
+
+        final long before = simulator.getRequestCount();
+        cache.getDeviceAsync(deviceId).join();
+        checkEquals(0L, simulator.getRequestCount() - before, "requests of a hit");
+        checkEquals(1L, cache.getStats().hits(), "hits");
+    }
+
+    private static void entriesExpire(final TailscaleSimulator simulator, final DeviceClient deviceClient, final String deviceId) throws Exception {
+        final CachedDeviceClient cache = new CachedDeviceClient(deviceClient, Duration.ofMillis(200), 100);
+
+        cache.getDevice(deviceId);
+        cache.getDevice(deviceId);
+        Thread.sleep(300);
+
+        final long before = simulator.getRequestCount();
+        cache.getDevice(deviceId);
+        checkEquals(1L, simulator.getRequestCount() - before, "reload after the ttl");
+        checkEquals(2L, cache.getStats().loads(), "loads");
+    }
+
+    private static void writesInvalidate(final DeviceClient deviceClient, final String deviceId) throws Exception {
+        final CachedDeviceClient cache = new CachedDeviceClient(deviceClient, Duration.ofMinutes(1), 100);
+        check(cache.getDevice(deviceId).authorized(), "authorized before");
+
+        cache.setAuthorized(deviceId, false);
+        check(!cache.getDevice(deviceId).authorized(), "write is visible through the cache");
+
+        deviceClient.setAuthorized(deviceId, true);
+        check(!cache.getDevice(deviceId).authorized(), "writes around the cache are not seen until invalidated");
+        cache.invalidate(deviceId);
+        check(cache.getDevice(deviceId).authorized(), "after invalidate");
+    }
+
+    private static void nodeIdsShareTheEntry(final TailscaleSimulator simulator, final DeviceClient deviceClient, final Device device) throws Exception {
+        final CachedDeviceClient cache = new CachedDeviceClient(deviceClient, Duration.ofMinutes(1), 100);
+        check(!device.nodeId().equals(device.id()), "node id differs from the id");
+
+        checkEquals(device.id(), cache.getDevice(device.nodeId()).id(), "device by node id");
+        final long before = simulator.getRequestCount();
+        cache.getDevice(device.nodeId());
+        cache.getDevice(device.id());
+        checkEquals(0L, simulator.getRequestCount() - before, "requests by node id and id after the first load");
+        checkEquals(1, cache.getStats().size(), "one entry for both keys");
+
+        cache.setName(device.id(), "renamed");
+        cache.getDevice(device.nodeId());
+        checkEquals(2L, simulator.getRequestCount() - before, "write by id and reload by node id");
+
+        cache.invalidate(device.nodeId());
+        checkEquals(0, cache.getStats().size(), "invalidated by node id");
+        cache.getDevice(device.id());
+        checkEquals(3L, simulator.getRequestCount() - before, "id reloaded after invalidating the node id");
+    }
+
+    private static void leastRecentlyUsedIsEvicted(final DeviceClient deviceClient, final List<Device> devices) throws Exception {
+        final CachedDeviceClient cache = new CachedDeviceClient(deviceClient, Duration.ofMinutes(1), 3);
+
+        for (int i = 0; i < 3; i++) cache.getDevice(devices.get(i).id());
+        cache.getDevice(devices.get(0).id());
+        cache.getDevice(devices.get(3).id());
+
+        final CacheStats stats = cache.getStats();
+        checkEquals(3, stats.size(), "size");
+        checkEquals(1L, stats.evictions(), "evictions");
+
+        final long loads = stats.loads();
+        cache.getDevice(devices.get(0).id());
+        checkEquals(loads, cache.getStats().loads(), "recently used device is kept");
+        cache.getDevice(devices.get(1).id());
+        checkEquals(loads + 1, cache.getStats().loads(), "least recently used device was evicted");
+    }
+
+    private static void deviceListFillsTheEntries(final TailscaleSimulator simulator, final DeviceClient deviceClient, final List<Device> devices) throws Exception {
+        final CachedDeviceClient cache = new CachedDeviceClient(deviceClient, Duration.ofMinutes(1), 100);
+        checkEquals(devices.size(), cache.getDevices().size(), "devices");
+
+        final long before = simulator.getRequestCount();
+        cache.getDevices();
+        for (final Device device : devices) cache.getDevice(device.id());
+        checkEquals(0L, simulator.getRequestCount() - before, "requests after the list was cached");
+        check(cache.getStats().hitRate() > 0.9, "hit rate " + cache.getStats().hitRate());
+    }
+}
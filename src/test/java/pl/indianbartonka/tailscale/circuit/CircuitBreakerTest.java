@@ -0,0 +1,267 @@
+package pl.indianbartonka.tailscale.circuit;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.EndpointGroup;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.exception.BulkheadFullException;
+import pl.indianbartonka.tailscale.exception.CircuitOpenException;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+import pl.indianbartonka.tailscale.scheduler.RequestScheduler;
+import pl.indianbartonka.tailscale.scheduler.RetryPolicy;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+import static pl.indianbartonka.tailscale.Checks.checkThrows;
+
+public final class CircuitBreakerTest {
+
+    private static final CircuitBreakerConfig CONFIG = new CircuitBreakerConfig(0.5, 1, Duration.ofSeconds(5), 10, 4,
+            Duration.ofMillis(200), 2, 3);
+
+    public static void main(final String[] args) throws Exception {
+        configIsValidated();
+        failuresAreClassified();
+        failureRateOpensTheBreaker();
+        clientErrorsDoNotCount();
+        trialCallsCloseOrReopen();
+        slowCallsOpenTheBreaker();
+        bulkheadBoundsConcurrentCalls();
+
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            openBreakerSendsNoRequests(simulator);
+            staleResultsAreServedWhileDegraded(simulator);
+            deletedDevicesAreNotServedStale(simulator);
+        }
+    }
+
+    private static void configIsValidated() {
+        checkThrows(IllegalArgumentException.class, () -> new CircuitBreakerConfig(0, 1, Duration.ZERO, 10, 5, Duration.ZERO, 1, 1), "failure rate of zero");
+        checkThrows(IllegalArgumentException.class, () -> new CircuitBreakerConfig(0.5, 1.5, Duration.ZERO, 10, 5, Duration.ZERO, 1, 1), "slow rate above one");
+        checkThrows(IllegalArgumentException.class, () -> new CircuitBreakerConfig(0.5, 1, Duration.ZERO, 10, 11, Duration.ZERO, 1, 1), "minimum above the window");
+        checkThrows(IllegalArgumentException.class, () -> new CircuitBreakerConfig(0.5, 1, Duration.ZERO, 10, 5, Duration.ZERO, 1, 0), "empty bulkhead");
+    }
+
+    private static void failuresAreClassified() {
+        check(CircuitBreaker.isFailure(new TailscaleException("server error", 503)), "server error");
+        check(CircuitBreaker.isFailure(new TailscaleException("no response", -1)), "missing response");
+        check(CircuitBreaker.isFailure(new IOException("connection reset")), "I/O failure");
+        check(CircuitBreaker.isFailure(new CompletionException(new IOException("connection reset"))), "wrapped I/O failure");
+        check(CircuitBreaker.isFailure(new BulkheadFullException(EndpointGroup.KEYS, 1)), "full bulkhead");
+        check(!CircuitBreaker.isFailure(new TailscaleException("not found", 404)), "client error");
+        check(!CircuitBreaker.isFailure(new TailscaleException("rate limited", 429)), "rate limiting");
+        check(!CircuitBreaker.isFailure(new IllegalArgumentException("bad argument")), "programming error");
+    }
+
+    private static void failureRateOpensTheBreaker() {
+        final CircuitBreaker breaker = new CircuitBreaker(EndpointGroup.DEVICES_READ, CONFIG);
+
+        call(breaker, 200);
+        call(breaker, 500);
+        call(breaker, 200);
+        checkEquals(CircuitBreaker.State.CLOSED, breaker.getState(), "closed below the minimum calls");
+
+        call(breaker, 502);
+        checkEquals(CircuitBreaker.State.OPEN, breaker.getState(), "open at half of the calls failed");
+
+        final CircuitOpenException open = checkThrows(CircuitOpenException.class, breaker::acquire, "call while open");
+        checkEquals(502, open.getStatusCode(), "status of the last failure");
+        checkEquals(EndpointGroup.DEVICES_READ, open.getGroup(), "group");
+        check(!open.getRetryAfter().isZero() && open.getRetryAfter().compareTo(CONFIG.openDuration()) <= 0, "retry after " + open.getRetryAfter());
+        checkThrows(CircuitOpenException.class, breaker::checkPermitted, "check while open");
+        checkEquals(0, breaker.getConcurrentCalls(), "rejected calls take no slot");
+
+        breaker.reset();
+        checkEquals(CircuitBreaker.State.CLOSED, breaker.getState(), "reset");
+        checkEquals(0D, breaker.getFailureRate(), "failure rate after a reset");
+    }
+
+    private static void clientErrorsDoNotCount() {
+        final CircuitBreaker breaker = new CircuitBreaker(EndpointGroup.DEVICES_READ, CONFIG);
+        for (int i = 0; i < 20; i++) call(breaker, i % 2 == 0 ? 404 : 429);
+
+        checkEquals(CircuitBreaker.State.CLOSED, breaker.getState(), "client errors");
+
+        // The window holds the latest ten calls, old failures fall out of it
+        for (int i = 0; i < 4; i++) call(breaker, 500);
+        checkEquals(0.4, breaker.getFailureRate(), "failure rate of the window");
+        checkEquals(CircuitBreaker.State.CLOSED, breaker.getState(), "below the threshold");
+        call(breaker, 500);
+        checkEquals(CircuitBreaker.State.OPEN, breaker.getState(), "at the threshold");
+    }
+
+    private static void trialCallsCloseOrReopen() throws Exception {
+        final CircuitBreaker breaker = opened();
+
+        Thread.sleep(250);
+        checkEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(), "after the open duration");
+
+        final CircuitBreaker.Permit first = breaker.acquire();
+        final CircuitBreaker.Permit second = breaker.acquire();
+        checkThrows(CircuitOpenException.class, breaker::acquire, "more trials than allowed");
+
+        first.complete(200, null);
+        checkEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(), "one of two trials succeeded");
+        second.complete(200, null);
+        checkEquals(CircuitBreaker.State.CLOSED, breaker.getState(), "all trials succeeded");
+        checkEquals(0D, breaker.getFailureRate(), "window cleared when closing");
+
+        final CircuitBreaker failing = opened();
+        Thread.sleep(250);
+        final CircuitBreaker.Permit trial = failing.acquire();
+        final CircuitBreaker.Permit late = failing.acquire();
+        trial.complete(0, new IOException("connection reset"));
+        checkEquals(CircuitBreaker.State.OPEN, failing.getState(), "failed trial opens again");
+
+        late.complete(200, null);
+        checkEquals(CircuitBreaker.State.OPEN, failing.getState(), "trial finishing after the breaker opened again");
+    }
+
+    private static void slowCallsOpenTheBreaker() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker(EndpointGroup.DNS, new CircuitBreakerConfig(1, 0.5, Duration.ofMillis(20), 4, 4,
+                Duration.ofSeconds(1), 1, 4));
+
+        for (int i = 0; i < 2; i++) call(breaker, 200);
+        for (int i = 0; i < 2; i++) {
+            final CircuitBreaker.Permit permit = breaker.acquire();
+            Thread.sleep(40);
+            permit.complete(200, null);
+        }
+
+        checkEquals(0.5, breaker.getSlowCallRate(), "slow call rate");
+        checkEquals(CircuitBreaker.State.OPEN, breaker.getState(), "slow but successful calls");
+    }
+
+    private static void bulkheadBoundsConcurrentCalls() {
+        final CircuitBreaker breaker = new CircuitBreaker(EndpointGroup.KEYS, CONFIG);
+        final List<CircuitBreaker.Permit> permits = List.of(breaker.acquire(), breaker.acquire(), breaker.acquire());
+
+        checkThrows(BulkheadFullException.class, breaker::acquire, "call above the bulkhead");
+        checkEquals(3, breaker.getConcurrentCalls(), "calls in flight");
+
+        permits.get(0).complete(200, null);
+        permits.get(0).complete(200, null);
+        checkEquals(2, breaker.getConcurrentCalls(), "completing twice frees one slot");
+        breaker.acquire().complete(200, null);
+        checkEquals(CircuitBreaker.State.CLOSED, breaker.getState(), "full bulkhead does not open the breaker");
+    }
+
+    private static void openBreakerSendsNoRequests(final TailscaleSimulator simulator) throws Exception {
+        final String id = simulator.generateDevices(2).get(0).id();
+        final TailscaleClient client = client(simulator);
+        final DeviceClient deviceClient = client.getDeviceClient();
+
+        simulator.setErrorRate(1);
+        try {
+            for (int i = 0; i < CONFIG.minimumCalls(); i++) {
+                checkEquals(500, checkThrows(TailscaleException.class, () -> deviceClient.getDevice(id), "failing call").getStatusCode(), "status");
+            }
+
+            final long requests = simulator.getRequestCount();
+            checkThrows(CircuitOpenException.class, () -> deviceClient.getDevice(id), "call while open");
+            checkThrows(CircuitOpenException.class, () -> deviceClient.getDevices(), "other endpoint of the group");
+            checkEquals(0L, simulator.getRequestCount() - requests, "requests while open");
+            checkEquals(CircuitBreaker.State.CLOSED, client.getCircuitBreakers().get(EndpointGroup.KEYS).getState(), "other groups");
+        } finally {
+            simulator.setErrorRate(0);
+        }
+
+        Thread.sleep(250);
+        checkEquals(id, deviceClient.getDevice(id).id(), "trial call");
+        checkEquals(id, deviceClient.getDevice(id).id(), "second trial call");
+        checkEquals(CircuitBreaker.State.CLOSED, client.getCircuitBreakers().get(EndpointGroup.DEVICES_READ).getState(), "closed after the trials");
+    }
+
+    private static void staleResultsAreServedWhileDegraded(final TailscaleSimulator simulator) throws Exception {
+        final String id = simulator.generateDevices(2).get(0).id();
+        final TailscaleClient client = client(simulator);
+        client.setCircuitBreakers(null);
+        final DeviceClient deviceClient = client.getDeviceClient();
+        deviceClient.setStaleFallback(true);
+
+        final Device fresh = deviceClient.getDevice(id);
+        final List<Device> devices = deviceClient.getDevices();
+
+        simulator.setErrorRate(1);
+        try {
+            checkEquals(fresh, deviceClient.getDevice(id), "stale device");
+            checkEquals(devices, deviceClient.getDevices(), "stale device list");
+            checkEquals(2L, deviceClient.getStaleServedCount(), "stale results served");
+            checkThrows(TailscaleException.class, () -> deviceClient.getDevice("never-fetched"), "device without a kept result");
+
+            // A proxy in front of the API answers with its own HTML page instead of the JSON error
+            simulator.setErrorResponse(503, "<html><body><h1>503 Service Temporarily Unavailable</h1></body></html>");
+            checkEquals(fresh, deviceClient.getDevice(id), "stale device behind a proxy error page");
+            checkEquals(devices, deviceClient.getDevices(), "stale device list behind a proxy error page");
+            checkEquals(4L, deviceClient.getStaleServedCount(), "stale results served");
+
+            final TailscaleException page = checkThrows(TailscaleException.class, () -> deviceClient.getDevice("never-fetched"), "error page");
+            checkEquals(503, page.getStatusCode(), "status of the error page");
+            check(page.getMessage().contains("503 Service Temporarily Unavailable"), "message " + page.getMessage());
+        } finally {
+            simulator.setErrorRate(0);
+            simulator.setErrorResponse(500, null);
+        }
+
+        deviceClient.deleteDevice(id);
+        checkEquals(404, checkThrows(TailscaleException.class, () -> deviceClient.getDevice(id), "deleted device").getStatusCode(), "status");
+
+        simulator.setErrorRate(1);
+        try {
+            checkThrows(TailscaleException.class, () -> deviceClient.getDevice(id), "404 dropped the kept result");
+        } finally {
+            simulator.setErrorRate(0);
+        }
+    }
+
+    private static void deletedDevicesAreNotServedStale(final TailscaleSimulator simulator) throws Exception {
+        final List<Device> generated = simulator.generateDevices(3);
+        final Device deleted = generated.get(0);
+        final TailscaleClient client = client(simulator);
+        client.setCircuitBreakers(null);
+        final DeviceClient deviceClient = client.getDeviceClient();
+        deviceClient.setStaleFallback(true);
+
+        deviceClient.getDevice(deleted.nodeId());
+        deviceClient.getDevice(generated.get(1).id());
+        final List<Device> devices = deviceClient.getDevices();
+        check(devices.stream().anyMatch(device -> device.id().equals(deleted.id())), "deleted device was listed");
+
+        deviceClient.deleteDevice(deleted.id());
+
+        simulator.setErrorRate(1);
+        try {
+            checkThrows(TailscaleException.class, () -> deviceClient.getDevice(deleted.nodeId()), "deleted device by node id");
+            checkEquals(generated.get(1).id(), deviceClient.getDevice(generated.get(1).id()).id(), "other device is still kept");
+
+            final List<Device> stale = deviceClient.getDevices();
+            checkEquals(devices.size() - 1, stale.size(), "stale device list without the deleted device");
+            check(stale.stream().noneMatch(device -> device.id().equals(deleted.id())), "deleted device left out");
+        } finally {
+            simulator.setErrorRate(0);
+        }
+    }
+
+    private static TailscaleClient client(final TailscaleSimulator simulator) {
+        final TailscaleClient client = simulator.createClient();
+        client.setRequestScheduler(new RequestScheduler(1000, 1000, RetryPolicy.NONE));
+        client.setCircuitBreakers(new CircuitBreakers(CONFIG));
+        return client;
+    }
+
+    private static CircuitBreaker opened() {
+        final CircuitBreaker breaker = new CircuitBreaker(EndpointGroup.DEVICES_WRITE, CONFIG);
+        for (int i = 0; i < CONFIG.minimumCalls(); i++) call(breaker, 503);
+        checkEquals(CircuitBreaker.State.OPEN, breaker.getState(), "opened");
+        return breaker;
+    }
+
+    private static void call(final CircuitBreaker breaker, final int statusCode) {
+        breaker.acquire().complete(statusCode, null);
+    }
+}
@@ -0,0 +1,49 @@
+package pl.indianbartonka.tailscale.data;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+
+public final class TimestampsTest {
+
+    public static void main(final String[] args) {
+        parsesApiTimestamps();
+        matchesJavaTime();
+        rejectsInvalidTimestamps();
+    }
+
+    private static void parsesApiTimestamps() {
+        checkEquals(Instant.parse("2024-03-05T10:20:30Z").toEpochMilli(), Timestamps.toEpochMillis("2024-03-05T10:20:30Z"), "UTC");
+        checkEquals(Instant.parse("2024-03-05T08:20:30Z").toEpochMilli(), Timestamps.toEpochMillis("2024-03-05T10:20:30+02:00"), "positive offset");
+        checkEquals(Instant.parse("2024-03-05T12:50:30Z").toEpochMilli(), Timestamps.toEpochMillis("2024-03-05T10:20:30-02:30"), "negative offset");
+        checkEquals(Instant.parse("2024-03-05T10:20:30.123Z").toEpochMilli(), Timestamps.toEpochMillis("2024-03-05T10:20:30.123456789Z"), "nanosecond fraction");
+        checkEquals(Instant.parse("2024-03-05T10:20:30.500Z").toEpochMilli(), Timestamps.toEpochMillis("2024-03-05T10:20:30.5Z"), "short fraction");
+        checkEquals(Instant.parse("2024-02-29T00:00:00Z").toEpochMilli(), Timestamps.toEpochMillis("2024-02-29T00:00:00Z"), "leap day");
+        checkEquals(Instant.parse("1969-12-31T23:59:59Z").toEpochMilli(), Timestamps.toEpochMillis("1969-12-31T23:59:59Z"), "before the epoch");
+    }
+
+    private static void matchesJavaTime() {
+        final Random random = new Random(7);
+        final DateTimeFormatter formatter = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+        for (int i = 0; i < 100_000; i++) {
+            final Instant instant = Instant.ofEpochSecond(random.nextLong(0, 4_102_444_800L), random.nextInt(1_000_000_000));
+            final ZoneOffset offset = ZoneOffset.ofTotalSeconds(random.nextInt(-14 * 60, 14 * 60 + 1) * 60);
+            final String timestamp = formatter.format(OffsetDateTime.ofInstant(instant, offset));
+
+            checkEquals(OffsetDateTime.parse(timestamp).toInstant().toEpochMilli(), Timestamps.toEpochMillis(timestamp), timestamp);
+        }
+    }
+
+    private static void rejectsInvalidTimestamps() {
+        for (final String timestamp : new String[]{null, "", "0001-01-01", "yesterday", "2024-02-30T00:00:00Z", "2023-02-29T00:00:00Z",
+                "2024-13-01T00:00:00Z", "2024-01-01T24:00:00Z", "2024-01-01T00:60:00Z", "2024-01-01 00:00:00Z", "2024-01-01T00:00:00",
+                "2024-01-01T00:00:00.\u0663Z", "2024-01-01T00:00:00.1\uFF15Z"}) {
+            checkEquals(Timestamps.UNKNOWN, Timestamps.toEpochMillis(timestamp), String.valueOf(timestamp));
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package pl.indianbartonka.tailscale.hedge;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import pl.indianbartonka.tailscale.ApiEndpoint;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+import pl.indianbartonka.tailscale.transport.TransportResponse;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+import static pl.indianbartonka.tailscale.Checks.checkThrows;
+
+public final class HedgerTest {
+
+    private static final HedgePolicy POLICY = new HedgePolicy(95, Duration.ofMillis(100), Duration.ofSeconds(1), 100, 1,
+            EnumSet.of(ApiEndpoint.GET_DEVICE));
+
+    public static void main(final String[] args) throws Exception {
+        policyIsValidated();
+        noHedgeWithoutLatencies();
+        slowRequestIsHedged();
+        serverErrorsDoNotWinTheRace();
+        budgetLimitsTheHedges();
+        cancellingCancelsBothRequests();
+        hedgedReadsWithTheSimulator();
+    }
+
+    private static void policyIsValidated() {
+        checkThrows(IllegalArgumentException.class, () -> POLICY.withEndpoints(Set.of(ApiEndpoint.SET_TAGS)), "hedged write");
+        checkThrows(IllegalArgumentException.class, () -> new HedgePolicy(100, Duration.ZERO, Duration.ZERO, 5, 1, Set.of()), "percentile of 100");
+        checkThrows(IllegalArgumentException.class, () -> new HedgePolicy(95, Duration.ofSeconds(2), Duration.ofSeconds(1), 5, 1, Set.of()), "delays swapped");
+        checkThrows(IllegalArgumentException.class, () -> new HedgePolicy(95, Duration.ZERO, Duration.ZERO, -1, 1, Set.of()), "negative budget");
+    }
+
+    private static void noHedgeWithoutLatencies() {
+        final Hedger hedger = new Hedger(POLICY.withEndpoints(Set.of(ApiEndpoint.GET_DEVICE, ApiEndpoint.GET_ROUTES)));
+        final Sender sender = new Sender();
+
+        check(hedger.getDelay(ApiEndpoint.GET_DEVICE) == null, "delay before any latency");
+        check(hedger.getDelay(ApiEndpoint.GET_DEVICES) == null, "delay of an endpoint that is not hedged");
+        check(!hedger.isHedged(ApiEndpoint.GET_DEVICES), "endpoint that is not hedged");
+
+        hedger.send(ApiEndpoint.GET_DEVICES, sender);
+        hedger.send(ApiEndpoint.GET_DEVICE, sender);
+        checkEquals(2, sender.sent.size(), "one request per call");
+        checkEquals(1L, hedger.getStats().calls(), "hedged calls");
+
+        sender.complete(1, 200);
+        checkEquals(POLICY.minDelay(), hedger.getDelay(ApiEndpoint.GET_DEVICE), "fast latencies are clamped to the minimum delay");
+        check(hedger.getDelay(ApiEndpoint.GET_ROUTES) == null, "latencies are kept per endpoint");
+    }
+
+    private static void slowRequestIsHedged() throws Exception {
+        final Hedger hedger = warmedUp(POLICY);
+        final Sender sender = new Sender();
+
+        final CompletableFuture<TransportResponse> result = hedger.send(ApiEndpoint.GET_DEVICE, sender);
+        await(() -> sender.sent.size() == 2, "hedge");
+
+        sender.complete(1, 200);
+        checkEquals(200, result.join().statusCode(), "response of the hedge");
+        check(sender.sent.get(0).isCancelled(), "slow request is cancelled");
+        checkEquals(new HedgeStats(2, 1, 1, 0), hedger.getStats(), "stats");
+        checkEquals(50D, hedger.getStats().getHedgePercent(), "hedge percent");
+        checkEquals(1D, hedger.getStats().getWinRate(), "win rate");
+    }
+
+    private static void serverErrorsDoNotWinTheRace() throws Exception {
+        final Hedger hedger = warmedUp(POLICY);
+        final Sender sender = new Sender();
+
+        final CompletableFuture<TransportResponse> recovered = hedger.send(ApiEndpoint.GET_DEVICE, sender);
+        await(() -> sender.sent.size() == 2, "hedge");
+        sender.complete(0, 503);
+        check(!recovered.isDone(), "server error waits for the hedge");
+        sender.complete(1, 200);
+        checkEquals(200, recovered.join().statusCode(), "response of the hedge");
+
+        final Sender failing = new Sender();
+        final CompletableFuture<TransportResponse> failed = hedger.send(ApiEndpoint.GET_DEVICE, failing);
+        await(() -> failing.sent.size() == 2, "hedge");
+        failing.complete(1, 429);
+        failing.sent.get(0).completeExceptionally(new IOException("connection reset"));
+        check(checkThrows(Exception.class, failed::join, "both requests failed").getCause() instanceof IOException, "failure of the first request");
+    }
+
+    private static void budgetLimitsTheHedges() throws Exception {
+        final Hedger hedger = warmedUp(new HedgePolicy(95, POLICY.minDelay(), POLICY.maxDelay(), 25, 1, POLICY.endpoints()));
+        final List<Sender> senders = new ArrayList<>();
+
+        // The warm-up and seven calls add 8 * 25% to the budget, enough for two hedges
+        for (int i = 0; i < 7; i++) {
+            final Sender sender = new Sender();
+            senders.add(sender);
+            hedger.send(ApiEndpoint.GET_DEVICE, sender);
+        }
+
+        await(() -> hedger.getStats().hedged() + hedger.getStats().budgetExhausted() == 7, "hedge decisions");
+        checkEquals(new HedgeStats(8, 2, 0, 5), hedger.getStats(), "stats");
+        checkEquals(9, senders.stream().mapToInt(sender -> sender.sent.size()).sum(), "requests sent");
+    }
+
+    private static void cancellingCancelsBothRequests() throws Exception {
+        final Hedger hedger = warmedUp(POLICY);
+        final Sender sender = new Sender();
+
+        final CompletableFuture<TransportResponse> result = hedger.send(ApiEndpoint.GET_DEVICE, sender);
+        await(() -> sender.sent.size() == 2, "hedge");
+        result.cancel(true);
+
+        check(sender.sent.get(0).isCancelled() && sender.sent.get(1).isCancelled(), "both requests cancelled");
+    }
+
+    private static void hedgedReadsWithTheSimulator() throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            final List<Device> devices = simulator.generateDevices(10);
+            final TailscaleClient client = simulator.createClient();
+            client.setHedgePolicy(new HedgePolicy(50, Duration.ofMillis(1), Duration.ofSeconds(1), 20, 5, EnumSet.of(ApiEndpoint.GET_DEVICE)));
+            simulator.setLatency(Duration.ofMillis(1), Duration.ofMillis(100));
+
+            final DeviceClient deviceClient = client.getDeviceClient();
+            for (int i = 0; i < 40; i++) {
+                final Device device = devices.get(i % devices.size());
+                checkEquals(device.id(), deviceClient.getDevice(device.id()).id(), "hedged read");
+            }
+
+            final HedgeStats stats = client.getHedgeStats();
+            checkEquals(40L, stats.calls(), "calls");
+            check(stats.hedged() > 0, "slow reads are hedged");
+            check(stats.hedged() <= 8, "hedges within the budget: " + stats.hedged());
+            // A cancelled loser may be dropped before the simulator counts it
+            check(simulator.getRequestCount() >= 40 && simulator.getRequestCount() <= 40 + stats.hedged(), "requests " + simulator.getRequestCount());
+        }
+    }
+
+    /**
+     * @return a hedger which hedges after the minimum delay of the policy
+     */
+    private static Hedger warmedUp(final HedgePolicy policy) {
+        final Hedger hedger = new Hedger(policy);
+        final Sender sender = new Sender();
+
+        hedger.send(ApiEndpoint.GET_DEVICE, sender);
+        sender.complete(0, 200);
+        checkEquals(policy.minDelay(), hedger.getDelay(ApiEndpoint.GET_DEVICE), "delay after the warm-up");
+
+        return hedger;
+    }
+
+    private static void await(final BooleanSupplier condition, final String what) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            check(System.nanoTime() < deadline, "timed out waiting for " + what);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Requests answered only when the test completes them
+     */
+    private static final class Sender implements Supplier<CompletableFuture<TransportResponse>> {
+
+        private final List<CompletableFuture<TransportResponse>> sent = new CopyOnWriteArrayList<>();
+
+        @Override
+        public CompletableFuture<TransportResponse> get() {
+            final CompletableFuture<TransportResponse> response = new CompletableFuture<>();
+            this.sent.add(response);
+            return response;
+        }
+
+        private void complete(final int index, final int statusCode) {
+            this.sent.get(index).complete(new TransportResponse(statusCode, HttpHeaders.of(Map.of(), (name, value) -> true),
+                    new ByteArrayInputStream(new byte[0]), 0, 0));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package pl.indianbartonka.tailscale.index;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+import static pl.indianbartonka.tailscale.Checks.checkThrows;
+
+public final class DeviceIndexTest {
+
+    public static void main(final String[] args) throws Exception {
+        lookups();
+        updatesMoveKeys();
+        addressTakenOverByAnotherDevice();
+        refreshDropsDeletedDevices();
+    }
+
+    private static void lookups() {
+        final DeviceIndex index = DeviceIndex.of(List.of(
+                device("1", "100.64.0.1", "web", "alice@example.com", List.of("tag:web", "tag:prod")),
+                device("2", "100.64.0.2", "web", "bob@example.com", List.of("tag:web")),
+                device("3", "100.64.0.3", "db", "alice@example.com", List.of())
+        ));
+
+        checkEquals(Optional.of("1"), index.getByAddress("100.64.0.1").map(Device::id), "by address");
+        checkEquals(Optional.of("1"), index.getByAddress("fd7a:115c:a1e0::1").map(Device::id), "by IPv6 address");
+        checkEquals(Optional.of("3"), index.getByName("db-3.example.ts.net").map(Device::id), "by name");
+        checkEquals(Optional.of("2"), index.getByNodeId("n2").map(Device::id), "by node id");
+        checkEquals(Optional.of("2"), index.getByNodeKey("nodekey:2").map(Device::id), "by node key");
+        checkEquals(Optional.of("3"), index.getByMachineKey("mkey:3").map(Device::id), "by machine key");
+        checkEquals(Set.of("1", "2"), ids(index.getByHostname("web")), "by hostname");
+        checkEquals(Set.of("1", "3"), ids(index.getByUser("alice@example.com")), "by user");
+        checkEquals(Set.of("1", "2"), ids(index.getByTag("tag:web")), "by tag");
+        checkEquals(Set.of("tag:web", "tag:prod"), index.getTags(), "tags");
+        check(index.getByAddress("100.64.0.9").isEmpty() && index.getByTag("tag:none").isEmpty(), "unknown keys");
+        checkThrows(IllegalArgumentException.class, () -> index.put(device(null, "100.64.0.9", "x", "x", List.of())), "device without id");
+    }
+
+    private static void updatesMoveKeys() {
+        final DeviceIndex index = DeviceIndex.of(List.of(device("1", "100.64.0.1", "web", "alice@example.com", List.of("tag:web", "tag:prod"))));
+        index.put(device("1", "100.64.0.7", "api", "alice@example.com", List.of("tag:api")));
+
+        check(index.getByAddress("100.64.0.1").isEmpty(), "old address");
+        checkEquals(Optional.of("1"), index.getByAddress("100.64.0.7").map(Device::id), "new address");
+        check(index.getByHostname("web").isEmpty(), "old hostname");
+        checkEquals(Set.of("1"), ids(index.getByHostname("api")), "new hostname");
+        checkEquals(Set.of("tag:api"), index.getTags(), "tags without devices are dropped");
+        checkEquals(1, index.size(), "size");
+
+        check(index.remove("1"), "remove");
+        check(!index.remove("1"), "remove twice");
+        check(index.getByAddress("100.64.0.7").isEmpty() && index.getByUser("alice@example.com").isEmpty() && index.getTags().isEmpty(), "removed keys");
+    }
+
+    private static void addressTakenOverByAnotherDevice() {
+        final DeviceIndex index = DeviceIndex.of(List.of(device("1", "100.64.0.1", "a", "u", List.of())));
+        index.put(device("2", "100.64.0.1", "b", "u", List.of()));
+        checkEquals(Optional.of("2"), index.getByAddress("100.64.0.1").map(Device::id), "address of the newer device");
+
+        index.remove("1");
+        checkEquals(Optional.of("2"), index.getByAddress("100.64.0.1").map(Device::id), "removing the old owner keeps the address");
+    }
+
+    private static void refreshDropsDeletedDevices() throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            final List<Device> devices = simulator.generateDevices(20);
+            final DeviceClient deviceClient = simulator.createClient().getDeviceClient();
+
+            final DeviceIndex index = new DeviceIndex();
+            index.refresh(deviceClient);
+            checkEquals(20, index.size(), "devices after the first refresh");
+
+            deviceClient.deleteDevice(devices.get(0).id());
+            index.refresh(deviceClient);
+            checkEquals(19, index.size(), "devices after a delete");
+            check(index.getByAddress(devices.get(0).addresses().get(0)).isEmpty(), "address of the deleted device");
+            checkEquals(Optional.of(devices.get(1).id()), index.getByAddress(devices.get(1).addresses().get(0)).map(Device::id), "address of a kept device");
+        }
+    }
+
+    private static Set<String> ids(final List<Device> devices) {
+        return devices.stream().map(Device::id).collect(Collectors.toSet());
+    }
+
+    private static Device device(final String id, final String address, final String hostname, final String user, final List<String> tags) {
+        return new Device(List.of(address, "fd7a:115c:a1e0::" + id), true, false, "1.60.0", null, null, hostname, id, false, false, null,
+                "mkey:" + id, hostname + "-" + id + ".example.ts.net", "n" + id, "nodekey:" + id, "linux", null, null, null, tags,
+                null, null, null, false, user);
+    }
+}
@@ -0,0 +1,106 @@
+package pl.indianbartonka.tailscale.index;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import pl.indianbartonka.tailscale.data.Timestamps;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+
+public final class DeviceTimeIndexTest {
+
+    public static void main(final String[] args) {
+        columnMatchesALinearScan();
+        emptyColumn();
+        deviceQueries();
+    }
+
+    private static void columnMatchesALinearScan() {
+        final Random random = new Random(3);
+        final Map<String, Long> times = new HashMap<>();
+        final TimeColumn.Builder builder = TimeColumn.builder();
+
+        for (int i = 0; i < 50_000; i++) {
+            // Few distinct values, so equal timestamps are common
+            final long time = random.nextInt(5_000) * 1_000L;
+            times.put("d" + i, time);
+            builder.add("d" + i, time);
+        }
+        builder.add("unknown", Timestamps.UNKNOWN);
+        builder.add(null, 1_000L);
+
+        final TimeColumn column = builder.build();
+        checkEquals(times.size(), column.size(), "unknown timestamps and missing ids are left out");
+        checkEquals(times.values().stream().min(Long::compare).orElseThrow(), column.oldest(), "oldest");
+        checkEquals(times.values().stream().max(Long::compare).orElseThrow(), column.newest(), "newest");
+
+        for (int i = 0; i < 200; i++) {
+            final long from = random.nextInt(5_200) * 1_000L - 100_000;
+            final long to = from + random.nextInt(2_000) * 1_000L;
+
+            checkEquals(scan(times, Long.MIN_VALUE, from), sorted(column.before(from)), "before " + from);
+            checkEquals(scan(times, from, Long.MAX_VALUE), sorted(column.atOrAfter(from)), "at or after " + from);
+            checkEquals(scan(times, from, to), sorted(column.between(from, to)), "between " + from + " and " + to);
+            checkEquals(column.before(from).size(), column.countBefore(from), "count before " + from);
+            check(isOldestFirst(times, column.between(from, to)), "oldest first");
+        }
+    }
+
+    private static void emptyColumn() {
+        final TimeColumn column = TimeColumn.builder().build();
+
+        checkEquals(0, column.size(), "size");
+        checkEquals(Timestamps.UNKNOWN, column.oldest(), "oldest");
+        checkEquals(Timestamps.UNKNOWN, column.newest(), "newest");
+        check(column.before(Long.MAX_VALUE).isEmpty(), "before");
+    }
+
+    private static void deviceQueries() {
+        final DeviceTimeIndex index = DeviceTimeIndex.of(List.of(
+                device("old", "2023-01-01T00:00:00Z", "2024-01-01T00:00:00Z", false, "2023-06-01T00:00:00Z"),
+                device("new", "2024-05-01T00:00:00Z", "2024-11-01T00:00:00Z", false, "2024-06-01T00:00:00Z"),
+                device("pinned", "2024-02-01T00:00:00Z", "2024-03-01T00:00:00Z", true, "2024-06-02T00:00:00Z"),
+                device("never", "2024-02-02T00:00:00+01:00", null, false, null)
+        ));
+
+        checkEquals(List.of("old"), index.devicesNotSeenSince(Instant.parse("2024-01-01T00:00:00Z")), "not seen since");
+        checkEquals(List.of("new", "pinned"), index.devicesSeenSince(Instant.parse("2024-06-01T00:00:00Z")), "seen since");
+        checkEquals(List.of("old"), index.devicesExpiringBefore(Instant.parse("2024-06-01T00:00:00Z")), "key expiry disabled is skipped");
+        checkEquals(List.of("pinned", "never"), index.devicesCreatedBetween(Instant.parse("2024-01-01T00:00:00Z"), Instant.parse("2024-05-01T00:00:00Z")),
+                "created between, end exclusive");
+        checkEquals(3, index.getLastSeen().size(), "devices with a last seen time");
+    }
+
+    private static List<String> scan(final Map<String, Long> times, final long from, final long to) {
+        return times.entrySet().stream()
+                .filter(entry -> entry.getValue() >= from && entry.getValue() < to)
+                .map(Map.Entry::getKey)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> sorted(final List<String> ids) {
+        final List<String> copy = new ArrayList<>(ids);
+        copy.sort(Comparator.naturalOrder());
+        return copy;
+    }
+
+    private static boolean isOldestFirst(final Map<String, Long> times, final List<String> ids) {
+        for (int i = 1; i < ids.size(); i++) {
+            if (times.get(ids.get(i - 1)) > times.get(ids.get(i))) return false;
+        }
+        return true;
+    }
+
+    private static Device device(final String id, final String created, final String expires, final boolean keyExpiryDisabled, final String lastSeen) {
+        return new Device(List.of("100.64.0.1"), true, false, "1.60.0", created, expires, id, id, false, keyExpiryDisabled, lastSeen,
+                "mkey:" + id, id, "n" + id, "nodekey:" + id, "linux", null, null, null, null, null, null, null, false, "user@example.com");
+    }
+}
@@ -0,0 +1,139 @@
+package pl.indianbartonka.tailscale.index;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+import static pl.indianbartonka.tailscale.Checks.checkThrows;
+
+public final class RouteIndexTest {
+
+    private static final List<Device> DEVICES = List.of(
+            device("1", List.of("10.0.0.0/8", "0.0.0.0/0"), List.of("10.0.0.0/8")),
+            device("2", List.of("10.4.0.0/16", "fd00::/8"), List.of("10.4.0.0/16")),
+            device("3", List.of("10.4.7.0/24", "bogus"), List.of()),
+            device("4", List.of("10.4.7.0/24", "192.168.1.0/24"), List.of("10.4.7.0/24"))
+    );
+
+    public static void main(final String[] args) throws Exception {
+        parsesPrefixes();
+        longestMatch();
+        longestMatchAgreesWithALinearScan();
+        overlaps();
+        loadsRoutesFromTheSimulator();
+    }
+
+    private static void parsesPrefixes() {
+        checkEquals("10.4.7.0/24", Cidr.parse("10.4.7.9/24").toString(), "host bits are masked");
+        checkEquals(32, Cidr.parse("10.4.7.9").prefixLength(), "a plain address is a host route");
+        check(Cidr.parse("10.0.0.0/8").contains(Cidr.parse("10.4.7.0/24")), "shorter prefix contains the longer one");
+        check(!Cidr.parse("10.4.7.0/24").contains(Cidr.parse("10.0.0.0/8")), "longer prefix doesn't contain the shorter one");
+        check(!Cidr.parse("::/0").overlaps(Cidr.parse("0.0.0.0/0")), "address families don't overlap");
+
+        for (final String invalid : new String[]{"bogus", "10.0.0.0/33", "10.0.0/8", "fd00::/129", "10.0.0.0/x"}) {
+            checkThrows(IllegalArgumentException.class, () -> Cidr.parse(invalid), invalid);
+        }
+    }
+
+    private static void longestMatch() {
+        final RouteIndex index = RouteIndex.of(DEVICES);
+
+        checkEquals(List.of("bogus"), index.getInvalidRoutes(), "invalid routes");
+        checkEquals(Set.of("3", "4"), ids(index.longestMatch("10.4.7.9", false)), "most specific prefix, advertised");
+        checkEquals(Set.of("4"), ids(index.longestMatch("10.4.7.9", true)), "most specific prefix, enabled");
+        checkEquals(List.of("2"), index.routersFor("10.4.8.1").stream().map(Device::id).toList(), "router of the /16");
+        checkEquals(List.of("1"), index.routersFor("10.5.1.1").stream().map(Device::id).toList(), "router of the /8");
+        check(index.routersFor("8.8.8.8").isEmpty(), "the exit node route isn't enabled");
+        checkEquals(Set.of("1"), ids(index.longestMatch("8.8.8.8", false)), "exit node route when advertised routes count");
+        checkEquals(Set.of("2"), ids(index.longestMatch("fd00::1", false)), "IPv6 route");
+        check(index.longestMatch("2001:db8::1", false).isEmpty(), "no IPv6 exit node");
+        checkEquals(Set.of("4"), ids(index.longestMatch("10.4.7.0/25", false).stream().filter(RouteEntry::enabled).toList()), "prefix lookup");
+    }
+
+    private static void longestMatchAgreesWithALinearScan() {
+        final Random random = new Random(11);
+        final List<Device> devices = new ArrayList<>();
+
+        for (int i = 0; i < 300; i++) {
+            final int length = 8 + random.nextInt(25);
+            final String route = "10." + random.nextInt(4) + "." + random.nextInt(256) + "." + random.nextInt(256) + "/" + length;
+            devices.add(device(String.valueOf(i), List.of(route), random.nextBoolean() ? List.of(route) : List.of()));
+        }
+
+        final RouteIndex index = RouteIndex.of(devices);
+        for (int i = 0; i < 2_000; i++) {
+            final String address = "10." + random.nextInt(4) + "." + random.nextInt(256) + "." + random.nextInt(256);
+            final Cidr host = Cidr.parse(address);
+
+            for (final boolean enabledOnly : new boolean[]{false, true}) {
+                final List<RouteEntry> candidates = index.getEntries().stream()
+                        .filter(entry -> entry.cidr().contains(host) && (!enabledOnly || entry.enabled()))
+                        .toList();
+                final int longest = candidates.stream().mapToInt(entry -> entry.cidr().prefixLength()).max().orElse(-1);
+                final Set<RouteEntry> expected = candidates.stream().filter(entry -> entry.cidr().prefixLength() == longest).collect(Collectors.toSet());
+
+                checkEquals(expected, new HashSet<>(index.longestMatch(address, enabledOnly)), address + " enabled only " + enabledOnly);
+            }
+        }
+    }
+
+    private static void overlaps() {
+        final RouteIndex index = RouteIndex.of(DEVICES);
+
+        final Set<String> overlaps = index.overlaps().stream()
+                .map(overlap -> overlap.outer().route() + "@" + overlap.outer().device().id() + ">" + overlap.inner().route() + "@" + overlap.inner().device().id())
+                .collect(Collectors.toSet());
+        checkEquals(Set.of(
+                "10.0.0.0/8@1>10.4.0.0/16@2",
+                "10.0.0.0/8@1>10.4.7.0/24@3",
+                "10.0.0.0/8@1>10.4.7.0/24@4",
+                "10.4.0.0/16@2>10.4.7.0/24@3",
+                "10.4.0.0/16@2>10.4.7.0/24@4"
+        ), overlaps, "overlaps without exit node routes and identical prefixes");
+
+        final Set<String> overlapping = index.overlapping("10.4.0.0/16").stream()
+                .map(entry -> entry.route() + "@" + entry.device().id())
+                .collect(Collectors.toSet());
+        checkEquals(Set.of("0.0.0.0/0@1", "10.0.0.0/8@1", "10.4.0.0/16@2", "10.4.7.0/24@3", "10.4.7.0/24@4"), overlapping, "overlapping the /16");
+        check(index.overlapping("192.168.2.0/24").stream().allMatch(entry -> entry.cidr().prefixLength() == 0), "only the exit node covers a foreign prefix");
+    }
+
+    private static void loadsRoutesFromTheSimulator() throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            for (final Device device : DEVICES) simulator.addDevice(device);
+            final DeviceClient deviceClient = simulator.createClient().getDeviceClient();
+
+            final RouteIndex index = RouteIndex.load(deviceClient, 2);
+            checkEquals(RouteIndex.of(DEVICES).size(), index.size(), "routes read although the device list leaves them out");
+            checkEquals(Set.of("1:0.0.0.0/0", "2:fd00::/8", "3:10.4.7.0/24", "4:192.168.1.0/24"),
+                    index.pending().stream().map(entry -> entry.device().id() + ":" + entry.route()).collect(Collectors.toSet()), "pending routes");
+
+            check(index.approvePending(deviceClient, entry -> Cidr.parse("10.0.0.0/8").contains(entry.cidr()), 2).isSuccessful(), "approve");
+            checkEquals(List.of("10.4.7.0/24"), deviceClient.getRoutes("3").enabledRoutes(), "approved route");
+
+            index.approvePending(deviceClient, entry -> entry.device().id().equals("2"), 2);
+            checkEquals(Set.of("10.4.0.0/16", "fd00::/8"), new HashSet<>(deviceClient.getRoutes("2").enabledRoutes()), "enabled routes are kept");
+
+            checkEquals(Set.of("1:0.0.0.0/0", "4:192.168.1.0/24"),
+                    RouteIndex.load(deviceClient).pending().stream().map(entry -> entry.device().id() + ":" + entry.route()).collect(Collectors.toSet()),
+                    "pending after approving");
+        }
+    }
+
+    private static Set<String> ids(final List<RouteEntry> entries) {
+        return entries.stream().map(entry -> entry.device().id()).collect(Collectors.toSet());
+    }
+
+    private static Device device(final String id, final List<String> advertised, final List<String> enabled) {
+        return new Device(List.of(), true, false, "1.60.0", null, null, "host-" + id, id, false, false, null, null, "host-" + id, null, null,
+                "linux", enabled, advertised, null, List.of(), null, null, null, false, "user@example.com");
+    }
+}
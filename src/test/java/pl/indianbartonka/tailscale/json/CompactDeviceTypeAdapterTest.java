@@ -0,0 +1,118 @@
+package pl.indianbartonka.tailscale.json;
+
+import com.google.gson.Gson;
+import java.io.StringReader;
+import java.util.List;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.data.response.device.CompactDevice;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+
+public final class CompactDeviceTypeAdapterTest {
+
+    private static final String DEVICE = """
+            {
+              "addresses": ["100.64.0.1", "FD7A:115C:A1E0:0:0:0:0:1"],
+              "authorized": true,
+              "clientVersion": "1.60.0",
+              "created": "2024-01-01T00:00:00Z",
+              "hostname": "host",
+              "id": "%s",
+              "keyExpiryDisabled": true,
+              "lastSeen": "2024-06-01T00:00:00Z",
+              "name": "host.example.ts.net",
+              "os": "linux",
+              "enabledRoutes": ["10.0.0.0/8"],
+              "advertisedRoutes": ["10.0.0.0/8"],
+              "clientConnectivity": {
+                "endpoints": ["1.2.3.4:41641"],
+                "latency": {"fra": {"latencyMs": 12.5, "preferred": true}},
+                "mappingVariesByDestIP": true,
+                "clientSupports": {"hairPinning": false, "ipv6": true, "pcp": false, "pmp": true, "udp": true, "upnp": false}
+              },
+              "tags": ["tag:server", "tag:prod"],
+              "postureIdentity": {"serialNumbers": ["ABC123"]},
+              "updateAvailable": true,
+              "user": "user@example.com"
+            }""";
+
+    public static void main(final String[] args) throws Exception {
+        matchesTheFullDevice();
+        internsRepeatedValues();
+        dictionaryIsPerGson();
+        dictionaryStaysBounded();
+        compactDevicesFromTheSimulator();
+    }
+
+    private static void matchesTheFullDevice() {
+        final Gson gson = TailscaleTypeAdapterFactory.register(new Gson());
+        final String json = DEVICE.formatted("1");
+        final CompactDevice compact = gson.fromJson(json, CompactDevice.class);
+        final Device device = gson.fromJson(json, Device.class);
+
+        checkEquals(List.of("100.64.0.1", "fd7a:115c:a1e0::1"), compact.addresses(), "addresses in canonical form");
+        checkEquals(1_704_067_200_000L, compact.createdMillis(), "created");
+        checkEquals(device.clientConnectivity(), compact.clientConnectivity(), "lazily parsed connectivity");
+        checkEquals(device.postureIdentity(), compact.postureIdentity(), "lazily parsed posture identity");
+
+        final Device expected = new Device(List.of("100.64.0.1", "fd7a:115c:a1e0::1"), device.authorized(), device.blocksIncomingConnections(),
+                device.clientVersion(), device.created(), device.expires(), device.hostname(), device.id(), device.isExternal(),
+                device.keyExpiryDisabled(), device.lastSeen(), device.machineKey(), device.name(), device.nodeId(), device.nodeKey(), device.os(),
+                device.enabledRoutes(), device.advertisedRoutes(), device.clientConnectivity(), device.tags(), device.tailnetLockError(),
+                device.tailnetLockKey(), device.postureIdentity(), device.updateAvailable(), device.user());
+        checkEquals(expected, compact.toDevice(), "compact device as a full device");
+        checkEquals(expected, gson.fromJson(gson.toJson(compact), Device.class), "written compact device");
+    }
+
+    private static void internsRepeatedValues() throws Exception {
+        final CompactDeviceTypeAdapter adapter = new CompactDeviceTypeAdapter(new StringDictionary());
+        final Gson gson = new Gson();
+        final List<CompactDevice> devices = adapter.readDevices(gson.newJsonReader(new StringReader(
+                "{\"devices\": [" + DEVICE.formatted("1") + "," + DEVICE.formatted("2") + "]}")));
+
+        checkEquals(2, devices.size(), "devices");
+        check(devices.get(0).os() == devices.get(1).os(), "shared os");
+        check(devices.get(0).tags() == devices.get(1).tags(), "shared tag list");
+        check(devices.get(0).enabledRoutes() == devices.get(0).advertisedRoutes(), "equal route lists are shared");
+        check(devices.get(0).id() != devices.get(1).id(), "distinct ids");
+    }
+
+    private static void dictionaryIsPerGson() {
+        final String json = DEVICE.formatted("1");
+        final CompactDevice first = TailscaleTypeAdapterFactory.register(new Gson()).fromJson(json, CompactDevice.class);
+        final CompactDevice second = TailscaleTypeAdapterFactory.register(new Gson()).fromJson(json, CompactDevice.class);
+
+        checkEquals(first.tags(), second.tags(), "equal tags");
+        check(first.tags() != second.tags(), "clients don't share a dictionary");
+    }
+
+    private static void dictionaryStaysBounded() {
+        final StringDictionary dictionary = new StringDictionary(100);
+        for (int i = 0; i < 1_000; i++) {
+            final String value = "value-" + i;
+            checkEquals(value, dictionary.intern(new String(value)), "interned value");
+            dictionary.intern(List.of(value, "shared"));
+            check(dictionary.size() <= 200, "size " + dictionary.size());
+        }
+
+        final String kept = dictionary.intern(new String("recent"));
+        check(dictionary.intern(new String("recent")) == kept, "recent value is shared");
+        checkEquals(null, dictionary.intern((String) null), "null");
+        check(dictionary.intern(List.of()) == List.<String>of(), "empty list");
+    }
+
+    private static void compactDevicesFromTheSimulator() throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            simulator.generateDevices(500);
+            final DeviceClient deviceClient = simulator.createClient().getDeviceClient();
+
+            final List<Device> expected = deviceClient.getDevices();
+            final List<Device> compact = deviceClient.getCompactDevices().stream().map(CompactDevice::toDevice).toList();
+            checkEquals(expected, compact, "compact device list");
+            check(deviceClient.getStringDictionary().size() > 0, "dictionary of the client");
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package pl.indianbartonka.tailscale.json;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+import static pl.indianbartonka.tailscale.Checks.checkThrows;
+
+public final class JsonArrayIteratorTest {
+
+    private static final Gson GSON = TailscaleTypeAdapterFactory.register(new Gson());
+
+    public static void main(final String[] args) throws Exception {
+        findsTheArrayAmongOtherFields();
+        missingOrEmptyArrays();
+        closesTheStreamAtTheEnd();
+        streamsDevicesFromTheSimulator();
+    }
+
+    private static void findsTheArrayAmongOtherFields() throws Exception {
+        final String json = "{\"count\": 2, \"devices\": {\"not\": \"an array\"}, \"meta\": [1, 2], "
+                + "\"devices\": [{\"id\": \"a\"}, {\"id\": \"b\", \"tags\": [\"tag:x\"]}], \"after\": true}";
+
+        checkEquals(List.of("a", "b"), read(json).stream().map(Device::id).toList(), "ids");
+    }
+
+    private static void missingOrEmptyArrays() throws Exception {
+        check(read("{\"devices\": []}").isEmpty(), "empty array");
+        check(read("{\"other\": [{\"id\": \"a\"}]}").isEmpty(), "missing field");
+
+        final JsonArrayIterator<Device> iterator = new JsonArrayIterator<>(GSON, stream("{}"), "devices", Device.class);
+        checkThrows(NoSuchElementException.class, iterator::next, "next after the end");
+    }
+
+    private static void closesTheStreamAtTheEnd() throws Exception {
+        final AtomicBoolean closed = new AtomicBoolean();
+        final InputStream inputStream = new ByteArrayInputStream("{\"devices\": [{\"id\": \"a\"}]}".getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        final JsonArrayIterator<Device> iterator = new JsonArrayIterator<>(GSON, inputStream, "devices", Device.class);
+        iterator.next();
+        check(!closed.get(), "open while elements may follow");
+        check(!iterator.hasNext(), "no more elements");
+        check(closed.get(), "closed after the last element");
+    }
+
+    private static void streamsDevicesFromTheSimulator() throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            final Set<String> expected = simulator.generateDevices(5_000).stream().map(Device::id).collect(Collectors.toSet());
+            final DeviceClient deviceClient = simulator.createClient().getDeviceClient();
+
+            final Set<String> streamed;
+            try (Stream<Device> devices = deviceClient.streamDevices()) {
+                streamed = devices.map(Device::id).collect(Collectors.toSet());
+            }
+            checkEquals(expected, streamed, "streamed devices");
+
+            final List<Device> visited = new ArrayList<>();
+            deviceClient.forEachDevice(visited::add);
+            checkEquals(deviceClient.getDevices(), visited, "visited devices in list order");
+
+            try (Stream<Device> devices = deviceClient.streamDevices()) {
+                checkEquals(3L, devices.limit(3).count(), "stream closed early");
+            }
+        }
+    }
+
+    private static List<Device> read(final String json) throws Exception {
+        final List<Device> devices = new ArrayList<>();
+        new JsonArrayIterator<>(GSON, stream(json), "devices", Device.class).forEachRemaining(devices::add);
+        return devices;
+    }
+
+    private static InputStream stream(final String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,99 @@
+package pl.indianbartonka.tailscale.json;
+
+import com.google.gson.Gson;
+import java.util.List;
+import pl.indianbartonka.tailscale.data.response.RoutesResponse;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.data.response.device.DevicesResponse;
+import pl.indianbartonka.tailscale.data.response.dns.SplitDnsResponse;
+import pl.indianbartonka.tailscale.data.response.key.ApiKey;
+import pl.indianbartonka.tailscale.data.response.key.ApiKeysResponse;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+
+public final class TailscaleTypeAdapterFactoryTest {
+
+    private static final Gson REFLECTION = new Gson();
+    private static final Gson STREAMING = TailscaleTypeAdapterFactory.register(new Gson());
+
+    private static final String DEVICE = """
+            {
+              "addresses": ["100.64.0.1", "fd7a:115c:a1e0::1"],
+              "authorized": true,
+              "blocksIncomingConnections": false,
+              "clientVersion": "1.60.0",
+              "created": "2024-01-01T00:00:00Z",
+              "expires": "2025-01-01T00:00:00Z",
+              "hostname": "host",
+              "id": "1",
+              "isExternal": false,
+              "keyExpiryDisabled": true,
+              "lastSeen": "2024-06-01T00:00:00Z",
+              "machineKey": "mkey:1",
+              "name": "host.example.ts.net",
+              "nodeId": "n1",
+              "nodeKey": "nodekey:1",
+              "os": "linux",
+              "enabledRoutes": ["10.0.0.0/8"],
+              "advertisedRoutes": ["10.0.0.0/8", "192.168.0.0/24"],
+              "clientConnectivity": {
+                "endpoints": ["1.2.3.4:41641"],
+                "latency": {"fra": {"latencyMs": 12.5, "preferred": true}, "waw": {"latencyMs": 30.0}},
+                "mappingVariesByDestIP": true,
+                "clientSupports": {"hairPinning": false, "ipv6": true, "pcp": false, "pmp": true, "udp": true, "upnp": false}
+              },
+              "tags": ["tag:server"],
+              "tailnetLockError": "",
+              "tailnetLockKey": "tlpub:1",
+              "postureIdentity": {"serialNumbers": ["ABC123"]},
+              "updateAvailable": true,
+              "user": "user@example.com",
+              "unknownField": {"nested": [1, 2, {"deep": null}]}
+            }""";
+
+    private static final String API_KEY = """
+            {
+              "id": "k1",
+              "keyType": "auth",
+              "expirySeconds": 7776000,
+              "created": "2024-01-01T00:00:00Z",
+              "expires": "2024-04-01T00:00:00Z",
+              "capabilities": {"devices": {"create": {"reusable": true, "ephemeral": false, "preauthorized": true, "tags": ["tag:ci"]}}},
+              "description": "ci runners",
+              "userId": "u1"
+            }""";
+
+    public static void main(final String[] args) {
+        matchesReflection(DEVICE, Device.class);
+        matchesReflection("{\"devices\": [" + DEVICE + ", {\"id\": \"2\", \"addresses\": null, \"tags\": []}]}", DevicesResponse.class);
+        matchesReflection(API_KEY, ApiKey.class);
+        matchesReflection("{\"keys\": [" + API_KEY + ", {\"id\": \"k2\"}]}", ApiKeysResponse.class);
+        matchesReflection("{\"advertisedRoutes\": [\"10.0.0.0/8\"], \"enabledRoutes\": []}", RoutesResponse.class);
+        splitDnsIsATopLevelMap();
+        streamingAdaptersAreUsed();
+    }
+
+    private static <T> void matchesReflection(final String json, final Class<T> type) {
+        final T expected = REFLECTION.fromJson(json, type);
+        final T actual = STREAMING.fromJson(json, type);
+        checkEquals(expected, actual, type.getSimpleName() + " read by the streaming adapter");
+
+        final T roundTrip = REFLECTION.fromJson(STREAMING.toJson(actual), type);
+        checkEquals(expected, roundTrip, type.getSimpleName() + " written by the streaming adapter");
+    }
+
+    private static void splitDnsIsATopLevelMap() {
+        final String json = "{\"corp.example\":[\"10.0.0.53\"],\"lab.example\":null}";
+        final SplitDnsResponse response = STREAMING.fromJson(json, SplitDnsResponse.class);
+
+        checkEquals(List.of("10.0.0.53"), response.domains().get("corp.example"), "servers of a domain");
+        check(response.domains().containsKey("lab.example") && response.domains().get("lab.example") == null, "removed domain");
+        checkEquals(json, STREAMING.toJson(response), "written split DNS keeps null domains");
+    }
+
+    private static void streamingAdaptersAreUsed() {
+        check(STREAMING.getAdapter(Device.class) == DeviceTypeAdapter.INSTANCE, "Device adapter");
+        check(STREAMING.getAdapter(ApiKey.class) == ApiKeyTypeAdapters.API_KEY, "ApiKey adapter");
+    }
+}
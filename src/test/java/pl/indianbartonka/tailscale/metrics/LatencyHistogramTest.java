@@ -0,0 +1,77 @@
+package pl.indianbartonka.tailscale.metrics;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+
+public final class LatencyHistogramTest {
+
+    public static void main(final String[] args) {
+        smallValuesAreExact();
+        percentilesStayWithinTheError();
+        concurrentRecordsAreNotLost();
+        resetClearsEverything();
+    }
+
+    private static void smallValuesAreExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 63; i++) histogram.record(i);
+        histogram.record(-5);
+
+        checkEquals(Duration.ofNanos(0), histogram.getPercentile(0), "negative values count as zero");
+        checkEquals(Duration.ofNanos(31), histogram.getPercentile(50), "p50 of 0..63");
+        checkEquals(Duration.ofNanos(63), histogram.getPercentile(100), "p100 of 0..63");
+        checkEquals(Duration.ofNanos(63), histogram.getMax(), "max");
+        checkEquals(64L, histogram.getCount(), "count");
+    }
+
+    private static void percentilesStayWithinTheError() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final Random random = new Random(42);
+        final long[] values = new long[100_000];
+
+        for (int i = 0; i < values.length; i++) {
+            // Log-uniform between 100µs and 10s, like request latencies
+            values[i] = (long) Math.exp(Math.log(100_000) + random.nextDouble() * (Math.log(10_000_000_000L) - Math.log(100_000)));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (final double percentile : new double[]{50, 90, 99, 99.9}) {
+            final long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            final long estimate = histogram.getPercentile(percentile).toNanos();
+            check(estimate >= exact && estimate <= exact * 1.035, "p" + percentile + " " + estimate + " vs " + exact);
+        }
+
+        checkEquals(Duration.ofNanos(values[values.length - 1]), histogram.getMax(), "max is exact");
+        checkEquals(Duration.ofNanos(values[values.length - 1]), histogram.getPercentile(100), "p100 is the max");
+        checkEquals(Duration.ofNanos(Arrays.stream(values).sum()), histogram.getTotal(), "total");
+    }
+
+    private static void concurrentRecordsAreNotLost() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        IntStream.range(0, 400_000).parallel().forEach(i -> histogram.record(1_000_000));
+
+        checkEquals(400_000L, histogram.getCount(), "count");
+        checkEquals(Duration.ofMillis(400_000), histogram.getTotal(), "total");
+        checkEquals(Duration.ofMillis(1), histogram.getMean(), "mean");
+    }
+
+    private static void resetClearsEverything() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5_000_000);
+        histogram.reset();
+
+        checkEquals(0L, histogram.getCount(), "count");
+        checkEquals(Duration.ZERO, histogram.getMax(), "max");
+        checkEquals(Duration.ZERO, histogram.getMean(), "mean");
+        checkEquals(Duration.ZERO, histogram.getPercentile(99), "p99");
+
+        histogram.record(70);
+        checkEquals(Duration.ofNanos(70), histogram.getPercentile(50), "recording after a reset");
+    }
+}
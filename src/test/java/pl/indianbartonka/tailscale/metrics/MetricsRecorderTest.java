@@ -0,0 +1,97 @@
+package pl.indianbartonka.tailscale.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import pl.indianbartonka.tailscale.ApiEndpoint;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+import pl.indianbartonka.tailscale.scheduler.RequestScheduler;
+import pl.indianbartonka.tailscale.scheduler.RetryPolicy;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+import static pl.indianbartonka.tailscale.Checks.checkThrows;
+
+public final class MetricsRecorderTest {
+
+    public static void main(final String[] args) throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            final String id = simulator.generateDevices(5).get(0).id();
+            successfulCallsAreRecorded(simulator, id);
+            errorPagesKeepStatusAndEndpoint(simulator, id);
+        }
+    }
+
+    private static void successfulCallsAreRecorded(final TailscaleSimulator simulator, final String id) throws Exception {
+        final TailscaleClient client = client(simulator);
+        final MetricsRecorder recorder = new MetricsRecorder();
+        final List<RequestMetrics> ended = new CopyOnWriteArrayList<>();
+        client.addListener(recorder);
+        client.addListener(ended::add);
+
+        checkEquals(id, client.getDeviceClient().getDevice(id).id(), "device");
+        await(ended, 1);
+
+        final RequestMetrics metrics = ended.get(0);
+        checkEquals(ApiEndpoint.GET_DEVICE, metrics.endpoint(), "endpoint");
+        checkEquals("GET", metrics.method(), "method");
+        checkEquals(200, metrics.statusCode(), "status");
+        check(metrics.isSuccessful(), "successful");
+        check(metrics.bytesReceived() > 0, "bytes received");
+
+        final EndpointStats stats = recorder.getStats(ApiEndpoint.GET_DEVICE);
+        checkEquals(1L, stats.calls(), "calls");
+        checkEquals(0L, stats.failures(), "failures");
+        checkEquals(List.of(stats), recorder.getStats(), "called endpoints");
+    }
+
+    private static void errorPagesKeepStatusAndEndpoint(final TailscaleSimulator simulator, final String id) throws Exception {
+        final TailscaleClient client = client(simulator);
+        final MetricsRecorder recorder = new MetricsRecorder();
+        final List<RequestMetrics> ended = new CopyOnWriteArrayList<>();
+        client.addListener(recorder);
+        client.addListener(ended::add);
+
+        simulator.setErrorRate(1);
+        simulator.setErrorResponse(502, "<html><head><title>502 Bad Gateway</title></head><body>nginx</body></html>");
+        try {
+            final TailscaleException exception = checkThrows(TailscaleException.class, () -> client.getDeviceClient().getDevice(id), "error page");
+            checkEquals(502, exception.getStatusCode(), "status of the exception");
+        } finally {
+            simulator.setErrorRate(0);
+            simulator.setErrorResponse(500, null);
+        }
+        await(ended, 1);
+
+        final RequestMetrics metrics = ended.get(0);
+        checkEquals(ApiEndpoint.GET_DEVICE, metrics.endpoint(), "endpoint");
+        checkEquals(502, metrics.statusCode(), "status");
+        check(metrics.failure() instanceof TailscaleException, "failure " + metrics.failure());
+        check(metrics.uri().getPath().endsWith("/device/" + id), "uri " + metrics.uri());
+
+        final EndpointStats stats = recorder.getStats(ApiEndpoint.GET_DEVICE);
+        checkEquals(1L, stats.calls(), "calls");
+        checkEquals(1L, stats.failures(), "failures");
+    }
+
+    private static TailscaleClient client(final TailscaleSimulator simulator) {
+        final TailscaleClient client = simulator.createClient();
+        client.setRequestScheduler(new RequestScheduler(1000, 1000, RetryPolicy.NONE));
+        client.setCircuitBreakers(null);
+        return client;
+    }
+
+    /**
+     * Listeners run on the thread completing the request, which may be after the caller got the result
+     */
+    private static void await(final List<RequestMetrics> ended, final int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (ended.size() < count) {
+            check(System.nanoTime() < deadline, "timed out waiting for the listener");
+            Thread.sleep(5);
+        }
+        checkEquals(count, ended.size(), "finished requests");
+    }
+}
@@ -0,0 +1,116 @@
+package pl.indianbartonka.tailscale.outbox;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.exception.TailscaleException;
+import pl.indianbartonka.tailscale.scheduler.RequestScheduler;
+import pl.indianbartonka.tailscale.scheduler.RetryPolicy;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+import static pl.indianbartonka.tailscale.Checks.checkThrows;
+
+public final class MutationOutboxTest {
+
+    public static void main(final String[] args) throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            final TailscaleClient client = simulator.createClient();
+            client.setRequestScheduler(new RequestScheduler(100_000, 100_000, RetryPolicy.NONE));
+
+            writesAreCoalesced(simulator, client.getDeviceClient());
+            crashedWritesAreReplayed(simulator, client.getDeviceClient());
+            permanentFailuresAreDropped(client.getDeviceClient());
+        }
+    }
+
+    private static void writesAreCoalesced(final TailscaleSimulator simulator, final DeviceClient deviceClient) throws Exception {
+        final List<Device> devices = simulator.generateDevices(10);
+        final Path file = Files.createTempDirectory("outbox").resolve("outbox.log");
+
+        try (MutationOutbox outbox = new MutationOutbox(deviceClient, file, 4, Duration.ofMillis(200))) {
+            final long before = simulator.getRequestCount();
+            final List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+
+            for (int round = 0; round < 10; round++) {
+                for (final Device device : devices) {
+                    futures.add(outbox.setName(device.id(), "name-" + round));
+                    futures.add(outbox.setAttribute(device.id(), "custom:round", "v" + round));
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+            final long calls = simulator.getRequestCount() - before;
+            check(calls < 200 && calls >= 20, "coalesced into " + calls + " calls");
+            checkEquals(200L, outbox.getSubmittedCount(), "submitted");
+            checkEquals(0, outbox.getPendingCount(), "pending");
+            assertState(deviceClient, devices, "name-9", "v9");
+        }
+    }
+
+    private static void crashedWritesAreReplayed(final TailscaleSimulator simulator, final DeviceClient deviceClient) throws Exception {
+        final List<Device> devices = simulator.generateDevices(5);
+        final Path file = Files.createTempDirectory("outbox").resolve("outbox.log");
+
+        // Never closed, as if the process died before flushing
+        final MutationOutbox crashed = new MutationOutbox(deviceClient, file, 4, null);
+        for (int round = 0; round < 10; round++) {
+            for (final Device device : devices) {
+                crashed.setName(device.id(), "replayed-" + round);
+                crashed.setAttribute(device.id(), "custom:round", "r" + round);
+            }
+        }
+        checkEquals(10, crashed.getPendingCount(), "one pending write per device and field");
+        Files.writeString(file, "{\"seq\":9999,\"chan", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        final long before = simulator.getRequestCount();
+        try (MutationOutbox restarted = new MutationOutbox(deviceClient, file, 4, null)) {
+            checkEquals(10, restarted.getPendingCount(), "pending after the restart, torn line skipped");
+
+            final FlushResult result = restarted.flush().join();
+            check(result.isSuccessful(), "failures: " + result.failures());
+            checkEquals(10L, simulator.getRequestCount() - before, "one call per device and field");
+            checkEquals(0, restarted.getPendingCount(), "pending after the flush");
+        }
+        assertState(deviceClient, devices, "replayed-9", "r9");
+
+        try (MutationOutbox reopened = new MutationOutbox(deviceClient, file, 4, null)) {
+            checkEquals(0, reopened.getPendingCount(), "applied writes are not replayed again");
+        }
+    }
+
+    private static void permanentFailuresAreDropped(final DeviceClient deviceClient) throws Exception {
+        final Path file = Files.createTempDirectory("outbox").resolve("outbox.log");
+
+        try (MutationOutbox outbox = new MutationOutbox(deviceClient, file, 4, null)) {
+            final CompletableFuture<Boolean> future = outbox.setName("missing", "x");
+            outbox.flush().join();
+
+            final CompletionException exception = checkThrows(CompletionException.class, future::join, "write to a missing device");
+            check(exception.getCause() instanceof TailscaleException, "cause " + exception.getCause());
+            checkEquals(0, outbox.getPendingCount(), "pending");
+            checkEquals(1L, outbox.getFailedCount(), "failed");
+        }
+
+        try (MutationOutbox reopened = new MutationOutbox(deviceClient, file, 4, null)) {
+            checkEquals(0, reopened.getPendingCount(), "failed writes are not replayed");
+        }
+    }
+
+    private static void assertState(final DeviceClient deviceClient, final List<Device> devices, final String name, final String attribute) throws Exception {
+        for (final Device device : devices) {
+            check(deviceClient.getDevice(device.id()).name().startsWith(name), "name of " + device.id());
+            checkEquals(attribute, deviceClient.getAttributes(device.id()).attributes().get("custom:round"), "attribute of " + device.id());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package pl.indianbartonka.tailscale.pool;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import pl.indianbartonka.tailscale.KeyClient;
+import pl.indianbartonka.tailscale.data.request.ApiKeyRequest;
+import pl.indianbartonka.tailscale.data.response.key.ApiKeyResponse;
+import pl.indianbartonka.tailscale.data.response.key.Capabilities;
+import pl.indianbartonka.tailscale.data.response.key.Create;
+import pl.indianbartonka.tailscale.data.response.key.Devices;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+import static pl.indianbartonka.tailscale.Checks.checkThrows;
+
+public final class KeyPoolTest {
+
+    public static void main(final String[] args) throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            final KeyClient keyClient = simulator.createClient().getKeyClient();
+
+            invalidProfilesAreRejected(keyClient);
+            keysAreHandedOutOnceAndReplaced(simulator, keyClient);
+            emptyPoolCreatesOnTheSpot(keyClient);
+            expiringKeysAreRetired(simulator, keyClient);
+            failedCreationsBackOff(simulator, keyClient);
+        }
+    }
+
+    private static void invalidProfilesAreRejected(final KeyClient keyClient) {
+        try (KeyPool pool = new KeyPool(keyClient, 4, Duration.ofMinutes(10))) {
+            checkThrows(IllegalArgumentException.class, () -> pool.register(profile("short", 600), 1), "keys retired on creation");
+            checkThrows(IllegalArgumentException.class, () -> pool.register(profile("negative", 3600), -1), "negative target size");
+            checkThrows(IllegalArgumentException.class, () -> pool.poll(profile("unknown", 3600)), "unregistered profile");
+
+            pool.register(profile("twice", 3600), 0);
+            checkThrows(IllegalArgumentException.class, () -> pool.register(profile("twice", 3600), 0), "registered twice");
+        }
+        checkThrows(IllegalArgumentException.class, () -> new KeyPool(keyClient, 0, Duration.ZERO), "empty batch");
+    }
+
+    private static void keysAreHandedOutOnceAndReplaced(final TailscaleSimulator simulator, final KeyClient keyClient) throws Exception {
+        final ApiKeyRequest profile = profile("ci", 3600);
+        final int before = simulator.getKeys().size();
+        final Set<String> handedOut = new HashSet<>();
+
+        final KeyPool pool = new KeyPool(keyClient, 2, Duration.ofMinutes(10));
+        pool.register(profile, 5);
+        await(() -> pool.getAvailable(profile) == 5, "pool filled");
+        checkEquals(5, simulator.getKeys().size() - before, "keys created ahead of time");
+
+        final long requests = simulator.getRequestCount();
+        for (int i = 0; i < 3; i++) {
+            final ApiKeyResponse key = pool.poll(profile).orElseThrow();
+            check(key.key() != null, "secret of the pooled key");
+            check(handedOut.add(key.id()), "key handed out twice " + key.id());
+        }
+        check(simulator.getRequestCount() - requests <= 2, "poll does not wait for the API");
+
+        await(() -> pool.getAvailable(profile) == 5, "pool refilled");
+        await(() -> pool.getStats().pending() == 0, "no creations left");
+        checkEquals(8, simulator.getKeys().size() - before, "used keys are replaced");
+
+        pool.close();
+        checkEquals(3, simulator.getKeys().size() - before, "unused keys are revoked on close");
+        check(simulator.getKeys().keySet().containsAll(handedOut), "handed out keys are kept");
+        checkEquals(new KeyPoolStats(0, 0, 3, 0, 8, 0, 5, 0), pool.getStats(), "stats");
+        checkThrows(IllegalStateException.class, () -> pool.register(profile("late", 3600), 1), "register after close");
+    }
+
+    private static void emptyPoolCreatesOnTheSpot(final KeyClient keyClient) throws Exception {
+        final ApiKeyRequest profile = profile("empty", 3600);
+
+        try (KeyPool pool = new KeyPool(keyClient, 1, Duration.ZERO)) {
+            pool.register(profile, 0);
+            check(pool.poll(profile).isEmpty(), "empty pool");
+
+            final ApiKeyResponse key = pool.take(profile);
+            check(key.id() != null, "key created on the spot");
+            checkEquals(1L, pool.getStats().misses(), "misses");
+            checkEquals(1L, pool.getStats().handedOut(), "handed out");
+        }
+    }
+
+    private static void expiringKeysAreRetired(final TailscaleSimulator simulator, final KeyClient keyClient) throws Exception {
+        final ApiKeyRequest profile = profile("short-lived", 3);
+
+        try (KeyPool pool = new KeyPool(keyClient, 4, Duration.ofSeconds(2))) {
+            pool.register(profile, 3);
+            await(() -> pool.getAvailable(profile) == 3, "pool filled");
+            final Set<String> first = ids(simulator, "short-lived");
+
+            Thread.sleep(1_200);
+            checkEquals(3, pool.maintain(), "retired keys");
+            await(() -> pool.getStats().retired() == 3, "retired keys deleted");
+            await(() -> pool.getAvailable(profile) == 3, "pool refilled");
+
+            final Set<String> second = ids(simulator, "short-lived");
+            checkEquals(3, second.size(), "keys of the profile");
+            check(second.stream().noneMatch(first::contains), "retired keys are deleted");
+        }
+    }
+
+    private static void failedCreationsBackOff(final TailscaleSimulator simulator, final KeyClient keyClient) throws Exception {
+        final ApiKeyRequest profile = profile("failing", 3600);
+        final AtomicInteger errors = new AtomicInteger();
+
+        simulator.setErrorRate(1);
+        try (KeyPool pool = new KeyPool(keyClient, 2, Duration.ZERO)) {
+            pool.setErrorHandler(throwable -> errors.incrementAndGet());
+            pool.register(profile, 4);
+            await(() -> pool.getStats().failures() == 2 && pool.getStats().pending() == 0, "failed batch");
+
+            Thread.sleep(300);
+            checkEquals(2L, pool.getStats().failures(), "no creations while backing off");
+            checkEquals(2, errors.get(), "reported errors");
+            check(pool.poll(profile).isEmpty(), "empty pool");
+        } finally {
+            simulator.setErrorRate(0);
+        }
+    }
+
+    private static Set<String> ids(final TailscaleSimulator simulator, final String description) {
+        final Set<String> ids = new HashSet<>();
+        for (final ApiKeyResponse key : simulator.getKeys().values()) {
+            if (description.equals(key.description())) ids.add(key.id());
+        }
+        return ids;
+    }
+
+    private static void await(final BooleanSupplier condition, final String what) throws InterruptedException {
+        final long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            check(System.nanoTime() < deadline, "timed out waiting for " + what);
+            Thread.sleep(10);
+        }
+    }
+
+    private static ApiKeyRequest profile(final String description, final long expirySeconds) {
+        return new ApiKeyRequest(description, new Capabilities(new Devices(new Create(true, true, false, List.of("tag:ci")))), expirySeconds, null, null);
+    }
+}
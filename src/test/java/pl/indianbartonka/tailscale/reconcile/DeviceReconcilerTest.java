@@ -0,0 +1,84 @@
+package pl.indianbartonka.tailscale.reconcile;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+
+public final class DeviceReconcilerTest {
+
+    public static void main(final String[] args) throws Exception {
+        diffComparesValuesNotShape();
+        reconcileConverges();
+    }
+
+    private static void diffComparesValuesNotShape() {
+        final Device device = new Device(List.of("100.64.0.1"), true, false, "1.60.0", null, null, "host", "1", false, false, null,
+                "mkey:1", "host.example.ts.net", "n1", "nodekey:1", "linux", null, null, null, List.of("tag:a", "tag:b"),
+                null, null, null, false, "user@example.com");
+
+        final DesiredDeviceState same = new DesiredDeviceState("1", "host", Map.of("x", "tag:b", "y", "tag:a"), true, false,
+                List.of("10.1.0.0/16", "10.0.0.0/8"), Map.of("custom:env", "prod"));
+        check(DeviceReconciler.diff(same, device, List.of("10.0.0.0/8", "10.1.0.0/16"), Map.of("custom:env", "prod")).isEmpty(),
+                "short name, tag keys and route order are ignored");
+
+        // A null value deletes the attribute
+        final Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("custom:env", "dev");
+        attributes.put("custom:old", null);
+
+        final DesiredDeviceState changed = new DesiredDeviceState("1", "other", Map.of("0", "tag:a"), false, true, List.of(), attributes);
+        checkEquals(List.of(
+                new DeviceChange.Rename("1", "other"),
+                new DeviceChange.SetTags("1", Map.of("0", "tag:a")),
+                new DeviceChange.SetAuthorized("1", false),
+                new DeviceChange.SetKeyExpiryDisabled("1", true),
+                new DeviceChange.SetRoutes("1", List.of()),
+                new DeviceChange.SetAttribute("1", "custom:env", "dev"),
+                new DeviceChange.DeleteAttribute("1", "custom:old")
+        ), DeviceReconciler.diff(changed, device, List.of("10.0.0.0/8"), Map.of("custom:env", "prod", "custom:old", "x")), "changes");
+
+        check(DeviceReconciler.diff(new DesiredDeviceState("1", null, null, null, null, null, null), device, null, null).isEmpty(),
+                "unmanaged fields");
+    }
+
+    private static void reconcileConverges() throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            final List<Device> devices = simulator.generateDevices(40);
+            final TailscaleClient client = simulator.createClient();
+            final DeviceReconciler reconciler = new DeviceReconciler(client.getDeviceClient(), 8);
+
+            final List<DesiredDeviceState> desired = new ArrayList<>();
+            for (final Device device : devices) {
+                final boolean even = Long.parseLong(device.id()) % 2 == 0;
+                desired.add(new DesiredDeviceState(device.id(), even ? "renamed-" + device.id() : null, Map.of("0", "tag:server"),
+                        null, even, List.of("10.0.0.0/24"), Map.of("custom:env", "prod")));
+            }
+            desired.add(new DesiredDeviceState("missing", "x", null, null, null, null, null));
+
+            final ReconcilePlan plan = reconciler.plan(desired);
+            checkEquals(List.of("missing"), plan.missingDevices(), "missing devices");
+            checkEquals(20 * 5 + 20 * 3, plan.size(), "planned changes");
+
+            final ReconcileResult result = reconciler.apply(plan);
+            check(result.isSuccessful(), "failures: " + result.failures());
+            checkEquals(plan.size(), result.applied().size(), "applied changes");
+
+            for (final Device device : simulator.getDevices()) {
+                checkEquals(List.of("tag:server"), device.tags(), "tags of " + device.id());
+                checkEquals(Long.parseLong(device.id()) % 2 == 0, device.keyExpiryDisabled(), "key expiry of " + device.id());
+                checkEquals(List.of("10.0.0.0/24"), client.getDeviceClient().getRoutes(device.id()).enabledRoutes(), "routes of " + device.id());
+                checkEquals("prod", client.getDeviceClient().getAttributes(device.id()).attributes().get("custom:env"), "attribute of " + device.id());
+            }
+
+            final ReconcilePlan second = reconciler.plan(desired);
+            check(second.isEmpty(), "second plan: " + second.changes());
+        }
+    }
+}
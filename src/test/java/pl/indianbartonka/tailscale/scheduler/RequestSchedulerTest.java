@@ -0,0 +1,133 @@
+package pl.indianbartonka.tailscale.scheduler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import pl.indianbartonka.tailscale.EndpointGroup;
+import pl.indianbartonka.tailscale.exception.CircuitOpenException;
+import pl.indianbartonka.tailscale.transport.TransportResponse;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+import static pl.indianbartonka.tailscale.Checks.checkThrows;
+
+public final class RequestSchedulerTest {
+
+    private static final HttpRequest GET = HttpRequest.newBuilder(URI.create("http://localhost/api/v2/device/1")).GET().build();
+    private static final HttpRequest POST = HttpRequest.newBuilder(URI.create("http://localhost/api/v2/device/1/name"))
+            .POST(HttpRequest.BodyPublishers.noBody()).build();
+    private static final RetryPolicy FAST_RETRIES = new RetryPolicy(3, Duration.ofMillis(1), Duration.ofMillis(5));
+
+    public static void main(final String[] args) throws Exception {
+        parsesRetryAfter();
+        retryPolicyDecisions();
+        tokenBucketPacesRequests();
+        honoursRetryAfter();
+        retriesOnlyIdempotentServerErrors();
+    }
+
+    private static void parsesRetryAfter() {
+        checkEquals(Optional.of(TimeUnit.SECONDS.toNanos(3)), RequestScheduler.parseRetryAfter(" 3 "), "seconds");
+        checkEquals(Optional.of(0L), RequestScheduler.parseRetryAfter("-4"), "negative seconds");
+        checkEquals(Optional.empty(), RequestScheduler.parseRetryAfter("soon"), "garbage");
+
+        final String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now().plusSeconds(30));
+        final long nanos = RequestScheduler.parseRetryAfter(date).orElseThrow();
+        check(nanos > TimeUnit.SECONDS.toNanos(28) && nanos <= TimeUnit.SECONDS.toNanos(30), "HTTP date " + nanos);
+        checkEquals(Optional.of(0L), RequestScheduler.parseRetryAfter("Mon, 01 Jan 2001 00:00:00 GMT"), "date in the past");
+    }
+
+    private static void retryPolicyDecisions() {
+        check(FAST_RETRIES.shouldRetry(0, "POST", 429), "rate limited POST");
+        check(FAST_RETRIES.shouldRetry(0, "GET", 503), "server error GET");
+        check(!FAST_RETRIES.shouldRetry(0, "POST", 503), "server error POST");
+        check(!FAST_RETRIES.shouldRetry(0, "GET", 404), "client error");
+        check(!FAST_RETRIES.shouldRetry(3, "GET", 429), "out of retries");
+        check(FAST_RETRIES.shouldRetry(0, "GET", new IOException("reset")), "I/O failure of a GET");
+        check(!FAST_RETRIES.shouldRetry(0, "GET", new CircuitOpenException(EndpointGroup.DEVICES_READ, 503, Duration.ofSeconds(1))), "open circuit");
+        checkThrows(IllegalArgumentException.class, () -> new RetryPolicy(-1, Duration.ZERO, Duration.ZERO), "negative retries");
+
+        for (int attempt = 0; attempt < 40; attempt++) {
+            final long backoff = RetryPolicy.DEFAULT.backoffNanos(attempt);
+            check(backoff >= 0 && backoff <= Duration.ofSeconds(20).toNanos(), "backoff of attempt " + attempt);
+        }
+    }
+
+    private static void tokenBucketPacesRequests() {
+        final RequestScheduler scheduler = new RequestScheduler(20, 5, RetryPolicy.NONE);
+        final List<CompletableFuture<TransportResponse>> futures = new ArrayList<>();
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < 15; i++) futures.add(scheduler.schedule(GET, () -> respond(200, Map.of())));
+
+        // The bucket may refill by a permit while the loop runs
+        final long sent = futures.stream().filter(CompletableFuture::isDone).count();
+        check(sent >= 5 && sent <= 6, "burst sent at once: " + sent);
+        check(scheduler.getQueueDepth() == 15 - sent, "queued " + scheduler.getQueueDepth());
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        final long elapsed = System.nanoTime() - start;
+        check(elapsed >= TimeUnit.MILLISECONDS.toNanos(400), "10 paced requests at 20/s took " + elapsed / 1_000_000 + "ms");
+        checkEquals(0, scheduler.getQueueDepth(), "queue after the run");
+    }
+
+    private static void honoursRetryAfter() {
+        final RequestScheduler scheduler = new RequestScheduler(1_000, 10, FAST_RETRIES);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final long start = System.nanoTime();
+        final CompletableFuture<TransportResponse> response = scheduler.schedule(POST,
+                () -> attempts.incrementAndGet() == 1 ? respond(429, Map.of("Retry-After", List.of("1"))) : respond(200, Map.of()));
+
+        check(scheduler.isThrottled(), "throttled after a 429");
+        checkEquals(200, response.join().statusCode(), "retried status");
+        check(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(950), "waited for Retry-After");
+        checkEquals(2, attempts.get(), "attempts");
+        check(!scheduler.isThrottled(), "pause over");
+    }
+
+    private static void retriesOnlyIdempotentServerErrors() {
+        final RequestScheduler scheduler = new RequestScheduler(1_000, 10, FAST_RETRIES);
+
+        final AtomicInteger getAttempts = new AtomicInteger();
+        checkEquals(503, scheduler.schedule(GET, () -> {
+            getAttempts.incrementAndGet();
+            return respond(503, Map.of());
+        }).join().statusCode(), "last response of the GET");
+        checkEquals(4, getAttempts.get(), "GET attempts");
+
+        final AtomicInteger postAttempts = new AtomicInteger();
+        checkEquals(503, scheduler.schedule(POST, () -> {
+            postAttempts.incrementAndGet();
+            return respond(503, Map.of());
+        }).join().statusCode(), "response of the POST");
+        checkEquals(1, postAttempts.get(), "POST attempts");
+
+        final AtomicInteger failedAttempts = new AtomicInteger();
+        final CompletionException exception = checkThrows(CompletionException.class, () -> scheduler.schedule(GET, () -> {
+            failedAttempts.incrementAndGet();
+            return CompletableFuture.failedFuture(new CircuitOpenException(EndpointGroup.DEVICES_READ, 503, Duration.ofSeconds(1)));
+        }).join(), "refused call");
+        check(exception.getCause() instanceof CircuitOpenException, "cause " + exception.getCause());
+        checkEquals(1, failedAttempts.get(), "refused calls are not retried");
+        checkEquals(0, scheduler.getInFlight(), "in flight");
+    }
+
+    private static CompletableFuture<TransportResponse> respond(final int statusCode, final Map<String, List<String>> headers) {
+        return CompletableFuture.completedFuture(new TransportResponse(statusCode, HttpHeaders.of(headers, (name, value) -> true),
+                new ByteArrayInputStream(new byte[0]), 0, 0));
+    }
+}
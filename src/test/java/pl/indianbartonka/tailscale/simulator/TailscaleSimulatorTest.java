@@ -0,0 +1,138 @@
+package pl.indianbartonka.tailscale.simulator;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.data.response.device.DevicesResponse;
+import pl.indianbartonka.tailscale.json.TailscaleTypeAdapterFactory;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+
+public final class TailscaleSimulatorTest {
+
+    private static final HttpClient HTTP_CLIENT = HttpClient.newHttpClient();
+    private static final Gson GSON = TailscaleTypeAdapterFactory.register(new Gson());
+
+    public static void main(final String[] args) throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            devicesAreServed(simulator);
+            largeBodiesAreCompressed(simulator);
+            unknownPathsAreNotFound(simulator);
+            injectedLatency(simulator);
+            injectedErrors(simulator);
+            rateLimitAnswersWithRetryAfter(simulator);
+        }
+    }
+
+    private static void devicesAreServed(final TailscaleSimulator simulator) throws Exception {
+        final List<Device> generated = simulator.generateDevices(20);
+        final Device routed = generated.get(0);
+        simulator.addDevice(new Device(routed.addresses(), routed.authorized(), routed.blocksIncomingConnections(), routed.clientVersion(),
+                routed.created(), routed.expires(), routed.hostname(), routed.id(), routed.isExternal(), routed.keyExpiryDisabled(),
+                routed.lastSeen(), routed.machineKey(), routed.name(), routed.nodeId(), routed.nodeKey(), routed.os(),
+                List.of("10.0.0.0/8"), List.of("10.0.0.0/8"), routed.clientConnectivity(), routed.tags(), routed.tailnetLockError(),
+                routed.tailnetLockKey(), routed.postureIdentity(), routed.updateAvailable(), routed.user()));
+
+        checkEquals(20, simulator.getDevices().size(), "devices of the simulator");
+        check(generated.stream().map(Device::addresses).distinct().count() == 20, "distinct addresses");
+
+        final DevicesResponse all = GSON.fromJson(get(simulator, "/tailnet/t/devices?fields=all").body(), DevicesResponse.class);
+        checkEquals(List.of("10.0.0.0/8"), find(all, routed.id()).enabledRoutes(), "routes with fields=all");
+
+        final DevicesResponse plain = GSON.fromJson(get(simulator, "/tailnet/-/devices").body(), DevicesResponse.class);
+        checkEquals(20, plain.devices().size(), "devices of the default tailnet");
+        check(find(plain, routed.id()).enabledRoutes() == null, "routes left out by default");
+
+        final Device byNodeId = GSON.fromJson(get(simulator, "/device/" + routed.nodeId()).body(), Device.class);
+        checkEquals(routed.id(), byNodeId.id(), "device by node id");
+    }
+
+    private static void largeBodiesAreCompressed(final TailscaleSimulator simulator) throws Exception {
+        final HttpResponse<String> plain = get(simulator, "/tailnet/t/devices");
+        check(plain.headers().firstValue("Content-Encoding").isEmpty(), "not compressed unless asked");
+
+        final HttpResponse<byte[]> compressed = HTTP_CLIENT.send(request(simulator, "/tailnet/t/devices").header("Accept-Encoding", "gzip").build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        checkEquals("gzip", compressed.headers().firstValue("Content-Encoding").orElse(null), "compressed list");
+        check(compressed.body().length < plain.body().length() / 3, "compressed size " + compressed.body().length);
+        checkEquals(plain.body(), gunzip(compressed.body()), "decompressed list");
+
+        final HttpResponse<byte[]> small = HTTP_CLIENT.send(request(simulator, "/tailnet/t/dns/nameservers").header("Accept-Encoding", "gzip").build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        check(small.headers().firstValue("Content-Encoding").isEmpty(), "small bodies are not compressed");
+    }
+
+    private static void unknownPathsAreNotFound(final TailscaleSimulator simulator) throws Exception {
+        checkEquals(404, get(simulator, "/device/missing").statusCode(), "unknown device");
+        checkEquals(404, get(simulator, "/tailnet/other/devices").statusCode(), "unknown tailnet");
+        checkEquals(404, get(simulator, "/nothing").statusCode(), "unknown path");
+        check(get(simulator, "/nothing").body().contains("not found"), "error message");
+    }
+
+    private static void injectedLatency(final TailscaleSimulator simulator) throws Exception {
+        simulator.setLatency(Duration.ofMillis(150), Duration.ofMillis(150));
+        try {
+            final long start = System.nanoTime();
+            get(simulator, "/tailnet/t/dns/preferences");
+            check(System.nanoTime() - start >= Duration.ofMillis(150).toNanos(), "request waited for the latency");
+        } finally {
+            simulator.setLatency(Duration.ZERO, Duration.ZERO);
+        }
+    }
+
+    private static void injectedErrors(final TailscaleSimulator simulator) throws Exception {
+        simulator.setErrorRate(1);
+        try {
+            checkEquals(500, get(simulator, "/tailnet/t/devices").statusCode(), "server error");
+        } finally {
+            simulator.setErrorRate(0);
+        }
+        checkEquals(200, get(simulator, "/tailnet/t/devices").statusCode(), "errors turned off");
+    }
+
+    private static void rateLimitAnswersWithRetryAfter(final TailscaleSimulator simulator) throws Exception {
+        final long requests = simulator.getRequestCount();
+        simulator.setRateLimit(1, 3);
+        try {
+            for (int i = 0; i < 3; i++) checkEquals(200, get(simulator, "/tailnet/t/dns/searchpaths").statusCode(), "request within the burst");
+
+            final HttpResponse<String> limited = get(simulator, "/tailnet/t/dns/searchpaths");
+            checkEquals(429, limited.statusCode(), "request above the burst");
+            check(limited.headers().firstValue("Retry-After").map(Long::parseLong).orElse(0L) >= 1, "Retry-After");
+            checkEquals(1L, simulator.getRateLimitedCount(), "rate limited requests");
+        } finally {
+            simulator.setRateLimit(0, 0);
+        }
+
+        checkEquals(200, get(simulator, "/tailnet/t/dns/searchpaths").statusCode(), "limit turned off");
+        checkEquals(5L, simulator.getRequestCount() - requests, "counted requests");
+    }
+
+    private static Device find(final DevicesResponse response, final String id) {
+        return response.devices().stream().filter(device -> device.id().equals(id)).findFirst().orElseThrow();
+    }
+
+    private static HttpResponse<String> get(final TailscaleSimulator simulator, final String path) throws Exception {
+        return HTTP_CLIENT.send(request(simulator, path).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpRequest.Builder request(final TailscaleSimulator simulator, final String path) {
+        return HttpRequest.newBuilder(URI.create(simulator.getBaseUrl() + path)).GET();
+    }
+
+    private static String gunzip(final byte[] body) throws IOException {
+        try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package pl.indianbartonka.tailscale.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.data.request.ApiKeyRequest;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.data.response.key.ApiKey;
+import pl.indianbartonka.tailscale.data.response.key.Capabilities;
+import pl.indianbartonka.tailscale.data.response.key.Create;
+import pl.indianbartonka.tailscale.data.response.key.Devices;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+import static pl.indianbartonka.tailscale.Checks.checkThrows;
+
+public final class InventorySnapshotTest {
+
+    private static final int STRING_COUNT_OFFSET = 24;
+    private static final int DEVICE_COUNT_OFFSET = 28;
+    private static final int CRC_OFFSET = 36;
+    private static final int HEADER_SIZE = 40;
+
+    public static void main(final String[] args) throws Exception {
+        roundTrip();
+        rejectsCorruption();
+        rejectsBadTablesWithAValidChecksum();
+        rejectsBadRecordsWithAValidChecksum();
+        warmStartServesTheSnapshot();
+    }
+
+    private static void roundTrip() throws Exception {
+        final Path file = Files.createTempDirectory("snapshot").resolve("inventory.bin");
+        final List<Device> devices = devices();
+        final ApiKey key = new ApiKey("k1", "auth", 3600, "2024-01-01T00:00:00Z", null,
+                new Capabilities(new Devices(new Create(true, false, true, List.of("tag:ci")))), "ci", "u1");
+
+        InventorySnapshot.write(file, 7, Instant.ofEpochMilli(1234), devices, List.of(key));
+        final InventorySnapshot snapshot = InventorySnapshot.open(file);
+
+        checkEquals(7L, snapshot.getVersion(), "version");
+        checkEquals(Instant.ofEpochMilli(1234), snapshot.getTimestamp(), "timestamp");
+        checkEquals(List.of(devices.get(1), devices.get(0)), snapshot.getDevices(), "devices, sorted by id");
+        checkEquals(Optional.of(devices.get(0)), snapshot.findDevice("id1"), "device by id");
+        checkEquals(Optional.empty(), snapshot.findDevice("id2"), "missing device");
+        checkEquals(List.of(key), snapshot.getKeys(), "keys");
+        checkEquals(Optional.of(key), snapshot.findKey("k1"), "key by id");
+    }
+
+    private static void rejectsCorruption() throws Exception {
+        final Path file = Files.createTempDirectory("snapshot").resolve("inventory.bin");
+        InventorySnapshot.write(file, 1, Instant.now(), devices(), List.of());
+        final byte[] valid = Files.readAllBytes(file);
+
+        final Map<String, byte[]> corrupted = new LinkedHashMap<>();
+        corrupted.put("flipped body byte", flip(valid, valid.length - 3));
+        corrupted.put("flipped string byte", flip(valid, HEADER_SIZE + (valid.length - HEADER_SIZE) / 2));
+        corrupted.put("flipped device count", flip(valid, DEVICE_COUNT_OFFSET + 3));
+        corrupted.put("flipped version", flip(valid, 15));
+        corrupted.put("flipped checksum", flip(valid, CRC_OFFSET));
+        corrupted.put("flipped magic", flip(valid, 0));
+        corrupted.put("truncated", Arrays.copyOf(valid, valid.length - 1));
+        corrupted.put("truncated header", Arrays.copyOf(valid, HEADER_SIZE - 1));
+        corrupted.put("appended bytes", Arrays.copyOf(valid, valid.length + 3));
+        corrupted.put("empty", new byte[0]);
+
+        for (final Map.Entry<String, byte[]> entry : corrupted.entrySet()) {
+            Files.write(file, entry.getValue());
+            checkThrows(IOException.class, () -> InventorySnapshot.open(file), entry.getKey());
+        }
+    }
+
+    private static void rejectsBadTablesWithAValidChecksum() throws Exception {
+        final Path file = Files.createTempDirectory("snapshot").resolve("inventory.bin");
+        InventorySnapshot.write(file, 1, Instant.now(), devices(), List.of());
+        final byte[] valid = Files.readAllBytes(file);
+
+        final ByteBuffer tooManyDevices = ByteBuffer.wrap(valid.clone()).putInt(DEVICE_COUNT_OFFSET, 1_000_000);
+        Files.write(file, resign(tooManyDevices));
+        checkThrows(IOException.class, () -> InventorySnapshot.open(file), "offset tables past the end");
+
+        final ByteBuffer negativeCount = ByteBuffer.wrap(valid.clone()).putInt(DEVICE_COUNT_OFFSET, -1);
+        Files.write(file, resign(negativeCount));
+        checkThrows(IOException.class, () -> InventorySnapshot.open(file), "negative count");
+
+        final ByteBuffer badOffset = ByteBuffer.wrap(valid.clone()).putInt(HEADER_SIZE, valid.length);
+        Files.write(file, resign(badOffset));
+        checkThrows(IOException.class, () -> InventorySnapshot.open(file), "string offset past the end");
+    }
+
+    private static void rejectsBadRecordsWithAValidChecksum() throws Exception {
+        final Path file = Files.createTempDirectory("snapshot").resolve("inventory.bin");
+        InventorySnapshot.write(file, 1, Instant.now(), devices(), List.of());
+        final byte[] valid = Files.readAllBytes(file);
+
+        final ByteBuffer buffer = ByteBuffer.wrap(valid);
+        final int stringCount = buffer.getInt(STRING_COUNT_OFFSET);
+        // The first device record starts with the string index of its id, followed by the size of its address list
+        final int record = buffer.getInt(HEADER_SIZE + 4 * stringCount);
+
+        final Map<String, byte[]> corrupted = new LinkedHashMap<>();
+        corrupted.put("string index past the strings", resign(ByteBuffer.wrap(valid.clone()).putInt(record, stringCount)));
+        corrupted.put("negative string index", resign(ByteBuffer.wrap(valid.clone()).putInt(record, -5)));
+        corrupted.put("string list past the end", resign(ByteBuffer.wrap(valid.clone()).putInt(record + 4, 1_000_000)));
+
+        for (final Map.Entry<String, byte[]> entry : corrupted.entrySet()) {
+            Files.write(file, entry.getValue());
+            final IOException exception = checkThrows(IOException.class, () -> InventorySnapshot.open(file), entry.getKey());
+            checkEquals("Snapshot device 0 is corrupt", exception.getMessage(), entry.getKey());
+            check(exception.getCause() instanceof IndexOutOfBoundsException, "cause of " + entry.getKey());
+        }
+    }
+
+    private static void warmStartServesTheSnapshot() throws Exception {
+        final Path file = Files.createTempDirectory("snapshot").resolve("inventory.bin");
+
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            final List<Device> devices = simulator.generateDevices(50);
+            final TailscaleClient client = simulator.createClient();
+            final String keyId = client.getKeyClient().createKey(new ApiKeyRequest("ci",
+                    new Capabilities(new Devices(new Create(true, false, true, List.of("tag:ci")))), 3600, null, null)).id();
+
+            final WarmInventory cold = new WarmInventory(client, file);
+            check(!cold.load(), "nothing to load before the first refresh");
+            checkEquals(new InventoryDiff(50, 0, 0, 1, 0, 0), cold.refresh(), "first refresh");
+
+            final long requests = simulator.getRequestCount();
+            final WarmInventory warm = new WarmInventory(client, file);
+            check(warm.load(), "load");
+            check(!warm.isFresh(), "served from the snapshot");
+            checkEquals(cold.getVersion(), warm.getVersion(), "version");
+            check(warm.findDevice(devices.get(3).id()).isPresent(), "device from the snapshot");
+            checkEquals(cold.findDevice(devices.get(3).id()), warm.findDevice(devices.get(3).id()), "device as fetched from the API");
+            checkEquals(50, warm.getDevices().size(), "devices from the snapshot");
+            check(warm.getKey(keyId).isPresent(), "key from the snapshot");
+            check(warm.getDeviceIndex().getByName(devices.get(7).name()).isPresent(), "index built from the snapshot");
+            checkEquals(requests, simulator.getRequestCount(), "no API calls before the refresh");
+
+            client.getDeviceClient().setAuthorized(devices.get(3).id(), false);
+            client.getDeviceClient().deleteDevice(devices.get(4).id());
+            checkEquals(new InventoryDiff(0, 1, 1, 0, 0, 0), warm.refresh(), "refresh after the warm start");
+            check(warm.isFresh(), "fresh after the refresh");
+            checkEquals(cold.getVersion() + 1, warm.getVersion(), "version after a change");
+            check(!warm.findDevice(devices.get(3).id()).orElseThrow().authorized(), "updated device");
+            checkEquals(49, InventorySnapshot.open(file).getDeviceCount(), "rewritten snapshot");
+
+            Files.write(file, flip(Files.readAllBytes(file), 100));
+            final List<Throwable> errors = new ArrayList<>();
+            final WarmInventory broken = new WarmInventory(client, file);
+            broken.setErrorHandler(errors::add);
+            check(!broken.load(), "damaged snapshot is not loaded");
+            check(errors.size() == 1 && errors.get(0) instanceof IOException, "reported error " + errors);
+        }
+    }
+
+    private static byte[] flip(final byte[] bytes, final int index) {
+        final byte[] copy = bytes.clone();
+        copy[index] ^= 0x10;
+        return copy;
+    }
+
+    private static byte[] resign(final ByteBuffer buffer) {
+        final CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(0).limit(CRC_OFFSET));
+        crc.update(buffer.duplicate().position(HEADER_SIZE));
+        buffer.putInt(CRC_OFFSET, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    private static List<Device> devices() {
+        final Map<String, Device.Latency> latency = new LinkedHashMap<>();
+        latency.put("fra", new Device.Latency(12.5, true));
+        latency.put("nyc", new Device.Latency(null, null));
+
+        final Device full = new Device(List.of("100.64.0.1", "fd7a:115c:a1e0::1"), true, true, "1.60.0", "2024-01-01T00:00:00Z", null, "host",
+                "id1", true, false, "2024-06-01T00:00:00Z", "mkey:1", "host.example.ts.net", "n1", "nodekey:1", "linux", null, List.of("10.0.0.0/24"),
+                new Device.ClientConnectivity(List.of("1.2.3.4:41641"), latency, true, new Device.ClientSupports(true, false, true, false, true, true)),
+                List.of("tag:a", "tag:b"), "error", "tlpub:1", new Device.PostureIdentity(List.of("SN1")), true, "user@example.com");
+        final Device sparse = new Device(null, false, false, null, null, null, null, "id0", false, true, null, null, null, null, null, null,
+                null, null, new Device.ClientConnectivity(null, null, false, null), null, null, null, null, false, null);
+
+        return List.of(full, sparse);
+    }
+}
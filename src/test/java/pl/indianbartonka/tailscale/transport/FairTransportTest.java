@@ -0,0 +1,223 @@
+package pl.indianbartonka.tailscale.transport;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.TailscaleClientManager;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.json.TailscaleTypeAdapterFactory;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+import static pl.indianbartonka.tailscale.Checks.checkThrows;
+
+public final class FairTransportTest {
+
+    public static void main(final String[] args) throws Exception {
+        inFlightStaysBounded();
+        busyTenantDoesNotStarveOthers();
+        slotsFollowTheWeights();
+        idleTenantSavesNoCredit();
+        cancelledRequestsAreSkipped();
+        streamedBodiesHoldTheirSlot();
+        failuresAndRateLimitsAreCounted();
+        streamingWithTheSimulator();
+    }
+
+    private static void inFlightStaysBounded() {
+        final ManualTransport delegate = new ManualTransport();
+        final FairTransport transport = new FairTransport(delegate, 3);
+        final TailscaleTransport tenant = transport.tenant("a", 1);
+
+        final List<CompletableFuture<TransportResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) responses.add(tenant.send(request("a", i), false));
+
+        checkEquals(3, delegate.sent.size(), "requests sent");
+        checkEquals(new TenantUsage("a", 1, 3, 7, 0, 0), transport.getUsage("a"), "usage while waiting");
+
+        while (!delegate.sent.isEmpty()) delegate.complete(0, 200);
+
+        for (final CompletableFuture<TransportResponse> response : responses) checkEquals(200, response.join().statusCode(), "response");
+        checkEquals(new TenantUsage("a", 1, 0, 0, 10, 0), transport.getUsage("a"), "usage after the requests");
+        checkThrows(IllegalArgumentException.class, () -> new FairTransport(delegate, 0), "no slots");
+        checkThrows(IllegalArgumentException.class, () -> transport.tenant("a", 0), "weight of zero");
+    }
+
+    private static void busyTenantDoesNotStarveOthers() {
+        final ManualTransport delegate = new ManualTransport();
+        final FairTransport transport = new FairTransport(delegate, 1);
+        final TailscaleTransport busy = transport.tenant("busy", 1);
+        final TailscaleTransport quiet = transport.tenant("quiet", 1);
+
+        for (int i = 0; i < 50; i++) busy.send(request("busy", i), false);
+        for (int i = 0; i < 3; i++) quiet.send(request("quiet", i), false);
+
+        final List<String> order = delegate.drain(10);
+        checkEquals(List.of("busy", "quiet", "busy", "quiet", "busy", "quiet", "busy", "busy", "busy", "busy"), order,
+                "quiet tenant interleaved with the busy one");
+    }
+
+    private static void slotsFollowTheWeights() {
+        final ManualTransport delegate = new ManualTransport();
+        final FairTransport transport = new FairTransport(delegate, 1);
+        final TailscaleTransport heavy = transport.tenant("heavy", 3);
+        final TailscaleTransport light = transport.tenant("light", 1);
+
+        for (int i = 0; i < 100; i++) {
+            heavy.send(request("heavy", i), false);
+            light.send(request("light", i), false);
+        }
+
+        final List<String> order = delegate.drain(80);
+        final long heavyCount = order.stream().filter("heavy"::equals).count();
+        check(heavyCount >= 59 && heavyCount <= 61, "share of the heavy tenant " + heavyCount);
+    }
+
+    private static void idleTenantSavesNoCredit() {
+        final ManualTransport delegate = new ManualTransport();
+        final FairTransport transport = new FairTransport(delegate, 1);
+        final TailscaleTransport busy = transport.tenant("busy", 1);
+        final TailscaleTransport idle = transport.tenant("idle", 1);
+
+        for (int i = 0; i < 40; i++) busy.send(request("busy", i), false);
+        delegate.drain(20);
+
+        for (int i = 0; i < 20; i++) idle.send(request("idle", i), false);
+        final List<String> order = delegate.drain(20);
+        final long idleCount = order.stream().filter("idle"::equals).count();
+        check(idleCount >= 9 && idleCount <= 11, "tenant back from idle gets its share, not all slots: " + idleCount);
+    }
+
+    private static void cancelledRequestsAreSkipped() {
+        final ManualTransport delegate = new ManualTransport();
+        final FairTransport transport = new FairTransport(delegate, 1);
+        final TailscaleTransport tenant = transport.tenant("a", 1);
+
+        final CompletableFuture<TransportResponse> first = tenant.send(request("a", 0), false);
+        final CompletableFuture<TransportResponse> waiting = tenant.send(request("a", 1), false);
+        final CompletableFuture<TransportResponse> last = tenant.send(request("a", 2), false);
+
+        waiting.cancel(true);
+        delegate.complete(0, 200);
+        checkEquals(List.of("/a/2"), delegate.paths(), "cancelled request is never sent");
+
+        last.cancel(true);
+        check(delegate.sent.get(0).isCancelled(), "cancelling a sent request cancels the shared one");
+        check(first.join().isSuccessful(), "first response");
+        checkEquals(0, transport.getInFlight(), "released slot");
+    }
+
+    private static void streamedBodiesHoldTheirSlot() throws Exception {
+        final ManualTransport delegate = new ManualTransport();
+        final FairTransport transport = new FairTransport(delegate, 1);
+        final TailscaleTransport tenant = transport.tenant("a", 1);
+
+        final CompletableFuture<TransportResponse> streamed = tenant.send(request("a", 0), true);
+        tenant.send(request("a", 1), false);
+        delegate.complete(0, 200);
+
+        final InputStream body = streamed.join().body();
+        checkEquals(1, transport.getInFlight(), "slot held while the body is read");
+        checkEquals(0, delegate.sent.size(), "next request waits for the body");
+
+        body.close();
+        body.close();
+        checkEquals(1, delegate.sent.size(), "next request after closing the body");
+        checkEquals(1, transport.getInFlight(), "closing twice releases the slot once");
+    }
+
+    private static void failuresAndRateLimitsAreCounted() {
+        final ManualTransport delegate = new ManualTransport();
+        final FairTransport transport = new FairTransport(delegate, 1);
+        final TailscaleTransport tenant = transport.tenant("a", 1);
+
+        final CompletableFuture<TransportResponse> failed = tenant.send(request("a", 0), false);
+        final CompletableFuture<TransportResponse> limited = tenant.send(request("a", 1), false);
+        delegate.fail(0, new IllegalStateException("connection reset"));
+        delegate.complete(0, 429);
+
+        check(failed.isCompletedExceptionally(), "failed request");
+        checkEquals(429, limited.join().statusCode(), "rate limited response");
+        checkEquals(new TenantUsage("a", 1, 0, 0, 2, 1), transport.getUsage("a"), "usage");
+    }
+
+    private static void streamingWithTheSimulator() throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t");
+             TailscaleClientManager manager = new TailscaleClientManager(new HttpClientTransport(), TailscaleTypeAdapterFactory.register(new Gson()), 1)) {
+            final String id = simulator.generateDevices(50).get(0).id();
+            manager.setBaseUrl(simulator.getBaseUrl());
+            final TailscaleClient client = manager.getClient("t", "token");
+
+            final CompletableFuture<Device> device;
+            try (Stream<Device> devices = client.getDeviceClient().streamDevices()) {
+                device = client.getDeviceClient().getDeviceAsync(id);
+                Thread.sleep(300);
+                check(!device.isDone(), "request waits while the stream holds the only slot");
+                checkEquals(1, manager.getStats().get(0).queued(), "queued requests");
+                checkEquals(50L, devices.count(), "streamed devices");
+            }
+
+            checkEquals(id, device.get(5, TimeUnit.SECONDS).id(), "request after the stream was closed");
+            checkEquals(2L, manager.getStats().get(0).completed(), "completed requests");
+        }
+    }
+
+    private static HttpRequest request(final String tenant, final int index) {
+        return HttpRequest.newBuilder(URI.create("http://localhost/" + tenant + "/" + index)).GET().build();
+    }
+
+    /**
+     * Answers requests only when the test completes them, in the order they were sent
+     */
+    private static final class ManualTransport implements TailscaleTransport {
+
+        private final List<CompletableFuture<TransportResponse>> sent = new ArrayList<>();
+        private final List<HttpRequest> requests = new ArrayList<>();
+
+        @Override
+        public CompletableFuture<TransportResponse> send(final HttpRequest request, final boolean streaming) {
+            final CompletableFuture<TransportResponse> response = new CompletableFuture<>();
+            this.sent.add(response);
+            this.requests.add(request);
+            return response;
+        }
+
+        private void complete(final int index, final int statusCode) {
+            this.requests.remove(index);
+            this.sent.remove(index).complete(new TransportResponse(statusCode, HttpHeaders.of(Map.of(), (name, value) -> true),
+                    new ByteArrayInputStream(new byte[0]), 0, 0));
+        }
+
+        private void fail(final int index, final Throwable throwable) {
+            this.requests.remove(index);
+            this.sent.remove(index).completeExceptionally(throwable);
+        }
+
+        private List<String> paths() {
+            return this.requests.stream().map(request -> request.uri().getPath()).toList();
+        }
+
+        /**
+         * @return tenants of the next completed requests, in the order they were started
+         */
+        private List<String> drain(final int count) {
+            final List<String> order = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                order.add(this.requests.get(0).uri().getPath().split("/")[1]);
+                this.complete(0, 200);
+            }
+            return order;
+        }
+    }
+}
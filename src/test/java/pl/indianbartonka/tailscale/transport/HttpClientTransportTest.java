@@ -0,0 +1,77 @@
+package pl.indianbartonka.tailscale.transport;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Optional;
+import pl.indianbartonka.tailscale.ApiEndpoint;
+import pl.indianbartonka.tailscale.TailscaleClient;
+import pl.indianbartonka.tailscale.metrics.MetricsRecorder;
+import pl.indianbartonka.tailscale.scheduler.RequestScheduler;
+import pl.indianbartonka.tailscale.scheduler.RetryPolicy;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+import static pl.indianbartonka.tailscale.Checks.checkThrows;
+
+public final class HttpClientTransportTest {
+
+    public static void main(final String[] args) throws Exception {
+        requestsCarryTimeoutAndEncoding();
+        gzipResponsesAreDecoded();
+        slowResponsesTimeOut();
+    }
+
+    private static void requestsCarryTimeoutAndEncoding() {
+        final TailscaleClient client = new TailscaleClient("t", "tskey-api-test");
+        HttpRequest request = client.newRequest(ApiEndpoint.GET_DEVICES).GET().build();
+        checkEquals(Optional.of(HttpClientTransport.DEFAULT_REQUEST_TIMEOUT), request.timeout(), "default timeout");
+        checkEquals(Optional.of("gzip"), request.headers().firstValue("Accept-Encoding"), "compression asked for");
+
+        client.setTransport(new HttpClientTransport(Duration.ofSeconds(1), Duration.ofSeconds(2), false));
+        checkEquals(Duration.ofSeconds(2), client.getRequestTimeout(), "timeout taken over from the transport");
+        check(!client.isCompression(), "compression taken over from the transport");
+
+        request = client.newRequest(ApiEndpoint.GET_DEVICE, "1").GET().build();
+        checkEquals(Optional.of(Duration.ofSeconds(2)), request.timeout(), "timeout of the transport");
+        check(request.headers().firstValue("Accept-Encoding").isEmpty(), "no compression");
+        check(request.headers().firstValue("Authorization").isPresent(), "authorization");
+    }
+
+    private static void gzipResponsesAreDecoded() throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            simulator.generateDevices(300);
+            final TailscaleClient client = simulator.createClient();
+            final MetricsRecorder metrics = new MetricsRecorder();
+            client.addListener(metrics);
+
+            checkEquals(300, client.getDeviceClient().getDevices().size(), "compressed device list");
+            final long compressed = metrics.getStats(ApiEndpoint.GET_DEVICES).bytesReceived();
+
+            metrics.reset();
+            client.setCompression(false);
+            checkEquals(300, client.getDeviceClient().getDevices().size(), "plain device list");
+            final long plain = metrics.getStats(ApiEndpoint.GET_DEVICES).bytesReceived();
+
+            check(compressed > 0 && compressed * 3 < plain, "compressed " + compressed + " bytes vs plain " + plain);
+        }
+    }
+
+    private static void slowResponsesTimeOut() throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            final String deviceId = simulator.generateDevices(1).get(0).id();
+            final TailscaleClient client = simulator.createClient();
+            client.setRequestScheduler(new RequestScheduler(1_000, 10, RetryPolicy.NONE));
+            client.setRequestTimeout(Duration.ofMillis(200));
+            simulator.setLatency(Duration.ofMillis(1_000), Duration.ofMillis(1_000));
+
+            final IOException exception = checkThrows(IOException.class, () -> client.getDeviceClient().getDevice(deviceId), "slow response");
+            check(exception instanceof HttpTimeoutException, "timeout exception " + exception);
+
+            client.setRequestTimeout(Duration.ofSeconds(5));
+            checkEquals(deviceId, client.getDeviceClient().getDevice(deviceId).id(), "with a longer timeout");
+        }
+    }
+}
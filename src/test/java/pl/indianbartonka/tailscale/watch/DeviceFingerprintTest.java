@@ -0,0 +1,46 @@
+package pl.indianbartonka.tailscale.watch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+
+public final class DeviceFingerprintTest {
+
+    public static void main(final String[] args) {
+        equalDevicesShareAFingerprint();
+        hashCodeCollisionsStillDiffer();
+        listShapesAreDistinguished();
+        diffNamesTheChangedFields();
+    }
+
+    private static void equalDevicesShareAFingerprint() {
+        checkEquals(DeviceFingerprint.of(device("host", List.of("tag:a"))), DeviceFingerprint.of(device("host", new ArrayList<>(List.of("tag:a")))),
+                "fingerprints of equal devices");
+    }
+
+    private static void hashCodeCollisionsStillDiffer() {
+        checkEquals("Aa".hashCode(), "BB".hashCode(), "precondition: colliding String hash codes");
+        check(DeviceFingerprint.of(device("Aa", null)) != DeviceFingerprint.of(device("BB", null)), "names with the same hashCode");
+    }
+
+    private static void listShapesAreDistinguished() {
+        check(DeviceFingerprint.of(device("host", List.of())) != DeviceFingerprint.of(device("host", null)), "empty tags vs null tags");
+        check(DeviceFingerprint.of(device("host", List.of("a", "b"))) != DeviceFingerprint.of(device("host", List.of("ab"))), "split vs joined tags");
+        check(DeviceFingerprint.of(device("host", List.of("a", "b"))) != DeviceFingerprint.of(device("host", List.of("b", "a"))), "tag order");
+    }
+
+    private static void diffNamesTheChangedFields() {
+        checkEquals(Set.of("name", "tags"), DeviceFingerprint.diff(device("old", null), device("new", List.of("tag:a"))), "changed fields");
+        check(DeviceFingerprint.diff(device("same", null), device("same", null)).isEmpty(), "no changes");
+    }
+
+    private static Device device(final String name, final List<String> tags) {
+        return new Device(List.of("100.64.0.1"), true, false, "1.60.0", "2024-01-01T00:00:00Z", "2025-01-01T00:00:00Z", "host", "1",
+                false, false, "2024-06-01T00:00:00Z", "mkey:1", name, "n1", "nodekey:1", "linux", null, null, null, tags,
+                null, null, null, false, "user@example.com");
+    }
+}
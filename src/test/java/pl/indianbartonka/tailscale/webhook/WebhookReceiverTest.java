@@ -0,0 +1,237 @@
+package pl.indianbartonka.tailscale.webhook;
+
+import java.io.ByteArrayInputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import pl.indianbartonka.tailscale.DeviceClient;
+import pl.indianbartonka.tailscale.data.response.device.Device;
+import pl.indianbartonka.tailscale.data.response.webhook.WebhookEvent;
+import pl.indianbartonka.tailscale.data.response.webhook.WebhookEventType;
+import pl.indianbartonka.tailscale.index.DeviceIndex;
+import pl.indianbartonka.tailscale.simulator.TailscaleSimulator;
+import pl.indianbartonka.tailscale.webhook.httpserver.WebhookHttpServer;
+
+import static pl.indianbartonka.tailscale.Checks.check;
+import static pl.indianbartonka.tailscale.Checks.checkEquals;
+
+public final class WebhookReceiverTest {
+
+    private static final String SECRET = "webhook-secret";
+    private static final HttpClient HTTP_CLIENT = HttpClient.newHttpClient();
+
+    public static void main(final String[] args) throws Exception {
+        signaturesAreChecked();
+        deliveriesAreHandledWithoutAServer();
+        deliveriesAreVerifiedAndDispatched();
+        fullQueueDefersDeliveries();
+        burstsOfEventsAreCoalesced();
+        refresherUpdatesTheIndex();
+    }
+
+    private static void signaturesAreChecked() {
+        final byte[] body = "[{\"type\":\"test\"}]".getBytes(StandardCharsets.UTF_8);
+        final Instant now = Instant.ofEpochSecond(1_700_000_000);
+        final Duration tolerance = Duration.ofMinutes(5);
+        final String header = WebhookSignature.sign(SECRET, now.getEpochSecond(), body);
+        final String signature = header.substring(header.indexOf("v1="));
+
+        check(WebhookSignature.verify(SECRET, header, body, now, tolerance), "valid signature");
+        check(WebhookSignature.verify(SECRET, header, body, now.plusSeconds(300), tolerance), "signature at the edge of the tolerance");
+        check(!WebhookSignature.verify(SECRET, header, body, now.plusSeconds(301), tolerance), "replayed delivery");
+        check(!WebhookSignature.verify(SECRET, header, body, now.minusSeconds(301), tolerance), "timestamp in the future");
+        check(!WebhookSignature.verify("other-secret", header, body, now, tolerance), "wrong secret");
+        check(!WebhookSignature.verify(SECRET, header, "[]".getBytes(StandardCharsets.UTF_8), now, tolerance), "changed body");
+        check(!WebhookSignature.verify(SECRET, null, body, now, tolerance), "missing header");
+        check(!WebhookSignature.verify(SECRET, signature, body, now, tolerance), "missing timestamp");
+        check(!WebhookSignature.verify(SECRET, header.replace("t=", "t=x"), body, now, tolerance), "malformed timestamp");
+
+        final String rotating = WebhookSignature.sign("old-secret", now.getEpochSecond(), body) + ",v1=zz," + signature;
+        check(WebhookSignature.verify(SECRET, rotating, body, now, tolerance), "one of several signatures matches");
+    }
+
+    private static void deliveriesAreHandledWithoutAServer() throws Exception {
+        try (WebhookReceiver receiver = new WebhookReceiver(SECRET)) {
+            final CountDownLatch received = new CountDownLatch(1);
+            receiver.addListener(event -> received.countDown());
+
+            final String body = "[{\"type\": \"nodeCreated\", \"data\": {\"nodeID\": \"n1\"}}]";
+            final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            checkEquals(200, receiver.handle(sign(body), bytes), "signed delivery");
+            check(received.await(5, TimeUnit.SECONDS), "event reached the listener");
+
+            checkEquals(401, receiver.handle(null, bytes), "unsigned delivery");
+            checkEquals(400, receiver.handle(sign("{"), "{".getBytes(StandardCharsets.UTF_8)), "broken JSON");
+
+            final String large = " ".repeat(WebhookReceiver.MAX_BODY_SIZE + 1);
+            checkEquals(413, receiver.handle(sign(large), new ByteArrayInputStream(large.getBytes(StandardCharsets.UTF_8))), "too large stream");
+            checkEquals(3L, receiver.getRejectedCount(), "rejected deliveries");
+        }
+    }
+
+    private static void deliveriesAreVerifiedAndDispatched() throws Exception {
+        try (WebhookReceiver receiver = new WebhookReceiver(SECRET);
+             WebhookHttpServer server = new WebhookHttpServer(receiver)) {
+            final List<WebhookEvent> events = new CopyOnWriteArrayList<>();
+            final CountDownLatch received = new CountDownLatch(2);
+            receiver.addListener(event -> {
+                events.add(event);
+                received.countDown();
+            });
+            final URI uri = uri(server.start(new InetSocketAddress("127.0.0.1", 0), "/webhook"));
+
+            final String body = """
+                    [{"timestamp": "2024-01-01T00:00:00Z", "version": 1, "type": "nodeCreated", "tailnet": "t",
+                      "message": "created", "data": {"nodeID": "n1", "deviceName": "host", "extra": {"a": [1, true]}}},
+                     {"type": "somethingNew", "data": {"count": 3}}]""";
+            checkEquals(200, post(uri, body, sign(body)), "signed delivery");
+            check(received.await(5, TimeUnit.SECONDS), "events reached the listener");
+
+            final WebhookEvent created = events.stream().filter(event -> event.eventType() == WebhookEventType.NODE_CREATED).findFirst().orElseThrow();
+            checkEquals("n1", created.nodeId(), "node id");
+            checkEquals("host", created.deviceName(), "device name");
+            checkEquals("{\"a\":[1,true]}", created.data().get("extra"), "nested data as JSON");
+            checkEquals(1_704_067_200_000L, created.timestampMillis(), "timestamp");
+            check(events.stream().anyMatch(event -> event.eventType() == WebhookEventType.UNKNOWN && "3".equals(event.data().get("count"))),
+                    "unknown event type");
+
+            checkEquals(401, post(uri, body, null), "unsigned delivery");
+            checkEquals(401, post(uri, body, sign(body.replace("host", "evil"))), "signature of another body");
+            checkEquals(401, post(uri, body, WebhookSignature.sign(SECRET, Instant.now().getEpochSecond() - 3600, body.getBytes(StandardCharsets.UTF_8))),
+                    "stale delivery");
+            checkEquals(400, post(uri, "[{", sign("[{")), "broken JSON");
+
+            final String large = " ".repeat(WebhookReceiver.MAX_BODY_SIZE + 1);
+            checkEquals(413, post(uri, large, sign(large)), "too large delivery");
+
+            final HttpResponse<Void> get = HTTP_CLIENT.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.discarding());
+            checkEquals(405, get.statusCode(), "GET");
+
+            checkEquals(2L, receiver.getDeliveredCount(), "delivered events");
+            checkEquals(5L, receiver.getRejectedCount(), "rejected deliveries");
+        }
+    }
+
+    private static void fullQueueDefersDeliveries() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger handled = new AtomicInteger();
+
+        try (WebhookReceiver receiver = new WebhookReceiver(SECRET, 1, 2);
+             WebhookHttpServer server = new WebhookHttpServer(receiver)) {
+            receiver.addListener(event -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+                handled.incrementAndGet();
+            });
+            final URI uri = uri(server.start(new InetSocketAddress("127.0.0.1", 0), "/webhook"));
+            final String one = "{\"type\": \"test\"}";
+            final String two = "[{\"type\": \"test\"}, {\"type\": \"test\"}]";
+
+            checkEquals(200, post(uri, one, sign(one)), "delivery taken by the thread");
+            check(started.await(5, TimeUnit.SECONDS), "listener running");
+            checkEquals(200, post(uri, one, sign(one)), "delivery in the queue");
+            checkEquals(503, post(uri, two, sign(two)), "delivery not fitting the queue as a whole");
+            checkEquals(200, post(uri, one, sign(one)), "delivery filling the queue");
+            checkEquals(503, post(uri, one, sign(one)), "delivery to a full queue");
+            checkEquals(2L, receiver.getDeferredCount(), "deferred deliveries");
+
+            release.countDown();
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (handled.get() < 3 && System.nanoTime() < deadline) Thread.sleep(10);
+            checkEquals(3, handled.get(), "handled events");
+            checkEquals(3L, receiver.getDeliveredCount(), "delivered events");
+        }
+    }
+
+    private static void burstsOfEventsAreCoalesced() throws Exception {
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger refreshes = new AtomicInteger();
+
+        final WebhookDeviceRefresher refresher = new WebhookDeviceRefresher(nodeId -> {
+            if (refreshes.incrementAndGet() == 1) {
+                firstStarted.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            executor.execute(() -> refresher.accept(event("nodeApproved", "n1")));
+            check(firstStarted.await(5, TimeUnit.SECONDS), "first refresh running");
+
+            for (int i = 0; i < 20; i++) executor.execute(() -> refresher.accept(event("nodeKeyExpired", "n1")));
+            executor.execute(() -> refresher.accept(event("userCreated", "n1")));
+            Thread.sleep(100);
+
+            release.countDown();
+        } finally {
+            executor.shutdown();
+            check(executor.awaitTermination(5, TimeUnit.SECONDS), "refreshes finished");
+        }
+
+        checkEquals(2, refreshes.get(), "one refresh and one follow-up for the burst");
+
+        refresher.accept(event("nodeCreated", "n1"));
+        checkEquals(3, refreshes.get(), "refresh after the burst");
+    }
+
+    private static void refresherUpdatesTheIndex() throws Exception {
+        try (TailscaleSimulator simulator = new TailscaleSimulator("t")) {
+            final Device device = simulator.generateDevices(3).get(0);
+            final DeviceClient deviceClient = simulator.createClient().getDeviceClient();
+            final DeviceIndex deviceIndex = new DeviceIndex();
+            final WebhookDeviceRefresher refresher = WebhookDeviceRefresher.of(deviceClient, deviceIndex);
+
+            final long requests = simulator.getRequestCount();
+            refresher.accept(event("nodeCreated", device.nodeId()));
+            checkEquals(device.id(), deviceIndex.getByNodeId(device.nodeId()).map(Device::id).orElse(null), "refreshed device");
+            checkEquals(1L, simulator.getRequestCount() - requests, "one getDevice call");
+
+            simulator.getDevices().removeIf(candidate -> candidate.id().equals(device.id()));
+            refresher.accept(event("nodeDeleted", device.nodeId()));
+            check(deviceIndex.getById(device.id()).isEmpty(), "deleted device is removed");
+        }
+    }
+
+    private static WebhookEvent event(final String type, final String nodeId) {
+        return new WebhookEvent("2024-01-01T00:00:00Z", 1, type, "t", "", Map.of("nodeID", nodeId));
+    }
+
+    private static String sign(final String body) {
+        return WebhookSignature.sign(SECRET, Instant.now().getEpochSecond(), body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int post(final URI uri, final String body, final String signature) throws Exception {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString(body));
+        if (signature != null) builder.header(WebhookSignature.HEADER, signature);
+
+        return HTTP_CLIENT.send(builder.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static URI uri(final InetSocketAddress address) {
+        return URI.create("http://127.0.0.1:" + address.getPort() + "/webhook");
+    }
+}